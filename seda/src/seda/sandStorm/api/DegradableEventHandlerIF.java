@@ -0,0 +1,50 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.api;
+
+/**
+ * An event handler which can also process events in a cheaper, 
+ * degraded way, for example by returning a lower-fidelity response.
+ * When the stage has a response time controller of type 
+ * <tt>degrade</tt>, and the stage's 90th percentile response time 
+ * exceeds its target, the controller passes a fraction of the stage's
+ * events to handleDegradedEvents() instead of handleEvents(), rather
+ * than rejecting them at the stage's queue.
+ * 
+ * @see EventHandlerIF
+ */
+public interface DegradableEventHandlerIF extends EventHandlerIF {
+
+  /**
+   * Handle the given events in degraded mode. Each event passed to
+   * this method must still be processed, and any reply sent, but as
+   * cheaply as the application allows.
+   *
+   * @exception EventHandlerException The application may throw an
+   *   exception to indicate an error condition during event processing.
+   */
+  public void handleDegradedEvents(QueueElementIF elemarr[]) 
+      throws EventHandlerException;
+
+}
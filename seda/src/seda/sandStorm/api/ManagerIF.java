@@ -86,10 +86,12 @@ public interface ManagerIF {
   public ProfilerIF getProfiler();
 
   /**
-   * Returns a copy of the SandstormConfig for this Manager. This contains all
-   * of the global options used by the runtime system. Note that modifying
-   * any options of this copy does not in fact change the runtime parameters
-   * of the system; this is used for informational purposes only.
+   * Returns the SandstormConfig for this Manager. This contains all
+   * of the global options used by the runtime system, and is shared by
+   * all components. Most options are only read at startup, so changing
+   * them afterwards has no effect; those listed in 
+   * SandstormConfig.tunables may be changed at runtime with 
+   * SandstormConfig.update().
    */
   public SandstormConfig getConfig();
 
@@ -0,0 +1,96 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.api.internal;
+
+import seda.sandStorm.api.*;
+
+/**
+ * A ResponseTimeActuatorIF is the part of a response time controller 
+ * which acts on the stage, such as its queue threshold, admission 
+ * rate, thread pool size, batch size or degree of service 
+ * degradation. Each actuator has a value per request class, such as 
+ * the admission rate of the class, which a ResponseTimeEstimatorIF
+ * either sets directly or moves by steps with adjust(); most 
+ * actuators only support one class. The actuator is called by the 
+ * controller thread, except for handleEvents(), which is called by 
+ * the stage's threads.
+ *
+ * <p>An actuator is selected with the <tt>rtController.actuator</tt>
+ * option, either by one of the names accepted by StageWrapper or by 
+ * the name of a class implementing this interface with a public 
+ * no-argument constructor.
+ * 
+ * @see ResponseTimeControllerIF
+ */
+
+public interface ResponseTimeActuatorIF {
+
+  /**
+   * Initialize the actuator for the given stage and number of request
+   * classes, and put its initial values into effect. Throws 
+   * IllegalArgumentException if the actuator does not support 
+   * that number of classes.
+   */
+  public void init(ManagerIF mgr, StageWrapperIF stage, int numClasses) 
+    throws IllegalArgumentException;
+
+  /** Return the actuator's name, as used in profiler output. */
+  public String getName();
+
+  /** Return the current value for the given class. */
+  public double get(int theclass);
+
+  /** 
+   * Set the value for the given class, which is limited to the 
+   * actuator's range.
+   */
+  public void set(int theclass, double value);
+
+  /**
+   * Adjust the value for the given class by the given number of 
+   * steps, each of the actuator's own size. A positive number means 
+   * that the class's response time is below its target, so that the 
+   * stage can take more load, or the same load with fewer resources;
+   * a negative number means that it is above the target.
+   */
+  public void adjust(int theclass, double steps);
+
+  /**
+   * Pass the given events to the stage's event handler, and then 
+   * record them in the given measurement.
+   */
+  public void handleEvents(EventHandlerIF handler, QueueElementIF events[],
+      ResponseTimeMeasurementIF meas) throws EventHandlerException;
+
+  /** 
+   * Put the actuator's values into effect, after a call to disable().
+   */
+  public void enable();
+
+  /** 
+   * Stop the actuator from acting on the stage. The controller does
+   * not adjust a disabled actuator.
+   */
+  public void disable();
+
+}
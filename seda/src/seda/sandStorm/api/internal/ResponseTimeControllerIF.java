@@ -27,11 +27,21 @@ package seda.sandStorm.api.internal;
 import seda.sandStorm.api.*;
 
 /**
- * This interface represents a response time controller, invoked by the
- * stage's thread manager to manipulate admission control policies to
- * meet a response time target.
+ * This interface represents a response time controller, which 
+ * manipulates the admission control or resource allocation of a stage
+ * to meet a response time target. A controller is made of three 
+ * parts: a ResponseTimeMeasurementIF, which records the response 
+ * times of the events processed by the stage's threads; a 
+ * ResponseTimeEstimatorIF, which compares the measurements against 
+ * the target; and a ResponseTimeActuatorIF, which is adjusted by the
+ * estimator. The stage's threads only record measurements, through
+ * handleEvents(); the estimator and actuator are run by a separate 
+ * controller thread, which calls adjust() periodically.
  * 
  * @author   Matt Welsh
+ * @see ResponseTimeMeasurementIF
+ * @see ResponseTimeEstimatorIF
+ * @see ResponseTimeActuatorIF
  */
 
 public interface ResponseTimeControllerIF {
@@ -43,10 +53,18 @@ public interface ResponseTimeControllerIF {
   public double getTarget();
 
   /** 
-   * Invoked by the stage's thread manager to adjust admission control
-   * parameters.
+   * Invoked by the stage's thread manager in place of the event 
+   * handler's handleEvents(), to pass events to the handler and 
+   * measure their response times. Must not block.
    */
-  public void adjustThreshold(QueueElementIF fetched[], long serviceTime);
+  public void handleEvents(QueueElementIF events[]) throws EventHandlerException;
+
+  /**
+   * Invoked periodically by the controller thread to adjust admission
+   * control or resource allocation parameters, once enough 
+   * measurements have been made since the last adjustment.
+   */
+  public void adjust();
 
   /** Enable the response time controller. */
   public void enable();
@@ -55,4 +73,3 @@ public interface ResponseTimeControllerIF {
   public void disable();
 
 }
-
@@ -0,0 +1,68 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.api.internal;
+
+import seda.sandStorm.api.*;
+
+/**
+ * A ResponseTimeEstimatorIF is the part of a response time controller
+ * which decides how to adjust the stage: at the end of each 
+ * measurement interval it compares the measurements with the 
+ * response time target, for example directly or through a queueing 
+ * model, and adjusts a ResponseTimeActuatorIF accordingly. It is only
+ * called by the controller thread.
+ *
+ * <p>An estimator is selected with the <tt>rtController.estimator</tt>
+ * option, either by one of the names accepted by StageWrapper or by 
+ * the name of a class implementing this interface with a public 
+ * no-argument constructor.
+ * 
+ * @see ResponseTimeControllerIF
+ */
+
+public interface ResponseTimeEstimatorIF {
+
+  /**
+   * Initialize the estimator for the given stage and actuator. Throws
+   * IllegalArgumentException if the estimator cannot drive the 
+   * actuator, or the measurements, for example because they have 
+   * more than one class.
+   */
+  public void init(ManagerIF mgr, StageWrapperIF stage, 
+      ResponseTimeMeasurementIF meas, ResponseTimeActuatorIF act) 
+    throws IllegalArgumentException;
+
+  /**
+   * Invoked at the end of each measurement interval, with the response
+   * time target in msec of each class, to adjust the actuator.
+   */
+  public void estimate(ResponseTimeMeasurementIF meas, double targets[],
+      ResponseTimeActuatorIF act);
+
+  /**
+   * Return the estimator's current estimate of the 90th percentile 
+   * response time of class 0 in msec.
+   */
+  public double get90thRT();
+
+}
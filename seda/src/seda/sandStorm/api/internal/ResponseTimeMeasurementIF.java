@@ -0,0 +1,112 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.api.internal;
+
+import seda.sandStorm.api.*;
+
+/**
+ * A ResponseTimeMeasurementIF records the response times of the events
+ * processed by a stage, together with its arrival and service rates, 
+ * for use by a ResponseTimeEstimatorIF. Measurements are added by the
+ * stage's threads, and must be cheap and must not block; they are read
+ * by the controller thread in intervals. Each call to endInterval() 
+ * closes the current interval, and the get methods below return the
+ * measurements made in the last closed interval.
+ *
+ * <p>Events may be measured by request class (see 
+ * ClassQueueElementIF), numbered from 0 to getNumClasses()-1.
+ * 
+ * @see ResponseTimeControllerIF
+ */
+
+public interface ResponseTimeMeasurementIF {
+
+  /** Return the number of request classes measured. */
+  public int getNumClasses();
+
+  /**
+   * Record the response times of the given events, which have just 
+   * been processed. Only TimeStampedEvents are measured.
+   */
+  public void addEvents(QueueElementIF events[]);
+
+  /** Record that numEvents events took time msec to process. */
+  public void addServiceTime(int numEvents, long time);
+
+  /** 
+   * Return the number of response times recorded since the end of the
+   * last interval.
+   */
+  public long getNumPending();
+
+  /** 
+   * Return the time in msec since the end of the last interval.
+   */
+  public long getPendingTime();
+
+  /** Close the current measurement interval and start a new one. */
+  public void endInterval();
+
+  /** Return the length of the last interval in msec. */
+  public long getIntervalLength();
+
+  /** Return the number of response times recorded in the last interval. */
+  public long getCount();
+
+  /** 
+   * Return the number of response times recorded in the last interval
+   * for the given class.
+   */
+  public long getCount(int theclass);
+
+  /**
+   * Return the given percentile (between 0.0 and 1.0) of the response
+   * times in msec recorded in the last interval, or 0 if there were none.
+   */
+  public double getPercentile(double p);
+
+  /**
+   * Return the given percentile of the response times in msec 
+   * recorded in the last interval for the given class.
+   */
+  public double getPercentile(int theclass, double p);
+
+  /** 
+   * Return the number of events accepted onto the stage's queue in 
+   * the last interval.
+   */
+  public long getNumReceived();
+
+  /** Return the number of events processed in the last interval. */
+  public long getNumProcessed();
+
+  /** 
+   * Return the total time in msec spent by the stage's threads 
+   * processing events in the last interval.
+   */
+  public long getServiceTime();
+
+  /** Return the number of threads in the stage's thread pool. */
+  public int getNumThreads();
+
+}
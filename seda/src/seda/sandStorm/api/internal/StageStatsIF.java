@@ -45,6 +45,12 @@ public interface StageStatsIF {
   /** Get a running total of the number of processed events. */
   public long getTotalEvents();
 
+  /** 
+   * Get the 99th percentile service time of the stage's recent batches
+   * in msec. 
+   */
+  public double get99thServiceTime();
+
   /** Record a 90th percentile response time sample in msec. */
   public void record90thRT(double rt_sample);
 
@@ -0,0 +1,422 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.core;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+
+import seda.util.Clock;
+import java.util.Hashtable;
+
+/**
+ * A QueueIF implementation which keeps a separate FIFO sub-queue for 
+ * each request class, and chooses the class from which to dequeue 
+ * each element according to a dequeue policy. The class of an element 
+ * is given by ClassQueueElementIF.getRequestClass(); as with the 
+ * multiclass response time controller, higher classes have higher 
+ * priority, elements which are not ClassQueueElementIFs or have class 
+ * -1 are in class 0, and classes above the highest are treated as the 
+ * highest. The policies are:
+ *
+ * <ul>
+ * <li><b>STRICT_PRIORITY</b>: always dequeue from the highest non-empty 
+ *   class. Low classes can be starved indefinitely.
+ * <li><b>WEIGHTED_ROUND_ROBIN</b>: visit the non-empty classes in turn,
+ *   from the highest down, dequeueing up to <tt>weight</tt> elements
+ *   from each before moving on. Weights are rounded to integers of at
+ *   least 1.
+ * <li><b>DEFICIT_ROUND_ROBIN</b>: visit the non-empty classes in turn,
+ *   adding <tt>weight</tt> to each class's deficit on each visit and
+ *   dequeueing one element per unit of deficit. Weights may be 
+ *   fractional, so a class can be given less than one element per 
+ *   round; a class's deficit is discarded when its queue empties.
+ * </ul>
+ *
+ * <p>StageWrapper uses a ClassQueue as a stage's event queue when 
+ * <tt>queue.type</tt> is <tt>class</tt> in the stage's (or the global) 
+ * configuration; see SandstormConfig.
+ *
+ * @see      seda.sandStorm.api.ClassQueueElementIF
+ */
+public class ClassQueue implements QueueIF, ProfilableIF {
+
+  private static final boolean DEBUG = false;
+
+  /** Always dequeue from the highest non-empty class. */
+  public static final int STRICT_PRIORITY = 0;
+  /** Dequeue up to weight elements from each class in turn. */
+  public static final int WEIGHTED_ROUND_ROBIN = 1;
+  /** Deficit round robin, with a quantum of weight elements. */
+  public static final int DEFICIT_ROUND_ROBIN = 2;
+
+  private String name;
+  private int numClasses;
+  private int policy;
+  private double weights[];
+  private ssLinkedList qlist[];
+  private int queueSize;
+  private Object blocker;
+  private Hashtable provisionalTbl;
+  private EnqueuePredicateIF pred;
+
+  // Round robin state: the class being served, and the number of 
+  // elements it may still have (WRR) or each class's deficit (DRR)
+  private int curClass;
+  private int credit;
+  private double deficit[];
+
+  /**
+   * Create a ClassQueue with the given number of classes, dequeue
+   * policy, and per-class weights (ignored by STRICT_PRIORITY). If 
+   * weights is null, class c has weight c+1.
+   */
+  public ClassQueue(String name, int numClasses, int policy, double weights[]) {
+    if (numClasses < 1) throw new IllegalArgumentException("ClassQueue: numClasses must be at least 1");
+    if ((policy < STRICT_PRIORITY) || (policy > DEFICIT_ROUND_ROBIN)) {
+      throw new IllegalArgumentException("ClassQueue: Bad policy "+policy);
+    }
+    this.name = name;
+    this.numClasses = numClasses;
+    this.policy = policy;
+    this.weights = new double[numClasses];
+    for (int c = 0; c < numClasses; c++) {
+      if (weights == null) {
+	this.weights[c] = c+1;
+      } else {
+	// Classes beyond the end of the list take the last weight
+	double w = weights[Math.min(c, weights.length-1)];
+	if (w <= 0.0) throw new IllegalArgumentException("ClassQueue: weights must be positive");
+	this.weights[c] = w;
+      }
+    }
+    qlist = new ssLinkedList[numClasses];
+    for (int c = 0; c < numClasses; c++) {
+      qlist[c] = new ssLinkedList();
+    }
+    deficit = new double[numClasses];
+    // The first round starts from the highest class
+    curClass = 0;
+    credit = 0;
+    queueSize = 0;
+    blocker = new Object();
+    provisionalTbl = new Hashtable(1);
+  }
+
+  /**
+   * Create a strict priority ClassQueue with the given number of classes.
+   */
+  public ClassQueue(String name, int numClasses) {
+    this(name, numClasses, STRICT_PRIORITY, null);
+  }
+
+  /**
+   * Parse a policy name: "strict", "wrr" or "drr". Returns -1 if the
+   * name is not recognized.
+   */
+  public static int parsePolicy(String policy) {
+    if (policy.equals("strict")) return STRICT_PRIORITY;
+    if (policy.equals("wrr")) return WEIGHTED_ROUND_ROBIN;
+    if (policy.equals("drr")) return DEFICIT_ROUND_ROBIN;
+    return -1;
+  }
+
+  /**
+   * Return the class of the given element, in the range 
+   * 0 .. numClasses-1.
+   */
+  private int classOf(QueueElementIF qel) {
+    if (!(qel instanceof ClassQueueElementIF)) return 0;
+    int c = ((ClassQueueElementIF)qel).getRequestClass();
+    if (c < 0) return 0;
+    if (c >= numClasses) return numClasses-1;
+    return c;
+  }
+
+  /**
+   * Return the class from which the next element should be dequeued,
+   * updating the round robin state. Must be called with the lock held 
+   * and at least one element on the sub-queues.
+   */
+  private int nextClass() {
+    switch (policy) {
+
+      case STRICT_PRIORITY:
+	for (int c = numClasses-1; c > 0; c--) {
+	  if (qlist[c].size() != 0) return c;
+	}
+	return 0;
+
+      case WEIGHTED_ROUND_ROBIN:
+	if ((credit > 0) && (qlist[curClass].size() != 0)) {
+	  credit--;
+	  return curClass;
+	}
+	do {
+	  curClass = (curClass == 0) ? numClasses-1 : curClass-1;
+	} while (qlist[curClass].size() == 0);
+	credit = Math.max(1, (int)Math.round(weights[curClass])) - 1;
+	return curClass;
+
+      default:
+	while (true) {
+	  if (qlist[curClass].size() == 0) {
+	    deficit[curClass] = 0.0;
+	  } else if (deficit[curClass] >= 1.0) {
+	    deficit[curClass] -= 1.0;
+	    return curClass;
+	  }
+	  curClass = (curClass == 0) ? numClasses-1 : curClass-1;
+	  if (qlist[curClass].size() != 0) deficit[curClass] += weights[curClass];
+	}
+    }
+  }
+
+  // Dequeue up to num elements; must be called with the lock held
+  private QueueElementIF[] take(int num) {
+    int qs = Math.min(queuedSize(), num);
+    if (qs == 0) return null;
+    QueueElementIF[] retIF = new QueueElementIF[qs];
+    for (int i = 0; i < qs; i++) {
+      int c = nextClass();
+      retIF[i] = (QueueElementIF)qlist[c].remove_head();
+    }
+    queueSize -= qs;
+    if (DEBUG) System.err.println("ClassQueue <"+name+">: dequeued "+qs+", size now "+queueSize);
+    return retIF;
+  }
+
+  // Number of elements on the sub-queues; unlike queueSize, this does 
+  // not count provisionally enqueued elements
+  private int queuedSize() {
+    int n = 0;
+    for (int c = 0; c < numClasses; c++) n += qlist[c].size();
+    return n;
+  }
+
+  /** 
+   * Return the size of the queue, including provisionally enqueued 
+   * elements.
+   */
+  public int size() {
+    synchronized(blocker) {
+      return queueSize;
+    }
+  }
+
+  /**
+   * Return the number of elements queued in the given class.
+   */
+  public int size(int theclass) {
+    synchronized(blocker) {
+      return qlist[theclass].size();
+    }
+  }
+
+  /**
+   * Return the number of classes.
+   */
+  public int getNumClasses() {
+    return numClasses;
+  }
+
+  public void enqueue(QueueElementIF enqueueMe) throws SinkFullException {
+    // A concurrent predicate is checked before taking the lock
+    EnqueuePredicateIF pred = this.pred;
+    if (pred instanceof ConcurrentEnqueuePredicateIF) {
+      if (!pred.accept(enqueueMe)) throw new SinkFullException("ClassQueue is full!");
+      pred = null;
+    }
+    synchronized(blocker) {
+      if ((pred != null) && (!pred.accept(enqueueMe))) 
+	throw new SinkFullException("ClassQueue is full!");
+      queueSize++;
+      qlist[classOf(enqueueMe)].add_to_tail(enqueueMe);
+      blocker.notify();
+    }
+  }
+
+  public boolean enqueue_lossy(QueueElementIF enqueueMe) {
+    try {
+      this.enqueue(enqueueMe);
+    } catch (Exception e) {
+      return false;
+    }
+    return true;
+  }
+
+  public void enqueue_many(QueueElementIF[] enqueueMe) throws SinkFullException {
+    synchronized(blocker) {
+      int qlen = enqueueMe.length;
+      if (pred != null) {
+	int i = 0;
+	while ((i < qlen) && (pred.accept(enqueueMe[i]))) i++;
+	if (i != qlen) throw new SinkFullException("ClassQueue is full!");
+      }
+      queueSize += qlen;
+      for (int i = 0; i < qlen; i++) {
+	qlist[classOf(enqueueMe[i])].add_to_tail(enqueueMe[i]);
+      }
+      blocker.notifyAll();
+    }
+  }
+
+  public QueueElementIF dequeue() {
+    synchronized(blocker) {
+      QueueElementIF ret[] = take(1);
+      if (ret == null) return null;
+      return ret[0];
+    }
+  }
+
+  public QueueElementIF[] dequeue_all() {
+    synchronized(blocker) {
+      return take(Integer.MAX_VALUE);
+    }
+  }
+
+  public QueueElementIF[] dequeue(int num) {
+    synchronized(blocker) {
+      return take(num);
+    }
+  }
+
+  public QueueElementIF[] dequeue(int num, boolean mustReturnNum) {
+    synchronized(blocker) {
+      if (mustReturnNum && (queuedSize() < num)) return null;
+      return take(num);
+    }
+  }
+
+  public QueueElementIF[] blocking_dequeue_all(int timeout_millis) {
+    return blocking_dequeue(timeout_millis, Integer.MAX_VALUE, false);
+  }
+
+  public QueueElementIF[] blocking_dequeue(int timeout_millis, int num) {
+    return blocking_dequeue(timeout_millis, num, false);
+  }
+
+  public QueueElementIF[] blocking_dequeue(int timeout_millis, int num, boolean mustReturnNum) {
+    QueueElementIF[] rets;
+    long goal_time = Clock.currentTimeMillis() + timeout_millis;
+
+    synchronized(blocker) {
+      while (true) {
+	rets = this.dequeue(num, mustReturnNum);
+	if ((rets != null) || (timeout_millis == 0)) return rets;
+
+	try {
+	  if (timeout_millis == -1) {
+	    blocker.wait();
+	  } else {
+	    blocker.wait(Math.max(1, goal_time - Clock.currentTimeMillis()));
+	  }
+	} catch (InterruptedException ie) {
+	}
+
+	rets = this.dequeue(num, mustReturnNum);
+	if (rets != null) return rets;
+
+	if ((timeout_millis != -1) && (Clock.currentTimeMillis() >= goal_time)) {
+	  // Timeout - take whatever we can get
+	  return this.dequeue(num);
+	}
+      }
+    }
+  }
+
+  public QueueElementIF blocking_dequeue(int timeout_millis) {
+    QueueElementIF ret[] = blocking_dequeue(timeout_millis, 1, false);
+    if (ret == null) return null;
+    return ret[0];
+  }
+
+  /** 
+   * Return the profile size of the queue.
+   */
+  public int profileSize() {
+    return size();
+  }
+
+  /**
+   * Provisionally enqueue the given elements.
+   */
+  public Object enqueue_prepare(QueueElementIF enqueueMe[]) throws SinkException {
+    int qlen = enqueueMe.length;
+    synchronized(blocker) {
+      if (pred != null) {
+	int i = 0;
+	while ((i < qlen) && (pred.accept(enqueueMe[i]))) i++;
+	if (i != qlen) throw new SinkFullException("ClassQueue is full!");
+      }
+      queueSize += qlen;
+      Object key = new Object();
+      provisionalTbl.put(key, enqueueMe);
+      return key;
+    }
+  }
+
+  /** 
+   * Commit a provisional enqueue.
+   */
+  public void enqueue_commit(Object key) {
+    synchronized(blocker) {
+      QueueElementIF elements[] = (QueueElementIF[])provisionalTbl.remove(key);
+      if (elements == null) throw new IllegalArgumentException("Unknown enqueue key "+key);
+      for (int i = 0; i < elements.length; i++) {
+	qlist[classOf(elements[i])].add_to_tail(elements[i]);
+      }
+      blocker.notifyAll();
+    }
+  }
+
+  /** 
+   * Abort a provisional enqueue.
+   */
+  public void enqueue_abort(Object key) {
+    synchronized(blocker) {
+      QueueElementIF elements[] = (QueueElementIF[])provisionalTbl.remove(key);
+      if (elements == null) throw new IllegalArgumentException("Unknown enqueue key "+key);
+      queueSize -= elements.length;
+    }
+  }
+
+  /**
+   * Set the enqueue predicate for this sink. 
+   */
+  public void setEnqueuePredicate(EnqueuePredicateIF pred) {
+    this.pred = pred;
+  }
+
+  /**
+   * Return the enqueue predicate for this sink.
+   */
+  public EnqueuePredicateIF getEnqueuePredicate() {
+    return pred;
+  }
+
+  public String toString() {
+    return "ClassQueue <"+name+">";
+  }
+
+}
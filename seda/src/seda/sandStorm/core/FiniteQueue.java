@@ -27,6 +27,7 @@ package seda.sandStorm.core;
 import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 
+import seda.util.Clock;
 import java.util.Hashtable;
 
 /**
@@ -90,6 +91,12 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
   public void enqueue(QueueElementIF enqueueMe) throws SinkFullException {
 
     if (DEBUG) System.err.println("**** ENQUEUE ("+name+") **** Entered");
+    // A concurrent predicate is checked before taking the locks
+    EnqueuePredicateIF pred = this.pred;
+    if (pred instanceof ConcurrentEnqueuePredicateIF) {
+      if (!pred.accept(enqueueMe)) throw new SinkFullException("FiniteQueue is full!");
+      pred = null;
+    }
     synchronized(blocker) {
 
       synchronized(qlist) {
@@ -219,7 +226,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 
     if (DEBUG) System.err.println("**** B_DEQUEUE_A ("+name+") **** Entered");
 
-    goal_time = System.currentTimeMillis() + timeout_millis;
+    goal_time = Clock.currentTimeMillis() + timeout_millis;
     while (true) {
       synchronized(blocker) {
 
@@ -239,7 +246,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 	} else {
 	  try {
 	    if (DEBUG) System.err.println("**** B_DEQUEUE_A ("+name+") **** WAITING ON BLOCKER");
-	    blocker.wait(timeout_millis);
+	    blocker.wait(Math.max(1, goal_time - Clock.currentTimeMillis()));
 	  } catch (InterruptedException ie) {
 	  }
 	}
@@ -253,7 +260,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 	}
 	
 	if (timeout_millis != -1) {
-	  if (System.currentTimeMillis() >= goal_time) {
+	  if (Clock.currentTimeMillis() >= goal_time) {
 	    if (DEBUG) System.err.println("**** B_DEQUEUE_A ("+name+") **** RETURNING(3)");
 	    return null;
 	  }
@@ -268,7 +275,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
     long    goal_time;
     int     num_spins = 0;
 
-    goal_time = System.currentTimeMillis() + timeout_millis;
+    goal_time = Clock.currentTimeMillis() + timeout_millis;
     while (true) {
       synchronized(blocker) {
 
@@ -284,7 +291,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 	  }
 	} else {
 	  try {
-	    blocker.wait(timeout_millis);
+	    blocker.wait(Math.max(1, goal_time - Clock.currentTimeMillis()));
 	  } catch (InterruptedException ie) {
 	  }
 	}
@@ -295,7 +302,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 	}
 	
 	if (timeout_millis != -1) {
-	  if (System.currentTimeMillis() >= goal_time) {
+	  if (Clock.currentTimeMillis() >= goal_time) {
 	    // Timeout - take whatever we can get
 	    return this.dequeue(num);
 	  }
@@ -314,7 +321,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
     long    goal_time;
     int     num_spins = 0;
 
-    goal_time = System.currentTimeMillis() + timeout_millis;
+    goal_time = Clock.currentTimeMillis() + timeout_millis;
     while (true) {
       synchronized(blocker) {
 
@@ -330,7 +337,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 	  }
 	} else {
 	  try {
-	    blocker.wait(timeout_millis);
+	    blocker.wait(Math.max(1, goal_time - Clock.currentTimeMillis()));
 	  } catch (InterruptedException ie) {
 	  }
 	}
@@ -341,7 +348,7 @@ public class FiniteQueue implements QueueIF, ProfilableIF {
 	}
 	
 	if (timeout_millis != -1) {
-	  if (System.currentTimeMillis() >= goal_time)
+	  if (Clock.currentTimeMillis() >= goal_time)
 	    return null;
 	}
       }
@@ -26,28 +26,29 @@ package seda.sandStorm.core;
 
 import seda.sandStorm.api.*;
 import seda.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This enqueue predicate implements multiclass input rate policing.
+ * Each class has its own token bucket, kept as a single atomic word 
+ * (see TokenBucket), so accept() takes no lock and queues may call it
+ * outside their own lock.
  */
-public class MulticlassRateLimitingPredicate implements EnqueuePredicateIF {
+public class MulticlassRateLimitingPredicate implements ConcurrentEnqueuePredicateIF {
 
   private static final boolean DEBUG = false;
 
   private SinkIF thesink;
   private int NUM_CLASSES;
-  private double targetRate[];
-  private int depth[];
-  private double tokenCount[];
-  private double regenTimeMS[];
-  private long lasttime[];
+  private TokenBucket bucket[];
 
-  // Number of milliseconds between regenerations
-  private long MIN_REGEN_TIME = 0;
-
-  private static final boolean PROFILE = true;
+  // Set to true to record the interarrival times of one in every 
+  // PROFILE_SAMPLE events
+  private static final boolean PROFILE = false;
+  private static final int PROFILE_SAMPLE = 64;
   private StatsGatherer interArrivalStats;
   private StatsGatherer acceptArrivalStats;
+  private volatile long lastArrival;
   
   /**
    * Create a new RateLimitingPredicate for the given sink,
@@ -56,20 +57,11 @@ public class MulticlassRateLimitingPredicate implements EnqueuePredicateIF {
   public MulticlassRateLimitingPredicate(SinkIF sink, int numclasses, double targetRate, int depth) {
     this.thesink = sink;
     this.NUM_CLASSES = numclasses;
+    this.lastArrival = Clock.nanoTime();
 
-    this.targetRate = new double[NUM_CLASSES];
-    this.depth = new int[NUM_CLASSES];
-    this.regenTimeMS = new double[NUM_CLASSES];
-    this.tokenCount = new double[NUM_CLASSES];
-    this.lasttime = new long[NUM_CLASSES];
-
+    this.bucket = new TokenBucket[NUM_CLASSES];
     for (int c = 0; c < NUM_CLASSES; c++) {
-      this.targetRate[c] = targetRate;
-      this.regenTimeMS[c] = (1.0 / this.targetRate[c]) * 1.0e3;
-      if (this.regenTimeMS[c] < 1) this.regenTimeMS[c] = 1;
-      this.depth[c] = depth;
-      this.tokenCount[c] = depth*1.0;
-      this.lasttime[c] = System.currentTimeMillis();
+      this.bucket[c] = new TokenBucket(targetRate, depth, lastArrival);
     }
 
     System.err.println("MulticlassRateLimitingPredicate<"+sink.toString()+">: Created");
@@ -94,77 +86,61 @@ public class MulticlassRateLimitingPredicate implements EnqueuePredicateIF {
       ClassQueueElementIF cqel = (ClassQueueElementIF)qel;
       c = cqel.getRequestClass();
       if (c == -1) c = 0;
+      if (c >= NUM_CLASSES) c = NUM_CLASSES-1;
     }
     if (DEBUG) System.err.println("MCRLP <"+thesink.toString()+": Class is "+c);
 
-    if (targetRate[c] == -1.0) return true;
-
-    // First regenerate tokens
-    long curtime = System.currentTimeMillis();
-    long delay = curtime - lasttime[c];
-
-    if (PROFILE) {
-      interArrivalStats.add(delay);
-    }
-
-    if (delay >= MIN_REGEN_TIME) {
-      double numTokens = ((double)delay * 1.0) / (regenTimeMS[c] * 1.0);
-      tokenCount[c] += numTokens; 
-      if (tokenCount[c] > depth[c]) tokenCount[c] = depth[c];
-      lasttime[c] = curtime;
-    }
+    long now = Clock.nanoTime();
+    boolean accepted = bucket[c].take(now);
+    if (PROFILE) profile(now, accepted);
+    return accepted;
+  }
 
-    if (tokenCount[c] >= 1.0) {
-      tokenCount[c] -= 1.0;
-      if (PROFILE) {
-       	acceptArrivalStats.add(delay);
-      }
-      return true;
-    } else {
-      return false;
-    }
+  private void profile(long now, boolean accepted) {
+    double delay = (now - lastArrival) / 1.0e6;
+    lastArrival = now;
+    if (ThreadLocalRandom.current().nextInt(PROFILE_SAMPLE) != 0) return;
+    interArrivalStats.add(delay);
+    if (accepted) acceptArrivalStats.add(delay);
   }
 
   /**
    * Return the current rate limit.
    */
   public double getTargetRate(int theclass) {
-    return targetRate[theclass];
+    return bucket[theclass].getTargetRate();
   }
 
   /**
    * Return the current depth.
    */
   public int getDepth(int theclass) {
-    return depth[theclass];
+    return bucket[theclass].getDepth();
   }
 
   /**
    * Return the number of tokens currently in the bucket.
    */
   public int getBucketSize(int theclass) {
-    return (int)tokenCount[theclass];
+    return bucket[theclass].getTokens(Clock.nanoTime());
   }
 
   /**
    * Set the rate limit. A limit of -1.0 indicates no rate limit.
    */
   public void setTargetRate(int theclass, double targetRate) {
+    TokenBucket b = bucket[theclass];
     // Kill off old tokens if reducing rate
-    if (targetRate < this.targetRate[theclass]) {
-      this.tokenCount[theclass] = 0;
-    }
-
-    this.targetRate[theclass] = targetRate;
-    this.regenTimeMS[theclass] = (1.0 / targetRate) * 1.0e3;
-    if (regenTimeMS[theclass] < 1) regenTimeMS[theclass] = 1;
+    boolean reducing = (targetRate < b.getTargetRate());
+    b.setTargetRate(targetRate);
+    if (reducing) b.drain(Clock.nanoTime());
   }
 
   /**
    * Set the bucket depth.
    */
   public void setDepth(int theclass, int depth) {
-    this.depth[theclass] = depth;
+    bucket[theclass].setDepth(depth);
   }
 
 }
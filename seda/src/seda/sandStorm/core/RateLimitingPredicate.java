@@ -26,27 +26,27 @@ package seda.sandStorm.core;
 
 import seda.sandStorm.api.*;
 import seda.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * This enqueue predicate implements input rate policing.
+ * This enqueue predicate implements input rate policing. The token
+ * bucket is kept as a single atomic word (see TokenBucket), so accept()
+ * takes no lock and queues may call it outside their own lock.
  */
-public class RateLimitingPredicate implements EnqueuePredicateIF {
+public class RateLimitingPredicate implements ConcurrentEnqueuePredicateIF {
 
   private static final boolean DEBUG = false;
 
   private SinkIF thesink;
-  private double targetRate;
-  private int depth;
-  private double tokenCount;
-  private double regenTimeMS;
-  private long lasttime;
+  private TokenBucket bucket;
 
-  // Number of milliseconds between regenerations
-  private long MIN_REGEN_TIME = 0;
-
-  private static final boolean PROFILE = true;
+  // Set to true to record the interarrival times of one in every 
+  // PROFILE_SAMPLE events
+  private static final boolean PROFILE = false;
+  private static final int PROFILE_SAMPLE = 64;
   private StatsGatherer interArrivalStats;
   private StatsGatherer acceptArrivalStats;
+  private volatile long lastArrival;
   
   /**
    * Create a new RateLimitingPredicate for the given sink,
@@ -54,11 +54,8 @@ public class RateLimitingPredicate implements EnqueuePredicateIF {
    */
   public RateLimitingPredicate(SinkIF sink, double targetRate, int depth) {
     this.thesink = sink;
-    this.targetRate = targetRate;
-    this.regenTimeMS = (1.0 / targetRate) * 1.0e3;
-    if (this.regenTimeMS < 1) this.regenTimeMS = 1;
-    this.depth = depth; this.tokenCount = depth*1.0;
-    this.lasttime = System.currentTimeMillis();
+    this.lastArrival = Clock.nanoTime();
+    this.bucket = new TokenBucket(targetRate, depth, lastArrival);
 
     System.err.println("RateLimitingPredicate<"+sink.toString()+">: Created");
 
@@ -74,68 +71,53 @@ public class RateLimitingPredicate implements EnqueuePredicateIF {
    * Returns true if the given element can be accepted into the queue.
    */
   public boolean accept(QueueElementIF qel) {
-    if (targetRate == -1.0) return true;
-
-    // First regenerate tokens
-    long curtime = System.currentTimeMillis();
-    long delay = curtime - lasttime;
-
-    if (PROFILE) {
-      interArrivalStats.add(delay);
-    }
-
-    if (delay >= MIN_REGEN_TIME) {
-      double numTokens = ((double)delay * 1.0) / (regenTimeMS * 1.0);
-      tokenCount += numTokens; if (tokenCount > depth) tokenCount = depth;
-      lasttime = curtime;
-    }
+    long now = Clock.nanoTime();
+    boolean accepted = bucket.take(now);
+    if (PROFILE) profile(now, accepted);
+    return accepted;
+  }
 
-    if (tokenCount >= 1.0) {
-      tokenCount -= 1.0;
-      if (PROFILE) {
-       	acceptArrivalStats.add(delay);
-      }
-      return true;
-    } else {
-      return false;
-    }
+  private void profile(long now, boolean accepted) {
+    double delay = (now - lastArrival) / 1.0e6;
+    lastArrival = now;
+    if (ThreadLocalRandom.current().nextInt(PROFILE_SAMPLE) != 0) return;
+    interArrivalStats.add(delay);
+    if (accepted) acceptArrivalStats.add(delay);
   }
 
   /**
    * Return the current rate limit.
    */
   public double getTargetRate() {
-    return targetRate;
+    return bucket.getTargetRate();
   }
 
   /**
    * Return the current depth.
    */
   public int getDepth() {
-    return depth;
+    return bucket.getDepth();
   }
 
   /**
    * Return the number of tokens currently in the bucket.
    */
   public int getBucketSize() {
-    return (int)tokenCount;
+    return bucket.getTokens(Clock.nanoTime());
   }
 
   /**
    * Set the rate limit. A limit of -1.0 indicates no rate limit.
    */
   public void setTargetRate(double targetRate) {
-    this.targetRate = targetRate;
-    this.regenTimeMS = (1.0 / targetRate) * 1.0e3;
-    if (regenTimeMS < 1) regenTimeMS = 1;
+    bucket.setTargetRate(targetRate);
   }
 
   /**
    * Set the bucket depth.
    */
   public void setDepth(int depth) {
-    this.depth = depth;
+    bucket.setDepth(depth);
   }
 
 }
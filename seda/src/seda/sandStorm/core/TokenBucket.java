@@ -0,0 +1,131 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket used by the rate limiting predicates. The state of 
+ * the bucket is a single theoretical arrival time (as in the generic 
+ * cell rate algorithm): the time, in nanoseconds, at which the bucket
+ * would be full again if no more tokens were taken. A token may be 
+ * taken if doing so would not push that time more than a full 
+ * bucket's worth of tokens past now. The time is updated with 
+ * compareAndSet, so take() needs no lock, and a rejected take() does
+ * not write at all.
+ */
+class TokenBucket {
+
+  // Longest interval between tokens (about 11 days), used when the 
+  // rate is 0
+  private static final long MAX_INTERVAL = 1000000000000000L;
+  // Longest time a full bucket can span (about 73 years), so that 
+  // adding it or an interval to a time cannot overflow
+  private static final long MAX_SPAN = Long.MAX_VALUE / 4;
+
+  private volatile double targetRate;
+  private volatile int depth;
+  // Nanoseconds per token; 0 if there is no rate limit
+  private volatile long interval;
+  private final AtomicLong tat;
+
+  /**
+   * Create a full bucket with the given rate, in tokens per second, 
+   * and depth. A rate of -1.0 indicates no rate limit.
+   */
+  TokenBucket(double targetRate, int depth, long now) {
+    this.depth = depth;
+    this.tat = new AtomicLong(now);
+    setTargetRate(targetRate);
+  }
+
+  // Return depth*interval, the time taken to fill an empty bucket,
+  // limited to MAX_SPAN
+  private static long span(int depth, long interval) {
+    if ((depth <= 0) || (interval == 0)) return 0;
+    if (interval > MAX_SPAN / depth) return MAX_SPAN;
+    return depth * interval;
+  }
+
+  /**
+   * Take a token at the given time, as returned by Clock.nanoTime(). 
+   * Returns false if the bucket is empty.
+   */
+  boolean take(long now) {
+    long interval = this.interval;
+    if (interval == 0) return true;
+    long limit = now + span(depth, interval);
+    while (true) {
+      long t = tat.get();
+      long next = Math.max(t, now) + interval;
+      if (next > limit) return false;
+      if (tat.compareAndSet(t, next)) return true;
+    }
+  }
+
+  /**
+   * Return the number of tokens in the bucket at the given time.
+   */
+  int getTokens(long now) {
+    long interval = this.interval;
+    int depth = this.depth;
+    if (interval == 0) return depth;
+    long tokens = (now + span(depth, interval) - Math.max(tat.get(), now)) / interval;
+    return (int)Math.max(0, Math.min(depth, tokens));
+  }
+
+  double getTargetRate() {
+    return targetRate;
+  }
+
+  int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Set the rate limit. A limit of -1.0 indicates no rate limit.
+   */
+  void setTargetRate(double targetRate) {
+    this.targetRate = targetRate;
+    if (targetRate == -1.0) {
+      this.interval = 0;
+    } else if (targetRate <= 0.0) {
+      this.interval = MAX_INTERVAL;
+    } else {
+      this.interval = (long)Math.max(1.0, Math.min(1.0e9 / targetRate, MAX_INTERVAL));
+    }
+  }
+
+  void setDepth(int depth) {
+    this.depth = depth;
+  }
+
+  /**
+   * Remove all tokens from the bucket at the given time.
+   */
+  void drain(long now) {
+    tat.set(now + span(depth, interval));
+  }
+
+}
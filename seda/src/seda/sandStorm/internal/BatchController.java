@@ -0,0 +1,263 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.sandStorm.core.*;
+import seda.sandStorm.main.*;
+import java.util.*;
+import seda.util.*;
+
+/** 
+ * BatchController is used by thread pools to adjust the number of
+ * events their threads process in each batch. It maximises the stage's
+ * throughput by hill-climbing on the batch size, subject to an
+ * optional bound on the 99th percentile batch service time, as
+ * measured by the stage's StageStatsIF: while the bound is exceeded
+ * the batch size is reduced, whatever the throughput.
+ *
+ * <p>Each stage has its own controller, configured by the options
+ * <tt>stages.<i>stageName</i>.batchController.*</tt> and then
+ * <tt>global.batchController.*</tt>. Every thread manager which uses
+ * ThreadPool, including the aSocket and aDisk thread managers, is 
+ * driven by it through ThreadPool.getAggregationTarget().
+ */
+class BatchController {
+
+  private static final boolean DEBUG = false;
+
+  private StageWrapperIF stage;
+  private String name;
+  private SandstormConfig config;
+  // The configuration snapshot targetServiceTime was read from
+  private ConfigSnapshot snap;
+
+  private double bestThroughput, lastThroughput;
+  private long lastEvents;
+  private volatile long lastMeasurementTime;
+  private int adjustCount;
+  private double lastServiceTime;
+
+  private static final int STATE_DECREASING = 0;
+  private static final int STATE_INCREASING = 1;
+  private int state = STATE_DECREASING;
+
+  private static final int ADJUST_DELAY = 5;
+  // Used if maxBatch is not set
+  private static final int DEFAULT_MAX_BATCH = 1000;
+
+  private int minBatch = 1;
+  private int maxBatch = DEFAULT_MAX_BATCH;
+  private int recalcWindow = 1000;
+  private double smoothConst = 0.7;
+  private double increaseFactor = 1.2;
+  private double reduceFactor = 1.2;
+  // 99th percentile batch service time bound in msec; 0 for none
+  private double targetServiceTime = 0.0;
+
+  private static final double LOW_WATER = 0.90;
+  private static final double HIGH_WATER = 0.98;
+  private static final double VERY_LOW_WATER = 0.2;
+  private static final double VERY_HIGH_WATER = 2.0;
+
+  private int batchTarget;
+  // The value of batchTarget after the last recalculation
+  private volatile int publishedTarget;
+
+  BatchController(StageWrapperIF stage, ManagerIF mgr) {
+    this.stage = stage;
+    this.name = stage.getStage().getName();
+    this.config = mgr.getConfig();
+
+    // First look for stages.[stageName] options, then global options
+    String tag = "stages."+name+".batchController.";
+    String globaltag = "global.batchController.";
+    this.minBatch = config.getInt(tag+"minBatch", 
+	config.getInt(globaltag+"minBatch", minBatch));
+    this.maxBatch = config.getInt(tag+"maxBatch", 
+	config.getInt(globaltag+"maxBatch", maxBatch));
+    this.recalcWindow = config.getInt(tag+"recalcWindow",
+	config.getInt(globaltag+"recalcWindow", recalcWindow));
+    this.smoothConst = config.getDouble(tag+"smoothConst",
+	config.getDouble(globaltag+"smoothConst", smoothConst));
+    this.increaseFactor = config.getDouble(tag+"increaseFactor",
+	config.getDouble(globaltag+"increaseFactor", increaseFactor));
+    this.reduceFactor = config.getDouble(tag+"reduceFactor",
+	config.getDouble(globaltag+"reduceFactor", reduceFactor));
+    this.snap = config.getSnapshot();
+    this.targetServiceTime = getTargetServiceTime(snap);
+
+    if (minBatch < 1) minBatch = 1;
+    if (maxBatch < 1) maxBatch = DEFAULT_MAX_BATCH;
+    if (maxBatch < minBatch) maxBatch = minBatch;
+    if (recalcWindow < 1) recalcWindow = 1;
+    if (increaseFactor <= 1.0) increaseFactor = 1.2;
+    if (reduceFactor <= 1.0) reduceFactor = 1.2;
+
+    System.err.println("BatchController <"+name+"> created: minBatch "+minBatch+", maxBatch "+maxBatch+", recalcWindow "+recalcWindow+", targetServiceTime "+targetServiceTime);
+    this.batchTarget = maxBatch;
+    this.publishedTarget = batchTarget;
+
+    lastThroughput = 0.0;
+    bestThroughput = 0.0;
+    lastEvents = 0;
+    lastMeasurementTime = Clock.currentTimeMillis();
+    adjustCount = 0;
+
+    mgr.getProfiler().add("BatchController throughput <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)lastThroughput;
+	}
+	});
+    mgr.getProfiler().add("BatchController 99th service time <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)lastServiceTime;
+	}
+	});
+    mgr.getProfiler().add("BatchController target <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return publishedTarget;
+	}
+	});
+  }
+
+  public String toString() {
+    return "BatchController <"+name+">";
+  }
+
+  /**
+   * Return the current batch size target.
+   */
+  int getBatchTarget() {
+    // Called by every thread after every batch; only take the lock 
+    // when it is time to recalculate
+    if (Clock.currentTimeMillis() - lastMeasurementTime < recalcWindow) {
+      return publishedTarget;
+    }
+    return recalcBatchTarget();
+  }
+
+  private synchronized int recalcBatchTarget() {
+
+    long cur_time = Clock.currentTimeMillis();
+    long time_elapsed = cur_time - lastMeasurementTime;
+
+    if (time_elapsed < recalcWindow) {
+      return batchTarget;
+    }
+
+    // targetServiceTime may be changed at runtime
+    ConfigSnapshot s = config.getSnapshot();
+    if (s != snap) {
+      snap = s;
+      targetServiceTime = getTargetServiceTime(s);
+    }
+
+    StageStatsIF stats = stage.getStats();
+    long events = stats.getTotalEvents();
+    long curEvents = events - lastEvents;
+    lastEvents = events;
+    lastMeasurementTime = cur_time;
+    lastServiceTime = stats.get99thServiceTime();
+
+    double throughput = (curEvents * 1.0) / ((double)time_elapsed * 1.0e-3);
+    double avgThroughput = (smoothConst * lastThroughput) + ((1.0 - smoothConst) * throughput);
+
+    if ((targetServiceTime > 0) && (lastServiceTime > targetServiceTime)) {
+      // Batches are taking too long; reduce, and measure throughput 
+      // afresh from the new batch size
+      reduce();
+      state = STATE_DECREASING;
+      bestThroughput = avgThroughput;
+      adjustCount = 0;
+
+    } else if ((++adjustCount % ADJUST_DELAY) == 0) {
+
+      if ((avgThroughput < (VERY_LOW_WATER*bestThroughput)) ||
+	  (avgThroughput >= (VERY_HIGH_WATER*bestThroughput))) {
+	// The load has changed a lot; start again from the top
+	batchTarget = maxBatch;
+	state = STATE_DECREASING;
+      }
+
+      if (state == STATE_DECREASING) {
+	if (avgThroughput <= (LOW_WATER*bestThroughput)) {
+	  // Fell below low water - increase
+	  state = STATE_INCREASING;
+	  increase();
+	} else {
+	  // Save any better throughput and decrease
+	  if (avgThroughput > bestThroughput) bestThroughput = avgThroughput;
+	  reduce();
+	}
+
+      } else if (state == STATE_INCREASING) {
+	if (avgThroughput > bestThroughput) {
+	  // Better throughput - save 
+	  bestThroughput = avgThroughput;
+	}
+	if (avgThroughput >= (HIGH_WATER*bestThroughput)) {
+	  // Start decreasing
+	  state = STATE_DECREASING;
+	  reduce();
+	} else if (batchTarget == maxBatch) {
+	  // Maxed out, so save best throughput and start decreasing
+	  state = STATE_DECREASING;
+	  bestThroughput = avgThroughput;
+	} else {
+	  increase();
+	}
+      }
+    }
+
+    if (DEBUG) System.err.println("BatchController <"+name+">: avgThroughput "+MDWUtil.format(avgThroughput)+", 99th "+MDWUtil.format(lastServiceTime)+", state "+((state==0)?"dec":"inc")+", target "+batchTarget);
+
+    lastThroughput = avgThroughput;
+    publishedTarget = batchTarget;
+    return batchTarget;
+  }
+
+  private double getTargetServiceTime(ConfigSnapshot s) {
+    return s.getDouble("stages."+name+".batchController.targetServiceTime",
+	s.getDouble("global.batchController.targetServiceTime", 0.0));
+  }
+
+  // Always move by at least one, so that small targets can grow
+  private void increase() {
+    int t = (int)(batchTarget * increaseFactor);
+    if (t <= batchTarget) t = batchTarget + 1;
+    batchTarget = Math.min(t, maxBatch);
+  }
+
+  private void reduce() {
+    int t = (int)(batchTarget / reduceFactor);
+    if (t >= batchTarget) t = batchTarget - 1;
+    batchTarget = Math.max(t, minBatch);
+  }
+
+}
@@ -0,0 +1,127 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+
+/**
+ * A sink which passes events on to a stage's event queue, and starts
+ * the stage's thread pool after the first event is enqueued. Stage 
+ * hands one out as the stage's sink when threadPool.lazyStart is set
+ * for a stage run by a TPSThreadManager, so that the threads of idle stages are never started.
+ * Once the pool has started, an enqueue costs one volatile read more 
+ * than enqueueing onto the queue directly. The queue's enqueue 
+ * predicate is not touched, so it may be replaced at any time.
+ *
+ * @see ThreadPool
+ */
+class LazyStartSink implements SinkIF, ProfilableIF {
+
+  private SinkIF sink;
+  private ThreadPool tp;
+  private volatile boolean started = false;
+
+  LazyStartSink(SinkIF sink) {
+    this.sink = sink;
+  }
+
+  /**
+   * Start the given thread pool when the next event is enqueued, or
+   * now if any events have been enqueued already. If tp is null, the
+   * stage's threads are started by other means, and enqueues no longer
+   * check for a pool to start.
+   */
+  void startOnEnqueue(ThreadPool tp) {
+    synchronized (this) {
+      if (tp == null) {
+	started = true;
+	return;
+      }
+      this.tp = tp;
+    }
+    if (sink.size() > 0) fire();
+  }
+
+  // Start the pool, if it has been given and not yet started. Called
+  // after each enqueue, so no queue lock is held.
+  private void fire() {
+    ThreadPool pool;
+    synchronized (this) {
+      if (started || (tp == null)) return;
+      started = true;
+      pool = tp;
+    }
+    pool.start();
+  }
+
+  public void enqueue(QueueElementIF element) throws SinkException {
+    sink.enqueue(element);
+    if (!started) fire();
+  }
+
+  public boolean enqueue_lossy(QueueElementIF element) {
+    boolean ret = sink.enqueue_lossy(element);
+    if (!started) fire();
+    return ret;
+  }
+
+  public void enqueue_many(QueueElementIF[] elements) throws SinkException {
+    sink.enqueue_many(elements);
+    if (!started) fire();
+  }
+
+  public Object enqueue_prepare(QueueElementIF[] elements) throws SinkException {
+    return sink.enqueue_prepare(elements);
+  }
+
+  public void enqueue_commit(Object enqueue_key) {
+    sink.enqueue_commit(enqueue_key);
+    if (!started) fire();
+  }
+
+  public void enqueue_abort(Object enqueue_key) {
+    sink.enqueue_abort(enqueue_key);
+  }
+
+  public void setEnqueuePredicate(EnqueuePredicateIF pred) {
+    sink.setEnqueuePredicate(pred);
+  }
+
+  public EnqueuePredicateIF getEnqueuePredicate() {
+    return sink.getEnqueuePredicate();
+  }
+
+  public int size() {
+    return sink.size();
+  }
+
+  public int profileSize() {
+    return size();
+  }
+
+  public String toString() {
+    return sink.toString();
+  }
+
+}
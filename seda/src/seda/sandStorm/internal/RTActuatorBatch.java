@@ -0,0 +1,113 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+
+/**
+ * An actuator which sets the number of events each of the stage's 
+ * threads takes from its queue at once. Larger batches increase the
+ * throughput of many stages, but delay the events at the end of each
+ * batch, so a step down halves the batch size and a step up increases
+ * it by a fifth. It cannot be used together with the batch controller,
+ * and has no effect on stages which are not run by a TPSThreadManager.
+ */
+public class RTActuatorBatch implements ResponseTimeActuatorIF, ResponseTimeController.poolClient {
+
+  private static final int MIN_BATCH = 1;
+  private static final int MAX_BATCH = 1000;
+  private static final double INCREASE_FACTOR = 0.2;
+  private static final double MULTIPLICATIVE_DECREASE = 2.0;
+
+  private String name;
+  private volatile ThreadPool tp;
+  private volatile int batchSize = MAX_BATCH;
+  // The pool's batch size before this actuator changed it
+  private int origBatchSize;
+  private volatile boolean enabled = true;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, int numClasses) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (numClasses != 1) {
+      throw new IllegalArgumentException("RTActuatorBatch <"+name+">: Multiple classes not supported");
+    }
+    mgr.getProfiler().add("RTController batchSize <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return batchSize;
+	}
+	});
+  }
+
+  public void setThreadPool(ThreadPool tp) {
+    if (tp == null) {
+      System.err.println("RTActuatorBatch <"+name+">: Warning: stage has no thread pool");
+      return;
+    }
+    if (tp.hasBatchController()) {
+      throw new IllegalArgumentException("RTActuatorBatch <"+name+">: Cannot be used with the batch controller");
+    }
+    this.origBatchSize = tp.getMaxAggregation();
+    if ((origBatchSize > 0) && (origBatchSize < batchSize)) batchSize = origBatchSize;
+    this.tp = tp;
+    if (enabled) tp.setMaxAggregation(batchSize);
+  }
+
+  public String getName() {
+    return "batch";
+  }
+
+  public double get(int theclass) {
+    return batchSize;
+  }
+
+  public void set(int theclass, double value) {
+    batchSize = (int)Math.min(MAX_BATCH, Math.max(MIN_BATCH, Math.round(value)));
+    if ((tp != null) && enabled) tp.setMaxAggregation(batchSize);
+  }
+
+  public void adjust(int theclass, double steps) {
+    if (steps > 0.0) {
+      set(0, batchSize + (Math.max(1.0, batchSize * INCREASE_FACTOR) * steps));
+    } else if (steps < 0.0) {
+      set(0, batchSize / Math.pow(MULTIPLICATIVE_DECREASE, -steps));
+    }
+  }
+
+  public void handleEvents(EventHandlerIF handler, QueueElementIF events[], ResponseTimeMeasurementIF meas) throws EventHandlerException {
+    handler.handleEvents(events);
+    meas.addEvents(events);
+  }
+
+  public void enable() {
+    enabled = true;
+    if (tp != null) tp.setMaxAggregation(batchSize);
+  }
+
+  public void disable() {
+    enabled = false;
+    if (tp != null) tp.setMaxAggregation(origBatchSize);
+  }
+
+}
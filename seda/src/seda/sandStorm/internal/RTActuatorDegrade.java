@@ -0,0 +1,161 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+
+/**
+ * An actuator which sheds load by degrading service rather than by 
+ * rejecting events, as described in the SEDA paper. The stage's event
+ * handler must implement DegradableEventHandlerIF. A fraction of the 
+ * events fetched by each thread is passed to the handler's degraded 
+ * mode; the actuator's value is the fraction served normally, which a
+ * step down reduces by ADDITIVE_DECREASE and a step up increases by
+ * ADDITIVE_INCREASE. The stage's queue is left unlimited, so producers
+ * never see a SinkFullException from it.
+ *
+ * <p>Since a stage's threads may fetch its whole queue at once, a 
+ * batch is handled in parts of at most CHUNK_SIZE events, and the 
+ * response times of each part are recorded as soon as it is done, so 
+ * that a change to the fraction applies within a large batch.
+ * 
+ * @see DegradableEventHandlerIF
+ */
+public class RTActuatorDegrade implements ResponseTimeActuatorIF {
+
+  private static final int CHUNK_SIZE = 10;
+  private static final double ADDITIVE_INCREASE = 0.02;
+  private static final double ADDITIVE_DECREASE = 0.1;
+
+  private DegradableEventHandlerIF handler;
+  // Fraction of events to degrade
+  private volatile double degradeFraction;
+  private volatile boolean enabled = true;
+
+  // The part of an event not yet degraded towards the fraction, for 
+  // each thread
+  private final ThreadLocal credit = new ThreadLocal() {
+    protected Object initialValue() {
+      return new double[1];
+    }
+  };
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, int numClasses) throws IllegalArgumentException {
+    String name = stage.getStage().getName();
+    if (!(stage.getEventHandler() instanceof DegradableEventHandlerIF)) {
+      throw new IllegalArgumentException("RTActuatorDegrade <"+name+">: Event handler does not implement DegradableEventHandlerIF");
+    }
+    if (numClasses != 1) {
+      throw new IllegalArgumentException("RTActuatorDegrade <"+name+">: Multiple classes not supported");
+    }
+    this.handler = (DegradableEventHandlerIF)stage.getEventHandler();
+
+    mgr.getProfiler().add("RTController degraded percent <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)(degradeFraction * 100.0);
+	}
+	});
+  }
+
+  public String getName() {
+    return "degrade";
+  }
+
+  public double get(int theclass) {
+    return 1.0 - degradeFraction;
+  }
+
+  public void set(int theclass, double value) {
+    degradeFraction = 1.0 - Math.min(1.0, Math.max(0.0, value));
+  }
+
+  public void adjust(int theclass, double steps) {
+    if (steps > 0.0) {
+      set(0, get(0) + (ADDITIVE_INCREASE * steps));
+    } else if (steps < 0.0) {
+      set(0, get(0) + (ADDITIVE_DECREASE * steps));
+    }
+  }
+
+  /**
+   * Pass the given events to the stage's event handler, sending the
+   * current fraction of them to its degraded mode.
+   */
+  public void handleEvents(EventHandlerIF h, QueueElementIF events[], ResponseTimeMeasurementIF meas) throws EventHandlerException {
+    if (events.length <= CHUNK_SIZE) {
+      handleChunk(events);
+      meas.addEvents(events);
+      return;
+    }
+    for (int i = 0; i < events.length; i += CHUNK_SIZE) {
+      QueueElementIF chunk[] = new QueueElementIF[Math.min(CHUNK_SIZE, events.length - i)];
+      System.arraycopy(events, i, chunk, 0, chunk.length);
+      handleChunk(chunk);
+      meas.addEvents(chunk);
+    }
+  }
+
+  private void handleChunk(QueueElementIF events[]) throws EventHandlerException {
+    int n = numToDegrade(events.length);
+    if (n == 0) {
+      handler.handleEvents(events);
+    } else if (n == events.length) {
+      handler.handleDegradedEvents(events);
+    } else {
+      // Degrade the oldest events, which are the most likely to be late
+      QueueElementIF degraded[] = new QueueElementIF[n];
+      QueueElementIF normal[] = new QueueElementIF[events.length - n];
+      System.arraycopy(events, 0, degraded, 0, n);
+      System.arraycopy(events, n, normal, 0, normal.length);
+      handler.handleDegradedEvents(degraded);
+      handler.handleEvents(normal);
+    }
+  }
+
+  // Carry the fractional part over between batches, so that the 
+  // fraction is met even when events are fetched one at a time
+  private int numToDegrade(int num) {
+    double mycredit[] = (double[])credit.get();
+    double fraction = degradeFraction;
+    if (!enabled || (fraction == 0.0)) {
+      mycredit[0] = 0.0;
+      return 0;
+    }
+    mycredit[0] += fraction * num;
+    int n = (int)Math.min(num, mycredit[0]);
+    mycredit[0] -= n;
+    return n;
+  }
+
+  public void enable() {
+    enabled = true;
+  }
+
+  public void disable() {
+    enabled = false;
+  }
+
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.sandStorm.core.*;
+
+/**
+ * An actuator which limits the rate at which events are admitted to
+ * the stage's queue, with a RateLimitingPredicate, or with a 
+ * MulticlassRateLimitingPredicate if there is more than one request 
+ * class. A step up adds ADDITIVE_INCREASE events/sec to the rate, and
+ * a step down divides it by MULTIPLICATIVE_DECREASE. A negative rate 
+ * admits every event.
+ */
+public class RTActuatorRate implements ResponseTimeActuatorIF {
+
+  private static final double INIT_RATE = 10.0;
+  private static final int INIT_DEPTH = 10;
+  private static final int INIT_DEPTH_MULTICLASS = 1;
+  private static final double MAX_RATE = 5000.0;
+  private static final double MIN_RATE = 0.05;
+  private static final double ADDITIVE_INCREASE = 0.5;
+  private static final double MULTIPLICATIVE_DECREASE = 2.0;
+
+  private SinkIF sink;
+  private EnqueuePredicateIF pred;
+  private volatile double rates[];
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, int numClasses) throws IllegalArgumentException {
+    final String name = stage.getStage().getName();
+    this.sink = stage.getStage().getSink();
+    this.rates = new double[numClasses];
+    for (int c = 0; c < numClasses; c++) rates[c] = INIT_RATE;
+    if (numClasses == 1) {
+      this.pred = new RateLimitingPredicate(sink, INIT_RATE, INIT_DEPTH);
+    } else {
+      this.pred = new MulticlassRateLimitingPredicate(sink, numClasses, INIT_RATE, INIT_DEPTH_MULTICLASS);
+    }
+    sink.setEnqueuePredicate(pred);
+
+    mgr.getProfiler().add("RTController curRate <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)rates[0];
+	}
+	});
+  }
+
+  public String getName() {
+    return "rate";
+  }
+
+  public double get(int theclass) {
+    return rates[theclass];
+  }
+
+  public void set(int theclass, double rate) {
+    if (rate < 0.0) {
+      rate = -1.0;
+    } else {
+      rate = Math.min(MAX_RATE, Math.max(MIN_RATE, rate));
+    }
+    rates[theclass] = rate;
+    if (pred instanceof RateLimitingPredicate) {
+      ((RateLimitingPredicate)pred).setTargetRate(rate);
+    } else {
+      ((MulticlassRateLimitingPredicate)pred).setTargetRate(theclass, rate);
+    }
+  }
+
+  public void adjust(int theclass, double steps) {
+    double rate = rates[theclass];
+    if (steps > 0.0) {
+      // Already unlimited
+      if (rate < 0.0) return;
+      set(theclass, rate + (ADDITIVE_INCREASE * steps));
+    } else if (steps < 0.0) {
+      if (rate < 0.0) rate = MAX_RATE;
+      set(theclass, rate / Math.pow(MULTIPLICATIVE_DECREASE, -steps));
+    }
+  }
+
+  public void handleEvents(EventHandlerIF handler, QueueElementIF events[], ResponseTimeMeasurementIF meas) throws EventHandlerException {
+    handler.handleEvents(events);
+    meas.addEvents(events);
+  }
+
+  public void enable() {
+    sink.setEnqueuePredicate(pred);
+  }
+
+  public void disable() {
+    sink.setEnqueuePredicate(null);
+  }
+
+}
@@ -0,0 +1,102 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+
+/**
+ * An actuator which resizes the stage's thread pool, between the 
+ * pool's minThreads and maxThreads: a step down, when the response 
+ * time is above the target, adds a thread, and a step up removes one.
+ * This only helps stages whose threads spend time blocked, rather than
+ * on the CPU. It has no effect on stages which are not run by a 
+ * TPSThreadManager. The thread pool size controller may be used as 
+ * well, but will add threads back when the queue is long.
+ */
+public class RTActuatorThreads implements ResponseTimeActuatorIF, ResponseTimeController.poolClient {
+
+  private String name;
+  private volatile ThreadPool tp;
+  private volatile boolean enabled = true;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, int numClasses) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (numClasses != 1) {
+      throw new IllegalArgumentException("RTActuatorThreads <"+name+">: Multiple classes not supported");
+    }
+  }
+
+  public void setThreadPool(ThreadPool tp) {
+    this.tp = tp;
+    if (tp == null) {
+      System.err.println("RTActuatorThreads <"+name+">: Warning: stage has no thread pool");
+    }
+  }
+
+  public String getName() {
+    return "threads";
+  }
+
+  public double get(int theclass) {
+    if (tp == null) return 0;
+    return tp.numThreads();
+  }
+
+  public void set(int theclass, double value) {
+    if ((tp == null) || !enabled) return;
+    int cur = tp.numThreads();
+    int target = Math.max(tp.minThreads, (int)Math.round(value));
+    if (tp.maxThreads >= 0) target = Math.min(tp.maxThreads, target);
+    if (target > cur) {
+      tp.addThreads(target - cur, true);
+    } else if (target < cur) {
+      tp.removeThreads(cur - target);
+    }
+  }
+
+  public void adjust(int theclass, double steps) {
+    if (tp == null) return;
+    // More threads when the response time is too high
+    int n = (int)Math.ceil(Math.abs(steps));
+    if (steps < 0.0) {
+      set(0, tp.numThreads() + n);
+    } else if (steps > 0.0) {
+      set(0, tp.numThreads() - n);
+    }
+  }
+
+  public void handleEvents(EventHandlerIF handler, QueueElementIF events[], ResponseTimeMeasurementIF meas) throws EventHandlerException {
+    handler.handleEvents(events);
+    meas.addEvents(events);
+  }
+
+  public void enable() {
+    enabled = true;
+  }
+
+  public void disable() {
+    enabled = false;
+  }
+
+}
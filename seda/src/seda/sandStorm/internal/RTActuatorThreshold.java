@@ -0,0 +1,98 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.sandStorm.core.*;
+
+/**
+ * An actuator which limits the length of the stage's queue with a 
+ * QueueThresholdPredicate. A step up adds one to the threshold, and a
+ * step down halves it.
+ */
+public class RTActuatorThreshold implements ResponseTimeActuatorIF {
+
+  private static final int INIT_THRESHOLD = 1;
+  private static final int MIN_THRESHOLD = 1;
+  private static final int MAX_THRESHOLD = 1024;
+  private static final double ADDITIVE_INCREASE = 1.0;
+  private static final double MULTIPLICATIVE_DECREASE = 2.0;
+
+  private SinkIF sink;
+  private QueueThresholdPredicate pred;
+  private volatile int curThreshold;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, int numClasses) throws IllegalArgumentException {
+    String name = stage.getStage().getName();
+    if (numClasses != 1) {
+      throw new IllegalArgumentException("RTActuatorThreshold <"+name+">: Multiple classes not supported");
+    }
+    this.sink = stage.getStage().getSink();
+    this.curThreshold = INIT_THRESHOLD;
+    this.pred = new QueueThresholdPredicate(sink, curThreshold);
+    sink.setEnqueuePredicate(pred);
+
+    mgr.getProfiler().add("RTController queueThreshold <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return curThreshold;
+	}
+	});
+  }
+
+  public String getName() {
+    return "threshold";
+  }
+
+  public double get(int theclass) {
+    return curThreshold;
+  }
+
+  public void set(int theclass, double threshold) {
+    curThreshold = (int)Math.min(MAX_THRESHOLD, Math.max(MIN_THRESHOLD, Math.round(threshold)));
+    pred.setThreshold(curThreshold);
+  }
+
+  public void adjust(int theclass, double steps) {
+    if (steps > 0.0) {
+      set(0, curThreshold + Math.max(1.0, ADDITIVE_INCREASE * steps));
+    } else if (steps < 0.0) {
+      set(0, curThreshold / Math.pow(MULTIPLICATIVE_DECREASE, -steps));
+    }
+  }
+
+  public void handleEvents(EventHandlerIF handler, QueueElementIF events[], ResponseTimeMeasurementIF meas) throws EventHandlerException {
+    handler.handleEvents(events);
+    meas.addEvents(events);
+  }
+
+  public void enable() {
+    sink.setEnqueuePredicate(pred);
+  }
+
+  public void disable() {
+    sink.setEnqueuePredicate(null);
+  }
+
+}
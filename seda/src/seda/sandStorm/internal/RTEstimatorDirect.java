@@ -0,0 +1,78 @@
+/* 
+ * Copyright (c) 2001 by Matt Welsh and The Regents of the University of 
+ * California. All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ * Author: Matt Welsh <mdw@cs.berkeley.edu>
+ * 
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.util.*;
+
+/**
+ * An estimator which adjusts its actuator directly from the error in 
+ * the 90th percentile response time: by one step up while a moving 
+ * average of the measured 90th percentile is below LOW_WATER times 
+ * the target, and by one step down while it is above HIGH_WATER times
+ * the target. With the rate actuator, this is additive increase and 
+ * multiplicative decrease of the admission rate.
+ * 
+ * @author   Matt Welsh
+ */
+public class RTEstimatorDirect implements ResponseTimeEstimatorIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final double SMOOTH_CONST = 0.7;
+  private static final double LOW_WATER = 0.9;
+  private static final double HIGH_WATER = 1.2;
+
+  private String name;
+  private double ninetiethRT;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, ResponseTimeMeasurementIF meas, ResponseTimeActuatorIF act) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (meas.getNumClasses() != 1) {
+      throw new IllegalArgumentException("RTEstimatorDirect <"+name+">: Multiple classes not supported");
+    }
+    System.err.println("RTEstimatorDirect <"+name+">: SMOOTH_CONST="+SMOOTH_CONST+", LOW_WATER="+LOW_WATER+", HIGH_WATER="+HIGH_WATER);
+  }
+
+  public void estimate(ResponseTimeMeasurementIF meas, double targets[], ResponseTimeActuatorIF act) {
+    if (meas.getCount() == 0) return;
+    double cur = meas.getPercentile(0.9);
+    ninetiethRT = (SMOOTH_CONST * ninetiethRT) + ((1.0 - SMOOTH_CONST) * cur); 
+
+    double targetRT = targets[0];
+    if (ninetiethRT < (LOW_WATER * targetRT)) {
+      act.adjust(0, 1.0);
+    } else if (ninetiethRT > (HIGH_WATER * targetRT)) {
+      act.adjust(0, -1.0);
+    }
+    if (DEBUG) System.err.println("RTEstimatorDirect <"+name+">: ninetiethRT "+MDWUtil.format(ninetiethRT)+" target "+targetRT+" "+act.getName()+" now "+MDWUtil.format(act.get(0)));
+  }
+
+  public double get90thRT() {
+    return ninetiethRT;
+  }
+
+}
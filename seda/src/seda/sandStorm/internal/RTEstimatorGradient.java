@@ -0,0 +1,97 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.util.*;
+
+/**
+ * An estimator which extrapolates the trend of the 90th percentile 
+ * response time. It keeps an exponentially weighted moving average of
+ * the measured 90th percentile, and predicts the next one from the 
+ * average and its change over the last interval; the actuator is moved
+ * by one step for every STEP_ERROR of relative error between the 
+ * prediction and the target, up to MAX_STEPS. Compared to 
+ * RTEstimatorDirect, this reacts to a rising response time before it
+ * crosses the target, and makes larger adjustments the further it is 
+ * from the target.
+ */
+public class RTEstimatorGradient implements ResponseTimeEstimatorIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final double SMOOTH_CONST = 0.5;
+  private static final double LOW_WATER = 0.9;
+  private static final double HIGH_WATER = 1.1;
+  private static final double STEP_ERROR = 0.25;
+  private static final double MAX_STEPS = 2.0;
+
+  private String name;
+  private double ninetiethRT, predictedRT;
+  private boolean first = true;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, ResponseTimeMeasurementIF meas, ResponseTimeActuatorIF act) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (meas.getNumClasses() != 1) {
+      throw new IllegalArgumentException("RTEstimatorGradient <"+name+">: Multiple classes not supported");
+    }
+    mgr.getProfiler().add("RTControllerGradient predicted 90thRT <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)predictedRT;
+	}
+	});
+    System.err.println("RTEstimatorGradient <"+name+">: SMOOTH_CONST="+SMOOTH_CONST+", LOW_WATER="+LOW_WATER+", HIGH_WATER="+HIGH_WATER+", STEP_ERROR="+STEP_ERROR+", MAX_STEPS="+MAX_STEPS);
+  }
+
+  public void estimate(ResponseTimeMeasurementIF meas, double targets[], ResponseTimeActuatorIF act) {
+    if (meas.getCount() == 0) return;
+    double cur = meas.getPercentile(0.9);
+    double last = ninetiethRT;
+    if (first) {
+      last = ninetiethRT = cur;
+      first = false;
+    } else {
+      ninetiethRT = (SMOOTH_CONST * ninetiethRT) + ((1.0 - SMOOTH_CONST) * cur);
+    }
+    predictedRT = Math.max(0.0, ninetiethRT + (ninetiethRT - last));
+
+    double targetRT = targets[0];
+    double err = (targetRT - predictedRT) / targetRT;
+    double steps = 0.0;
+    if (predictedRT < (LOW_WATER * targetRT)) {
+      steps = Math.min(MAX_STEPS, Math.max(1.0, err / STEP_ERROR));
+    } else if (predictedRT > (HIGH_WATER * targetRT)) {
+      steps = Math.max(-MAX_STEPS, Math.min(-1.0, err / STEP_ERROR));
+    }
+    if (steps != 0.0) act.adjust(0, steps);
+
+    if (DEBUG) System.err.println("RTEstimatorGradient <"+name+">: ninetiethRT "+MDWUtil.format(ninetiethRT)+" predicted "+MDWUtil.format(predictedRT)+" target "+targetRT+" steps "+MDWUtil.format(steps)+" "+act.getName()+" now "+MDWUtil.format(act.get(0)));
+  }
+
+  public double get90thRT() {
+    return ninetiethRT;
+  }
+
+}
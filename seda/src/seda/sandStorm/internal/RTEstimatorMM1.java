@@ -0,0 +1,157 @@
+/* 
+ * Copyright (c) 2001 by Matt Welsh and The Regents of the University of 
+ * California. All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ * Author: Matt Welsh <mdw@cs.berkeley.edu>
+ * 
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.sandStorm.core.*;
+import seda.util.*;
+
+/**
+ * An estimator which models the stage as an M/M/1 queue. The service 
+ * rate mu and arrival rate lambda are measured over ESTIMATION_TIME ms,
+ * and the admission rate is set to the highest rate at which the 
+ * model predicts a 90th percentile response time within the target,
+ * mu - ln(10)/target. The service rate of a single thread is assumed
+ * to scale with the logarithm of the number of threads. This estimator
+ * sets admission rates, so it can only be used with the rate actuator.
+ * 
+ * @author   Matt Welsh
+ */
+public class RTEstimatorMM1 implements ResponseTimeEstimatorIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final long ESTIMATION_TIME = 2000; 
+  private static final double SMOOTH_CONST = 0.1;
+  private static final double SMOOTH_CONST_UP = 0.9;
+  private static final double SMOOTH_CONST_DOWN = 0.1;
+
+  private String name;
+  private double measured_mu, measured_lambda, est_ninetiethRT;
+  private double ninetiethRT;
+  private double avgNumThreads = 1.0;
+  private long numProcessed, numReceived, totalProcTime, elapsed;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, ResponseTimeMeasurementIF meas, ResponseTimeActuatorIF act) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (meas.getNumClasses() != 1) {
+      throw new IllegalArgumentException("RTEstimatorMM1 <"+name+">: Multiple classes not supported");
+    }
+    if (!act.getName().equals("rate")) {
+      throw new IllegalArgumentException("RTEstimatorMM1 <"+name+">: Requires the rate actuator, not "+act.getName());
+    }
+    // Admit everything until the first estimate
+    act.set(0, -1.0);
+
+    mgr.getProfiler().add("RTControllerMM1 lambda <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)measured_lambda;
+	}
+	});
+    mgr.getProfiler().add("RTControllerMM1 mu <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)measured_mu;
+	}
+	});
+    mgr.getProfiler().add("RTControllerMM1 est90thRT <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)est_ninetiethRT;
+	}
+	});
+    mgr.getProfiler().add("RTControllerMM1 avgNumThreads <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)avgNumThreads;
+	}
+	});
+
+    System.err.println("RTEstimatorMM1 <"+name+">: ESTIMATION_TIME="+ESTIMATION_TIME+", SMOOTH_CONST_UP="+SMOOTH_CONST_UP+", SMOOTH_CONST_DOWN="+SMOOTH_CONST_DOWN);
+  }
+
+  public void estimate(ResponseTimeMeasurementIF meas, double targets[], ResponseTimeActuatorIF act) {
+    // Measure actual 90th RT
+    if (meas.getCount() != 0) {
+      double cur = meas.getPercentile(0.9);
+      ninetiethRT = (SMOOTH_CONST * ninetiethRT) + ((1.0 - SMOOTH_CONST) * cur); 
+    }
+    avgNumThreads = (SMOOTH_CONST * avgNumThreads) + ((1.0 - SMOOTH_CONST) * meas.getNumThreads()); 
+
+    numProcessed += meas.getNumProcessed();
+    numReceived += meas.getNumReceived();
+    totalProcTime += meas.getServiceTime();
+    elapsed += meas.getIntervalLength();
+    if (elapsed < ESTIMATION_TIME) return;
+
+    // Don't recalculate if we don't have enough data - avoid large mu 
+    // spikes due to fast measurements
+    if ((totalProcTime < 2) || (numProcessed < 2)) return;
+
+    // Estimate 90th RT using M/M/1 model
+    // Assume mu scales with number of threads
+    double mu_scaling = Math.log(avgNumThreads) + 1.0;
+    double cur_mu = (numProcessed * mu_scaling) / (totalProcTime * 1.0e-3);
+    double cur_lambda = numReceived / (elapsed * 1.0e-3);
+
+    if (cur_mu < measured_mu) {
+      measured_mu = (SMOOTH_CONST_DOWN * measured_mu) + ((1.0 - SMOOTH_CONST_DOWN) * cur_mu);
+    } else {
+      measured_mu = (SMOOTH_CONST_UP * measured_mu) + ((1.0 - SMOOTH_CONST_UP) * cur_mu);
+    }
+    measured_lambda = (SMOOTH_CONST * measured_lambda) + ((1.0 - SMOOTH_CONST) * cur_lambda);
+
+    double rho = measured_lambda / measured_mu;
+    double est = (((1.0 / measured_mu) / (1.0 - rho)) * 2.3) * 1.0e3;
+    if (est >= 0.0) {
+      est_ninetiethRT = (SMOOTH_CONST * est_ninetiethRT) + ((1.0 - SMOOTH_CONST) * est); 
+    }
+    numProcessed = 0; numReceived = 0; totalProcTime = 0; elapsed = 0;
+
+    double rate;
+    if (est < 0.0) {
+      // Overloaded
+      if (DEBUG) System.err.println("RTEstimatorMM1 <"+name+">: Overload detected");
+      rate = measured_mu * 0.1;
+    } else {
+      rate = measured_mu - (2.302 / (targets[0] / 1.0e3));
+      if (rate < 0.0) {
+	// The target is not feasible
+	if (DEBUG) System.err.println("RTEstimatorMM1 <"+name+">: Target infeasible");
+	rate = measured_mu * 0.1;
+      }
+    }
+    act.set(0, rate);
+
+    if (DEBUG) System.err.println("RTEstimatorMM1 <"+name+">: ninetiethRT "+MDWUtil.format(ninetiethRT)+" est "+MDWUtil.format(est_ninetiethRT)+" mu "+MDWUtil.format(measured_mu)+" lambda "+MDWUtil.format(measured_lambda)+" rate now "+MDWUtil.format(act.get(0)));
+  }
+
+  public double get90thRT() {
+    return ninetiethRT;
+  }
+
+}
@@ -0,0 +1,152 @@
+/* 
+ * Copyright (c) 2001 by Matt Welsh and The Regents of the University of 
+ * California. All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ * Author: Matt Welsh <mdw@cs.berkeley.edu>
+ * 
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.util.*;
+
+/**
+ * An estimator which sets the admission rate of each request class 
+ * from the error in the 90th percentile response time of that class,
+ * allowing multiple class SLAs. A class below its target increases its
+ * rate, unless it was preempted by a higher class since its last 
+ * adjustment. A class above its target cuts the rates of all lower 
+ * classes, and its own rate only if there were none to cut for 
+ * LOWCOUNT_THRESH intervals, or it is class 0. This estimator sets 
+ * admission rates, so it can only be used with the rate actuator.
+ * 
+ * @author   Matt Welsh
+ */
+public class RTEstimatorMulticlass implements ResponseTimeEstimatorIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final double SMOOTH_CONST = 0.7;
+
+  private static final double LOW_WATER = -0.1;
+  private static final double HIGH_WATER = 0.0;
+  private static final double ADDITIVE_INCREASE = 2.0;
+  private static final double MULTIPLICATIVE_DECREASE = 1.2;
+  private static final double MULTIPLICATIVE_DECREASE_LOWPRIO = 10;
+  private static final double MULTIPLICATIVE_DECREASE_HIPRIO = 1.2;
+
+  private static final double INIT_RATE = 100.0;
+  private static final double MIN_RATE = 0.05;
+  private static final double MIN_90th = 1.0e-5;
+  private static final int LOWCOUNT_THRESH = 20;
+
+  private String name;
+  private cinfo carr[];
+
+  class cinfo {
+    int theclass;
+    double ninetiethRT;
+    int lowCount = 0;
+    boolean preempted = false;
+
+    cinfo(int theclass) {
+      this.theclass = theclass;
+    }
+
+    void adjust(ResponseTimeMeasurementIF meas, double targetRT, ResponseTimeActuatorIF act) {
+      double cur = meas.getPercentile(theclass, 0.9);
+      ninetiethRT = (SMOOTH_CONST * ninetiethRT) + ((1.0 - SMOOTH_CONST) * cur); 
+      if (ninetiethRT < MIN_90th) ninetiethRT = 0;
+
+      double err = (ninetiethRT - targetRT) / targetRT;
+      double curRate = act.get(theclass);
+
+      if (err < LOW_WATER) {
+	// We are below our target - increase our rate only
+	if (preempted) {
+	  // Not allowed to increase - preempted by higher priority
+	  preempted = false;
+	  return;
+	}
+	act.set(theclass, curRate + rateAdd(err));
+	lowCount = 0;
+
+      } else if (err > HIGH_WATER) {
+	// We are above our target - reduce rates of all lower classes
+	boolean found = false;
+	for (int c2 = 0; c2 < theclass; c2++) {
+	  carr[c2].preempted = true;
+	  double rate2 = act.get(c2);
+	  if (rate2 > MIN_RATE) {
+	    found = true;
+	    act.set(c2, rate2 / MULTIPLICATIVE_DECREASE_LOWPRIO);
+	  }
+	}
+	if (found) lowCount = 0;
+
+	if (!found && ((++lowCount >= LOWCOUNT_THRESH) || (theclass == 0))) {
+	  // Didn't find anyone else to penalize; adjust ourselves
+	  act.set(theclass, curRate / MULTIPLICATIVE_DECREASE);
+	} else {
+	  // Found someone else to penalize or not at LOWCOUNT_THRESH
+	  act.set(theclass, curRate / MULTIPLICATIVE_DECREASE_HIPRIO);
+	}
+      }
+    }
+  }
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, ResponseTimeMeasurementIF meas, ResponseTimeActuatorIF act) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (!act.getName().equals("rate")) {
+      throw new IllegalArgumentException("RTEstimatorMulticlass <"+name+">: Requires the rate actuator, not "+act.getName());
+    }
+    this.carr = new cinfo[meas.getNumClasses()];
+    for (int c = 0; c < carr.length; c++) {
+      carr[c] = new cinfo(c);
+      act.set(c, INIT_RATE);
+    }
+    System.err.println("RTEstimatorMulticlass <"+name+">: classes="+carr.length+", SMOOTH_CONST="+SMOOTH_CONST+", LOW_WATER="+LOW_WATER+", HIGH_WATER="+HIGH_WATER+", ADDITIVE_INCREASE="+ADDITIVE_INCREASE+", MULTIPLICATIVE_DECREASE="+MULTIPLICATIVE_DECREASE);
+  }
+
+  // Additive increase function
+  private double rateAdd(double err) {
+    // LOW_WATER gets increase of 0
+    if (err > -0.5) return 0;
+    else return ADDITIVE_INCREASE * ((-1.0 * err) + LOW_WATER);
+  }
+
+  public void estimate(ResponseTimeMeasurementIF meas, double targets[], ResponseTimeActuatorIF act) {
+    // Higher classes first, as they may preempt lower ones
+    for (int c = carr.length-1; c >= 0; c--) {
+      if (meas.getCount(c) != 0) carr[c].adjust(meas, targets[c], act);
+    }
+    if (DEBUG) {
+      for (int c = 0; c < carr.length; c++) {
+	System.err.println("RTEstimatorMulticlass <"+name+"> class "+c+": ninetiethRT "+MDWUtil.format(carr[c].ninetiethRT)+" target "+MDWUtil.format(targets[c])+" rate now "+MDWUtil.format(act.get(c)));
+      }
+    }
+  }
+
+  public double get90thRT() {
+    return carr[0].ninetiethRT;
+  }
+
+}
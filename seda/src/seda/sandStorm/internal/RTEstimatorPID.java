@@ -0,0 +1,92 @@
+/* 
+ * Copyright (c) 2001 by Matt Welsh and The Regents of the University of 
+ * California. All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ * Author: Matt Welsh <mdw@cs.berkeley.edu>
+ * 
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.util.*;
+
+/**
+ * An estimator which adjusts its actuator with a PID controller on the
+ * relative error of the 90th percentile response time from the target.
+ * The integral term is taken over the last MEASUREMENT_SIZE intervals.
+ * 
+ * @author   Matt Welsh
+ */
+public class RTEstimatorPID implements ResponseTimeEstimatorIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final int MEASUREMENT_SIZE = 100;
+  private static final double SMOOTH_CONST = 0.8;
+  private static final double PROP_GAIN = 1.0;
+  private static final double DERIV_GAIN = -0.5;
+  private static final double INTR_GAIN = (0.2 / MEASUREMENT_SIZE);
+
+  private String name;
+  private double errors[], lasterr, totalinterr;
+  private int cur_error;
+  private double ninetiethRT;
+
+  public void init(ManagerIF mgr, StageWrapperIF stage, ResponseTimeMeasurementIF meas, ResponseTimeActuatorIF act) throws IllegalArgumentException {
+    this.name = stage.getStage().getName();
+    if (meas.getNumClasses() != 1) {
+      throw new IllegalArgumentException("RTEstimatorPID <"+name+">: Multiple classes not supported");
+    }
+    this.errors = new double[MEASUREMENT_SIZE];
+    this.cur_error = 0;
+    System.err.println("RTEstimatorPID <"+name+">: MEASUREMENT_SIZE="+MEASUREMENT_SIZE+", SMOOTH_CONST="+SMOOTH_CONST+", PROP_GAIN="+PROP_GAIN+", DERIV_GAIN="+DERIV_GAIN+", INTR_GAIN="+INTR_GAIN);
+  }
+
+  public void estimate(ResponseTimeMeasurementIF meas, double targets[], ResponseTimeActuatorIF act) {
+    double elapsed = Math.max(1, meas.getIntervalLength()) * 1.0e-3;
+    if (meas.getCount() != 0) {
+      double cur = meas.getPercentile(0.9);
+      ninetiethRT = (SMOOTH_CONST * ninetiethRT) + ((1.0 - SMOOTH_CONST) * cur);
+    }
+
+    // Apply PID control
+    double targetRT = targets[0];
+    double err = (targetRT - ninetiethRT) / targetRT;
+    double derr = (err - lasterr) / elapsed;
+    double interr = ((lasterr + err) / 2) * elapsed;
+    lasterr = err;
+
+    totalinterr -= errors[cur_error];
+    totalinterr += interr;
+    errors[cur_error] = interr;
+    cur_error++; if (cur_error == MEASUREMENT_SIZE) cur_error = 0;
+
+    double out = (PROP_GAIN * err) + (DERIV_GAIN * derr) + (INTR_GAIN * totalinterr);
+    act.adjust(0, out);
+
+    if (DEBUG) System.err.println("RTEstimatorPID <"+name+">: 90th "+MDWUtil.format(ninetiethRT)+" err "+MDWUtil.format(err)+" derr "+MDWUtil.format(derr)+" interr "+MDWUtil.format(totalinterr)+" out "+MDWUtil.format(out)+" "+act.getName()+" now "+MDWUtil.format(act.get(0)));
+  }
+
+  public double get90thRT() {
+    return ninetiethRT;
+  }
+
+}
@@ -28,48 +28,162 @@ import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.util.*;
 
 /**
  * The ResponseTimeController attempts to keep the response time of
  * a given stage below a given target by adjusting admission control
- * parameters for a stage.
+ * parameters for a stage. It combines a ResponseTimeMeasurement with 
+ * the estimator and actuator chosen for the stage (see StageWrapper).
+ * The stage's threads call handleEvents(), which passes events 
+ * through the actuator to the event handler and records their 
+ * response times without taking a lock. The ResponseTimeControllerMgr
+ * thread calls adjust() periodically, which closes a measurement 
+ * interval and runs the estimator once 
+ * <tt>rtController.measurementSize</tt> events have been measured or 
+ * <tt>rtController.measurementTime</tt> ms have passed.
+ *
+ * <p>If the options <tt>rtController.multiclass.class<i>N</i>Target</tt>
+ * are given, response times are measured separately for each request 
+ * class up to the highest class with a target, and classes without 
+ * one have the target of the stage.
  * 
  * @author   Matt Welsh
  */
-public abstract class ResponseTimeController implements ResponseTimeControllerIF {
+public class ResponseTimeController implements ResponseTimeControllerIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final int MAX_CLASSES = 10;
 
-  protected final static int INIT_THRESHOLD = 1;
-  protected final static int MIN_THRESHOLD = 1;
-  protected final static int MAX_THRESHOLD = 1024;
+  /**
+   * Implemented by the parts of a controller which need the stage's 
+   * thread pool, which is only created when the stage is registered 
+   * with its thread manager.
+   */
+  interface poolClient {
+    void setThreadPool(ThreadPool tp);
+  }
 
   protected StageWrapperIF stage;
-  protected EnqueuePredicateIF pred;
+  protected String name;
   protected double targetRT;
+  private double targets[];
+  private boolean classTarget[];
+  private int measurementSize;
+  private long measurementTime;
+  private ResponseTimeMeasurement meas;
+  private ResponseTimeEstimatorIF est;
+  private ResponseTimeActuatorIF act;
+  private volatile boolean enabled;
 
-  protected ResponseTimeController(ManagerIF mgr, StageWrapperIF stage) throws IllegalArgumentException {
+  public ResponseTimeController(ManagerIF mgr, StageWrapperIF stage, ResponseTimeEstimatorIF est, ResponseTimeActuatorIF act) throws IllegalArgumentException {
     this.stage = stage;
+    this.name = stage.getStage().getName();
+    this.est = est;
+    this.act = act;
 
     SandstormConfig config = mgr.getConfig();
-    this.targetRT = config.getDouble("stages."+stage.getStage().getName()+".rtController.targetResponseTime");
+    String tag = "stages."+name+".rtController.";
+    String globaltag = "global.rtController.";
+    this.targetRT = config.getDouble(tag+"targetResponseTime");
     if (this.targetRT == -1) {
-      this.targetRT = config.getDouble("global.rtController.targetResponseTime");
+      this.targetRT = config.getDouble(globaltag+"targetResponseTime");
       if (this.targetRT == -1) {
 	throw new IllegalArgumentException("ResponseTimeController: Must specify targetResponseTime");
       }
     }
+    this.measurementSize = config.getInt(tag+"measurementSize",
+	config.getInt(globaltag+"measurementSize"));
+    this.measurementTime = config.getInt(tag+"measurementTime",
+	config.getInt(globaltag+"measurementTime"));
+
+    // The number of classes is that of the highest class with a target
+    double t[] = new double[MAX_CLASSES];
+    int numClasses = 1;
+    for (int c = 0; c < MAX_CLASSES; c++) {
+      t[c] = config.getDouble(tag+"multiclass.class"+c+"Target",
+	  config.getDouble(globaltag+"multiclass.class"+c+"Target"));
+      if (t[c] != -1) numClasses = c+1;
+    }
+    this.targets = new double[numClasses];
+    this.classTarget = new boolean[numClasses];
+    for (int c = 0; c < numClasses; c++) {
+      classTarget[c] = (t[c] != -1);
+      targets[c] = classTarget[c] ? t[c] : targetRT;
+    }
+
+    this.meas = new ResponseTimeMeasurement(stage, numClasses);
+    act.init(mgr, stage, numClasses);
+    est.init(mgr, stage, meas, act);
+
+    mgr.getProfiler().add("RTController 90th-percentile RT <"+name+">",
+	new ProfilableIF() {
+	public int profileSize() {
+	return (int)ResponseTimeController.this.est.get90thRT();
+	}
+	});
+
+    System.err.println("RTController <"+name+">: estimator "+est.getClass().getName()+", actuator "+act.getName()+", target="+targetRT+" ms, classes="+numClasses+", measurementSize="+measurementSize+", measurementTime="+measurementTime);
+    this.enabled = true;
+  }
+
+  /**
+   * Called by the thread manager with the stage's thread pool.
+   */
+  void setThreadPool(ThreadPool tp) {
+    meas.setThreadPool(tp);
+    if (act instanceof poolClient) ((poolClient)act).setThreadPool(tp);
   }
 
-  public void setTarget(double target) {
+  public synchronized void setTarget(double target) {
     this.targetRT = target;
+    for (int c = 0; c < targets.length; c++) {
+      if (!classTarget[c]) targets[c] = target;
+    }
   }
 
   public double getTarget() {
     return targetRT;
   }
 
-  public abstract void adjustThreshold(QueueElementIF fetched[], long serviceTime);
-  public abstract void enable();
-  public abstract void disable();
+  public synchronized void enable() {
+    if (enabled) return;
+    System.err.println("RTController <"+name+">: Enabling");
+    act.enable();
+    enabled = true;
+  }
+
+  public synchronized void disable() {
+    if (!enabled) return;
+    System.err.println("RTController <"+name+">: Disabling");
+    act.disable();
+    enabled = false;
+  }
+
+  public void handleEvents(QueueElementIF events[]) throws EventHandlerException {
+    long tstart = Clock.preciseMillis();
+    act.handleEvents(stage.getEventHandler(), events, meas);
+    meas.addServiceTime(events.length, Clock.preciseMillis() - tstart);
+  }
+
+  public synchronized void adjust() {
+    if ((meas.getNumPending() < measurementSize) && 
+	(meas.getPendingTime() < measurementTime)) return;
+    meas.endInterval();
+
+    if (enabled) {
+      est.estimate(meas, targets, act);
+      stage.getStats().record90thRT(est.get90thRT());
+    } else {
+      stage.getStats().record90thRT(meas.getPercentile(0.9));
+    }
+    if (DEBUG) System.err.println("RTController <"+name+">: "+meas.getCount()+" events, 90th "+MDWUtil.format(meas.getPercentile(0.9))+" estimate "+MDWUtil.format(est.get90thRT())+" target "+targetRT+" "+act.getName()+" now "+MDWUtil.format(act.get(0)));
+  }
+
+  public String toString() {
+    return "RTController <"+name+">";
+  }
 
 }
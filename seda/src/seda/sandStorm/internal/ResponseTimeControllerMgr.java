@@ -0,0 +1,108 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.sandStorm.main.*;
+import java.util.*;
+
+/**
+ * The ResponseTimeControllerMgr runs the response time controllers of
+ * the stages of a thread manager from a single thread, which calls 
+ * each controller's adjust() every <tt>global.rtController.delay</tt> 
+ * ms, so that the stages' own threads only measure response times.
+ * 
+ * @see ResponseTimeController
+ */
+
+public class ResponseTimeControllerMgr {
+
+  private static final boolean DEBUG = false;
+
+  private Vector controllers;
+  private Thread controller;
+  private int delay;
+
+  public ResponseTimeControllerMgr(ManagerIF mgr) {
+    this.controllers = new Vector();
+    this.delay = mgr.getConfig().getInt("global.rtController.delay");
+    if (this.delay < 1) this.delay = 1;
+
+    System.err.println("ResponseTimeControllerMgr: Started, delay "+delay+" ms");
+    controller = new Thread(new controllerThread(), "RTC");
+    controller.start();
+  }
+
+  /**
+   * Register a controller, with the thread pool of its stage, or null
+   * if the stage has none.
+   */
+  public void register(ResponseTimeControllerIF rtc, ThreadPool tp) {
+    if (rtc instanceof ResponseTimeController) {
+      ((ResponseTimeController)rtc).setThreadPool(tp);
+    }
+    controllers.addElement(rtc);
+  }
+
+  /**
+   * Deregister a controller.
+   */
+  public void deregister(ResponseTimeControllerIF rtc) {
+    controllers.removeElement(rtc);
+  }
+
+  /**
+   * Internal class implementing the controller thread.
+   */
+  class controllerThread implements Runnable {
+
+    public void run() {
+      if (DEBUG) System.err.println("ResponseTimeControllerMgr: starting");
+
+      while (true) {
+	for (int i = 0; i < controllers.size(); i++) {
+	  ResponseTimeControllerIF rtc;
+	  try {
+	    rtc = (ResponseTimeControllerIF)controllers.elementAt(i);
+	  } catch (ArrayIndexOutOfBoundsException e) {
+	    // Deregistered while we were looking
+	    break;
+	  }
+	  try {
+	    rtc.adjust();
+	  } catch (Exception e) {
+	    System.err.println("ResponseTimeControllerMgr: "+rtc+" got exception "+e);
+	    e.printStackTrace();
+	  }
+	}
+	try {
+	  Thread.sleep(delay);
+	} catch (InterruptedException ie) {
+	  // Ignore
+	}
+      }
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.internal;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.api.internal.*;
+import seda.sandStorm.core.*;
+import seda.util.*;
+
+/**
+ * The measurement used by every ResponseTimeController. Response times
+ * are recorded in a QuantileSketch per request class, and event counts
+ * and service times in StripedCounters, so that the stage's threads 
+ * never take a lock. The sketches are cumulative; the controller 
+ * thread takes a snapshot of each at the end of an interval and 
+ * subtracts the previous one, which leaves exactly the response times
+ * recorded during the interval.
+ *
+ * <p>Arrivals are counted as the events processed plus the growth of
+ * the stage's queue, which counts only the events accepted by its 
+ * enqueue predicate.
+ */
+class ResponseTimeMeasurement implements ResponseTimeMeasurementIF, ResponseTimeController.poolClient {
+
+  private StageWrapperIF stage;
+  private int numClasses;
+  private volatile ThreadPool tp;
+
+  private QuantileSketch sketches[];
+  private StripedCounter processed = new StripedCounter();
+  private StripedCounter serviceTime = new StripedCounter();
+
+  // Used by the controller thread only
+  private QuantileSketch last[], interval[], total;
+  private long lastCount;
+  private long lastTime, intervalLength;
+  private int lastQueueSize;
+  private long numReceived, numProcessed, totalServiceTime;
+
+  ResponseTimeMeasurement(StageWrapperIF stage, int numClasses) {
+    this.stage = stage;
+    this.numClasses = numClasses;
+    this.sketches = new QuantileSketch[numClasses];
+    this.last = new QuantileSketch[numClasses];
+    this.interval = new QuantileSketch[numClasses];
+    for (int c = 0; c < numClasses; c++) {
+      sketches[c] = new QuantileSketch();
+      last[c] = new QuantileSketch();
+      interval[c] = new QuantileSketch();
+    }
+    this.total = new QuantileSketch();
+    this.lastTime = Clock.currentTimeMillis();
+  }
+
+  public void setThreadPool(ThreadPool tp) {
+    this.tp = tp;
+  }
+
+  public int getNumClasses() {
+    return numClasses;
+  }
+
+  public void addEvents(QueueElementIF events[]) {
+    long curtime = Clock.currentTimeMillis();
+    for (int i = 0; i < events.length; i++) {
+      if (events[i] instanceof TimeStampedEvent) {
+	TimeStampedEvent ev = (TimeStampedEvent)events[i];
+	long time = ev.timestamp;
+	if (time != 0) {
+	  int theclass = 0;
+	  if ((numClasses > 1) && (ev instanceof ClassQueueElementIF)) {
+	    theclass = ((ClassQueueElementIF)ev).getRequestClass();
+	    if (theclass < 0) theclass = 0;
+	    if (theclass >= numClasses) theclass = numClasses-1;
+	  }
+	  sketches[theclass].add(curtime - time);
+	}
+      }
+    }
+  }
+
+  public void addServiceTime(int numEvents, long time) {
+    processed.add(numEvents);
+    serviceTime.add(time);
+  }
+
+  public long getNumPending() {
+    long n = 0;
+    for (int c = 0; c < numClasses; c++) {
+      n += sketches[c].count();
+    }
+    return n - lastCount;
+  }
+
+  public long getPendingTime() {
+    return Clock.currentTimeMillis() - lastTime;
+  }
+
+  public void endInterval() {
+    long curtime = Clock.currentTimeMillis();
+    intervalLength = curtime - lastTime;
+    lastTime = curtime;
+
+    total.reset();
+    lastCount = 0;
+    for (int c = 0; c < numClasses; c++) {
+      QuantileSketch snap = sketches[c].snapshot();
+      interval[c] = snap.snapshot();
+      interval[c].subtract(last[c]);
+      last[c] = snap;
+      lastCount += snap.count();
+      total.merge(interval[c]);
+    }
+
+    numProcessed = processed.sumThenReset();
+    totalServiceTime = serviceTime.sumThenReset();
+    int queueSize = stage.getSource().size();
+    numReceived = Math.max(0, numProcessed + queueSize - lastQueueSize);
+    lastQueueSize = queueSize;
+  }
+
+  public long getIntervalLength() {
+    return intervalLength;
+  }
+
+  public long getCount() {
+    return total.count();
+  }
+
+  public long getCount(int theclass) {
+    return interval[theclass].count();
+  }
+
+  public double getPercentile(double p) {
+    return total.quantile(p);
+  }
+
+  public double getPercentile(int theclass, double p) {
+    return interval[theclass].quantile(p);
+  }
+
+  public long getNumReceived() {
+    return numReceived;
+  }
+
+  public long getNumProcessed() {
+    return numProcessed;
+  }
+
+  public long getServiceTime() {
+    return totalServiceTime;
+  }
+
+  public int getNumThreads() {
+    if (tp == null) return 1;
+    return Math.max(1, tp.numThreads());
+  }
+
+}
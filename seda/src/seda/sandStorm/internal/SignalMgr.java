@@ -28,11 +28,19 @@ package seda.sandStorm.internal;
 import seda.sandStorm.api.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The SignalMgr is an implementation of SignalMgrIF. It allows stages
  * to register to receive certain signals and delivers those signals once
  * they are triggered.
+ *
+ * <p>A sink registered for a signal type receives signals of that type
+ * and of its subclasses. The sinks to deliver each triggered class of
+ * signal to are resolved once, on its first trigger, and kept in an 
+ * array until the next register() or deregister(), so trigger() takes
+ * no lock. Registrations are themselves kept as arrays which are 
+ * copied when changed.
  * 
  * @author Matt Welsh
  * @see SignalMgrIF
@@ -40,10 +48,14 @@ import java.util.*;
  */
 class SignalMgr implements SignalMgrIF {
 
-  private Hashtable signalTbl; // Map signal type to Vector of sinks
+  private static final SinkIF NO_SINKS[] = new SinkIF[0];
+
+  private Hashtable signalTbl; // Map signal type to array of sinks
+  private ConcurrentHashMap resolvedTbl; // Map signal class to array of sinks
 
   SignalMgr() {
     signalTbl = new Hashtable();
+    resolvedTbl = new ConcurrentHashMap();
   }
 
   /**
@@ -51,58 +63,87 @@ class SignalMgr implements SignalMgrIF {
    * an object of the given type (although not necessarily the same
    * object instance) will be delivered to the given SinkIF.
    */
-  public void register(SignalIF signalType, SinkIF sink) {
+  public synchronized void register(SignalIF signalType, SinkIF sink) {
     Class type = signalType.getClass();
-    Vector vec = (Vector)signalTbl.get(type);
-    if (vec == null) {
-      vec = new Vector();
-      vec.addElement(sink);
-      signalTbl.put(type, vec);
-    } else {
-      for (int i = 0; i < vec.size(); i++) {
-	SinkIF s = (SinkIF)vec.elementAt(i);
-	if (s.equals(sink)) throw new IllegalArgumentException("Sink "+sink+" already registered for signal type "+type);
-      }
-      vec.addElement(sink);
+    SinkIF sinks[] = (SinkIF[])signalTbl.get(type);
+    if (sinks == null) sinks = NO_SINKS;
+    for (int i = 0; i < sinks.length; i++) {
+      if (sinks[i].equals(sink)) throw new IllegalArgumentException("Sink "+sink+" already registered for signal type "+type);
     }
+    SinkIF newsinks[] = new SinkIF[sinks.length+1];
+    System.arraycopy(sinks, 0, newsinks, 0, sinks.length);
+    newsinks[sinks.length] = sink;
+    signalTbl.put(type, newsinks);
+    resolvedTbl.clear();
   }
 
   /**
    * Deregister for the given signal type. 
    */
-  public void deregister(SignalIF signalType, SinkIF sink) {
+  public synchronized void deregister(SignalIF signalType, SinkIF sink) {
     Class type = signalType.getClass();
-    Vector vec = (Vector)signalTbl.get(type);
-    if (vec == null) {
-      throw new IllegalArgumentException("Sink "+sink+" not registered for signal type "+type);
-    } else {
-      for (int i = 0; i < vec.size(); i++) {
-	SinkIF s = (SinkIF)vec.elementAt(i);
-	if (s.equals(sink)) vec.removeElementAt(i);
-	return;
+    SinkIF sinks[] = (SinkIF[])signalTbl.get(type);
+    if (sinks != null) {
+      for (int i = 0; i < sinks.length; i++) {
+	if (sinks[i].equals(sink)) {
+	  if (sinks.length == 1) {
+	    signalTbl.remove(type);
+	  } else {
+	    SinkIF newsinks[] = new SinkIF[sinks.length-1];
+	    System.arraycopy(sinks, 0, newsinks, 0, i);
+	    System.arraycopy(sinks, i+1, newsinks, i, sinks.length-i-1);
+	    signalTbl.put(type, newsinks);
+	  }
+	  resolvedTbl.clear();
+	  return;
+	}
       }
-      throw new IllegalArgumentException("Sink "+sink+" not registered for signal type "+type);
     }
+    throw new IllegalArgumentException("Sink "+sink+" not registered for signal type "+type);
   }
 
   /**
-   * Send the given signal to all registered sinks. Uses enqueue_lossy
-   * on each sink, so if a sink rejects the signal this method will
-   * continue regardless. Package access only.
-   *
-   * XXX MDW: Really should register sinks with the chain of superclasses
-   * for each signal as well, so that triggering a superclass of a given
-   * signal will also reach those sinks registered for the subclass.
+   * Send the given signal to all sinks registered for its class or 
+   * any superclass or interface of it. Uses enqueue_lossy on each 
+   * sink, so if a sink rejects the signal this method will continue
+   * regardless. Package access only.
    */
   public void trigger(SignalIF signal) {
     Class type = signal.getClass();
-    Vector vec = (Vector)signalTbl.get(type);
-    if (vec == null) return;
-    for (int i = 0; i < vec.size(); i++) {
-      SinkIF s = (SinkIF)vec.elementAt(i);
-      s.enqueue_lossy(signal);
+    SinkIF sinks[] = (SinkIF[])resolvedTbl.get(type);
+    if (sinks == null) sinks = resolve(type);
+    for (int i = 0; i < sinks.length; i++) {
+      sinks[i].enqueue_lossy(signal);
+    }
+  }
+
+  // Collect the sinks registered for the given class and its supertypes,
+  // each sink once, and cache the result
+  private synchronized SinkIF[] resolve(Class type) {
+    Vector vec = new Vector();
+    addSinks(type, vec, new Hashtable());
+    SinkIF sinks[] = NO_SINKS;
+    if (vec.size() > 0) {
+      sinks = new SinkIF[vec.size()];
+      vec.copyInto(sinks);
     }
+    resolvedTbl.put(type, sinks);
+    return sinks;
   }
 
+  private void addSinks(Class type, Vector vec, Hashtable visited) {
+    if ((type == null) || (visited.put(type, type) != null)) return;
+    SinkIF sinks[] = (SinkIF[])signalTbl.get(type);
+    if (sinks != null) {
+      for (int i = 0; i < sinks.length; i++) {
+	if (!vec.contains(sinks[i])) vec.addElement(sinks[i]);
+      }
+    }
+    addSinks(type.getSuperclass(), vec, visited);
+    Class ifs[] = type.getInterfaces();
+    for (int i = 0; i < ifs.length; i++) {
+      addSinks(ifs[i], vec, visited);
+    }
+  }
 
 }
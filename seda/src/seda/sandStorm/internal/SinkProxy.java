@@ -26,7 +26,10 @@ package seda.sandStorm.internal;
 
 import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
+import seda.sandStorm.core.*;
+import seda.util.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Used as a proxy to observe and measure communication behavior between 
@@ -35,6 +38,12 @@ import java.util.*;
  * This is used by StageGraph to construct a graph of the communication
  * patterns between stages.
  *
+ * <p>Each enqueue is counted on the StageGraphEdge from the stage of 
+ * the enqueueing thread, as given by StageGraph.getCurrentStage(). An 
+ * edge is added to the graph the first time a stage uses the proxy; 
+ * the edge used last is cached, so an enqueue normally costs only a 
+ * thread-local lookup and a counter increment.
+ *
  * @author Matt Welsh
  */
 public class SinkProxy implements SinkIF, ProfilableIF {
@@ -45,20 +54,25 @@ public class SinkProxy implements SinkIF, ProfilableIF {
   private StageWrapperIF toStage;
   private StageGraph stageGraph;
   public SinkIF thesink;
-  private Thread client = null;
-  private Hashtable clientTbl = null;
+
+  // Edges from each stage which has used this proxy
+  private final ConcurrentHashMap edgeTbl = new ConcurrentHashMap();
+  // Used for enqueues by threads which do not belong to a stage
+  private final StageGraphEdge unknownEdge = new StageGraphEdge();
+  // The edge used by the last enqueue
+  private volatile StageGraphEdge lastEdge;
 
   /** 
    * Maintains a running sum of the number of elements enqueued onto 
-   * this sink.
+   * this sink. Striped, as many threads may enqueue onto the same sink.
    */
-  public int enqueueCount;
+  public final StripedCounter enqueueCount = new StripedCounter();
 
   /** 
    * Maintains a running sum of the number of elements successfully 
    * enqueued onto this sink (that is, not rejected by the enqueue predicate).
    */
-  public int enqueueSuccessCount;
+  public final StripedCounter enqueueSuccessCount = new StripedCounter();
 
   /** 
    * Used to maintain a timer for statistics gathering. 
@@ -77,8 +91,6 @@ public class SinkProxy implements SinkIF, ProfilableIF {
     this.mgr = mgr;
     this.stageGraph = mgr.getProfiler().getGraphProfiler();
     this.toStage = toStage;
-    this.enqueueCount = 0;
-    this.enqueueSuccessCount = 0;
     this.timer = 0;
   }
 
@@ -91,28 +103,30 @@ public class SinkProxy implements SinkIF, ProfilableIF {
   }
 
   public void enqueue(QueueElementIF enqueueMe) throws SinkException {
-    recordUse();
-    enqueueCount++; 
+    enqueueCount.increment();
     thesink.enqueue(enqueueMe);
-    enqueueSuccessCount++; 
+    enqueueSuccessCount.increment();
+    getEdge().record(enqueueMe);
   }
 
   public boolean enqueue_lossy(QueueElementIF enqueueMe) {
-    recordUse();
-    enqueueCount++; 
+    enqueueCount.increment();
     boolean pass = thesink.enqueue_lossy(enqueueMe);
-    if (pass) enqueueSuccessCount++;
+    if (pass) {
+      enqueueSuccessCount.increment();
+      getEdge().record(enqueueMe);
+    }
     return pass;
   }
 
   public void enqueue_many(QueueElementIF[] enqueueMe) throws SinkException {
-    recordUse();
     if (enqueueMe != null) {
-      enqueueCount += enqueueMe.length;
+      enqueueCount.add(enqueueMe.length);
     }
     thesink.enqueue_many(enqueueMe);
     if (enqueueMe != null) {
-      enqueueSuccessCount += enqueueMe.length;
+      enqueueSuccessCount.add(enqueueMe.length);
+      getEdge().record(enqueueMe);
     }
   }
 
@@ -124,13 +138,13 @@ public class SinkProxy implements SinkIF, ProfilableIF {
   }
 
   public Object enqueue_prepare(QueueElementIF enqueueMe[]) throws SinkException {
-    recordUse();
     if (enqueueMe != null) {
-      enqueueCount += enqueueMe.length;
+      enqueueCount.add(enqueueMe.length);
     }
     Object key = thesink.enqueue_prepare(enqueueMe);
     if (enqueueMe != null) {
-      enqueueSuccessCount += enqueueMe.length;
+      enqueueSuccessCount.add(enqueueMe.length);
+      getEdge().record(enqueueMe);
     }
     return key;
   }
@@ -155,33 +169,33 @@ public class SinkProxy implements SinkIF, ProfilableIF {
     return "[SinkProxy for toStage="+toStage+"]";
   }
 
-  private void recordUse() {
-    if (DEBUG) System.err.println("SinkProxy: Recording use of "+this+" by thread "+Thread.currentThread());
-
-    if (client == null) {
-      client = Thread.currentThread();
-
-      StageGraphEdge edge = new StageGraphEdge();
-      edge.fromStage = stageGraph.getStageFromThread(client);
-      edge.toStage = toStage;
-      edge.sink = this;
-      stageGraph.addEdge(edge);
+  // Return the edge from the current thread's stage, adding it to the
+  // stage graph if this is its first use
+  private StageGraphEdge getEdge() {
+    StageWrapperIF from = StageGraph.getCurrentStage();
+    StageGraphEdge edge = lastEdge;
+    if ((edge != null) && (edge.fromStage == from)) return edge;
 
+    if (from == null) {
+      edge = unknownEdge;
     } else {
-      Thread t = Thread.currentThread();
-      if (client != t) {
-	if (clientTbl == null) clientTbl = new Hashtable();
-	if (clientTbl.get(t) == null) {
-	  clientTbl.put(t, t);
-
-	  StageGraphEdge edge = new StageGraphEdge();
-	  edge.fromStage = stageGraph.getStageFromThread(t);
-	  edge.toStage = toStage;
-	  edge.sink = this;
-	  stageGraph.addEdge(edge);
-	}
+      edge = (StageGraphEdge)edgeTbl.get(from);
+      if (edge == null) {
+	if (DEBUG) System.err.println("SinkProxy: Recording use of "+this+" by stage "+from);
+	edge = new StageGraphEdge();
+	edge.fromStage = from;
+	edge.toStage = toStage;
+	edge.sink = this;
+	// The graph returns null for incomplete edges, which are still 
+	// counted here
+	StageGraphEdge added = stageGraph.addEdge(edge);
+	if (added != null) edge = added;
+	StageGraphEdge old = (StageGraphEdge)edgeTbl.putIfAbsent(from, edge);
+	if (old != null) edge = old;
       }
     }
+    lastEdge = edge;
+    return edge;
   }
 
 }
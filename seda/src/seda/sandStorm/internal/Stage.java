@@ -41,6 +41,7 @@ public class Stage implements StageIF {
   private String name;
   private StageWrapperIF wrapper;
   private SinkIF mainsink;
+  private LazyStartSink lazySink;
 
   // If true, instantate a SinkProxy for the stage's event queue 
   // when batchControllor or rtController are enabled. This should
@@ -58,10 +59,25 @@ public class Stage implements StageIF {
     SandstormConfig cf = config.getManager().getConfig();
     this.mainsink = mainsink;
 
+    // Only a TPSThreadManager attaches a thread pool to start later
+    if ((mainsink != null) && 
+	(wrapper.getThreadManager() instanceof TPSThreadManager) &&
+	cf.getBoolean("stages."+name+".threadPool.lazyStart", 
+	  cf.getSnapshot().threadPoolLazyStart)) {
+      // Start the thread pool on the first enqueue
+      this.lazySink = new LazyStartSink(mainsink);
+      this.mainsink = lazySink;
+    }
+
     if (ENABLE_SINK_PROXY && 
-	(cf.getBoolean("global.batchController.enable") || 
+	(cf.getBoolean("stages."+name+".batchController.enable",
+	  cf.getBoolean("global.batchController.enable")) || 
 	 cf.getBoolean("global.rtController.enable"))) {
-      this.mainsink = new SinkProxy((SinkIF)mainsink, config.getManager(), wrapper);
+      this.mainsink = new SinkProxy(this.mainsink, config.getManager(), wrapper);
+    } else if ((mainsink != null) && cf.getSnapshot().profileEnable && 
+	cf.getBoolean("global.profile.graph")) {
+      // The proxy discovers the edges of the stage graph
+      this.mainsink = new SinkProxy(this.mainsink, config.getManager(), wrapper);
     }
   }
 
@@ -88,6 +104,19 @@ public class Stage implements StageIF {
     return (SinkIF)mainsink;
   }
 
+  /**
+   * Arrange for the given thread pool to be started when the first
+   * event is enqueued onto this stage; if tp is null, the caller has
+   * started the stage's threads itself. Returns false, and does 
+   * nothing, if lazy starting is not enabled for this stage, in which
+   * case the caller should start the pool itself.
+   */
+  boolean startOnEnqueue(ThreadPool tp) {
+    if (lazySink == null) return false;
+    lazySink.startOnEnqueue(tp);
+    return true;
+  }
+
   /**
    * Return the stage wrapper for this stage.
    */
@@ -28,39 +28,78 @@ import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class provides an interface allowing operations to be performed
  * on the graph of stages within the application. Used internally
- * (for example, by AggThrottle) to determine stage connectivity and
+ * (for example, by BatchController) to determine stage connectivity and
  * communication statistics. Gathers data from sources such as SinkProxy.
  *
+ * <p>Edges are discovered by SinkProxy, which looks up the stage of 
+ * the enqueueing thread with getCurrentStage(): this is set by each 
+ * ThreadPool thread when it starts, as all of the events it handles 
+ * belong to the pool's stage. Each edge is added once; after that 
+ * the proxy only increments the edge's counters. The graph is kept 
+ * in concurrent maps, so reading it takes no lock either, and it is
+ * cheap enough to leave global.profile.graph enabled.
+ *
  * @author Matt Welsh
- * @see AggThrottle
+ * @see BatchController
  * @see SinkProxy
  */
 public class StageGraph {
   private static final boolean DEBUG = false;
 
   private Vector stages = new Vector(1);
-  private Vector edges = new Vector(1);
+  private ConcurrentHashMap edges = new ConcurrentHashMap();
+  private ConcurrentHashMap edgesFrom = new ConcurrentHashMap();
   private Hashtable threads = new Hashtable(1);
-  private Hashtable edgesFrom = new Hashtable(1);
   private PrintWriter graphpw = null;
+  private boolean json = false;
+  private long lastDumpTime;
+
+  // The stage whose events the current thread is handling
+  private static final ThreadLocal currentStage = new ThreadLocal();
 
   StageGraph(ManagerIF mgr) {
     SandstormConfig config = mgr.getConfig();
     boolean dumpModuleGraph = config.getBoolean("global.profile.graph");
     if (dumpModuleGraph) {
       String gfilename = config.getString("global.profile.graphfilename");
+      String format = config.getString("global.profile.graphformat", "dot");
+      if (format.equals("json")) {
+	json = true;
+      } else if (!format.equals("dot")) {
+	System.err.println("StageGraph: Warning: Unknown graph format "+format+", using dot.");
+      }
       try {
 	graphpw = new PrintWriter(new FileWriter(gfilename, true));
       } catch (IOException e) {
 	System.err.println("StageGraph: Warning: Could not open file "+gfilename+" for writing, disabling graph dump.");
       }
     }
+    lastDumpTime = Clock.currentTimeMillis();
+  }
+
+  /**
+   * Set the stage whose events the current thread is handling. Called 
+   * by ThreadPool threads when they start; other threads which handle
+   * events for a stage may call it too.
+   */
+  public static void setCurrentStage(StageWrapperIF stage) {
+    currentStage.set(stage);
+  }
+
+  /**
+   * Return the stage whose events the current thread is handling, or
+   * null if it is not known.
+   */
+  public static StageWrapperIF getCurrentStage() {
+    return (StageWrapperIF)currentStage.get();
   }
 
   public synchronized StageWrapperIF[] getStages() {
@@ -69,13 +108,11 @@ public class StageGraph {
     return arr;
   }
 
-  public synchronized StageGraphEdge[] getEdges() {
-    StageGraphEdge arr[] = new StageGraphEdge[edges.size()];
-    edges.copyInto(arr);
-    return arr;
+  public StageGraphEdge[] getEdges() {
+    return (StageGraphEdge[])edges.values().toArray(new StageGraphEdge[0]);
   }
 
-  public synchronized StageGraphEdge[] getEdgesFromStage(StageWrapperIF fromStage) {
+  public StageGraphEdge[] getEdgesFromStage(StageWrapperIF fromStage) {
     stageList list = (stageList)edgesFrom.get(fromStage);
     if (list == null) return null;
     else return list.getEdges();
@@ -98,66 +135,101 @@ public class StageGraph {
     threads.put(thread, stage);
   }
 
-  public synchronized void addEdge(StageGraphEdge edge) {
-    if (!edges.contains(edge)) {
-      if ((edge.fromStage == null) ||
-	  (edge.toStage == null) ||
-	  (edge.sink == null)) return;
-
-      addStage(edge.fromStage);
-      addStage(edge.toStage);
-
-      if (DEBUG) System.err.println("StageGraph: Adding edge "+edge);
-
-      edges.addElement(edge);
-      stageList list = (stageList)edgesFrom.get(edge.fromStage);
-      if (list == null) {
-	list = new stageList();
-	list.add(edge);
-	edgesFrom.put(edge.fromStage, list);
-      } else {
-	list.add(edge);
-      }
-    } 
+  /**
+   * Add the given edge to the graph, unless it is already there. 
+   * Returns the edge in the graph, or null if the edge is incomplete.
+   */
+  public StageGraphEdge addEdge(StageGraphEdge edge) {
+    if ((edge.fromStage == null) ||
+	(edge.toStage == null) ||
+	(edge.sink == null)) return null;
+
+    StageGraphEdge old = (StageGraphEdge)edges.putIfAbsent(edge, edge);
+    if (old != null) return old;
+
+    if (DEBUG) System.err.println("StageGraph: Adding edge "+edge);
+    addStage(edge.fromStage);
+    addStage(edge.toStage);
+    stageList list = (stageList)edgesFrom.get(edge.fromStage);
+    if (list == null) {
+      list = new stageList();
+      stageList oldlist = (stageList)edgesFrom.putIfAbsent(edge.fromStage, list);
+      if (oldlist != null) list = oldlist;
+    }
+    list.add(edge);
+    return edge;
   }
 
   /**
-   * Output the graph in a format that can be used by the AT&amp;T 
-   * 'graphviz' program: http://www.research.att.com/sw/tools/graphviz/
-   * Makes it easy to draw pretty pictures of stage graphs.
+   * Output the graph, with the number of events and bytes passed along
+   * each edge and their rates since the last dump. The default format
+   * can be used by the AT&amp;T 'graphviz' program: 
+   * http://www.research.att.com/sw/tools/graphviz/
+   * Makes it easy to draw pretty pictures of stage graphs. If
+   * global.profile.graphformat is "json", each dump is instead written
+   * as a JSON object on a single line.
    */
   public synchronized void dumpGraph() {
     if (graphpw == null) return;
-    graphpw.println("digraph sandstorm {");
-    graphpw.println("  rankdir=TB;");
-    Enumeration e = edges.elements();
-    if (e != null) {
-      while (e.hasMoreElements()) {
-	StageGraphEdge edge = (StageGraphEdge)e.nextElement();
-	String from = edge.fromStage.getStage().getName();
-	String to = edge.toStage.getStage().getName();
-	int count = 0;
-	try {
-	  count = ((SinkProxy)edge.sink).enqueueCount;
- 	} catch (ClassCastException cce) {
-	  // Ignore
-	}
-	graphpw.println("  \""+from+"\" -> \""+to+"\" [label=\""+count+"\"];");
+    long now = Clock.currentTimeMillis();
+    double secs = Math.max(1, now - lastDumpTime) * 1.0e-3;
+    lastDumpTime = now;
+
+    StageGraphEdge arr[] = getEdges();
+    if (json) {
+      graphpw.print("{\"time\":"+now+",\"edges\":[");
+    } else {
+      graphpw.println("digraph sandstorm {");
+      graphpw.println("  rankdir=TB;");
+    }
+    for (int i = 0; i < arr.length; i++) {
+      StageGraphEdge edge = arr[i];
+      String from = edge.fromStage.getStage().getName();
+      String to = edge.toStage.getStage().getName();
+      long events = edge.events.sum();
+      long bytes = edge.bytes.sum();
+      double eventRate = (events - edge.lastEvents) / secs;
+      double byteRate = (bytes - edge.lastBytes) / secs;
+      edge.lastEvents = events;
+      edge.lastBytes = bytes;
+      if (json) {
+	if (i > 0) graphpw.print(",");
+	graphpw.print("{\"from\":\""+quote(from)+"\",\"to\":\""+quote(to)+"\",\"events\":"+events+",\"bytes\":"+bytes+",\"eventsPerSec\":"+(Math.round(eventRate*100)/100.0)+",\"bytesPerSec\":"+(Math.round(byteRate*100)/100.0)+"}");
+      } else {
+	graphpw.println("  \""+quote(from)+"\" -> \""+quote(to)+"\" [label=\""+events+" ("+MDWUtil.format(eventRate)+"/s)\", weight="+Math.max(1, (long)eventRate)+"];");
       }
+    }
+    if (json) {
+      graphpw.println("]}");
+    } else {
       graphpw.println("}");
     }
     graphpw.flush();
   }
 
+  // Escape quotes and backslashes in a stage name
+  private static String quote(String s) {
+    if ((s.indexOf('"') == -1) && (s.indexOf('\\') == -1)) return s;
+    StringBuffer sb = new StringBuffer();
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if ((c == '"') || (c == '\\')) sb.append('\\');
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
   class stageList {
     Vector vec = new Vector(1);
     void add(StageGraphEdge edge) {
       vec.addElement(edge);
     }
     StageGraphEdge[] getEdges() {
-      StageGraphEdge arr[] = new StageGraphEdge[vec.size()];
-      vec.copyInto(arr);
-      return arr;
+      synchronized (vec) {
+	StageGraphEdge arr[] = new StageGraphEdge[vec.size()];
+	vec.copyInto(arr);
+	return arr;
+      }
     }
   }
 
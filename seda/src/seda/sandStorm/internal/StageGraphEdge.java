@@ -27,13 +27,17 @@ package seda.sandStorm.internal;
 import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
+import seda.sandStorm.lib.aSocket.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.io.*;
 import java.util.*;
 
 /**
  * This class represents an edge in the stage-connectivity graph.
- * Used by StageGraph.
+ * Used by StageGraph. The edge counts the events passed along it, and
+ * the bytes of those which carry data: BufferElements, incoming TCP
+ * packets and TCP write requests.
  *
  * @author Matt Welsh
  */
@@ -43,6 +47,51 @@ class StageGraphEdge {
   StageWrapperIF toStage;
   SinkIF sink;
 
+  final StripedCounter events = new StripedCounter();
+  final StripedCounter bytes = new StripedCounter();
+
+  // Counts at the last StageGraph.dumpGraph(), for computing rates
+  long lastEvents, lastBytes;
+
+  /**
+   * Record that the given events were passed along this edge.
+   */
+  void record(QueueElementIF elems[]) {
+    events.add(elems.length);
+    long b = 0;
+    for (int i = 0; i < elems.length; i++) {
+      b += sizeOf(elems[i]);
+    }
+    if (b != 0) bytes.add(b);
+  }
+
+  /**
+   * Record that the given event was passed along this edge.
+   */
+  void record(QueueElementIF elem) {
+    events.increment();
+    int b = sizeOf(elem);
+    if (b != 0) bytes.add(b);
+  }
+
+  // Return the number of bytes of data carried by the given event
+  private static int sizeOf(QueueElementIF elem) {
+    if (elem instanceof BufferElement) {
+      return ((BufferElement)elem).size;
+    } else if (elem instanceof ATcpInPacket) {
+      return ((ATcpInPacket)elem).size();
+    } else if (elem instanceof ATcpWriteRequest) {
+      ATcpWriteRequest req = (ATcpWriteRequest)elem;
+      if (req.buf != null) return req.buf.size;
+      int b = 0;
+      if (req.bufarr != null) {
+	for (int i = 0; i < req.bufarr.length; i++) b += req.bufarr[i].size;
+      }
+      return b;
+    }
+    return 0;
+  }
+
   public boolean equals(Object o) {
     if (!(o instanceof StageGraphEdge)) return false;
     StageGraphEdge e = (StageGraphEdge)o;
@@ -55,6 +104,11 @@ class StageGraphEdge {
     }
   }
 
+  public int hashCode() {
+    return System.identityHashCode(fromStage) ^ 
+      (31 * System.identityHashCode(toStage)) ^ System.identityHashCode(sink);
+  }
+
   public String toString() {
     return "StageGraphEdge [from="+fromStage+", to="+toStage+", sink="+sink+"]";
   }
@@ -28,11 +28,22 @@ import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class provides controllers with a view of statistics gathered
  * by the stage internally during execution.
+ *
+ * <p>recordServiceRate() is called by every thread of the stage after 
+ * every batch, so it takes no lock: event counts and service times are 
+ * accumulated in striped counters, and every ESTIMATION_SIZE batches 
+ * (counted per thread) or ESTIMATION_TIME ms, whichever comes first, 
+ * one of the threads folds them into the moving average. Each thread
+ * also records the service time of every batch in its own 
+ * QuantileSketch; get99thServiceTime() merges these and reports the
+ * percentile of the batches recorded since it was last called.
  * 
  * @author   Matt Welsh
  */
@@ -49,15 +60,46 @@ public class StageStats implements StageStatsIF {
   StageWrapperIF stage;
 
   /* Average service rate of events. */
-  private double serviceRate;
+  private volatile double serviceRate;
 
   /* 90th percentile response time of the stage. */
-  private double rt90thPercentile;
+  private volatile double rt90thPercentile;
 
   private boolean first = true;
-  private long lastTime;
-  private int count;
-  private long totalServiceTime, totalEvents, cumulativeEvents;
+  private volatile long lastTime;
+  private final StripedCounter totalServiceTime = new StripedCounter();
+  private final StripedCounter totalEvents = new StripedCounter();
+  private final StripedCounter cumulativeEvents = new StripedCounter();
+
+  /* Service times of batches, in msec, kept per thread. */
+  private static class threadSketch {
+    Thread thread = Thread.currentThread();
+    QuantileSketch sketch = new QuantileSketch();
+  }
+  private final Vector sketches = new Vector();
+  private final ThreadLocal mySketch = new ThreadLocal() {
+    protected Object initialValue() {
+      threadSketch ts = new threadSketch();
+      sketches.addElement(ts);
+      return ts.sketch;
+    }
+  };
+  /* The following are guarded by the sketches lock. */
+  /* Batches of threads which have exited. */
+  private final QuantileSketch retired = new QuantileSketch();
+  private QuantileSketch lastTotal = new QuantileSketch();
+  /* Service times of the batches in the last interval with any. */
+  private QuantileSketch recent = new QuantileSketch();
+
+  /* Set by the thread updating serviceRate. */
+  private final AtomicBoolean estimating = new AtomicBoolean(false);
+
+  /* Number of batches recorded by each thread since its last estimate. */
+  private final ThreadLocal count = new ThreadLocal() {
+    protected Object initialValue() {
+      return new int[1];
+    }
+  };
 
   public StageStats(StageWrapperIF stage) {
     this.stage = stage;
@@ -67,26 +109,31 @@ public class StageStats implements StageStatsIF {
   /** Reset all statistics. */
   public void reset() {
     serviceRate = 0.0;
-    count = 0;
-    lastTime = System.currentTimeMillis();
-    totalEvents = totalServiceTime = cumulativeEvents = 0;
+    lastTime = Clock.currentTimeMillis();
+    totalEvents.reset();
+    totalServiceTime.reset();
+    cumulativeEvents.reset();
+    synchronized (sketches) {
+      lastTotal = totalServiceTimes();
+      recent = new QuantileSketch();
+    }
   }
 
   /** Return a moving average of the service rate. */
-  public synchronized double getServiceRate() {
+  public double getServiceRate() {
     return serviceRate;
   }
 
   /** Get total number of processed events. */
-  public synchronized long getTotalEvents() {
-    return this.cumulativeEvents;
+  public long getTotalEvents() {
+    return cumulativeEvents.sum();
   }
 
   /** 
    * Record the service time for numEvents taking 'time' msec to
    * be processed.
    */
-  public synchronized void recordServiceRate(int numEvents, long time) {
+  public void recordServiceRate(int numEvents, long time) {
 
     // Only possible to add ourselves to the profile after we start running
     if (PROFILE && first) {
@@ -101,36 +148,79 @@ public class StageStats implements StageStatsIF {
       }
     }
 
-    totalEvents += numEvents;
-    cumulativeEvents += numEvents;
-    totalServiceTime += time;
+    totalEvents.add(numEvents);
+    cumulativeEvents.add(numEvents);
+    totalServiceTime.add(time);
+    ((QuantileSketch)mySketch.get()).add(time);
 
-    count++;
-    long curTime = System.currentTimeMillis();
+    int mycount[] = (int[])count.get();
+    mycount[0]++;
+    long curTime = Clock.currentTimeMillis();
 
-    if ((count == ESTIMATION_SIZE) ||
+    if ((mycount[0] >= ESTIMATION_SIZE) ||
 	(curTime - lastTime >= ESTIMATION_TIME)) {
-      if (totalServiceTime == 0) totalServiceTime = 1;
-      double rate = totalEvents / (totalServiceTime * 1.0e-3);
-      serviceRate = (rate * SMOOTH_ALPHA) + (serviceRate * (1.0 - SMOOTH_ALPHA));
-      if (DEBUG) System.err.println("Stats <"+stage.getStage().getName()+">: numEvents="+totalEvents+" time="+totalServiceTime+", rate="+serviceRate);
-      count = 0;
-      lastTime = curTime;
-      totalEvents = totalServiceTime = 0;
+      mycount[0] = 0;
+      // If another thread is already estimating, its estimate will 
+      // include our batches
+      if (!estimating.compareAndSet(false, true)) return;
+      try {
+	long events = totalEvents.sumThenReset();
+	long serviceTime = totalServiceTime.sumThenReset();
+	if (serviceTime == 0) serviceTime = 1;
+	double rate = events / (serviceTime * 1.0e-3);
+	serviceRate = (rate * SMOOTH_ALPHA) + (serviceRate * (1.0 - SMOOTH_ALPHA));
+	if (DEBUG) System.err.println("Stats <"+stage.getStage().getName()+">: numEvents="+events+" time="+serviceTime+", rate="+serviceRate);
+	lastTime = curTime;
+      } finally {
+	estimating.set(false);
+      }
+    }
+  }
+
+  // Merge the service times recorded by all threads. Called with the
+  // sketches lock held.
+  private QuantileSketch totalServiceTimes() {
+    QuantileSketch total = retired.snapshot();
+    for (int i = sketches.size()-1; i >= 0; i--) {
+      threadSketch ts = (threadSketch)sketches.elementAt(i);
+      if (!ts.thread.isAlive()) {
+	// The thread will add no more; fold it into the retired counts
+	retired.merge(ts.sketch);
+	sketches.removeElementAt(i);
+      }
+      total.merge(ts.sketch);
+    }
+    return total;
+  }
+
+  /** 
+   * Get the 99th percentile service time, in msec, of the batches 
+   * processed since the last call, or of those processed before it 
+   * if there have been none since. This merges the sketches of all
+   * of the stage's threads, so it is meant to be called occasionally,
+   * by a controller.
+   */
+  public double get99thServiceTime() {
+    synchronized (sketches) {
+      QuantileSketch total = totalServiceTimes();
+      QuantileSketch interval = total.snapshot();
+      interval.subtract(lastTotal);
+      lastTotal = total;
+      if (interval.count() != 0) recent = interval;
+      return recent.quantile(0.99);
     }
   }
 
   /** Record 90th percentile response time in msec. */
-  public synchronized void record90thRT(double rt_sample) {
+  public void record90thRT(double rt_sample) {
     this.rt90thPercentile = rt_sample;
   }
 
   /** Get 90th percentile response time in msec. */
-  public synchronized double get90thRT() {
+  public double get90thRT() {
     return this.rt90thPercentile;
   }
 
 
 
 }
-
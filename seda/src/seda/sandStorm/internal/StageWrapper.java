@@ -27,6 +27,7 @@ package seda.sandStorm.internal;
 import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
+import seda.sandStorm.main.*;
 import java.util.*;
 
 /**
@@ -42,7 +43,7 @@ class StageWrapper implements StageWrapperIF {
   private StageIF stage;
   private EventHandlerIF handler;
   private ConfigDataIF config;
-  private FiniteQueue eventQ;
+  private QueueIF eventQ;
   private ThreadManagerIF threadmgr;
   private StageStatsIF stats;
   private ResponseTimeControllerIF rtcon;
@@ -56,7 +57,7 @@ class StageWrapper implements StageWrapperIF {
     this.handler = handler;
     this.config = config;
     this.threadmgr = threadmgr;
-    eventQ = new FiniteQueue(name);
+    eventQ = createQueue(mgr);
     this.stats = new StageStats(this);
     this.stage = new Stage(name, this, (SinkIF)eventQ, config);
     config.setStage(this.stage);
@@ -75,8 +76,8 @@ class StageWrapper implements StageWrapperIF {
     this.stats = new StageStats(this);
     this.rtcon = null;
 
-    eventQ = new FiniteQueue(name);
-    QueueThresholdPredicate pred = new QueueThresholdPredicate(eventQ, queueThreshold);
+    eventQ = createQueue(mgr);
+    QueueThresholdPredicate pred = new thresholdPredicate(mgr.getConfig(), queueThreshold);
     eventQ.setEnqueuePredicate(pred);
 
     this.stage = new Stage(name, this, (SinkIF)eventQ, config);
@@ -84,24 +85,136 @@ class StageWrapper implements StageWrapperIF {
     createRTController(mgr);
   }
 
-  private void createRTController(ManagerIF mgr) {
-    boolean rtControllerEnabled = mgr.getConfig().getBoolean("global.rtController.enable");
-    String deftype = mgr.getConfig().getString("global.rtController.type");
-    if (mgr.getConfig().getBoolean("stages."+name+".rtController.enable", rtControllerEnabled)) {
-      String contype = mgr.getConfig().getString("stages."+name+".rtController.type", deftype);
-      if (contype == null) {
-	this.rtcon = new ResponseTimeControllerDirect(mgr, this);
-      } else if (contype.equals("direct")) {
-	this.rtcon = new ResponseTimeControllerDirect(mgr, this);
-      } else if (contype.equals("mm1")) {
-	this.rtcon = new ResponseTimeControllerMM1(mgr, this);
-      } else if (contype.equals("pid")) {
-	this.rtcon = new ResponseTimeControllerPID(mgr, this);
-      } else if (contype.equals("multiclass")) {
-	this.rtcon = new ResponseTimeControllerMulticlass(mgr, this);
-      } else {
-	throw new RuntimeException("StageWrapper <"+name+">: Bad response time controller type "+contype);
+  /**
+   * Create the event queue for this stage: a FiniteQueue, or a 
+   * ClassQueue if queue.type is "class" for this stage or globally.
+   */
+  private QueueIF createQueue(ManagerIF mgr) {
+    SandstormConfig cf = mgr.getConfig();
+    String tag = "stages."+name+".queue.";
+    String globaltag = "global.queue.";
+    String type = cf.getString(tag+"type", cf.getString(globaltag+"type"));
+    if ((type == null) || type.equals("fifo")) {
+      return new FiniteQueue(name);
+    } else if (!type.equals("class")) {
+      throw new RuntimeException("StageWrapper <"+name+">: Bad queue type "+type);
+    }
+
+    int numClasses = cf.getInt(tag+"numClasses", cf.getInt(globaltag+"numClasses"));
+    String pname = cf.getString(tag+"policy", cf.getString(globaltag+"policy"));
+    int policy = ClassQueue.parsePolicy(pname);
+    if (policy == -1) {
+      throw new RuntimeException("StageWrapper <"+name+">: Bad queue policy "+pname);
+    }
+    String wlist[] = cf.getStringList(tag+"weights");
+    if (wlist == null) wlist = cf.getStringList(globaltag+"weights");
+    double weights[] = null;
+    if (wlist != null) {
+      weights = new double[wlist.length];
+      for (int i = 0; i < wlist.length; i++) {
+	try {
+	  weights[i] = Double.valueOf(wlist[i]).doubleValue();
+	} catch (NumberFormatException nfe) {
+	  throw new RuntimeException("StageWrapper <"+name+">: Bad queue weight "+wlist[i]);
+	}
+      }
+    }
+    return new ClassQueue(name, numClasses, policy, weights);
+  }
+
+  /**
+   * A QueueThresholdPredicate which follows runtime changes to the 
+   * stage's queueThreshold option.
+   */
+  class thresholdPredicate extends QueueThresholdPredicate {
+    private SandstormConfig cf;
+    private ConfigSnapshot snap;
+
+    thresholdPredicate(SandstormConfig cf, int threshold) {
+      super(eventQ, threshold);
+      this.cf = cf;
+      this.snap = cf.getSnapshot();
+    }
+
+    public boolean accept(QueueElementIF qel) {
+      ConfigSnapshot s = cf.getSnapshot();
+      if (s != snap) {
+	snap = s;
+	setThreshold(s.getInt("stages."+name+".queueThreshold", getThreshold()));
       }
+      return super.accept(qel);
+    }
+  }
+
+  /**
+   * Create the response time controller for this stage, if one is 
+   * enabled. The type option selects a combination of estimator and
+   * actuator, either of which may be overridden by the estimator and
+   * actuator options.
+   */
+  private void createRTController(ManagerIF mgr) {
+    SandstormConfig cf = mgr.getConfig();
+    String tag = "stages."+name+".rtController.";
+    String globaltag = "global.rtController.";
+    if (!cf.getBoolean(tag+"enable", cf.getBoolean(globaltag+"enable"))) return;
+
+    String contype = cf.getString(tag+"type", cf.getString(globaltag+"type"));
+    String estname = "direct", actname = "rate";
+    if ((contype == null) || contype.equals("direct")) {
+      // Use the defaults
+    } else if (contype.equals("mm1")) {
+      estname = "mm1";
+    } else if (contype.equals("pid")) {
+      estname = "pid";
+    } else if (contype.equals("multiclass")) {
+      estname = "multiclass";
+    } else if (contype.equals("degrade")) {
+      actname = "degrade";
+    } else {
+      throw new RuntimeException("StageWrapper <"+name+">: Bad response time controller type "+contype);
+    }
+    estname = cf.getString(tag+"estimator", cf.getString(globaltag+"estimator", estname));
+    actname = cf.getString(tag+"actuator", cf.getString(globaltag+"actuator", actname));
+
+    this.rtcon = new ResponseTimeController(mgr, this, 
+	createRTEstimator(estname), createRTActuator(actname));
+  }
+
+  private ResponseTimeEstimatorIF createRTEstimator(String estname) {
+    if (estname.equals("direct")) {
+      return new RTEstimatorDirect();
+    } else if (estname.equals("mm1")) {
+      return new RTEstimatorMM1();
+    } else if (estname.equals("pid")) {
+      return new RTEstimatorPID();
+    } else if (estname.equals("multiclass")) {
+      return new RTEstimatorMulticlass();
+    } else if (estname.equals("gradient")) {
+      return new RTEstimatorGradient();
+    }
+    try {
+      return (ResponseTimeEstimatorIF)Class.forName(estname).newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException("StageWrapper <"+name+">: Bad response time estimator "+estname+": "+e);
+    }
+  }
+
+  private ResponseTimeActuatorIF createRTActuator(String actname) {
+    if (actname.equals("rate")) {
+      return new RTActuatorRate();
+    } else if (actname.equals("threshold")) {
+      return new RTActuatorThreshold();
+    } else if (actname.equals("threads")) {
+      return new RTActuatorThreads();
+    } else if (actname.equals("batch")) {
+      return new RTActuatorBatch();
+    } else if (actname.equals("degrade")) {
+      return new RTActuatorDegrade();
+    }
+    try {
+      return (ResponseTimeActuatorIF)Class.forName(actname).newInstance();
+    } catch (Exception e) {
+      throw new RuntimeException("StageWrapper <"+name+">: Bad response time actuator "+actname+": "+e);
     }
   }
 
@@ -28,6 +28,7 @@ import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.util.*;
 
 /**
@@ -46,6 +47,7 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
   protected SandstormConfig config;
   protected Hashtable srTbl;
   protected ThreadPoolController sizeController;
+  protected ResponseTimeControllerMgr rtControllerMgr;
 
   public TPSThreadManager(ManagerIF mgr) {
     this(mgr, true);
@@ -56,7 +58,7 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
     this.config = mgr.getConfig();
 
     if (initialize) {
-      if (config.getBoolean("global.threadPool.sizeController.enable")) {
+      if (config.getSnapshot().threadPoolSizeControllerEnable) {
 	sizeController = new ThreadPoolController(mgr);
       }
       srTbl = new Hashtable();
@@ -72,6 +74,17 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
     srTbl.put(sr, stage);
   }
 
+  /**
+   * Register a stage's response time controller with the controller 
+   * thread, which is started for the first one.
+   */
+  protected synchronized void registerRTController(ResponseTimeControllerIF rtc, ThreadPool tp) {
+    if (rtControllerMgr == null) {
+      rtControllerMgr = new ResponseTimeControllerMgr(mgr);
+    }
+    rtControllerMgr.register(rtc, tp);
+  }
+
   /**
    * Deregister a stage with this thread manager.
    */
@@ -83,6 +96,7 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
       if (s == stage) {
 	sr.tp.stop();
 	srTbl.remove(sr);
+	if (sr.rtController != null) rtControllerMgr.deregister(sr.rtController);
       }
     }
   }
@@ -110,7 +124,6 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
     protected SourceIF source;
     protected String name;
     protected ResponseTimeControllerIF rtController = null;
-    protected boolean firstToken = false;
     protected int aggTarget = -1;
 
     protected stageRunnable(StageWrapperIF wrapper, ThreadPool tp) {
@@ -123,15 +136,18 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
 	if (sizeController != null) {
   	  // The sizeController is globally enabled -- has the user disabled
   	  // it for this stage?
-  	  String val = config.getString("stages."+this.name+".threadPool.sizeController.enable");
-  	  if ((val == null) || val.equals("true") || val.equals("TRUE")) {
+  	  if (config.getBoolean("stages."+this.name+".threadPool.sizeController.enable", true)) {
   	    sizeController.register(wrapper, tp);
   	  }
    	}
       }
       this.rtController = wrapper.getResponseTimeController();
+      if (rtController != null) registerRTController(rtController, tp);
 
       if (tp != null) tp.start();
+      // The pool, if any, is started here rather than on first enqueue
+      StageIF stage = wrapper.getStage();
+      if (stage instanceof Stage) ((Stage)stage).startOnEnqueue(null);
     }
 
     protected stageRunnable(StageWrapperIF wrapper) {
@@ -150,34 +166,30 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
       if (sizeController != null) {
 	// The sizeController is globally enabled -- has the user disabled
 	// it for this stage?
-	String val = config.getString("stages."+this.name+".threadPool.sizeController.enable");
-	if ((val == null) || val.equals("true") || val.equals("TRUE")) {
+	if (config.getBoolean("stages."+this.name+".threadPool.sizeController.enable", true)) {
 	  sizeController.register(wrapper, tp);
 	}
       }
       this.rtController = wrapper.getResponseTimeController();
+      if (rtController != null) registerRTController(rtController, tp);
 
-      tp.start();
+      StageIF stage = wrapper.getStage();
+      if (!(stage instanceof Stage) || !((Stage)stage).startOnEnqueue(tp)) {
+	tp.start();
+      }
     }
 
     public void run() {
       int blockTime;
       long t1, t2;
       long tstart = 0, tend = 0;
-      boolean isFirst = false;
 
       if (DEBUG) System.err.println(name+": starting, source is "+source);
 
-      t1 = System.currentTimeMillis();
+      t1 = Clock.currentTimeMillis();
 
       while (true) {
 
-	synchronized (this) {
-  	  if (firstToken == false) {
-  	    firstToken = true; isFirst = true;
-  	  }
-   	}
-	
        	try {
 
 	  blockTime = (int)tp.getBlockTime();
@@ -195,43 +207,32 @@ public class TPSThreadManager implements ThreadManagerIF, sandStormConst {
 	  }
 
 	  if (fetched == null) {
-	    t2 = System.currentTimeMillis();
+	    t2 = Clock.currentTimeMillis();
 	    if (tp.timeToStop(t2-t1)) {
 	      if (DEBUG) System.err.println(name+": Exiting");
-	      if (isFirst) {
-		synchronized (this) { firstToken = false; }
-	      }
 	      return;
 	    }
 	    continue;
 	  } 
 
-	  t1 = System.currentTimeMillis();
+	  t1 = Clock.currentTimeMillis();
 
 	  if (DEBUG_VERBOSE) System.err.println(name+": Got "+fetched.length+" elements for "+wrapper);
 
-	  /* Process events */
-	  tstart = System.currentTimeMillis();
-	  wrapper.getEventHandler().handleEvents(fetched);
-	  tend = System.currentTimeMillis();
+	  /* Process events, through the response time controller if any */
+	  tstart = Clock.preciseMillis();
+	  if (rtController != null) {
+	    rtController.handleEvents(fetched);
+	  } else {
+	    wrapper.getEventHandler().handleEvents(fetched);
+	  }
+	  tend = Clock.preciseMillis();
 
 	  /* Record service rate */
 	  ((StageWrapper)wrapper).getStats().recordServiceRate(fetched.length, tend-tstart);
 
-	  /* Run response time controller controller */
-	  if (rtController != null) {
-	    if (rtController instanceof ResponseTimeControllerMM1) {
-	      ((ResponseTimeControllerMM1)rtController).adjustThreshold(fetched, tstart, tend, isFirst, tp.numThreads());
-	    } else {
-	      rtController.adjustThreshold(fetched, tend-tstart);
-	    }
-	  }
-
 	  if (tp.timeToStop(0)) {
 	    if (DEBUG) System.err.println(name+": Exiting");
-	    if (isFirst) {
-      	      synchronized (this) { firstToken = false; }
-	    }
 	    return;
 	  }
 
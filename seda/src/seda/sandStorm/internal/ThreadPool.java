@@ -29,9 +29,19 @@ import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ThreadPool is a generic class which provides a thread pool.
+ *
+ * <p>The pool's threads call getAggregationTarget() and timeToStop() 
+ * after every batch, so neither takes a lock: each thread has its own 
+ * volatile stop flag, and the set of running threads is a concurrent 
+ * queue together with an atomic count. A thread is stopped by whoever 
+ * removes it from the queue, so it is counted out of the pool exactly 
+ * once, whether it was removed by removeThreads() or by timing out.
  * 
  * @author   Matt Welsh
  */
@@ -45,14 +55,16 @@ public class ThreadPool implements ProfilableIF {
   private String poolname;
   private ThreadGroup pooltg;
   private Runnable runnable;
-  private Vector threads, stoppedThreads;
+  private ConcurrentLinkedQueue threads;
+  private AtomicInteger numThreads = new AtomicInteger(0);
+  private AtomicBoolean started = new AtomicBoolean(false);
 
   int minThreads, maxThreads;
 
-  private int maxAggregation;
+  private volatile int maxAggregation;
   private int blockTime = 1000; 
   private int idleTimeThreshold;
-  private AggThrottle aggThrottle;
+  private BatchController batchController;
 
   /**
    * Create a thread pool for the given stage, manager and runnable,
@@ -66,14 +78,9 @@ public class ThreadPool implements ProfilableIF {
     this.runnable = runnable;
 
     SandstormConfig config = mgr.getConfig();
-    if (config.getBoolean("global.batchController.enable")) {
-      aggThrottle = new AggThrottle(stage, mgr);
-    } else {
-      this.maxAggregation = config.getInt("global.batchController.maxBatch");
-    }
+    initBatchController(config);
 
-    threads = new Vector();
-    stoppedThreads = new Vector();
+    threads = new ConcurrentLinkedQueue();
 
     // First look for stages.[stageName] options, then global options
     String tag = "stages."+(stage.getStage().getName())+".threadPool.";
@@ -119,14 +126,9 @@ public class ThreadPool implements ProfilableIF {
     this.runnable = runnable;
 
     SandstormConfig config = mgr.getConfig();
-    if (config.getBoolean("global.batchController.enable")) {
-      aggThrottle = new AggThrottle(stage, mgr);
-    } else {
-      this.maxAggregation = config.getInt("global.batchController.maxBatch");
-    }
+    initBatchController(config);
 
-    threads = new Vector();
-    stoppedThreads = new Vector();
+    threads = new ConcurrentLinkedQueue();
     if (initialThreads < 1) initialThreads = 1;
     this.minThreads = minThreads;
     if (this.minThreads < 1) this.minThreads = 1;
@@ -152,14 +154,9 @@ public class ThreadPool implements ProfilableIF {
     this.runnable = runnable;
 
     SandstormConfig config = mgr.getConfig();
-    if (config.getBoolean("global.batchController.enable")) {
-      aggThrottle = new AggThrottle(stage, mgr);
-    } else {
-      this.maxAggregation = config.getInt("global.batchController.maxBatch");
-    }
+    initBatchController(config);
 
-    threads = new Vector();
-    stoppedThreads = new Vector();
+    threads = new ConcurrentLinkedQueue();
     maxThreads = minThreads = numThreads;
     addThreads(numThreads, false);
     mgr.getProfiler().add("ThreadPool <"+poolname+">", this);
@@ -167,18 +164,36 @@ public class ThreadPool implements ProfilableIF {
   }
 
   /**
-   * Start the thread pool.
+   * Create a BatchController for this pool if one is enabled for the
+   * stage, otherwise use a fixed maximum batch size.
+   */
+  private void initBatchController(SandstormConfig config) {
+    String tag = "stages."+poolname+".batchController.";
+    String globaltag = "global.batchController.";
+    if (config.getBoolean(tag+"enable", config.getBoolean(globaltag+"enable"))) {
+      batchController = new BatchController(stage, mgr);
+    } else {
+      this.maxAggregation = config.getInt(tag+"maxBatch", 
+	  config.getInt(globaltag+"maxBatch"));
+    }
+  }
+
+  /**
+   * Start the thread pool. Only the first call has any effect.
    */
   public void start() {
+    if (!started.compareAndSet(false, true)) return;
     System.err.print("TP <"+poolname+">: Starting "+numThreads()+" threads");
-    if (aggThrottle != null) {
+    if (batchController != null) {
       System.err.println(", batchController enabled");
     } else {
       System.err.println(", maxBatch="+maxAggregation);
     }
-    for (int i = 0; i < threads.size(); i++) {
-      Thread t = (Thread)threads.elementAt(i);
-      t.start();
+    Iterator it = threads.iterator();
+    while (it.hasNext()) {
+      Thread t = (Thread)it.next();
+      // The size controller may already have started threads it added
+      if (t.getState() == Thread.State.NEW) t.start();
     }
   }
 
@@ -193,6 +208,8 @@ public class ThreadPool implements ProfilableIF {
    * Add threads to this pool.
    */
   void addThreads(int num, boolean start) {
+    // Adding threads is rare; the lock only keeps concurrent calls
+    // from together exceeding maxThreads
     synchronized (this) {
       int numToAdd;
       if (maxThreads < 0) {
@@ -206,8 +223,9 @@ public class ThreadPool implements ProfilableIF {
       }
       for (int i = 0; i < numToAdd; i++) {
     	String name = "TP-"+numThreads()+" <"+poolname+">";
-	Thread t = new Thread(pooltg, runnable, name);
-	threads.addElement(t);
+	worker t = new worker(pooltg, runnable, name);
+	threads.add(t);
+	numThreads.incrementAndGet();
 	mgr.getProfiler().getGraphProfiler().addThread(t, stage);
 	if (start) t.start();
       }
@@ -219,22 +237,38 @@ public class ThreadPool implements ProfilableIF {
    */
   void removeThreads(int num) {
     System.err.print("TP <"+poolname+">: Removing "+num+" threads from pool, ");
-    synchronized (this) {
-      for (int i = 0; (i < num) && (numThreads() > minThreads); i++) {
-	Thread t = (Thread)threads.firstElement();
-	stopThread(t);
+    for (int i = 0; i < num; i++) {
+      if (!reserveStop()) break;
+      worker t = (worker)threads.poll();
+      if (t == null) {
+	numThreads.incrementAndGet();
+	break;
       }
+      t.stopRequested = true;
     }
     System.err.println("size "+numThreads());
   }
 
+  /**
+   * Take one thread out of the count of running threads, unless that
+   * would leave fewer than minThreads. Returns false if the count
+   * was not changed.
+   */
+  private boolean reserveStop() {
+    while (true) {
+      int n = numThreads.get();
+      if (n <= minThreads) return false;
+      if (numThreads.compareAndSet(n, n-1)) return true;
+    }
+  }
+
   /**
    * Cause the given thread to stop execution.
    */
   void stopThread(Thread t) {
-    synchronized (this) {
-      threads.removeElement(t);
-      stoppedThreads.addElement(t);
+    if (threads.remove(t)) {
+      numThreads.decrementAndGet();
+      ((worker)t).stopRequested = true;
     }
     System.err.println("TP <"+poolname+">: stopping thread, size "+numThreads());
   }
@@ -243,9 +277,7 @@ public class ThreadPool implements ProfilableIF {
    * Return the number of threads in this pool. 
    */
   int numThreads() {
-    synchronized (this) {
-      return threads.size();
-    }
+    return numThreads.get();
   }
 
   /**
@@ -258,25 +290,55 @@ public class ThreadPool implements ProfilableIF {
   /**
    * Used by a thread to request its aggregation target from the pool.
    */
-  public synchronized int getAggregationTarget() {
-    if (aggThrottle != null) {
-      return aggThrottle.getAggTarget();
+  public int getAggregationTarget() {
+    if (batchController != null) {
+      return batchController.getBatchTarget();
     } else {
       return maxAggregation;
     }
   }
 
+  /**
+   * Set the batch size used when the pool has no BatchController; -1
+   * means no limit.
+   */
+  void setMaxAggregation(int max) {
+    this.maxAggregation = max;
+  }
+
+  /**
+   * Return the batch size used when the pool has no BatchController.
+   */
+  int getMaxAggregation() {
+    return maxAggregation;
+  }
+
+  /**
+   * Return true if the pool's batch size is set by a BatchController.
+   */
+  boolean hasBatchController() {
+    return (batchController != null);
+  }
+
   /**
    * Used by a thread to determine whether it should exit.
    */
   public boolean timeToStop(long idleTime) {
-    synchronized (this) {
-      if ((idleTime > idleTimeThreshold) && (numThreads() > minThreads)) {
-	stopThread(Thread.currentThread());
+    Thread t = Thread.currentThread();
+    if (!(t instanceof worker)) return false;
+    worker w = (worker)t;
+    if (w.stopRequested) return true;
+
+    if ((idleTime > idleTimeThreshold) && reserveStop()) {
+      if (threads.remove(w)) {
+	w.stopRequested = true;
+	System.err.println("TP <"+poolname+">: stopping thread, size "+numThreads());
+      } else {
+	// Already removed by removeThreads(), which will set the flag
+	numThreads.incrementAndGet();
       }
-      if (stoppedThreads.contains(Thread.currentThread())) return true;
-    } 
-    return false;
+    }
+    return w.stopRequested;
   }
 
   public String toString() {
@@ -291,5 +353,24 @@ public class ThreadPool implements ProfilableIF {
     return numThreads();
   }
 
+  /**
+   * A thread of the pool. stopRequested is set once the thread has 
+   * been removed from the pool, and checked by the thread in 
+   * timeToStop().
+   */
+  class worker extends Thread {
+    volatile boolean stopRequested = false;
+
+    worker(ThreadGroup tg, Runnable runnable, String name) {
+      super(tg, runnable, name);
+    }
+
+    public void run() {
+      // Every event handled by this thread belongs to the pool's stage
+      StageGraph.setCurrentStage(stage);
+      super.run();
+    }
+  }
+
 }
 
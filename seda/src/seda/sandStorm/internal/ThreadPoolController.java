@@ -28,6 +28,7 @@ import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.util.*;
 
 /**
@@ -143,7 +144,7 @@ public class ThreadPoolController {
       }
 
       savedThreads = tp.numThreads();
-      reset_time = last_time = System.currentTimeMillis();
+      reset_time = last_time = Clock.currentTimeMillis();
 
       mgr.getProfiler().add("TPController savedThreads <"+stage.getStage().getName()+">",
 	  new ProfilableIF() {
@@ -225,7 +226,7 @@ public class ThreadPoolController {
       if ((DEBUG || autoMaxDetect) &&
 	  (adjust_count % THROUGHPUT_MEASUREMENT_DELAY) == 0) {
 
-	long curTime = System.currentTimeMillis();
+	long curTime = Clock.currentTimeMillis();
 
 	for (int i = 0; i < tpvec.size(); i++) {
 	  tpcClient tpc = (tpcClient)tpvec.elementAt(i);
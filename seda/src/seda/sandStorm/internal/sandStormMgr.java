@@ -30,8 +30,10 @@ import seda.sandStorm.core.*;
 import seda.sandStorm.main.*;
 import seda.sandStorm.lib.aSocket.*;
 import seda.sandStorm.lib.aDisk.*;
+import seda.util.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class provides management functionality for the Sandstorm 
@@ -70,7 +72,8 @@ public class sandStormMgr implements ManagerIF, SystemManagerIF, sandStormConst
     stagestoinit = new Vector();
     signalMgr = new SignalMgr();
 
-    String dtm = mgrconfig.getString("global.defaultThreadManager");
+    // Take the snapshot shared by all components
+    String dtm = mgrconfig.getSnapshot().defaultThreadManager;
     if (dtm == null) {
       throw new IllegalArgumentException("No threadmanager specified by configuration");
     }
@@ -101,12 +104,15 @@ public class sandStormMgr implements ManagerIF, SystemManagerIF, sandStormConst
     System.err.println("Sandstorm: Initializing stages");
     initStages();
 
-    // Let the threads start
-    try {
-      System.err.println("Sandstorm: Waiting for all components to start...");
-      Thread.currentThread().sleep(500);
-    } catch (InterruptedException ie) {
-      // Ignore
+    // Let the threads start; thread pools which start on their first
+    // event need no waiting for
+    if (!mgrconfig.getSnapshot().threadPoolLazyStart) {
+      try {
+	System.err.println("Sandstorm: Waiting for all components to start...");
+	Thread.currentThread().sleep(500);
+      } catch (InterruptedException ie) {
+	// Ignore
+      }
     }
 
     System.err.println("\nSandstorm: Ready.\n");
@@ -145,17 +151,18 @@ public class sandStormMgr implements ManagerIF, SystemManagerIF, sandStormConst
     // Create profiler even if disabled
     profiler = new sandStormProfiler(this);
 
-    if (mgrconfig.getBoolean("global.profile.enable")) {
+    ConfigSnapshot config = mgrconfig.getSnapshot();
+    if (config.profileEnable) {
       System.err.println("Sandstorm: Starting profiler");
       profiler.start();
     }
 
-    if (mgrconfig.getBoolean("global.aSocket.enable")) {
+    if (config.aSocketEnable) {
       System.err.println("Sandstorm: Starting aSocket layer");
       aSocketMgr.initialize(this, this);
     } 
 
-    if (mgrconfig.getBoolean("global.aDisk.enable")) {
+    if (config.aDiskEnable) {
       System.err.println("Sandstorm: Starting aDisk layer");
       AFileMgr.initialize(this, this);
     }
@@ -230,12 +237,15 @@ public class sandStormMgr implements ManagerIF, SystemManagerIF, sandStormConst
    */
   public StageIF createStage(StageWrapperIF wrapper, boolean initialize) throws Exception {
     String name = wrapper.getStage().getName();
-    if (stagetbl.get(name) != null) {
-      throw new StageNameAlreadyBoundException("Stage name "+name+" already in use");
+    // Stages may be created by other stages initializing in parallel
+    synchronized (stagetbl) {
+      if (stagetbl.get(name) != null) {
+	throw new StageNameAlreadyBoundException("Stage name "+name+" already in use");
+      }
+      stagetbl.put(name, wrapper);
     }
-    stagetbl.put(name, wrapper);
 
-    if (mgrconfig.getBoolean("global.profile.enable")) {
+    if (mgrconfig.getSnapshot().profileEnable) {
       profiler.add(wrapper.getStage().getName()+" queueLength",
 	  (ProfilableIF)wrapper.getStage().getSink());
     }
@@ -263,31 +273,146 @@ public class sandStormMgr implements ManagerIF, SystemManagerIF, sandStormConst
   }
 
   /**
-   * Return the SandstormConfig used to initialize this manager.
-   * Actually returns a copy of the SandstormConfig; this prevents
-   * options from being changed once the system has been initialized.
+   * Return the SandstormConfig used to initialize this manager. This
+   * is shared by all components; options should only be changed at
+   * runtime through SandstormConfig.update().
    */
   public SandstormConfig getConfig() {
-    return mgrconfig.getCopy();
+    return mgrconfig;
   }
 
-  // Initialize all stages
+  /**
+   * Initialize all stages. A stage is initialized only after the 
+   * stages named by its initAfter option; otherwise stages are 
+   * initialized in the order they were loaded, or with 
+   * global.initThreads threads in parallel if that is more than one.
+   * The time taken by each stage's init() is printed at the end.
+   */
   private void initStages() {
+    long tstart = System.currentTimeMillis();
+    int numStages = stagestoinit.size();
+    stageInit inits[] = new stageInit[numStages];
+    Hashtable initTbl = new Hashtable();
+    for (int i = 0; i < numStages; i++) {
+      inits[i] = new stageInit((StageWrapperIF)stagestoinit.elementAt(i));
+      initTbl.put(inits[i].name, inits[i]);
+    }
+    for (int i = 0; i < numStages; i++) {
+      String deps[] = mgrconfig.getStringList("stages."+inits[i].name+".initAfter");
+      if (deps == null) continue;
+      for (int j = 0; j < deps.length; j++) {
+	stageInit dep = (stageInit)initTbl.get(deps[j]);
+	if ((dep == null) || (dep == inits[i])) {
+	  System.err.println("Sandstorm: Ignoring initAfter "+deps[j]+" for stage "+inits[i].name);
+	  continue;
+	}
+	dep.dependents.addElement(inits[i]);
+	inits[i].waitingFor++;
+      }
+    }
 
-    for (int i = 0; i < stagestoinit.size(); i++) {
-      StageWrapperIF wrapper = (StageWrapperIF)stagestoinit.elementAt(i);
+    int numThreads = mgrconfig.getSnapshot().initThreads;
+    ExecutorService pool = null;
+    Executor exec;
+    if (numThreads > 1) {
+      pool = Executors.newFixedThreadPool(numThreads);
+      exec = pool;
+    } else {
+      // Run each stage's init() in this thread as it is submitted
+      exec = new Executor() {
+	public void execute(Runnable r) {
+	  r.run();
+	}
+      };
+    }
+    CompletionService done = new ExecutorCompletionService(exec);
+
+    int running = 0, finished = 0;
+    try {
+      for (int i = 0; i < numStages; i++) {
+	if (inits[i].waitingFor == 0) {
+	  done.submit(inits[i], inits[i]);
+	  running++;
+	}
+      }
+      while (running > 0) {
+	stageInit si = (stageInit)done.take().get();
+	running--;
+	finished++;
+	if (si.error != null) initFailed(si.name, si.error);
+	for (int i = 0; i < si.dependents.size(); i++) {
+	  stageInit dep = (stageInit)si.dependents.elementAt(i);
+	  if (--dep.waitingFor == 0) {
+	    done.submit(dep, dep);
+	    running++;
+	  }
+	}
+      }
+    } catch (ExecutionException ee) {
+      initFailed("(unknown)", ee.getCause());
+    } catch (InterruptedException ie) {
+      initFailed("(unknown)", ie);
+    } finally {
+      if (pool != null) pool.shutdown();
+    }
+
+    if (finished < numStages) {
+      String names = "";
+      for (int i = 0; i < numStages; i++) {
+	if (inits[i].waitingFor > 0) names += " "+inits[i].name;
+      }
+      System.err.println("Sandstorm: Cycle in initAfter options, could not initialize:"+names);
+      System.err.println("Sandstorm: Exiting.");
+      System.exit(-1);
+    }
+
+    // Report the slowest stages first
+    Arrays.sort(inits, new Comparator() {
+      public int compare(Object o1, Object o2) {
+	long t1 = ((stageInit)o1).nanos, t2 = ((stageInit)o2).nanos;
+	return (t1 > t2) ? -1 : ((t1 < t2) ? 1 : 0);
+      }
+    });
+    System.err.println("Sandstorm: Initialized "+numStages+" stages in "+
+	(System.currentTimeMillis()-tstart)+" ms, "+Math.max(numThreads, 1)+" at a time:");
+    for (int i = 0; i < numStages; i++) {
+      System.err.println("--   "+MDWUtil.format(inits[i].nanos/1.0e6)+" ms <"+inits[i].name+">");
+    }
+
+    signalMgr.trigger(new StagesInitializedSignal());
+  }
+
+  private void initFailed(String name, Throwable t) {
+    System.err.println("Sandstorm: Caught exception initializing stage "+name+": "+t);
+    t.printStackTrace();
+    System.err.println("Sandstorm: Exiting.");
+    System.exit(-1);
+  }
+
+  // The initialization of one stage by initStages()
+  class stageInit implements Runnable {
+    StageWrapperIF wrapper;
+    String name;
+    Vector dependents = new Vector(1);
+    int waitingFor = 0;
+    long nanos;
+    Exception error;
+
+    stageInit(StageWrapperIF wrapper) {
+      this.wrapper = wrapper;
+      this.name = wrapper.getStage().getName();
+    }
+
+    public void run() {
+      System.err.println("-- Initializing <"+name+">");
+      long t1 = System.nanoTime();
       try {
-	System.err.println("-- Initializing <"+wrapper.getStage().getName()+">");
 	wrapper.init();
       } catch (Exception ex) {
-	System.err.println("Sandstorm: Caught exception initializing stage "+wrapper.getStage().getName()+": "+ex);
-	ex.printStackTrace();
-	System.err.println("Sandstorm: Exiting.");
-	System.exit(-1);
+	error = ex;
       }
+      nanos = System.nanoTime() - t1;
     }
-
-    signalMgr.trigger(new StagesInitializedSignal());
   }
 
   // Destroy all stages
@@ -27,6 +27,7 @@ package seda.sandStorm.internal;
 
 import seda.sandStorm.api.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.io.*;
 import java.util.*;
 
@@ -43,6 +44,7 @@ import java.util.*;
 class sandStormProfiler extends Thread implements sandStormConst, ProfilerIF {
 
   private int delay;
+  private int graphDelay;
   private PrintWriter pw;
   private Vector profilables;
   private boolean started = false;
@@ -52,6 +54,7 @@ class sandStormProfiler extends Thread implements sandStormConst, ProfilerIF {
     graphProfiler = new StageGraph(mgr);
     SandstormConfig config = mgr.getConfig();
     delay = config.getInt("global.profile.delay");
+    graphDelay = config.getInt("global.profile.graphdelay");
     String filename = config.getString("global.profile.filename");
     if (config.getBoolean("global.profile.enable")) {
       pw = new PrintWriter(new FileWriter(filename, true));
@@ -85,6 +88,7 @@ class sandStormProfiler extends Thread implements sandStormConst, ProfilerIF {
     pw.println("##### Profile started at "+(new Date()).toString());
     pw.println("##### Sample delay "+delay+" msec");
     Runtime r = Runtime.getRuntime();
+    long lastGraphDump = Clock.currentTimeMillis();
 
     while (true) {
 
@@ -103,6 +107,13 @@ class sandStormProfiler extends Thread implements sandStormConst, ProfilerIF {
       }
       pw.println("");
       pw.flush();
+
+      // Does nothing unless global.profile.graph is enabled
+      if ((graphDelay > 0) && 
+	  (Clock.currentTimeMillis() - lastGraphDump >= graphDelay)) {
+	graphProfiler.dumpGraph();
+	lastGraphDump = Clock.currentTimeMillis();
+      }
      
       try {
         Thread.currentThread().sleep(delay);
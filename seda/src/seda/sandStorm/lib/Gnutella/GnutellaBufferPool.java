@@ -0,0 +1,92 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.Gnutella;
+
+/**
+ * A pool of byte arrays used by GnutellaPacketReader to reassemble
+ * payloads which span more than one incoming TCP packet. Arrays are 
+ * kept in power-of-two size classes; a request is satisfied from the 
+ * smallest class which is large enough, so the array returned may be 
+ * longer than requested. Requests larger than the largest class are 
+ * allocated directly and never pooled.
+ */
+class GnutellaBufferPool {
+
+  private static final boolean DEBUG = false;
+
+  // Size classes are 2^MIN_SHIFT .. 2^MAX_SHIFT bytes
+  private static final int MIN_SHIFT = 6;
+  private static final int MAX_SHIFT = 10;
+  // Maximum number of free arrays kept in each class
+  private static final int MAX_FREE = 256;
+
+  private static byte freeList[][][] = new byte[MAX_SHIFT-MIN_SHIFT+1][MAX_FREE][];
+  private static int numFree[] = new int[MAX_SHIFT-MIN_SHIFT+1];
+
+  // Return the size class for the given size, or -1 if too large
+  private static int sizeClass(int size) {
+    int c = 0;
+    while ((1 << (c+MIN_SHIFT)) < size) {
+      c++;
+      if (c+MIN_SHIFT > MAX_SHIFT) return -1;
+    }
+    return c;
+  }
+
+  /**
+   * Return an array of at least the given size.
+   */
+  static byte[] alloc(int size) {
+    int c = sizeClass(size);
+    if (c == -1) return new byte[size];
+    synchronized (freeList[c]) {
+      int n = numFree[c];
+      if (n > 0) {
+	byte arr[] = freeList[c][--n];
+	freeList[c][n] = null;
+	numFree[c] = n;
+	return arr;
+      }
+    }
+    return new byte[1 << (c+MIN_SHIFT)];
+  }
+
+  /**
+   * Return an array obtained from alloc() to the pool. 
+   */
+  static void free(byte arr[]) {
+    if (arr == null) return;
+    int c = sizeClass(arr.length);
+    // Only arrays of exactly a class size came from the pool
+    if ((c == -1) || (arr.length != (1 << (c+MIN_SHIFT)))) return;
+    synchronized (freeList[c]) {
+      int n = numFree[c];
+      if (n < MAX_FREE) {
+	freeList[c][n] = arr;
+	numFree[c] = n+1;
+      }
+    }
+  }
+
+}
@@ -48,6 +48,9 @@ public class GnutellaConnection extends SimpleSink implements QueueElementIF, Gn
   private InetAddress addr;
   private int port;
   private boolean closed;
+  // Set by GnutellaServer while the aSocket layer reports this 
+  // connection as clogged
+  volatile boolean clogged;
 
   GnutellaConnection(GnutellaServer gs, ATcpConnection conn) {
     this.gs = gs;
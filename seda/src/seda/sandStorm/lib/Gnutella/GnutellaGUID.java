@@ -30,34 +30,38 @@ import java.net.*;
 
 /**
  * This class represents the GUID contained in Gnutella network packets.
+ * The 16 bytes of the GUID are held as two longs, which makes hashing
+ * and comparison cheap and lets GnutellaRoutingTable store GUIDs in 
+ * primitive arrays.
  */
 public class GnutellaGUID implements GnutellaConst {
 
   private static final boolean DEBUG = false;
 
-  byte data[];
-  private int hash;
+  // Bytes 0-7 and 8-15 of the GUID, read little-endian
+  long lo, hi;
 
   private static Random rand = null;
 
   public GnutellaGUID() {
     if (rand == null) rand = new Random();
-    data = new byte[16];
-    rand.nextBytes(data);
-    hash = GnutellaPacket.readLEInt(data, 0);
+    lo = rand.nextLong();
+    hi = rand.nextLong();
   }
 
   public GnutellaGUID(byte barr[], int offset) {
-    data = new byte[16];
-    System.arraycopy(barr, offset, data, 0, 16);
-    hash = GnutellaPacket.readLEInt(data, 0);
+    lo = readLELong(barr, offset);
+    hi = readLELong(barr, offset+8);
   }
 
   public void dump(byte barr[], int offset) {
-    System.arraycopy(data, 0, barr, offset, 16);
+    writeLELong(lo, barr, offset);
+    writeLELong(hi, barr, offset+8);
   }
   
   public String toString() {
+    byte data[] = new byte[16];
+    dump(data, 0);
     String s = "[GUID ";
     for (int i = 0; i < 16; i++) {
       int c = data[i] & 0xff;
@@ -71,17 +75,29 @@ public class GnutellaGUID implements GnutellaConst {
   }
 
   public int hashCode() {
-    return hash;
+    // The first four bytes, as a little-endian int
+    return (int)lo;
   }
 
   public boolean equals(Object o) {
     if (!(o instanceof GnutellaGUID)) return false;
     GnutellaGUID guid = (GnutellaGUID)o;
-    boolean same = true;
-    for (int i = 0; i < 16; i++) {
-      if (guid.data[i] != data[i]) same = false;
+    return (guid.lo == lo) && (guid.hi == hi);
+  }
+
+  static long readLELong(byte barr[], int offset) {
+    long l = 0;
+    for (int i = 7; i >= 0; i--) {
+      l = (l << 8) | (barr[offset+i] & 0xff);
+    }
+    return l;
+  }
+
+  static void writeLELong(long l, byte barr[], int offset) {
+    for (int i = 0; i < 8; i++) {
+      barr[offset+i] = (byte)l;
+      l >>>= 8;
     }
-    return same;
   }
 
 }
@@ -38,29 +38,36 @@ public abstract class GnutellaPacket implements GnutellaConst, QueueElementIF {
 
   private static final boolean DEBUG = false;
 
-  public static int NUM_ALLOC = 0;
-
   protected GnutellaConnection gc;
   protected GnutellaGUID guid;
   protected int function;
   // These are public so they can be modified by user routing code
   public int ttl;
   public int hops;
+  // The payload is payload[payload_offset .. payload_offset+payload_length)
+  protected int payload_offset;
   protected int payload_length;
   protected byte payload[];
-
-  public void finalize() {
-    NUM_ALLOC--;
-  }
+  // True if payload was obtained from GnutellaBufferPool
+  private boolean pooled;
 
   protected GnutellaPacket(GnutellaGUID guid, int function, int ttl, int hops, byte payload[]) {
-    NUM_ALLOC++;
+    this(guid, function, ttl, hops, payload, 0, (payload == null)?0:payload.length);
+  }
 
+  /**
+   * Create a packet whose payload is the given region of the array, 
+   * which is referenced rather than copied. Used by 
+   * GnutellaPacketReader.
+   */
+  protected GnutellaPacket(GnutellaGUID guid, int function, int ttl, int hops, byte payload[], int offset, int length) {
     this.guid = guid;
     this.function = function;
     this.ttl = ttl;
     this.hops = hops;
     this.payload = payload;
+    this.payload_offset = offset;
+    this.payload_length = length;
   }
 
   protected GnutellaPacket(int function, byte payload[]) {
@@ -101,6 +108,39 @@ public abstract class GnutellaPacket implements GnutellaConst, QueueElementIF {
     // Do nothing in default case
   }
 
+  /**
+   * Replace the payload of this packet with the given array. Used by 
+   * subclasses which regenerate their payload in prepareForSend().
+   */
+  protected void setPayload(byte payload[]) {
+    release();
+    this.payload = payload;
+    this.payload_offset = 0;
+    this.payload_length = (payload == null)?0:payload.length;
+  }
+
+  // Used by GnutellaPacketReader when the payload came from the pool
+  void setPooled() {
+    pooled = true;
+  }
+
+  /**
+   * Indicate that the application has finished with this packet. If 
+   * the packet's payload was reassembled into a pooled buffer by the 
+   * packet reader, the buffer is returned for reuse, and the packet 
+   * must not be used (or sent) afterwards. Calling this method is 
+   * optional; packets which are not released are simply garbage 
+   * collected.
+   */
+  public void release() {
+    if (pooled) {
+      pooled = false;
+      GnutellaBufferPool.free(payload);
+      payload = null;
+      payload_length = 0;
+    }
+  }
+
   /**
    * Render the packet as a BufferElement which can be pushed to an
    * aSocket connection.
@@ -108,10 +148,6 @@ public abstract class GnutellaPacket implements GnutellaConst, QueueElementIF {
   BufferElement getBuffer() {
     if (DEBUG) System.err.println("GnutellaPacket: doing prepareForSend");
     prepareForSend();
-    if (payload == null) 
-      payload_length = 0;
-    else 
-      payload_length = payload.length;
 
     byte data[] = new byte[PACKET_HEADER_SIZE+payload_length];
     guid.dump(data, 0);
@@ -119,8 +155,8 @@ public abstract class GnutellaPacket implements GnutellaConst, QueueElementIF {
     data[17] = (byte)(ttl & 0xff);
     data[18] = (byte)(hops & 0xff);
     writeLEInt(payload_length, data, 19);
-    if (payload != null) 
-      System.arraycopy(payload, 0, data, PACKET_HEADER_SIZE, payload_length);
+    if (payload_length != 0) 
+      System.arraycopy(payload, payload_offset, data, PACKET_HEADER_SIZE, payload_length);
     BufferElement buf = new BufferElement(data);
     return buf;
   }
@@ -128,10 +164,6 @@ public abstract class GnutellaPacket implements GnutellaConst, QueueElementIF {
   // Return size of packet in bytes
   public int getSize() {
     prepareForSend();
-    if (payload == null) 
-      payload_length = 0;
-    else 
-      payload_length = payload.length;
     return PACKET_HEADER_SIZE+payload_length;
   }
 
@@ -25,6 +25,7 @@
 package seda.sandStorm.lib.Gnutella;
 
 import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
 import seda.sandStorm.lib.aSocket.*;
 import java.util.*;
 import java.io.*;
@@ -35,9 +36,16 @@ import java.net.*;
  * objects from raw socket data. It encapsulates the core packet-processing
  * code in the Gnutella protocol.
  *
+ * <p>Headers are parsed directly from the incoming packet data, and a
+ * payload which lies entirely within one incoming packet is referenced
+ * in place rather than copied. Only payloads which span packets are 
+ * copied, into buffers drawn from GnutellaBufferPool. This class is 
+ * public only so that it can be benchmarked; applications should use 
+ * GnutellaServer.
+ *
  * @author Matt Welsh
  */
-class GnutellaPacketReader implements GnutellaConst {
+public class GnutellaPacketReader implements GnutellaConst {
 
   private static final boolean DEBUG = false;
 
@@ -45,7 +53,8 @@ class GnutellaPacketReader implements GnutellaConst {
   private static final int STATE_READ_PAYLOAD = 1;
   private int state;
 
-  private int cur_offset, packet_offset;
+  // Incoming packet data is pktdata[packet_offset .. packet_end)
+  private int cur_offset, packet_offset, packet_end;
   private byte pktdata[];
 
   private GnutellaGUID guid;
@@ -54,24 +63,34 @@ class GnutellaPacketReader implements GnutellaConst {
   private int hops;
   private int payload_length;
 
+  // Holds a header which spans packets
   private byte header[];
+  // Holds a payload which spans packets
   private byte payload[];
 
-  private Vector completePackets;
+  // Completed packets are batch[batchHead .. batchCount)
+  private GnutellaPacket batch[];
+  private int batchHead, batchCount;
 
-  GnutellaPacketReader() {
+  public GnutellaPacketReader() {
     state = STATE_READ_HEADER;
     header = new byte[PACKET_HEADER_SIZE];
     cur_offset = 0;
-    completePackets = new Vector(1);
+    batch = new GnutellaPacket[8];
   }
 
-  void pushPacket(ATcpInPacket pkt) throws IOException {
+  /**
+   * Parse the data in the given packet. Any Gnutella packets which 
+   * are completed can then be obtained with getGnutellaPacket().
+   */
+  public synchronized void pushPacket(ATcpInPacket pkt) throws IOException {
 
-    packet_offset = 0;
-    pktdata = pkt.getBytes();
+    BufferElement buf = pkt.getBufferElement();
+    pktdata = buf.data;
+    packet_offset = buf.offset;
+    packet_end = buf.offset + buf.size;
 
-    if (DEBUG) System.err.println("GPR: pushPacket called, size "+pktdata.length);
+    if (DEBUG) System.err.println("GPR: pushPacket called, size "+buf.size);
 
     boolean proceed = true;
 
@@ -95,6 +114,8 @@ class GnutellaPacketReader implements GnutellaConst {
       // and wait for the next packet
       reset();
       throw e;
+    } finally {
+      pktdata = null;
     }
   }
 
@@ -102,40 +123,51 @@ class GnutellaPacketReader implements GnutellaConst {
   private void reset() {
     cur_offset = 0;
     state = STATE_READ_HEADER;
+    if (payload != null) {
+      GnutellaBufferPool.free(payload);
+      payload = null;
+    }
   }
 
   private boolean doReadHeader() throws IOException {
     if (DEBUG) System.err.println("GPR: doReadHeader called, cur "+cur_offset+", pkt "+packet_offset);
 
-    int tocopy = Math.min( header.length - cur_offset, pktdata.length - packet_offset );
-    if (tocopy != 0) {
-      System.arraycopy(pktdata, packet_offset, header, cur_offset, tocopy);
-      cur_offset += tocopy;
-      packet_offset += tocopy;
-    }
+    if ((cur_offset == 0) && (packet_end - packet_offset >= PACKET_HEADER_SIZE)) {
+      // Whole header is here; parse it in place
+      processHeader(pktdata, packet_offset);
+      packet_offset += PACKET_HEADER_SIZE;
 
-    if (cur_offset == PACKET_HEADER_SIZE) {
-      processHeader();
-      cur_offset = 0;
-      if (payload_length != 0) {
-	payload = new byte[payload_length];
-	state = STATE_READ_PAYLOAD;
-	return true;
-      } else {
-	createPacket();
-	cur_offset = 0;
-	state = STATE_READ_HEADER;
-	return true;
+    } else {
+      int tocopy = Math.min( header.length - cur_offset, packet_end - packet_offset );
+      if (tocopy != 0) {
+	System.arraycopy(pktdata, packet_offset, header, cur_offset, tocopy);
+	cur_offset += tocopy;
+	packet_offset += tocopy;
       }
+      if (cur_offset < PACKET_HEADER_SIZE) return false;
+      processHeader(header, 0);
+      cur_offset = 0;
+    }
+
+    if (payload_length == 0) {
+      createPacket(null, 0, false);
+    } else if (aSocketConst.READ_BUFFER_COPY && 
+	(packet_end - packet_offset >= payload_length)) {
+      // Whole payload is here; the packet can refer to it directly,
+      // since the aSocket layer does not reuse the array
+      createPacket(pktdata, packet_offset, false);
+      packet_offset += payload_length;
     } else {
-      return false;
+      payload = GnutellaBufferPool.alloc(payload_length);
+      state = STATE_READ_PAYLOAD;
     }
+    return true;
   }
 
   private boolean doReadPayload() throws IOException {
     if (DEBUG) System.err.println("GPR: doReadPayload called, cur "+cur_offset+", pkt "+packet_offset);
 
-    int tocopy = Math.min( payload_length - cur_offset, pktdata.length - packet_offset );
+    int tocopy = Math.min( payload_length - cur_offset, packet_end - packet_offset );
     if (tocopy != 0) {
       System.arraycopy(pktdata, packet_offset, payload, cur_offset, tocopy);
       cur_offset += tocopy;
@@ -143,21 +175,23 @@ class GnutellaPacketReader implements GnutellaConst {
     }
 
     if (cur_offset == payload_length) {
-      createPacket();
+      byte p[] = payload;
+      payload = null;
       cur_offset = 0;
       state = STATE_READ_HEADER;
+      createPacket(p, 0, true);
       return true;
     } else {
       return false;
     }
   }
 
-  private void processHeader() throws IOException {
-    guid = new GnutellaGUID(header, 0);
-    function = header[16];
-    ttl = header[17];
-    hops = header[18];
-    payload_length = GnutellaPacket.readLEInt(header, 19);
+  private void processHeader(byte data[], int off) throws IOException {
+    guid = new GnutellaGUID(data, off);
+    function = data[off+16];
+    ttl = data[off+17];
+    hops = data[off+18];
+    payload_length = GnutellaPacket.readLEInt(data, off+19);
     if ((MAX_PAYLOAD_SIZE != -1) && (payload_length > MAX_PAYLOAD_SIZE)) {
       // Drop packet!
       throw new IOException("Invalid payload length "+payload_length);
@@ -170,57 +204,67 @@ class GnutellaPacketReader implements GnutellaConst {
     if (DEBUG) System.err.println("GPR: read header, function "+Integer.toHexString(function & 0xff)+", ttl "+ttl+", hops "+hops+", payload_len "+payload_length);
   }
 
-
-  GnutellaPacket getGnutellaPacket() throws IOException {
-    synchronized (completePackets) {
-      GnutellaPacket gp;
-      try {
-	gp = (GnutellaPacket)completePackets.firstElement();
-      } catch (NoSuchElementException e) {
-	return null;
-      }
-      if (gp != null) {
-	completePackets.removeElementAt(0);
-	return gp;
-      } else {
-	return null;
-      }
+  /**
+   * Return the next completed packet, or null if there are none.
+   */
+  public synchronized GnutellaPacket getGnutellaPacket() {
+    if (batchHead == batchCount) return null;
+    GnutellaPacket gp = batch[batchHead];
+    batch[batchHead++] = null;
+    if (batchHead == batchCount) {
+      batchHead = batchCount = 0;
     }
+    return gp;
   }
 
-  void createPacket() throws IOException {
+  private void createPacket(byte data[], int off, boolean pooled) throws IOException {
     GnutellaPacket gp; 
+    int len = payload_length;
 
-    switch (function) {
-      case GNUTELLA_FN_PING: 
-  	gp = new GnutellaPingPacket(guid, ttl, hops);
-	break;
-
-      case GNUTELLA_FN_PONG:
-        if (payload == null) throw new IOException("pong packet has null payload");
-        gp = new GnutellaPongPacket(guid, ttl, hops, payload);
-	break;
-
-      case GNUTELLA_FN_PUSH:
-        if (payload == null) throw new IOException("push packet has null payload");
-        gp = new GnutellaPushPacket(guid, ttl, hops, payload);
-	break;
-
-      case GNUTELLA_FN_QUERY:
-        if (payload == null) throw new IOException("query packet has null payload");
-        gp =  new GnutellaQueryPacket(guid, ttl, hops, payload);
-	break;
-
-      case GNUTELLA_FN_QUERYHITS:
-        if (payload == null) throw new IOException("query hits packet has null payload");
-        gp = new GnutellaQueryHitsPacket(guid, ttl, hops, payload);
-	break;
-
-      default: 
-        throw new IOException("GnutellaPacket got illegal function code "+Integer.toHexString(function));
+    try {
+      switch (function) {
+	case GNUTELLA_FN_PING: 
+	  // Any payload is ignored
+	  if (pooled) GnutellaBufferPool.free(data);
+	  pooled = false;
+	  gp = new GnutellaPingPacket(guid, ttl, hops);
+	  break;
+
+	case GNUTELLA_FN_PONG:
+	  if (len < 14) throw new IOException("pong packet has short payload");
+	  gp = new GnutellaPongPacket(guid, ttl, hops, data, off, len);
+	  break;
+
+	case GNUTELLA_FN_PUSH:
+	  if (data == null) throw new IOException("push packet has null payload");
+	  gp = new GnutellaPushPacket(guid, ttl, hops, data, off, len);
+	  break;
+
+	case GNUTELLA_FN_QUERY:
+	  if (data == null) throw new IOException("query packet has null payload");
+	  gp = new GnutellaQueryPacket(guid, ttl, hops, data, off, len);
+	  break;
+
+	case GNUTELLA_FN_QUERYHITS:
+	  if (data == null) throw new IOException("query hits packet has null payload");
+	  gp = new GnutellaQueryHitsPacket(guid, ttl, hops, data, off, len);
+	  break;
+
+	default: 
+	  throw new IOException("GnutellaPacket got illegal function code "+Integer.toHexString(function));
+      }
+    } catch (IOException e) {
+      if (pooled) GnutellaBufferPool.free(data);
+      throw e;
     }
+    if (pooled) gp.setPooled();
 
-    completePackets.addElement(gp);
+    if (batchCount == batch.length) {
+      GnutellaPacket tmp[] = new GnutellaPacket[batch.length*2];
+      System.arraycopy(batch, 0, tmp, 0, batchCount);
+      batch = tmp;
+    }
+    batch[batchCount++] = gp;
   }
 
 
@@ -56,6 +56,12 @@ public class GnutellaPongPacket extends GnutellaPacket {
     if (payload != null) parsePayload();
   }
 
+  // Used by GnutellaPacketReader
+  GnutellaPongPacket(GnutellaGUID guid, int ttl, int hops, byte[] payload, int offset, int length) throws UnknownHostException {
+    super(guid, GNUTELLA_FN_PONG, ttl, hops, payload, offset, length);
+    parsePayload();
+  }
+
   /**
    * Create a pong packet with the given numfiles and numkb, with the
    * default port and local host address.
@@ -80,26 +86,28 @@ public class GnutellaPongPacket extends GnutellaPacket {
   }
 
   protected void prepareForSend() {
-    payload = new byte[14];
+    byte data[] = new byte[14];
 
-    writeLEShort(((short)port & 0xffff), payload, 0);
+    writeLEShort(((short)port & 0xffff), data, 0);
     byte addr[] = address.getAddress();
-    payload[2] = addr[0];
-    payload[3] = addr[1];
-    payload[4] = addr[2];
-    payload[5] = addr[3];
-
-    writeLEInt(numfiles, payload, 6);
-    writeLEInt(numkb, payload, 10);
+    data[2] = addr[0];
+    data[3] = addr[1];
+    data[4] = addr[2];
+    data[5] = addr[3];
+
+    writeLEInt(numfiles, data, 6);
+    writeLEInt(numkb, data, 10);
+    setPayload(data);
   }
 
   private void parsePayload() throws UnknownHostException {
-    port = (int)readLEShort(payload, 0);
-    String addr = (int)(payload[2] & 0xff) +"."+ (int)(payload[3] & 0xff) +"."+ (int)(payload[4] & 0xff) +"."+ (int)(payload[5] & 0xff);
+    int off = payload_offset;
+    port = (int)readLEShort(payload, off);
+    String addr = (int)(payload[off+2] & 0xff) +"."+ (int)(payload[off+3] & 0xff) +"."+ (int)(payload[off+4] & 0xff) +"."+ (int)(payload[off+5] & 0xff);
     address = InetAddress.getByName(addr);
 
-    numfiles = readLEInt(payload, 6);
-    numkb = readLEInt(payload, 10);
+    numfiles = readLEInt(payload, off+6);
+    numkb = readLEInt(payload, off+10);
   }
 
   /**
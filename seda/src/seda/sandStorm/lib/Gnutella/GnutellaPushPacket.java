@@ -43,6 +43,11 @@ public class GnutellaPushPacket extends GnutellaPacket {
     super(guid, GNUTELLA_FN_PUSH, ttl, hops, payload);
   }
 
+  // Used by GnutellaPacketReader
+  GnutellaPushPacket(GnutellaGUID guid, int ttl, int hops, byte[] payload, int offset, int length) {
+    super(guid, GNUTELLA_FN_PUSH, ttl, hops, payload, offset, length);
+  }
+
   public String toString() {
     return "GnutellaPushPacket";
   }
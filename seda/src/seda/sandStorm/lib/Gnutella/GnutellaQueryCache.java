@@ -0,0 +1,320 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.Gnutella;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import java.util.*;
+
+/**
+ * A GnutellaQueryCache is an optional stage which sits between a 
+ * GnutellaServer and the application, caching the query hits returned
+ * for recent search terms. When a query arrives for a search term that
+ * was seen within the cache's lifetime, it is not passed to the 
+ * application (and so is not flooded again); instead any cached query
+ * hits are sent straight back on the connection the query came from, 
+ * and hits which arrive later for the original query are copied to it
+ * as well. Further copies of a query with the same GUID, which arrive
+ * when the query is flooded to this node by several neighbours, are 
+ * dropped. All other events are passed to the application unchanged.
+ *
+ * <p>The cache is bounded by both the number of search terms and the
+ * total size of the cached query hits; the oldest terms are evicted 
+ * first. Statistics are available from toString(), and the number of 
+ * cached terms, the hit rate and the percentage of queries suppressed
+ * without an answer are registered with the profiler, if it is enabled.
+ *
+ * @see GnutellaServer
+ */
+public class GnutellaQueryCache implements EventHandlerIF, ProfilableIF, GnutellaConst {
+
+  private static final boolean DEBUG = false;
+
+  /** Default maximum number of cached search terms. */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+  /** Default maximum number of bytes of cached query hits. */
+  public static final int DEFAULT_MAX_BYTES = 4*1024*1024;
+  /** Default time for which a search term is cached, in milliseconds. */
+  public static final long DEFAULT_LIFETIME = 60000;
+
+  // Maximum number of query hits packets cached per search term
+  private static final int MAX_HITS_PER_ENTRY = 16;
+  // Maximum number of repeated queries waiting for hits per term
+  private static final int MAX_WAITERS_PER_ENTRY = 16;
+
+  // Entries are kept in a list in order of creation, which (as all 
+  // entries have the same lifetime) is also their order of expiry
+  private class cacheEntry {
+    String term;
+    long created;
+    boolean inCache;
+    Vector hits = new Vector(1);		// byte[] payloads
+    int bytes;
+    Vector waiters;			// GnutellaGUID, GnutellaConnection pairs
+    cacheEntry prev, next;
+  }
+
+  private ManagerIF mgr;
+  private GnutellaServer gs;
+  private SinkIF appSink;
+  private int maxEntries, maxBytes;
+  private long lifetime;
+
+  private Hashtable table;
+  private cacheEntry head, tail;
+  private int curBytes;
+  // Query GUID -> cacheEntry, so that hits can be matched to terms
+  private GnutellaRoutingTable queryTable;
+
+  private long numQueries, numAnswered, numSuppressed, numMisses;
+  private long numHitsCached, numHitsSent, numEvictions, numDuplicates;
+
+  /**
+   * Create a query cache with the default bounds, which receives 
+   * events from the given GnutellaServer and passes them on to appSink.
+   */
+  public GnutellaQueryCache(ManagerIF mgr, GnutellaServer gs, SinkIF appSink) throws Exception {
+    this(mgr, gs, appSink, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES, DEFAULT_LIFETIME);
+  }
+
+  /**
+   * Create a query cache holding at most maxEntries search terms and 
+   * maxBytes bytes of query hits, each for at most lifetime milliseconds, 
+   * which receives events from the given GnutellaServer and passes 
+   * them on to appSink. maxEntries and maxBytes must be positive.
+   */
+  public GnutellaQueryCache(ManagerIF mgr, GnutellaServer gs, SinkIF appSink, int maxEntries, int maxBytes, long lifetime) throws Exception {
+    if (maxEntries <= 0) throw new IllegalArgumentException("GnutellaQueryCache: maxEntries must be positive");
+    if (maxBytes <= 0) throw new IllegalArgumentException("GnutellaQueryCache: maxBytes must be positive");
+    this.mgr = mgr;
+    this.gs = gs;
+    this.appSink = appSink;
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.lifetime = lifetime;
+    this.table = new Hashtable();
+    this.queryTable = new GnutellaRoutingTable(lifetime);
+    mgr.createStage("GnutellaQueryCache", this, null);
+  }
+
+  public void init(ConfigDataIF config) throws Exception {
+    gs.registerSink(config.getStage().getSink());
+
+    ProfilerIF profiler = mgr.getProfiler();
+    if (profiler != null) {
+      profiler.add("GnutellaQueryCache entries", this);
+      profiler.add("GnutellaQueryCache hit percent", new ProfilableIF() {
+	public int profileSize() {
+	  return (int)(hitRatio() * 100.0);
+	}
+      });
+      profiler.add("GnutellaQueryCache suppressed percent", new ProfilableIF() {
+	public int profileSize() {
+	  return (int)(suppressedRatio() * 100.0);
+	}
+      });
+    }
+  }
+
+  public void destroy() {
+  }
+
+  public void handleEvent(QueueElementIF item) {
+    if (DEBUG) System.err.println("GnutellaQueryCache got: "+item);
+
+    if (item instanceof GnutellaQueryPacket) {
+      if (!handleQuery((GnutellaQueryPacket)item)) return;
+    } else if (item instanceof GnutellaQueryHitsPacket) {
+      handleHits((GnutellaQueryHitsPacket)item);
+    }
+    appSink.enqueue_lossy(item);
+  }
+
+  public void handleEvents(QueueElementIF items[]) {
+    for (int i = 0; i < items.length; i++) {
+      handleEvent(items[i]);
+    }
+  }
+
+  // Returns true if the query should be passed to the application
+  private boolean handleQuery(GnutellaQueryPacket query) {
+    String term = query.getSearchTerm();
+    if (term == null) return true;
+    GnutellaConnection gc = query.getConnection();
+    byte answers[][] = null;
+
+    synchronized (this) {
+      // Another copy of a query already seen (flooded to us by a 
+      // different neighbour) is dropped, so that its originator does
+      // not get the same hits twice
+      if (queryTable.get(query.getGUID()) != null) {
+	numDuplicates++;
+	if (DEBUG) System.err.println("GnutellaQueryCache: Dropping duplicate query "+query);
+	query.release();
+	return false;
+      }
+
+      numQueries++;
+      long now = System.currentTimeMillis();
+      expire(now);
+
+      cacheEntry ent = (cacheEntry)table.get(term);
+      if (ent == null) {
+	numMisses++;
+	ent = new cacheEntry();
+	ent.term = term;
+	ent.created = now;
+	insert(ent);
+	queryTable.put(query.getGUID(), ent);
+	return true;
+      }
+
+      if (ent.hits.size() != 0) {
+	numAnswered++;
+	answers = new byte[ent.hits.size()][];
+	ent.hits.copyInto(answers);
+	numHitsSent += answers.length;
+      } else {
+	numSuppressed++;
+      }
+      queryTable.put(query.getGUID(), ent);
+      // Later hits for this term are copied to this query as well
+      if (ent.waiters == null) ent.waiters = new Vector(2);
+      if (ent.waiters.size() < MAX_WAITERS_PER_ENTRY*2) {
+	ent.waiters.addElement(query.getGUID());
+	ent.waiters.addElement(gc);
+      }
+    }
+
+    if (answers != null) {
+      for (int i = 0; i < answers.length; i++) {
+	sendHits(query.getGUID(), gc, answers[i]);
+      }
+    }
+    if (DEBUG) System.err.println("GnutellaQueryCache: Not forwarding repeated query "+query);
+    query.release();
+    return false;
+  }
+
+  private void handleHits(GnutellaQueryHitsPacket hits) {
+    Vector waiters = null;
+    byte data[];
+
+    synchronized (this) {
+      cacheEntry ent = (cacheEntry)queryTable.get(hits.getGUID());
+      if ((ent == null) || !ent.inCache) return;
+      if (ent.hits.size() >= MAX_HITS_PER_ENTRY) return;
+      int len = hits.payload_length;
+      if (len > maxBytes) return;
+
+      data = new byte[len];
+      System.arraycopy(hits.payload, hits.payload_offset, data, 0, len);
+      ent.hits.addElement(data);
+      ent.bytes += len;
+      curBytes += len;
+      numHitsCached++;
+      if (ent.waiters != null) {
+	waiters = (Vector)ent.waiters.clone();
+	numHitsSent += waiters.size()/2;
+      }
+      while (curBytes > maxBytes) evict();
+    }
+
+    if (waiters != null) {
+      for (int i = 0; i < waiters.size(); i += 2) {
+	sendHits((GnutellaGUID)waiters.elementAt(i), (GnutellaConnection)waiters.elementAt(i+1), data);
+      }
+    }
+  }
+
+  private void sendHits(GnutellaGUID guid, GnutellaConnection gc, byte data[]) {
+    GnutellaQueryHitsPacket pkt = new GnutellaQueryHitsPacket(guid, DEFAULT_TTL, DEFAULT_HOPS, data, 0, data.length);
+    gc.enqueue_lossy(pkt);
+  }
+
+  private void insert(cacheEntry ent) {
+    while (table.size() >= maxEntries) evict();
+    ent.inCache = true;
+    ent.prev = tail;
+    if (tail == null) head = ent; else tail.next = ent;
+    tail = ent;
+    table.put(ent.term, ent);
+  }
+
+  private void remove(cacheEntry ent) {
+    table.remove(ent.term);
+    if (ent.prev == null) head = ent.next; else ent.prev.next = ent.next;
+    if (ent.next == null) tail = ent.prev; else ent.next.prev = ent.prev;
+    ent.prev = ent.next = null;
+    ent.inCache = false;
+    curBytes -= ent.bytes;
+  }
+
+  private void evict() {
+    if (DEBUG) System.err.println("GnutellaQueryCache: Evicting "+head.term);
+    numEvictions++;
+    remove(head);
+  }
+
+  private void expire(long now) {
+    while ((head != null) && (now - head.created > lifetime)) {
+      remove(head);
+    }
+  }
+
+  /**
+   * Return the number of search terms in the cache.
+   */
+  public synchronized int numEntries() {
+    return table.size();
+  }
+
+  /**
+   * Return the fraction of queries which were answered from the 
+   * cache. Copies of a query with a GUID already seen are not counted.
+   */
+  public synchronized double hitRatio() {
+    if (numQueries == 0) return 0.0;
+    return (numAnswered * 1.0) / numQueries;
+  }
+
+  /**
+   * Return the fraction of queries which were held back as repeats of
+   * a recent search term for which no hits had been cached yet; these
+   * are neither flooded nor answered until hits arrive.
+   */
+  public synchronized double suppressedRatio() {
+    if (numQueries == 0) return 0.0;
+    return (numSuppressed * 1.0) / numQueries;
+  }
+
+  public int profileSize() {
+    return numEntries();
+  }
+
+  public synchronized String toString() {
+    return "GnutellaQueryCache [entries="+table.size()+", bytes="+curBytes+"/"+maxBytes+", queries="+numQueries+", answered="+numAnswered+", suppressed="+numSuppressed+", misses="+numMisses+", hitsCached="+numHitsCached+", hitsSent="+numHitsSent+", evictions="+numEvictions+", duplicates="+numDuplicates+"]";
+  }
+
+}
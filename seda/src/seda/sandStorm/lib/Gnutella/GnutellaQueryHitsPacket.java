@@ -68,6 +68,11 @@ public class GnutellaQueryHitsPacket extends GnutellaPacket {
     //parsePayload();
   }
 
+  // Used by GnutellaPacketReader
+  GnutellaQueryHitsPacket(GnutellaGUID guid, int ttl, int hops, byte[] payload, int offset, int length) {
+    super(guid, GNUTELLA_FN_QUERYHITS, ttl, hops, payload, offset, length);
+  }
+
   /**
    * Create a GnutellaQueryHitsPacket from the given GnutellaQueryHit
    * array.
@@ -92,14 +97,15 @@ public class GnutellaQueryHitsPacket extends GnutellaPacket {
   }
 
   private void parsePayload() throws UnknownHostException {
-    int num_hits = payload[0];
-    port = readLEShort(payload, 1);
+    int off = payload_offset;
+    int num_hits = payload[off];
+    port = readLEShort(payload, off+1);
 
-    String addr = (int)(payload[2] & 0xff) +"."+ (int)(payload[3] & 0xff) +"."+ (int)(payload[4] & 0xff) +"."+ (int)(payload[5] & 0xff);
+    String addr = (int)(payload[off+2] & 0xff) +"."+ (int)(payload[off+3] & 0xff) +"."+ (int)(payload[off+4] & 0xff) +"."+ (int)(payload[off+5] & 0xff);
     address = InetAddress.getByName(addr);
 
-    speed = readLEInt(payload, 7);
-    int off = 8;
+    speed = readLEInt(payload, off+7);
+    off += 8;
 
     hits = new GnutellaQueryHit[num_hits];
     for (int i = 0; i < num_hits; i++) {
@@ -55,6 +55,12 @@ public class GnutellaQueryPacket extends GnutellaPacket {
     parsePayload();
   }
 
+  // Used by GnutellaPacketReader
+  GnutellaQueryPacket(GnutellaGUID guid, int ttl, int hops, byte[] payload, int offset, int length) {
+    super(guid, GNUTELLA_FN_QUERY, ttl, hops, payload, offset, length);
+    parsePayload();
+  }
+
   /** 
    * Create a query packet with the given search term and minspeed.
    */
@@ -66,20 +72,21 @@ public class GnutellaQueryPacket extends GnutellaPacket {
 
   private void parsePayload() {
     if ((payload == null) ||
-	(payload.length < 3)) {
+	(payload_length < 3)) {
       // Technically this doesn't make sense, but lots of bogus packets
       // are flying around out there
       return;
     }
 
-    minspeed = readLEShort(payload, 0);
+    int off = payload_offset;
+    minspeed = readLEShort(payload, off);
     // Ignore null byte at end
     // Strip off non-ASCII characters
-    if (payload.length > 3) {
-      for (int i = 2; i < payload.length-3; i++) {
+    if (payload_length > 3) {
+      for (int i = off+2; i < off+payload_length-3; i++) {
         if ((payload[i] < 32) || (payload[i] > 126)) payload[i] = (byte)'?';
       }
-      searchterm = new String(payload, 2, payload.length-3);
+      searchterm = new String(payload, off+2, payload_length-3);
     } else {
       searchterm = null;
     }
@@ -90,15 +97,17 @@ public class GnutellaQueryPacket extends GnutellaPacket {
       byte barr[] = searchterm.getBytes();
     // Extra null at end
       int payload_len = 2+barr.length+1;
-      payload = new byte[payload_len];
-      writeLEShort((short)minspeed & 0xffff, payload, 0);
-      System.arraycopy(barr, 0, payload, 2, barr.length);
-      payload[payload_len-1] = 0;
+      byte data[] = new byte[payload_len];
+      writeLEShort((short)minspeed & 0xffff, data, 0);
+      System.arraycopy(barr, 0, data, 2, barr.length);
+      data[payload_len-1] = 0;
+      setPayload(data);
     } else {
       // Just null char for search term
-      payload = new byte[3];
-      writeLEShort((short)minspeed & 0xffff, payload, 0);
-      payload[2] = 0;
+      byte data[] = new byte[3];
+      writeLEShort((short)minspeed & 0xffff, data, 0);
+      data[2] = 0;
+      setPayload(data);
     }
   }
 
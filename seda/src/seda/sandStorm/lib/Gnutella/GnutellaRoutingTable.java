@@ -0,0 +1,267 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.lib.Gnutella;
+
+import seda.util.Clock;
+
+/**
+ * A table recording which connection each recently seen packet GUID
+ * arrived on. It is used both to suppress duplicate pings and queries
+ * and to route pongs and query hits back towards their origin.
+ *
+ * <p>The table uses open addressing with linear probing. The two 
+ * halves of each GUID and the entry's generation stamp are kept side 
+ * by side in a single long array, so that a probe touches one cache 
+ * line and lookups and insertions allocate nothing. Each entry is stamped with the 
+ * generation (a fraction of the expiry time) in which it was stored,
+ * and is ignored once it is older than the expiry time. Expired 
+ * entries are reclaimed a few at a time on each insertion, rather than
+ * by clearing the whole table.
+ */
+public class GnutellaRoutingTable {
+
+  private static final boolean DEBUG = false;
+
+  private static final int DEFAULT_CAPACITY = 4096;
+  // Number of generations making up the expiry time
+  private static final int GENERATIONS = 8;
+  // Number of slots examined for expired entries on each insertion
+  private static final int SWEEP_PER_PUT = 2;
+  // Grow the table when more than this fraction of slots is in use
+  private static final double MAX_LOAD = 0.5;
+
+  // Slot i is keys[3i] (low half of GUID), keys[3i+1] (high half) and
+  // keys[3i+2], the generation in which the entry was stored (0 if the 
+  // slot is empty)
+  private long keys[];
+  private Object route[];
+  private int mask;
+  private int used;
+  private int sweep;
+
+  private long genLength;
+  private long baseTime;
+
+  /**
+   * Create a routing table whose entries expire after the given 
+   * number of milliseconds.
+   */
+  public GnutellaRoutingTable(long expiryMillis) {
+    this(DEFAULT_CAPACITY, expiryMillis);
+  }
+
+  /**
+   * Create a routing table with room for about initialCapacity/2 
+   * entries before it grows, whose entries expire after the given 
+   * number of milliseconds.
+   */
+  public GnutellaRoutingTable(int initialCapacity, long expiryMillis) {
+    int cap = 16;
+    while (cap < initialCapacity) cap <<= 1;
+    alloc(cap);
+    this.genLength = Math.max(1, expiryMillis / GENERATIONS);
+    this.baseTime = Clock.currentTimeMillis();
+  }
+
+  private void alloc(int cap) {
+    keys = new long[cap*3];
+    route = new Object[cap];
+    mask = cap - 1;
+    used = 0;
+    sweep = 0;
+  }
+
+  // Current generation; always at least 1. Clock.currentTimeMillis()
+  // is a volatile read, so it is cheap enough to call on every operation.
+  private int curGen() {
+    return (int)((Clock.currentTimeMillis() - baseTime) / genLength) + 1;
+  }
+
+  private static boolean expired(long s, int gen) {
+    return (gen - s) >= GENERATIONS;
+  }
+
+  private static int hash(long lo, long hi) {
+    long h = (lo * 0x9e3779b97f4a7c15L) ^ hi;
+    return (int)(h ^ (h >>> 32));
+  }
+
+  /**
+   * Record that a packet with the given GUID arrived on the given 
+   * connection (or other route object). Returns true if the GUID was
+   * not already in the table, and false (leaving the existing route 
+   * alone) if it has been seen within the expiry time. The route 
+   * must not be null.
+   */
+  public boolean put(GnutellaGUID guid, Object r) {
+    return put(guid.lo, guid.hi, r);
+  }
+
+  /**
+   * Return the route recorded for the given GUID, or null if the GUID 
+   * has not been seen within the expiry time.
+   */
+  public Object get(GnutellaGUID guid) {
+    return get(guid.lo, guid.hi);
+  }
+
+  /**
+   * Return true if the given GUID has been seen within the expiry time.
+   */
+  public boolean contains(GnutellaGUID guid) {
+    return (get(guid.lo, guid.hi) != null);
+  }
+
+  private synchronized boolean put(long lo, long hi, Object r) {
+    int gen = curGen();
+    doSweep(gen);
+
+    int i = hash(lo, hi) & mask;
+    int free = -1;
+    long s;
+    while ((s = keys[i*3+2]) != 0) {
+      if ((keys[i*3] == lo) && (keys[i*3+1] == hi)) {
+	if (!expired(s, gen)) return false;
+	// Seen before, but long enough ago to count as new
+	keys[i*3+2] = gen;
+	route[i] = r;
+	return true;
+      }
+      if ((free == -1) && expired(s, gen)) free = i;
+      i = (i+1) & mask;
+    }
+
+    if (free == -1) {
+      free = i;
+      used++;
+    }
+    keys[free*3] = lo;
+    keys[free*3+1] = hi;
+    keys[free*3+2] = gen;
+    route[free] = r;
+
+    if (used > (mask+1) * MAX_LOAD) rehash(gen);
+    return true;
+  }
+
+  private synchronized Object get(long lo, long hi) {
+    int gen = curGen();
+    int i = hash(lo, hi) & mask;
+    long s;
+    while ((s = keys[i*3+2]) != 0) {
+      if ((keys[i*3] == lo) && (keys[i*3+1] == hi)) {
+	if (expired(s, gen)) return null;
+	return route[i];
+      }
+      i = (i+1) & mask;
+    }
+    return null;
+  }
+
+  // Reclaim expired entries in the next few slots
+  private void doSweep(int gen) {
+    for (int n = 0; n < SWEEP_PER_PUT; n++) {
+      long s = keys[sweep*3+2];
+      if ((s != 0) && expired(s, gen)) {
+	removeAt(sweep);
+      }
+      sweep = (sweep+1) & mask;
+    }
+  }
+
+  // Empty slot i, moving later entries of the probe sequence back so
+  // that lookups do not stop short of them
+  private void removeAt(int i) {
+    keys[i*3+2] = 0;
+    route[i] = null;
+    used--;
+    int j = i;
+    while (true) {
+      j = (j+1) & mask;
+      if (keys[j*3+2] == 0) return;
+      int home = hash(keys[j*3], keys[j*3+1]) & mask;
+      // Entry j can stay unless its home slot lies cyclically in (i, j]
+      boolean stay = (i <= j) ? ((i < home) && (home <= j)) 
+			      : ((i < home) || (home <= j));
+      if (!stay) {
+	keys[i*3] = keys[j*3];
+	keys[i*3+1] = keys[j*3+1];
+	keys[i*3+2] = keys[j*3+2];
+	route[i] = route[j];
+	keys[j*3+2] = 0;
+	route[j] = null;
+	i = j;
+      }
+    }
+  }
+
+  // Rebuild the table with only the live entries, doubling its size
+  // if they still fill more than half of the new table's load limit
+  private void rehash(int gen) {
+    long oldKeys[] = keys;
+    Object oldRoute[] = route;
+    int oldCap = mask+1;
+
+    int live = 0;
+    for (int i = 0; i < oldCap; i++) {
+      long s = oldKeys[i*3+2];
+      if ((s != 0) && !expired(s, gen)) live++;
+    }
+    int cap = oldCap;
+    if (live > cap * MAX_LOAD / 2) cap <<= 1;
+    if (DEBUG) System.err.println("GnutellaRoutingTable: rehash, "+live+" live entries, capacity "+cap);
+
+    alloc(cap);
+    for (int i = 0; i < oldCap; i++) {
+      long s = oldKeys[i*3+2];
+      if ((s == 0) || expired(s, gen)) continue;
+      int j = hash(oldKeys[i*3], oldKeys[i*3+1]) & mask;
+      while (keys[j*3+2] != 0) j = (j+1) & mask;
+      keys[j*3] = oldKeys[i*3];
+      keys[j*3+1] = oldKeys[i*3+1];
+      keys[j*3+2] = s;
+      route[j] = oldRoute[i];
+      used++;
+    }
+  }
+
+  /**
+   * Return the number of occupied slots, which may include expired 
+   * entries not yet reclaimed.
+   */
+  public synchronized int size() {
+    return used;
+  }
+
+  /**
+   * Return the number of slots in the table.
+   */
+  public synchronized int capacity() {
+    return mask+1;
+  }
+
+  public synchronized String toString() {
+    return "GnutellaRoutingTable [size="+used+", capacity="+(mask+1)+", expiry="+(genLength*GENERATIONS)+" ms]";
+  }
+
+}
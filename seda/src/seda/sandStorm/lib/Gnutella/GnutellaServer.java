@@ -70,7 +70,10 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
   // InetAddress -> ATcpClientSocket (self)
   private Hashtable pendingConnTable;
 
-  private Vector activeConnections;
+  // Connections which have completed the handshake. Replaced, never
+  // modified, when a connection is added or removed, so that 
+  // sendToAllButOne can walk it without locking.
+  private volatile GnutellaConnection activeConnections[];
 
   private static int num_svrs;
   private static byte connectMsg[];
@@ -118,7 +121,7 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
     this.connTable = new Hashtable(1);
     this.newConnTable = new Hashtable(1);
     this.pendingConnTable = new Hashtable(1);
-    this.activeConnections = new Vector(1);
+    this.activeConnections = new GnutellaConnection[0];
 
     // Create the stage and register it
     mgr.createStage("GnutellaServer "+num_svrs+" <port "+listenPort+">",
@@ -191,13 +194,20 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
       }
 
     } else if (qel instanceof SinkDrainedEvent) {
-      // Ignore
+      // A write completed, so the connection is no longer clogged
+      SinkDrainedEvent sde = (SinkDrainedEvent)qel;
+      GnutellaConnection gc = (GnutellaConnection)connTable.get(sde.sink);
+      if (gc != null) gc.clogged = false;
 
     } else if (qel instanceof SinkCloggedEvent) {
-      // Some connection is clogged; tell the user 
+      // Some connection is clogged; stop broadcasting to it and 
+      // tell the user 
       SinkCloggedEvent sce = (SinkCloggedEvent)qel;
       GnutellaConnection gc = (GnutellaConnection)connTable.get(sce.sink);
-      if (gc != null) clientSink.enqueue_lossy(new SinkCloggedEvent(gc, null));
+      if (gc != null) {
+	gc.clogged = true;
+	clientSink.enqueue_lossy(new SinkCloggedEvent(gc, null));
+      }
 
     } else if (qel instanceof SinkClosedEvent) {
       // Some connection closed; tell the user 
@@ -266,7 +276,7 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
     // Profile the connection if profiling enabled
     ProfilerIF profiler = mgr.getProfiler();
     SandstormConfig cfg = mgr.getConfig();
-    if ((profiler != null) && (cfg.getBoolean("global.profile.sockets"))) profiler.add(conn.toString(), conn);
+    if ((profiler != null) && (cfg.getSnapshot().profileSockets)) profiler.add(conn.toString(), conn);
 
     if (DEBUG) System.err.println("GnutellaServer: handleIncomingConnection doing startReader");
     conn.startReader(mySink);
@@ -277,7 +287,7 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
     GnutellaConnection gc = new GnutellaConnection(this, conn);
 
     connTable.put(conn, gc);
-    activeConnections.addElement(gc);
+    addActive(gc);
     if (!clientSink.enqueue_lossy(gc)) {
       System.err.println("GS: Warning: Cannot enqueue_lossy "+gc);
     }
@@ -295,7 +305,28 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
     readerTable.remove(tcpconn);
     connTable.remove(tcpconn);
     newConnTable.remove(tcpconn);
-    if (gc != null) activeConnections.removeElement(gc);
+    if (gc != null) removeActive(gc);
+  }
+
+  private synchronized void addActive(GnutellaConnection gc) {
+    GnutellaConnection old[] = activeConnections;
+    GnutellaConnection arr[] = new GnutellaConnection[old.length+1];
+    System.arraycopy(old, 0, arr, 0, old.length);
+    arr[old.length] = gc;
+    activeConnections = arr;
+  }
+
+  private synchronized void removeActive(GnutellaConnection gc) {
+    GnutellaConnection old[] = activeConnections;
+    for (int i = 0; i < old.length; i++) {
+      if (old[i] == gc) {
+	GnutellaConnection arr[] = new GnutellaConnection[old.length-1];
+	System.arraycopy(old, 0, arr, 0, i);
+	System.arraycopy(old, i+1, arr, i, old.length-i-1);
+	activeConnections = arr;
+	return;
+      }
+    }
   }
 
   private void handleHandshake(ATcpInPacket pkt) {
@@ -377,18 +408,24 @@ public class GnutellaServer implements EventHandlerIF, GnutellaConst {
 
   /**
    * Send a packet to all nodes but the given node. Useful for packet
-   * routing.
+   * routing. The packet is rendered to bytes once, and the same buffer 
+   * is handed to every connection in a single batch. Connections which 
+   * are currently clogged are skipped; the packet is simply not sent 
+   * to them.
    */
   public void sendToAllButOne(GnutellaPacket pkt, GnutellaConnection exclude) {
-
-    for (int i = 0; i < activeConnections.size(); i++) {
-      GnutellaConnection gc = (GnutellaConnection)activeConnections.elementAt(i);
-      if (!gc.equals(exclude)) {
-	if (!gc.enqueue_lossy(pkt)) {
-	  System.err.println("GS: Warning: Could not enqueue_lossy packet to "+gc);
-	}
-      }
+    GnutellaConnection peers[] = activeConnections;
+    ATcpConnection conns[] = new ATcpConnection[peers.length];
+    int n = 0;
+    for (int i = 0; i < peers.length; i++) {
+      GnutellaConnection gc = peers[i];
+      if ((gc != exclude) && !gc.clogged) conns[n++] = gc.getConnection();
     }
+    if (n == 0) return;
+
+    BufferElement buf = pkt.getBuffer();
+    buf.compQ = mySink;
+    ATcpConnection.enqueue_lossy_all(conns, n, buf);
   }
 
   /** 
@@ -0,0 +1,227 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.sandStorm.lib.Gnutella.*;
+import seda.util.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * A synthetic query load generator for a Gnutella server, such as
+ * SimpleGnutellaServer with its query cache enabled. It uses 
+ * GnutellaCatcher to open a number of connections to the server, then
+ * sends queries over them at a fixed rate, drawing search terms from a
+ * skewed distribution so that popular terms recur. Each connection 
+ * also behaves as a peer sharing some fraction of the terms: when the
+ * server floods a query for a shared term to it, it replies with a 
+ * query hit. The statistics printed show how many floods each query 
+ * caused and how many hits came back, which shows the effect of 
+ * caching on the server.
+ *
+ * <p>Initargs: <tt>server</tt>, <tt>port</tt>, <tt>connections</tt>, 
+ * <tt>queryRate</tt> (queries per second), <tt>numTerms</tt>, and 
+ * <tt>sharedPercent</tt>.
+ */
+public class GnutellaQueryLoad implements EventHandlerIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final int DEFAULT_CONNECTIONS = 8;
+  private static final int DEFAULT_QUERY_RATE = 100;
+  private static final int DEFAULT_NUM_TERMS = 1000;
+  private static final int DEFAULT_SHARED_PERCENT = 50;
+
+  // Time (in ms) between batches of queries
+  private static final int TICK_INTERVAL = 100;
+  // Time (in ms) between statistics reports
+  private static final int STATS_INTERVAL = 5000;
+
+  private ManagerIF mgr;
+  private SinkIF mySink;
+  private ssTimer timer;
+  private GnutellaServer gs;
+  private GnutellaCatcher catcher;
+  private Vector conns;
+  private Random rand;
+  private byte serventID[];
+
+  private int connections, queryRate, numTerms, sharedPercent;
+  private int nextConn;
+  private long numSent, numFloods, numAnswered, numHits;
+  private long lastSent, lastFloods, lastHits;
+
+  public GnutellaQueryLoad() {
+  }
+
+  public void init(ConfigDataIF config) throws Exception {
+    mgr = config.getManager();
+    mySink = config.getStage().getSink();
+    conns = new Vector();
+    rand = new Random();
+    serventID = new byte[16];
+    rand.nextBytes(serventID);
+
+    String server = config.getString("server");
+    if (server == null) server = "localhost";
+    int port = config.getInt("port");
+    if (port == -1) port = GnutellaConst.DEFAULT_GNUTELLA_PORT;
+    connections = config.getInt("connections");
+    if (connections == -1) connections = DEFAULT_CONNECTIONS;
+    queryRate = config.getInt("queryRate");
+    if (queryRate == -1) queryRate = DEFAULT_QUERY_RATE;
+    numTerms = config.getInt("numTerms");
+    if (numTerms == -1) numTerms = DEFAULT_NUM_TERMS;
+    sharedPercent = config.getInt("sharedPercent");
+    if (sharedPercent == -1) sharedPercent = DEFAULT_SHARED_PERCENT;
+
+    gs = new GnutellaServer(mgr, mySink, 0);
+    catcher = new GnutellaCatcher(mgr, gs);
+    // Each call bootstraps through the server, yielding one connection
+    for (int i = 0; i < connections; i++) {
+      catcher.doCatch(1, server, port);
+    }
+    System.err.println("GnutellaQueryLoad: Opening "+connections+" connections to "+server+":"+port+", "+queryRate+" queries/sec over "+numTerms+" terms, "+sharedPercent+"% shared");
+
+    timer = new ssTimer();
+    timer.registerEvent(TICK_INTERVAL, new timerEvent(1), mySink);
+    timer.registerEvent(STATS_INTERVAL, new timerEvent(2), mySink);
+  }
+
+  public void destroy() {
+  }
+
+  public void handleEvent(QueueElementIF item) {
+    if (DEBUG) System.err.println("GnutellaQueryLoad: GOT "+item);
+
+    if (item instanceof GnutellaQueryPacket) {
+      GnutellaQueryPacket query = (GnutellaQueryPacket)item;
+      numFloods++;
+      int term = termIndex(query.getSearchTerm());
+      if ((term != -1) && isShared(term)) {
+	numAnswered++;
+	query.getConnection().enqueue_lossy(makeHits(query.getGUID(), term));
+      }
+
+    } else if (item instanceof GnutellaQueryHitsPacket) {
+      numHits++;
+
+    } else if (item instanceof GnutellaConnection) {
+      conns.addElement(item);
+      if (DEBUG) System.err.println("GnutellaQueryLoad: "+conns.size()+" connections");
+
+    } else if (item instanceof SinkClosedEvent) {
+      conns.removeElement(((SinkClosedEvent)item).sink);
+
+    } else if (item instanceof timerEvent) {
+      timerEvent ev = (timerEvent)item;
+      if (ev.code == 1) {
+	sendQueries();
+	timer.registerEvent(TICK_INTERVAL, ev, mySink);
+      } else {
+	printStats();
+	timer.registerEvent(STATS_INTERVAL, ev, mySink);
+      }
+    }
+  }
+
+  public void handleEvents(QueueElementIF items[]) {
+    for (int i = 0; i < items.length; i++) {
+      handleEvent(items[i]);
+    }
+  }
+
+  private void sendQueries() {
+    if (conns.size() == 0) return;
+    int n = (queryRate * TICK_INTERVAL) / 1000;
+    for (int i = 0; i < n; i++) {
+      // Squaring a uniform variate favours low-numbered terms
+      double r = rand.nextDouble();
+      int term = (int)(r * r * numTerms);
+      GnutellaConnection gc = (GnutellaConnection)conns.elementAt(nextConn++ % conns.size());
+      gc.enqueue_lossy(new GnutellaQueryPacket("term "+term, 0));
+      numSent++;
+    }
+  }
+
+  private int termIndex(String term) {
+    if ((term == null) || !term.startsWith("term ")) return -1;
+    try {
+      return Integer.parseInt(term.substring(5));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private boolean isShared(int term) {
+    return ((term * 37) % 100) < sharedPercent;
+  }
+
+  // Build a query hits packet with a single result for the given term
+  private GnutellaQueryHitsPacket makeHits(GnutellaGUID guid, int term) {
+    byte name[] = ("file "+term+".mp3").getBytes();
+    byte payload[] = new byte[11 + 8 + name.length + 2 + 16];
+    payload[0] = 1;
+    payload[1] = (byte)(GnutellaConst.DEFAULT_DOWNLOAD_PORT & 0xff);
+    payload[2] = (byte)((GnutellaConst.DEFAULT_DOWNLOAD_PORT >> 8) & 0xff);
+    payload[3] = 127; payload[6] = 1;
+    payload[7] = (byte)0xe8; payload[8] = 0x03;
+    int off = 11;
+    payload[off] = (byte)term; payload[off+1] = (byte)(term >> 8);
+    payload[off+4] = 0; payload[off+5] = 0x10;
+    off += 8;
+    System.arraycopy(name, 0, payload, off, name.length);
+    off += name.length + 2;
+    System.arraycopy(serventID, 0, payload, off, 16);
+    try {
+      return new GnutellaQueryHitsPacket(guid, GnutellaConst.DEFAULT_TTL, 0, payload);
+    } catch (UnknownHostException e) {
+      // Not thrown: the payload is not parsed
+      throw new RuntimeException(e.toString());
+    }
+  }
+
+  private void printStats() {
+    long sent = numSent - lastSent;
+    long floods = numFloods - lastFloods;
+    long hits = numHits - lastHits;
+    lastSent = numSent; lastFloods = numFloods; lastHits = numHits;
+    double fpq = (sent == 0) ? 0.0 : (floods * 1.0) / sent;
+    double hpq = (sent == 0) ? 0.0 : (hits * 1.0) / sent;
+    System.err.println("GnutellaQueryLoad: "+conns.size()+" connections, "+sent+" queries sent, "+floods+" floods received ("+MDWUtil.format(fpq)+"/query), "+hits+" hits received ("+MDWUtil.format(hpq)+"/query)");
+  }
+
+  /**
+   * Small internal class to represent a timer event.
+   */
+  class timerEvent implements QueueElementIF {
+    private int code;
+    timerEvent(int code) {
+      this.code = code;
+    }
+  }
+
+}
@@ -45,8 +45,8 @@ public class SimpleGnutellaServer implements EventHandlerIF {
   private static final boolean DEBUG = false;
   private static final boolean VERBOSE = true;
 
-  // If true, periodically clean out table of previously received packets
-  private static boolean DO_CLEANER = true;
+  // If true, periodically print memory usage and routing table size
+  private static boolean DO_STATS = true;
 
   // If true, accept connections from other hosts on the Gnutella network
   private static boolean ACCEPT_CONNECTIONS = true;
@@ -58,8 +58,11 @@ public class SimpleGnutellaServer implements EventHandlerIF {
   // If true, route packets
   private static boolean ROUTE_PACKETS = true;
 
-  // Time (in ms) between iterations of the cleaner
-  private static final int CLEAN_TIMER_FREQUENCY = 1000*30;
+  // Time (in ms) between statistics reports
+  private static final int STATS_TIMER_FREQUENCY = 1000*30;
+
+  // Time (in ms) for which packet GUIDs are remembered for routing
+  private static final int ROUTE_EXPIRY_TIME = 1000*30;
 
   private static String SERVER_HOSTNAME;
 
@@ -69,6 +72,10 @@ public class SimpleGnutellaServer implements EventHandlerIF {
   private static int CATCHER_CONNECTIONS = 10;
   private static final int MIN_CONNECTIONS = 2;
 
+  // If true, answer repeated queries from a GnutellaQueryCache rather
+  // than flooding them again
+  private static boolean QUERY_CACHE = false;
+
   // Number of files and Kb "shared" by this server - only used for
   // filling out pong packets
   private static final int NUM_FILES = 1000;
@@ -79,7 +86,8 @@ public class SimpleGnutellaServer implements EventHandlerIF {
   private SinkIF mySink;
   private ssTimer timer;
   private GnutellaServer gs;
-  private Hashtable packetTable;
+  private GnutellaRoutingTable packetTable;
+  private GnutellaQueryCache queryCache;
 
   private int num_connections = 0;
 
@@ -100,10 +108,14 @@ public class SimpleGnutellaServer implements EventHandlerIF {
     int port = config.getInt("port");
     if (port == -1) port = GnutellaConst.DEFAULT_GNUTELLA_PORT;
 
-    packetTable = new Hashtable();
+    if (config.contains("catcher")) DO_CATCHER = config.getBoolean("catcher");
+    if (config.contains("queryCache")) QUERY_CACHE = config.getBoolean("queryCache");
+
+    packetTable = new GnutellaRoutingTable(ROUTE_EXPIRY_TIME);
 
     try {
       gs = new GnutellaServer(mgr, mySink, port);
+      if (QUERY_CACHE) queryCache = new GnutellaQueryCache(mgr, gs, mySink);
       if (DO_CATCHER) doCatcher();
 
     } catch (IOException ioe) {
@@ -112,9 +124,9 @@ public class SimpleGnutellaServer implements EventHandlerIF {
     }
     System.err.println("Created GnutellaServer: "+gs);
 
-    if (DO_CLEANER) {
+    if (DO_STATS) {
       timer = new ssTimer();
-      timer.registerEvent(CLEAN_TIMER_FREQUENCY, new timerEvent(1), mySink);
+      timer.registerEvent(STATS_TIMER_FREQUENCY, new timerEvent(1), mySink);
     }
 
   }
@@ -171,13 +183,8 @@ public class SimpleGnutellaServer implements EventHandlerIF {
   // Look up an older packet for responses
   // Return true if the packet is unique; false if we have seen it before
   private boolean rememberPacket(GnutellaPacket pkt) {
-    GnutellaConnection gc = (GnutellaConnection)packetTable.get(pkt.getGUID());
-    if (gc != null) return false;
-
     if (DEBUG) System.err.println("**** REMEMBERING: "+pkt+" from "+pkt.getConnection());
-
-    packetTable.put(pkt.getGUID(), pkt.getConnection());
-    return true;
+    return packetTable.put(pkt.getGUID(), pkt.getConnection());
   }
 
   /**
@@ -250,6 +257,10 @@ public class SimpleGnutellaServer implements EventHandlerIF {
         doTimer((timerEvent)item);
       }
 
+      // Packets are not kept once they have been forwarded, so their
+      // payload buffers can be reused
+      if (item instanceof GnutellaPacket) ((GnutellaPacket)item).release();
+
     } catch (Exception e) {
       System.err.println("WORKER GOT EXCEPTION: "+e.getMessage());
       e.printStackTrace();
@@ -261,12 +272,10 @@ public class SimpleGnutellaServer implements EventHandlerIF {
       handleEvent(items[i]);
   }
 
-  private void doClean(timerEvent ev) {
-    // Cleaner event
-    if (VERBOSE) System.err.println("-- Cleaning up packetTable");
-
-    // Might cause some recent packets to be dropped
-    packetTable.clear();
+  private void doStats(timerEvent ev) {
+    // Old entries expire by themselves
+    if (VERBOSE) System.err.println("-- "+packetTable);
+    if (VERBOSE && (queryCache != null)) System.err.println("-- "+queryCache);
 
     if (VERBOSE) {
       Runtime r = Runtime.getRuntime();
@@ -274,12 +283,12 @@ public class SimpleGnutellaServer implements EventHandlerIF {
     }
 
     // Reregister timer event
-    timer.registerEvent(CLEAN_TIMER_FREQUENCY, ev, mySink);
+    timer.registerEvent(STATS_TIMER_FREQUENCY, ev, mySink);
   }
 
   private void doTimer(timerEvent ev) {
     if (ev.code == 1) {
-      doClean(ev);
+      doStats(ev);
     } else {
       throw new IllegalArgumentException("Bad code in timerEvent: "+ev.code);
     }
@@ -42,6 +42,7 @@ class AFileTPStageWrapper implements StageWrapperIF {
   private EventHandlerIF handler;
   private ConfigDataIF config;
   private ThreadManagerIF tm;
+  private StageStatsIF stats;
 
   // This stagewrapper has no (real) event queue: Threads created
   // by AFileTPTM will poll across the per-AFile queues instead.
@@ -52,6 +53,7 @@ class AFileTPStageWrapper implements StageWrapperIF {
     this.handler = handler;
     this.config = config;
     this.tm = tm;
+    this.stats = new StageStats(this);
     this.stage = new Stage(name, this, null, config);
     this.config.setStage(this.stage);
   }
@@ -102,9 +104,8 @@ class AFileTPStageWrapper implements StageWrapperIF {
     return tm;
   }
 
-  /** Not implemented. */
   public StageStatsIF getStats() {
-    return null;
+    return stats;
   }
 
   /** Not implemented. */
@@ -29,6 +29,7 @@ import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.internal.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.io.*;
 import java.util.*;
 
@@ -50,7 +51,8 @@ class AFileTPTM extends TPSThreadManager implements ThreadManagerIF, ProfilableI
   // queue of each file on fileQ
   private int numOutstandingRequests;
 
-  // Maximum number of consecutive requests to service per file
+  // Maximum number of consecutive requests to service per file, 
+  // unless the pool's BatchController sets it
   private static final int MAX_REQUESTS_PER_FILE = 10;
   // Block time for file queue
   private static final int QUEUE_BLOCK_TIME = 1000;
@@ -60,10 +62,10 @@ class AFileTPTM extends TPSThreadManager implements ThreadManagerIF, ProfilableI
 
     if (DEBUG) System.err.println("AFileTPTM: Created");
 
-    if (config.getBoolean("global.aDisk.threadPool.sizeController.enable")) {
+    ConfigSnapshot snap = config.getSnapshot();
+    if (snap.aDiskSizeControllerEnable) {
       sizeController = new ThreadPoolController(mgr, 
-	  config.getInt("global.aDisk.threadPool.sizeController.delay"),
-	  config.getInt("global.aDisk.threadPool.sizeController.threshold"));
+	  snap.aDiskSizeControllerDelay, snap.aDiskSizeControllerThreshold);
     }
 
     fileQ = new FiniteQueue();
@@ -84,13 +86,10 @@ class AFileTPTM extends TPSThreadManager implements ThreadManagerIF, ProfilableI
   public void register(StageWrapperIF stage) {
     // Create a single threadPool - only one stage registered with us
     AFileTPThread at = new AFileTPThread((AFileTPStageWrapper)stage);
-    SandstormConfig config = mgr.getConfig();
+    ConfigSnapshot snap = mgr.getConfig().getSnapshot();
     ThreadPool tp = new ThreadPool(stage, mgr, at,
-	config.getInt("global.aDisk.threadPool.initialThreads"),
-	config.getInt("global.aDisk.threadPool.minThreads"),
-	config.getInt("global.aDisk.threadPool.maxThreads"),
-	config.getInt("global.threadPool.blockTime"),
-	config.getInt("global.threadPool.sizeController.idleTimeThreshold"));
+	snap.aDiskInitialThreads, snap.aDiskMinThreads, snap.aDiskMaxThreads,
+	snap.threadPoolBlockTime, snap.threadPoolIdleTimeThreshold);
     at.registerTP(tp);
     // Use numOutstandingRequests as metric
     if (sizeController != null) sizeController.register(stage, tp, this); 
@@ -147,7 +146,7 @@ class AFileTPTM extends TPSThreadManager implements ThreadManagerIF, ProfilableI
 
       if (DEBUG) System.err.println(name+": starting");
 
-      t1 = System.currentTimeMillis();
+      t1 = Clock.currentTimeMillis();
 
       while (true) {
 
@@ -158,28 +157,33 @@ class AFileTPTM extends TPSThreadManager implements ThreadManagerIF, ProfilableI
 	  AFileTPImpl impl;
        	  fileQueueEntry fqe = (fileQueueEntry)fileQ.blocking_dequeue(blockTime);
 	  if (fqe == null) {
-	    t2 = System.currentTimeMillis();
+	    t2 = Clock.currentTimeMillis();
 	    if (tp.timeToStop(t2-t1)) {
 	      if (DEBUG) System.err.println(name+": Exiting");
 	      return;
 	    }
 	    continue;
 	  }
-	  t1 = System.currentTimeMillis();
+	  t1 = Clock.currentTimeMillis();
 
 	  impl = fqe.impl;
 	  synchronized (fileQ) {
 	    numOutstandingRequests -= fqe.size;
 	  }
 
+	  int max = tp.getAggregationTarget();
+	  if (max < 1) max = MAX_REQUESTS_PER_FILE;
 	  int n = 0;
 
-	  while (n < MAX_REQUESTS_PER_FILE) {
+	  long tstart = Clock.preciseMillis();
+	  while (n < max) {
 	    AFileRequest req = (AFileRequest)impl.getQueue().dequeue();
 	    if (req == null) break;
 	    processRequest(req);
 	    n++;
 	  }
+	  long tend = Clock.preciseMillis();
+	  if (n > 0) wrapper.getStats().recordServiceRate(n, tend-tstart);
 	  // If events still pending, place back on file queue
 	  if (((SourceIF)impl.getQueue()).size() != 0) fileReady(impl);
 
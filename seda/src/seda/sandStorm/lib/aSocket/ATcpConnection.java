@@ -171,13 +171,48 @@ public class ATcpConnection extends SimpleSink implements QueueElementIF {
 
   /**
    * Enqueue a set of outgoing packets to be written to this socket.
+   * The packets are written back to back as a single request, so that
+   * (for example) a protocol header and its payload can be sent with 
+   * one gathering write. Completion and clog events are still 
+   * delivered for each packet.
    */
   public void enqueue_many(QueueElementIF bufarr[]) throws SinkException {
     if (closed) throw new SinkClosedException("ATcpConnection closed");
+    BufferElement gather[] = new BufferElement[bufarr.length];
     for (int i = 0; i < bufarr.length; i++) {
       if (bufarr[i] == null) throw new BadQueueElementException("ATcpConnection.enqueue_many got null element", bufarr[i]);
-      aSocketMgr.enqueueRequest(new ATcpWriteRequest(this, (BufferElement)bufarr[i]));
+      gather[i] = (BufferElement)bufarr[i];
     }
+    if (gather.length == 1) {
+      aSocketMgr.enqueueRequest(new ATcpWriteRequest(this, gather[0]));
+    } else if (gather.length > 1) {
+      aSocketMgr.enqueueRequest(new ATcpWriteRequest(this, gather));
+    }
+  }
+
+  /**
+   * Enqueue the same outgoing packet to each of the first numConns 
+   * connections in conns, as a single batch of requests to the write
+   * stage. The packet's data is shared, not copied, so it must not 
+   * be modified until every connection has drained it. Connections 
+   * which are closed are skipped. Returns the number of connections
+   * to which the packet was enqueued.
+   */
+  public static int enqueue_lossy_all(ATcpConnection conns[], int numConns, BufferElement buf) {
+    if (buf == null) return 0;
+    ATcpWriteRequest reqs[] = new ATcpWriteRequest[numConns];
+    int n = 0;
+    for (int i = 0; i < numConns; i++) {
+      if (!conns[i].closed) reqs[n++] = new ATcpWriteRequest(conns[i], buf);
+    }
+    if (n == 0) return 0;
+    if (n < numConns) {
+      ATcpWriteRequest tmp[] = new ATcpWriteRequest[n];
+      System.arraycopy(reqs, 0, tmp, 0, n);
+      reqs = tmp;
+    }
+    aSocketMgr.enqueueWriteRequests(reqs);
+    return n;
   }
 
   /**
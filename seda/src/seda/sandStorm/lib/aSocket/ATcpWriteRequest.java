@@ -28,16 +28,25 @@ import seda.sandStorm.api.*;
 import seda.sandStorm.core.*;
 
 /**
- * Request to write data to a connection.
+ * Request to write data to a connection. The request either carries a
+ * single buffer, or an array of buffers which are written back to back
+ * (using a gathering write where the provider supports it).
  */
 public class ATcpWriteRequest extends aSocketRequest implements QueueElementIF {
 
   public ATcpConnection conn;
   public BufferElement buf;
+  /** The buffers of a gathered write; null if 'buf' is used instead. */
+  public BufferElement bufarr[];
 
   public ATcpWriteRequest(ATcpConnection conn, BufferElement buf) {
     this.conn = conn;
     this.buf = buf;
   }
 
+  public ATcpWriteRequest(ATcpConnection conn, BufferElement bufarr[]) {
+    this.conn = conn;
+    this.bufarr = bufarr;
+  }
+
 }
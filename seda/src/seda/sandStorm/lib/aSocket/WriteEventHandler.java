@@ -52,6 +52,22 @@ class WriteEventHandler extends aSocketEventHandler implements EventHandlerIF, a
     css.complete();
   }          
 
+  private void drained(SockState ss, BufferElement buf) {
+    SinkIF cq = buf.getCompletionQueue();
+    if (cq != null) {
+      SinkDrainedEvent sde = new SinkDrainedEvent(ss.conn, buf);
+      cq.enqueue_lossy(sde);
+    }
+  }
+
+  private void clogged(ATcpConnection conn, BufferElement buf) {
+    SinkIF cq = buf.getCompletionQueue();
+    if (cq != null) {
+      SinkCloggedEvent sce = new SinkCloggedEvent(conn, buf);
+      cq.enqueue_lossy(sce);
+    }
+  }
+
   private void processTcpWrite(SockState ss) throws IOException {
     if (DEBUG) System.err.println("WriteEventHandler: processTcpWrite called");
 
@@ -117,10 +133,10 @@ class WriteEventHandler extends aSocketEventHandler implements EventHandlerIF, a
 	  ss.writeReset();
 
 	  // Send completion upcall
-	  SinkIF cq = wreq.buf.getCompletionQueue();
-	  if (cq != null) {
-	    SinkDrainedEvent sde = new SinkDrainedEvent(ss.conn, wreq.buf);
-	    cq.enqueue_lossy(sde);
+	  if (wreq.bufarr == null) {
+	    drained(ss, wreq.buf);
+	  } else {
+	    for (int i = 0; i < wreq.bufarr.length; i++) drained(ss, wreq.bufarr[i]);
 	  }
 
 	  // Clear the request
@@ -331,10 +347,10 @@ class WriteEventHandler extends aSocketEventHandler implements EventHandlerIF, a
 	if (!ss.addWriteRequest(req, selsource)) {
 	  // Couldn't enqueue: this connection is clogged
 	  ATcpWriteRequest wreq = (ATcpWriteRequest)req;
-	  SinkIF cq = wreq.buf.getCompletionQueue();
-	  if (cq != null) {
-	    SinkCloggedEvent sce = new SinkCloggedEvent(wreq.conn, wreq.buf);
-	    cq.enqueue_lossy(sce);
+	  if (wreq.bufarr == null) {
+	    clogged(wreq.conn, wreq.buf);
+	  } else {
+	    for (int i = 0; i < wreq.bufarr.length; i++) clogged(wreq.conn, wreq.bufarr[i]);
 	  }
 	} else {
             if (DEBUG) System.err.println("WriteEventHandler: " + ss.outstanding_writes + " outstanding writes" );
@@ -64,7 +64,7 @@ public class aSocketMgr {
     synchronized (init_lock) {
       SandstormConfig cfg = mgr.getConfig();
 
-      String provider = cfg.getString("global.aSocket.provider");
+      String provider = cfg.getSnapshot().aSocketProvider;
       if (provider == null) {
           throw new RuntimeException("aSocketMgr: Must specify either " +
                 "'NIO' or 'NBIO' for global.aSocket.provider");
@@ -196,5 +196,19 @@ public class aSocketMgr {
       throw new IllegalArgumentException("Bad request type "+req);
     }
   }
+
+  /**
+   * Enqueue a batch of TCP write requests to the write stage in 
+   * one operation.
+   */
+  static void enqueueWriteRequests(ATcpWriteRequest reqs[]) {
+    init();
+    try {
+      write_sink.enqueue_many(reqs);
+    } catch (SinkException se) {
+      System.err.println("aSocketMgr.enqueueWriteRequests: Warning: Got SinkException "+se);
+      System.err.println("aSocketMgr.enqueueWriteRequests: This is a bug - contact <mdw@cs.berkeley.edu>");
+    }
+  }
 }
 
@@ -27,6 +27,7 @@ package seda.sandStorm.lib.aSocket;
 import seda.sandStorm.api.*;
 import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
+import seda.sandStorm.main.*;
 import java.util.*;
 import seda.util.*;
 
@@ -44,11 +45,14 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
   private static final int INITIAL_SLEEPTIME = 1;
   private static final int INITIAL_SLEEPFREQ = 1;
   private static final int MAX_AGGREGATION = 32;
-  private double targetRate;
+  private SandstormConfig config;
+  // Followed at each measurement, as the rate may be changed at runtime
+  private volatile double targetRate;
 
   aSocketRCTMSleep(ManagerIF mgr) {
     super(mgr);
-    this.targetRate = mgr.getConfig().getInt("global.aSocket.rateController.rate");
+    this.config = mgr.getConfig();
+    this.targetRate = config.getSnapshot().aSocketRate;
     System.err.println("aSocketRCTMSleep: Created, target rate "+targetRate);
   }
 
@@ -75,7 +79,7 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
       int sleepfreq = INITIAL_SLEEPFREQ;
       int aggTarget;
 
-      t1 = System.currentTimeMillis();
+      t1 = Clock.currentTimeMillis();
 
       while (true) {
 
@@ -94,7 +98,7 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
 	    if (qelarr != null) {
 	      if (DEBUG) System.err.println(name+": got "+qelarr.length+" new requests");
 	      num_events += qelarr.length;
-	      handler.handleEvents(qelarr);
+	      handleEvents(qelarr);
 	    }
 	  }
 
@@ -109,7 +113,7 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
 	    if (ret != null) {
 	      if (DEBUG) System.err.println(name+": select got "+ret.length+" elements");
 	      num_events += ret.length;
-	      handler.handleEvents(ret);
+	      handleEvents(ret);
 	    } else if (DEBUG) System.err.println(name+": select got null");
 	  }
 
@@ -124,7 +128,7 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
 	    if (qelarr != null) {
 	      if (DEBUG) System.err.println(name+": got "+qelarr.length+" new requests");
 	      num_events += qelarr.length;
-	      handler.handleEvents(qelarr);
+	      handleEvents(qelarr);
 	      break;
 	    }
 	  }
@@ -142,10 +146,11 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
 	  }
 	}
 
-	t2 = System.currentTimeMillis();
+	t2 = Clock.currentTimeMillis();
 	num_measurements++;
 
 	if ((num_measurements % MEASUREMENT_SIZE) == 0) {
+	  targetRate = config.getSnapshot().aSocketRate;
 	  double timesec = ((t2-t1)*1.0e-3);
 	  double actualrate = num_events / timesec;
 	  System.err.println("aSocketRCTMSleep ("+name+"): time "+MDWUtil.format(timesec)+", num_events "+num_events);
@@ -170,7 +175,7 @@ class aSocketRCTMSleep extends aSocketThreadManager implements ThreadManagerIF,
 	    System.err.println("aSocketRCTMSleep ("+name+"): Adjusted sleeptime to "+sleeptime+", sleepfreq "+sleepfreq);
 	  }
 
-	  t1 = System.currentTimeMillis();
+	  t1 = Clock.currentTimeMillis();
 	  num_events = 0;
 	}
 
@@ -29,6 +29,7 @@ import seda.sandStorm.api.internal.*;
 import seda.sandStorm.core.*;
 import seda.sandStorm.internal.*;
 import seda.sandStorm.main.*;
+import seda.util.*;
 import java.util.*;
 
 /**
@@ -101,6 +102,17 @@ class aSocketThreadManager implements ThreadManagerIF, aSocketConst {
       this.tp = tp;
     }
 
+    /**
+     * Pass a batch of events to the handler, recording its service
+     * time for the stage's BatchController.
+     */
+    protected void handleEvents(QueueElementIF events[]) throws EventHandlerException {
+      long tstart = Clock.preciseMillis();
+      handler.handleEvents(events);
+      long tend = Clock.preciseMillis();
+      wrapper.getStats().recordServiceRate(events.length, tend-tstart);
+    }
+
     public void run() {
       int aggTarget;
       if (DEBUG) System.err.println(name+": starting, selsource="+ selsource +", eventQ="+eventQ
@@ -124,7 +136,7 @@ class aSocketThreadManager implements ThreadManagerIF, aSocketConst {
 
 	    if (qelarr != null) {
 	      if (DEBUG) System.err.println(name+": got "+qelarr.length+" new requests");
-	      handler.handleEvents(qelarr);
+	      handleEvents(qelarr);
 	    }
 	  }
 
@@ -140,10 +152,7 @@ class aSocketThreadManager implements ThreadManagerIF, aSocketConst {
 
 	    if (ret != null) {
 	      if (DEBUG) System.err.println(name+": select got "+ret.length+" elements");
-	      long tstart = System.currentTimeMillis();
-	      handler.handleEvents(ret);
-	      long tend = System.currentTimeMillis();
-	      wrapper.getStats().recordServiceRate(ret.length, tend-tstart);
+	      handleEvents(ret);
 
 	    } else if (DEBUG) System.err.println(name+": select got null");
 	  }
@@ -158,7 +167,7 @@ class aSocketThreadManager implements ThreadManagerIF, aSocketConst {
 	    }
 	    if (qelarr != null) {
 	      if (DEBUG) System.err.println(name+": got "+qelarr.length+" new requests");
-	      handler.handleEvents(qelarr);
+	      handleEvents(qelarr);
 	      break;
 	    }
 	  }
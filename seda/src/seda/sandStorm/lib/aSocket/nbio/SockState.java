@@ -43,6 +43,7 @@ class SockState extends seda.sandStorm.lib.aSocket.SockState {
   private NonblockingInputStream nbis;
   private NonblockingOutputStream nbos;
   private SelectItem readsi, writesi;
+  private int gather_idx;
 
   private SelectSource read_selsource;
   private SelectSource write_selsource;
@@ -214,9 +215,19 @@ class SockState extends seda.sandStorm.lib.aSocket.SockState {
 
   protected void initWrite(ATcpWriteRequest req) {
     this.cur_write_req = req;
-    this.writeBuf = req.buf.data;
-    this.cur_offset = req.buf.offset;
-    this.cur_length_target = req.buf.size + cur_offset;
+    if (req.bufarr != null) {
+      // No gathering write here, so write the buffers one at a time
+      this.gather_idx = 0;
+      initWriteBuf(req.bufarr[0]);
+    } else {
+      initWriteBuf(req.buf);
+    }
+  }
+
+  private void initWriteBuf(BufferElement buf) {
+    this.writeBuf = buf.data;
+    this.cur_offset = buf.offset;
+    this.cur_length_target = buf.size + cur_offset;
   }
 
   protected boolean tryWrite() throws SinkClosedException {
@@ -237,6 +248,12 @@ class SockState extends seda.sandStorm.lib.aSocket.SockState {
     }
     if (cur_offset == cur_length_target) {
       if (DEBUG) System.err.println("SockState: tryWrite() completed write of "+cur_length_target+" bytes");
+      BufferElement bufarr[] = cur_write_req.bufarr;
+      if ((bufarr != null) && (++gather_idx < bufarr.length)) {
+	// Move on to the next buffer of a gathered write
+	initWriteBuf(bufarr[gather_idx]);
+	return tryWrite();
+      }
       return true;
     }
     else return false;
@@ -167,12 +167,11 @@ public class NIOSelectSource implements SelectSourceIF {
     synchronized (blocker) {
       SelectionKey selkey = (SelectionKey)selkey_obj;
       selkey.cancel();
-      /* This must be done so that calls to close() actually close. */
-      try {
-	selector.selectNow();
-      } catch (IOException ioe) {
-	// Ignore
-      }
+      /* The key is only dropped (and a closed channel really closed)
+       * by the next select, so make sure one happens now. Calling
+       * selectNow() here would block until any select in progress in
+       * another thread times out. */
+      selector.wakeup();
       blocker.notify();
     }
   }
@@ -43,6 +43,7 @@ public class SockState extends seda.sandStorm.lib.aSocket.SockState {
 
   private SelectionKey rselkey, wselkey;
   private ByteBuffer byte_buffer, read_byte_buffer; 
+  private ByteBuffer gather_buffers[];
 
   private NIOSelectSource read_selsource, write_selsource;
 
@@ -223,6 +224,19 @@ public class SockState extends seda.sandStorm.lib.aSocket.SockState {
 
   protected void initWrite(ATcpWriteRequest req) {
     this.cur_write_req = req;
+    if (req.bufarr != null) {
+      // cur_offset counts the bytes written from all of the buffers
+      this.gather_buffers = new ByteBuffer[req.bufarr.length];
+      this.cur_offset = 0;
+      this.cur_length_target = 0;
+      for (int i = 0; i < req.bufarr.length; i++) {
+	BufferElement buf = req.bufarr[i];
+	gather_buffers[i] = ByteBuffer.wrap(buf.data, buf.offset, buf.size);
+	cur_length_target += buf.size;
+      }
+      return;
+    }
+    this.gather_buffers = null;
     this.writeBuf = req.buf.data;
     this.cur_offset = req.buf.offset;
     this.cur_length_target = req.buf.size + cur_offset;
@@ -233,15 +247,21 @@ public class SockState extends seda.sandStorm.lib.aSocket.SockState {
     try {
       int tryLen;
       if (DEBUG) System.err.println("SockState: tryWrite()");
-      if (MAX_WRITE_LEN == -1) {
-	tryLen = cur_length_target - cur_offset;
+      if (gather_buffers != null) {
+	// Gathered write; MAX_WRITE_LEN is not applied here
+	cur_offset += (int)nbsock.getChannel().write(gather_buffers);
+	if (DEBUG) System.err.println("SockState: tryWrite() gathered (len="+cur_length_target+", off="+cur_offset);
       } else {
-	tryLen = Math.min(cur_length_target - cur_offset, MAX_WRITE_LEN);
+	if (MAX_WRITE_LEN == -1) {
+	  tryLen = cur_length_target - cur_offset;
+	} else {
+	  tryLen = Math.min(cur_length_target - cur_offset, MAX_WRITE_LEN);
+	}
+	if (DEBUG) System.err.println("writing " + tryLen + " bytes");
+	byte_buffer.limit(byte_buffer.position() + tryLen);
+	cur_offset += nbsock.getChannel().write(byte_buffer);
+	if (DEBUG) System.err.println("SockState: tryWrite() of "+tryLen+" bytes (len="+cur_length_target+", off="+cur_offset);
       }
-      if (DEBUG) System.err.println("writing " + tryLen + " bytes");
-      byte_buffer.limit(byte_buffer.position() + tryLen);
-      cur_offset += nbsock.getChannel().write(byte_buffer);
-      if (DEBUG) System.err.println("SockState: tryWrite() of "+tryLen+" bytes (len="+cur_length_target+", off="+cur_offset);
 
     } catch (IOException ioe) {
       // Assume this is because socket was already closed
@@ -274,7 +294,7 @@ public class SockState extends seda.sandStorm.lib.aSocket.SockState {
 
     if (DEBUG) System.err.println("SockState.close(): Deregistering with selsources");
     if (read_selsource != null) read_selsource.deregister(rselkey);
-    if (write_selsource != null) write_selsource.deregister(rselkey);
+    if (write_selsource != null) write_selsource.deregister(wselkey);
     if (DEBUG) System.err.println("SockState.close(): done deregistering with selsources");
     // Eliminate write queue
 
@@ -221,6 +221,7 @@ public class Bandwidth {
                         " milliseconds = " + iters_per_sec
                         + " iterations per second" );
     System.err.println("\t"+rtt_usec+" usec RTT, "+mbps+" mbps bandwidth");
+    System.out.println("RESULT bandwidth.mbps "+mbps);
   }
 
   private static void usage() {
@@ -227,6 +227,12 @@ public class Pingpong {
       double mbps = (NUM_MSGS_PER_MEASUREMENT * MSG_SIZE * 8.0)/((double)diff * 1.0e3);
       System.err.println(MSG_SIZE+"\t "+diff+"\t "+rtt_usec+"\t "+mbps);
     }
+
+    // Summary over all measurements, in the form read by bin/run-bench
+    long diff = measurements[NUM_MEASUREMENTS-1] - measurements[0];
+    int numiters = NUM_MSGS_PER_MEASUREMENT * (NUM_MEASUREMENTS-1);
+    System.out.println("RESULT pingpong.rtt_usec "+((diff * 1000.0)/((double)numiters)));
+    System.out.println("RESULT pingpong.mbps "+((numiters * MSG_SIZE * 8.0)/((double)diff * 1.0e3)));
   }
 
   private static void printTime(long t1, long t2, int numiters, int msg_size) {
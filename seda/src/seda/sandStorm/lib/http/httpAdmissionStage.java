@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.lib.http;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.util.*;
+
+import java.util.*;
+
+/**
+ * A stage which accepts HTTP requests, assigns each one a request 
+ * class, and passes it on to another stage. The downstream stage is 
+ * meant to run a multiclass response time controller 
+ * (<tt>rtController.type multiclass</tt>), which polices the 
+ * admission rate of each class to meet its 90th-percentile response 
+ * time target. Requests rejected by the downstream stage are answered
+ * at once with a shared, pre-built '503 Service Unavailable' response,
+ * rather than being queued.
+ *
+ * <p>The following initargs are recognized:
+ * <ul>
+ * <li><tt>next_handler</tt>: The stage to pass requests to (required).
+ * <li><tt>port</tt>: The port to listen on (default 8080).
+ * <li><tt>class<i>N</i>URLPrefix</tt>: A list of URL prefixes; 
+ *   requests for these URLs are given class <i>N</i>.
+ * <li><tt>class<i>N</i>Header</tt>: A header name, or "name:value";
+ *   requests carrying this header (with this value) are given class 
+ *   <i>N</i>.
+ * <li><tt>defaultClass</tt>: The class of requests which match no 
+ *   rule (default 0).
+ * <li><tt>statsInterval</tt>: If greater than 0, print the number of 
+ *   admitted and rejected requests per class every this many 
+ *   milliseconds.
+ * </ul>
+ * Rules are checked from the highest class number down, and the first 
+ * match wins. Higher classes are given priority by the multiclass 
+ * controller. Class numbers should be lower than the number of class 
+ * targets configured for the downstream stage.
+ *
+ * @see seda.sandStorm.internal.RTEstimatorMulticlass
+ */
+public class httpAdmissionStage implements EventHandlerIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final int DEFAULT_PORT = 8080;
+  private static final int MAX_CLASSES = 10;
+
+  private static final httpResponse REJECT_RESPONSE = 
+    new httpServiceUnavailableResponse("Server overloaded; please try again later");
+
+  private SinkIF mysink, nextSink;
+  private httpServer server;
+  private ssTimer timer;
+  private int statsInterval;
+
+  private int numClasses;
+  private int defaultClass;
+  private String urlPrefixes[][];
+  private String headerNames[], headerValues[];
+
+  private Object statsLock = new Object();
+  private long numAdmitted[], numRejected[];
+
+  private static class statsEvent implements QueueElementIF { }
+
+  public void init(ConfigDataIF config) throws Exception {
+    mysink = config.getStage().getSink();
+
+    String nextHandler = config.getString("next_handler");
+    if (nextHandler == null) throw new IllegalArgumentException("httpAdmissionStage: Must specify next_handler");
+    nextSink = config.getManager().getStage(nextHandler).getSink();
+
+    urlPrefixes = new String[MAX_CLASSES][];
+    headerNames = new String[MAX_CLASSES];
+    headerValues = new String[MAX_CLASSES];
+    numClasses = 1;
+    for (int c = 0; c < MAX_CLASSES; c++) {
+      urlPrefixes[c] = config.getStringList("class"+c+"URLPrefix");
+      String hdr = config.getString("class"+c+"Header");
+      if (hdr != null) {
+	int colon = hdr.indexOf(':');
+	if (colon == -1) {
+	  headerNames[c] = hdr.trim();
+	} else {
+	  headerNames[c] = hdr.substring(0, colon).trim();
+	  headerValues[c] = hdr.substring(colon+1).trim();
+	}
+      }
+      if ((urlPrefixes[c] != null) || (headerNames[c] != null)) numClasses = c+1;
+    }
+    defaultClass = config.getInt("defaultClass");
+    if (defaultClass == -1) defaultClass = 0;
+    if (defaultClass >= numClasses) numClasses = defaultClass+1;
+
+    numAdmitted = new long[numClasses];
+    numRejected = new long[numClasses];
+
+    statsInterval = config.getInt("statsInterval");
+    if (statsInterval > 0) {
+      timer = new ssTimer();
+      timer.registerEvent(statsInterval, new statsEvent(), mysink);
+    }
+
+    int port = config.getInt("port");
+    if (port == -1) port = DEFAULT_PORT;
+    server = new httpServer(config.getManager(), mysink, port);
+    System.err.println("httpAdmissionStage: Listening on port "+port+", "+numClasses+" request classes, passing requests to "+nextHandler);
+  }
+
+  public void destroy() throws Exception {
+    if (timer != null) timer.doneWithTimer();
+    server.destroy();
+  }
+
+  public void handleEvent(QueueElementIF item) {
+    if (DEBUG) System.err.println("httpAdmissionStage: GOT QEL: "+item);
+
+    if (item instanceof httpRequest) {
+      httpRequest req = (httpRequest)item;
+      int c = classify(req);
+      req.setRequestClass(c);
+      try {
+	nextSink.enqueue(req);
+	synchronized (statsLock) { numAdmitted[c]++; }
+      } catch (SinkFullException sfe) {
+	// Rejected by the downstream stage's admission controller
+	synchronized (statsLock) { numRejected[c]++; }
+	req.getConnection().enqueue_lossy(new httpResponder(REJECT_RESPONSE, req));
+      } catch (SinkException se) {
+	// Still answer the request, as later responses on a pipelined
+	// connection are held back until this one is sent
+	System.err.println("httpAdmissionStage: Got SinkException: "+se);
+	synchronized (statsLock) { numRejected[c]++; }
+	req.getConnection().enqueue_lossy(new httpResponder(REJECT_RESPONSE, req));
+      }
+
+    } else if (item instanceof statsEvent) {
+      printStats();
+      timer.registerEvent(statsInterval, item, mysink);
+
+    } else {
+      // Connection events; may be dropped if the next stage is 
+      // rejecting events
+      nextSink.enqueue_lossy(item);
+    }
+  }
+
+  public void handleEvents(QueueElementIF items[]) {
+    for (int i = 0; i < items.length; i++) {
+      handleEvent(items[i]);
+    }
+  }
+
+  /**
+   * Return the request class for the given request.
+   */
+  protected int classify(httpRequest req) {
+    String url = req.getURL();
+    for (int c = numClasses-1; c >= 0; c--) {
+      String prefixes[] = urlPrefixes[c];
+      if (prefixes != null) {
+	for (int i = 0; i < prefixes.length; i++) {
+	  if (url.startsWith(prefixes[i])) return c;
+	}
+      }
+      if (headerNames[c] != null) {
+	String val = req.getHeader(headerNames[c]);
+	if ((val != null) && 
+	    ((headerValues[c] == null) || headerValues[c].equalsIgnoreCase(val.trim()))) {
+	  return c;
+	}
+      }
+    }
+    return defaultClass;
+  }
+
+  private void printStats() {
+    String s = "httpAdmissionStage:";
+    synchronized (statsLock) {
+      for (int c = 0; c < numClasses; c++) {
+	s += " class "+c+" admitted "+numAdmitted[c]+" rejected "+numRejected[c]+(c < numClasses-1?",":"");
+      }
+    }
+    System.err.println(s);
+  }
+
+}
@@ -38,6 +38,12 @@ import java.net.*;
  * To send HTTP responses to a client, you can enqueue an httpResponse
  * object on the corresponding httpConnection.
  *
+ * <p>Connections are persistent: several requests, possibly pipelined,
+ * may arrive on the same httpConnection. Responses created from an 
+ * httpRequest are written in the order the requests arrived, even if
+ * the application completes them out of order; the connection is 
+ * closed after a response whose httpResponder asks for it.
+ *
  * @author Matt Welsh
  * @see httpRequest
  * @see httpResponse
@@ -51,6 +57,18 @@ public class httpConnection extends SimpleSink implements httpConst, QueueElemen
   private SinkIF compQ;
   private httpPacketReader hpr;
 
+  // Sequence number to assign to the next incoming request
+  private int nextReqSeq;
+  // Sequence number of the next response to be written
+  private int nextRespSeq;
+  // Responses which have completed ahead of an earlier request,
+  // indexed by request sequence number
+  private Hashtable pendingResponses;
+  // Set once a response has closed the connection
+  private boolean closing;
+  // Time of the last activity on this connection
+  private volatile long lastActive;
+
   /** 
    * Can be used by applications to associate an arbitrary data object 
    * with this connection.
@@ -66,6 +84,7 @@ public class httpConnection extends SimpleSink implements httpConst, QueueElemen
     this.hs = hs;
     this.compQ = compQ;
     this.hpr = new httpPacketReader(this, compQ);
+    this.lastActive = System.currentTimeMillis();
 
     // Push myself to user
     compQ.enqueue_lossy(this);
@@ -75,9 +94,27 @@ public class httpConnection extends SimpleSink implements httpConst, QueueElemen
    * Package-internal: Parse the data contained in the given TCP packet.
    */
   void parsePacket(ATcpInPacket pkt) throws IOException {
+    lastActive = System.currentTimeMillis();
     hpr.parsePacket(pkt);
   }
 
+  /**
+   * Package-internal: Return the sequence number for the next 
+   * request read from this connection.
+   */
+  synchronized int nextRequestSeq() {
+    return nextReqSeq++;
+  }
+
+  /**
+   * Package-internal: Returns true if no requests are awaiting a
+   * response and there has been no activity on this connection for
+   * the given number of milliseconds.
+   */
+  synchronized boolean isIdle(long now, long timeout) {
+    return (nextRespSeq == nextReqSeq) && (now - lastActive >= timeout);
+  }
+
   /**
    * Return the ATcpConnection associated with this connection.
    */
@@ -98,9 +135,35 @@ public class httpConnection extends SimpleSink implements httpConst, QueueElemen
   public void enqueue(QueueElementIF element) throws SinkException {
     if (DEBUG) System.err.println("httpConnection.enqueue: "+element);
     httpResponder resp = (httpResponder)element;
-    httpResponse packet = resp.getResponse();
-    BufferElement bufarr[] = packet.getBuffers(resp.sendHeader());
-    tcpconn.enqueue_many(bufarr);
+    httpRequest req = resp.getRequest();
+
+    if ((req == null) || (req.getConnection() != this)) {
+      // Not associated with a request; send immediately
+      sendResponse(resp);
+      return;
+    }
+
+    synchronized (this) {
+      if (req.seqNum - nextRespSeq > 0) {
+	// An earlier request has not been answered yet
+	if (DEBUG) System.err.println("httpConnection: Holding response "+req.seqNum+", waiting for "+nextRespSeq);
+	if (pendingResponses == null) pendingResponses = new Hashtable();
+	pendingResponses.put(new Integer(req.seqNum), resp);
+	return;
+      } 
+
+      if (req.seqNum == nextRespSeq) nextRespSeq++;
+      lastActive = System.currentTimeMillis();
+      sendResponse(resp);
+
+      // Send any responses that were waiting on this one
+      while ((pendingResponses != null) && !pendingResponses.isEmpty()) {
+	resp = (httpResponder)pendingResponses.remove(new Integer(nextRespSeq));
+	if (resp == null) break;
+	nextRespSeq++;
+	sendResponse(resp);
+      }
+    }
   }
 
   /**
@@ -109,17 +172,41 @@ public class httpConnection extends SimpleSink implements httpConst, QueueElemen
    */
   public boolean enqueue_lossy(QueueElementIF element) {
     if (DEBUG) System.err.println("httpConnection.enqueue_lossy: "+element);
-    httpResponder resp = (httpResponder)element;
-    httpResponse packet = resp.getResponse();
-    BufferElement bufarr[] = packet.getBuffers(resp.sendHeader());
     try {
-      tcpconn.enqueue_many(bufarr);
+      enqueue(element);
     } catch (SinkException se) {
       return false;
     }
     return true;
   }
 
+  // Write the given response, closing the connection afterwards if 
+  // requested
+  private synchronized void sendResponse(httpResponder resp) throws SinkException {
+    if (closing) throw new SinkClosedException("httpConnection closed");
+
+    httpResponse packet = resp.getResponse();
+    httpRequest req = resp.getRequest();
+    String connHeader = null;
+    if (req != null) {
+      // Only need to say something if we differ from the default
+      // for this HTTP version
+      if (resp.shouldClose() && (req.getHttpVer() == httpRequest.HTTPVER_11)) {
+	connHeader = "Connection: close";
+      } else if (!resp.shouldClose() && (req.getHttpVer() == httpRequest.HTTPVER_10)) {
+	connHeader = "Connection: keep-alive";
+      }
+    }
+    BufferElement bufarr[] = packet.getBuffers(resp.sendHeader(), connHeader);
+    if (bufarr != null) tcpconn.enqueue_many(bufarr);
+
+    if (resp.shouldClose()) {
+      closing = true;
+      // The close is queued behind the response data
+      close(compQ);
+    }
+  }
+
   /**
    * Enqueue outgoing data on this connection. Each item in the 
    * elements array must be of type httpResponse.
@@ -43,6 +43,30 @@ public interface httpConst {
    */
   final static int WRITE_CLOG_THRESHOLD = -1;
 
+  /**
+   * The default time in milliseconds after which an idle persistent
+   * connection is closed by the httpServer.
+   */
+  final static int DEFAULT_IDLE_TIMEOUT = 15000;
+
+  /**
+   * The interval in milliseconds at which httpServer checks for
+   * idle connections.
+   */
+  final static int IDLE_CHECK_INTERVAL = 1000;
+
+  /**
+   * The maximum size in bytes of a request line and header. Larger
+   * requests are rejected.
+   */
+  final static int MAX_HEADER_SIZE = 16384;
+
+  /**
+   * The maximum size in bytes of a request body. Larger requests
+   * are rejected.
+   */
+  final static int MAX_BODY_SIZE = 1048576;
+
   /**
    * Standard HTTP end-of-line marker, equal to <tt>"\r\n"</tt>.
    */
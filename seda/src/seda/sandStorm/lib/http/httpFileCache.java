@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.lib.http;
+
+import java.util.*;
+
+/**
+ * A size-bounded in-memory cache of httpResponses, keyed by URL. 
+ * Cached responses are shared between clients, so they must not be 
+ * modified once inserted. Entries are evicted using the CLOCK algorithm
+ * (an approximation of LRU) when the total payload size would exceed
+ * the byte budget given to the constructor.
+ *
+ * @see httpFileServer
+ */
+public class httpFileCache {
+
+  private static final boolean DEBUG = false;
+
+  // Entries form a circular list which the clock hand sweeps
+  private static class cacheEntry {
+    String url;
+    httpResponse resp;
+    int size;
+    boolean referenced;
+    cacheEntry prev, next;
+  }
+
+  private Hashtable table;
+  private cacheEntry hand;
+  private long maxBytes;
+  private long curBytes;
+  private long numHits, numMisses, numEvictions;
+
+  /**
+   * Create a cache holding at most maxBytes bytes of response payload.
+   */
+  public httpFileCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.table = new Hashtable();
+  }
+
+  /**
+   * Return the cached response for the given URL, or null if 
+   * none is cached.
+   */
+  public synchronized httpResponse get(String url) {
+    cacheEntry ent = (cacheEntry)table.get(url);
+    if (ent == null) {
+      numMisses++;
+      return null;
+    }
+    numHits++;
+    ent.referenced = true;
+    return ent.resp;
+  }
+
+  /**
+   * Return the cached response for the given URL, or null if none is
+   * cached, without counting a hit or miss. Used when the caller has
+   * already looked the URL up with get().
+   */
+  public synchronized httpResponse peek(String url) {
+    cacheEntry ent = (cacheEntry)table.get(url);
+    if (ent == null) return null;
+    ent.referenced = true;
+    return ent.resp;
+  }
+
+  /**
+   * Insert a response for the given URL, evicting other entries as
+   * needed. Responses larger than the cache size are not cached. 
+   * Returns true if the response was inserted.
+   */
+  public synchronized boolean put(String url, httpResponse resp) {
+    int size = (resp.getPayload() == null)?0:resp.getPayload().size;
+    if (size > maxBytes) return false;
+    remove(url);
+
+    while (curBytes + size > maxBytes) {
+      // Give referenced entries a second chance
+      while (hand.referenced) {
+	hand.referenced = false;
+	hand = hand.next;
+      }
+      if (DEBUG) System.err.println("httpFileCache: Evicting "+hand.url);
+      numEvictions++;
+      remove(hand.url);
+    }
+
+    cacheEntry ent = new cacheEntry();
+    ent.url = url;
+    ent.resp = resp;
+    ent.size = size;
+    // New entries go just behind the hand, so they are examined last
+    if (hand == null) {
+      ent.prev = ent.next = ent;
+      hand = ent;
+    } else {
+      ent.next = hand;
+      ent.prev = hand.prev;
+      hand.prev.next = ent;
+      hand.prev = ent;
+    }
+    table.put(url, ent);
+    curBytes += size;
+    return true;
+  }
+
+  /**
+   * Remove the entry for the given URL, if any.
+   */
+  public synchronized void remove(String url) {
+    cacheEntry ent = (cacheEntry)table.remove(url);
+    if (ent == null) return;
+    if (ent.next == ent) {
+      hand = null;
+    } else {
+      ent.prev.next = ent.next;
+      ent.next.prev = ent.prev;
+      if (hand == ent) hand = ent.next;
+    }
+    ent.prev = ent.next = null;
+    curBytes -= ent.size;
+  }
+
+  /**
+   * Return the number of entries in the cache.
+   */
+  public synchronized int numEntries() {
+    return table.size();
+  }
+
+  /**
+   * Return the total payload size of the cached responses.
+   */
+  public synchronized long sizeInBytes() {
+    return curBytes;
+  }
+
+  /**
+   * Return the maximum payload size of the cache.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Return the number of lookups which found a cached response.
+   */
+  public synchronized long numHits() {
+    return numHits;
+  }
+
+  /**
+   * Return the number of lookups which did not find a cached response.
+   */
+  public synchronized long numMisses() {
+    return numMisses;
+  }
+
+  /**
+   * Return the fraction of lookups which found a cached response.
+   */
+  public synchronized double hitRatio() {
+    long total = numHits + numMisses;
+    if (total == 0) return 0.0;
+    return (numHits * 1.0) / total;
+  }
+
+  public synchronized String toString() {
+    return "httpFileCache [entries="+table.size()+", bytes="+curBytes+"/"+maxBytes+", hits="+numHits+", misses="+numMisses+", evictions="+numEvictions+"]";
+  }
+
+}
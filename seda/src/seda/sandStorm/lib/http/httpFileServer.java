@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.sandStorm.lib.http;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.sandStorm.lib.aDisk.*;
+import seda.util.*;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * A stage which serves static files from a document root over HTTP.
+ * Recently requested files are kept in an httpFileCache; files which
+ * are not cached are read using the aDisk library and inserted into
+ * the cache, and concurrent requests for a file being read share a 
+ * single read.
+ *
+ * <p>The following initargs are recognized:
+ * <ul>
+ * <li><tt>root</tt>: The document root (required).
+ * <li><tt>port</tt>: The port to listen on (default 8080). If 0, the
+ *   stage does not listen itself, but serves requests passed to it by
+ *   another stage (such as an httpAdmissionStage).
+ * <li><tt>cacheSizeKB</tt>: The cache size in kilobytes (default 16384).
+ * <li><tt>indexFile</tt>: The file served for directory URLs 
+ *   (default "index.html").
+ * <li><tt>statsInterval</tt>: If greater than 0, print cache and 
+ *   throughput statistics every this many milliseconds.
+ * </ul>
+ *
+ * @see httpFileCache
+ * @see httpAdmissionStage
+ */
+public class httpFileServer implements EventHandlerIF {
+
+  private static final boolean DEBUG = false;
+
+  private static final int DEFAULT_PORT = 8080;
+  private static final int DEFAULT_CACHE_SIZE_KB = 16384;
+  private static final String DEFAULT_INDEX_FILE = "index.html";
+  private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+  private static Hashtable contentTypes = new Hashtable();
+  static {
+    contentTypes.put("html", "text/html");
+    contentTypes.put("htm", "text/html");
+    contentTypes.put("txt", "text/plain");
+    contentTypes.put("css", "text/css");
+    contentTypes.put("js", "application/x-javascript");
+    contentTypes.put("gif", "image/gif");
+    contentTypes.put("jpg", "image/jpeg");
+    contentTypes.put("jpeg", "image/jpeg");
+    contentTypes.put("png", "image/png");
+    contentTypes.put("class", "application/octet-stream");
+    contentTypes.put("pdf", "application/pdf");
+  }
+
+  private SinkIF mysink;
+  private httpServer server;
+  private httpFileCache cache;
+  private String root;
+  private String indexFile;
+  private ssTimer timer;
+  private int statsInterval;
+
+  // Map URL -> pendingRead and AFile -> pendingRead
+  private Hashtable pendingByURL, pendingByFile;
+
+  private Object statsLock = new Object();
+  private long bytesServed, numResponses, lastBytesServed, lastResponses;
+  private long lastStatsTime;
+
+  private static class statsEvent implements QueueElementIF { }
+
+  // A file being read from disk, and the requests waiting for it
+  private static class pendingRead {
+    String url, contentType;
+    AFile af;
+    httpOKResponse resp;
+    int offset, length;
+    Vector waiters = new Vector(1);
+  }
+
+  public void init(ConfigDataIF config) throws Exception {
+    mysink = config.getStage().getSink();
+
+    root = config.getString("root");
+    if (root == null) throw new IllegalArgumentException("httpFileServer: Must specify root");
+    if (root.endsWith("/")) root = root.substring(0, root.length()-1);
+    int port = config.getInt("port");
+    if (port == -1) port = DEFAULT_PORT;
+    int cacheSizeKB = config.getInt("cacheSizeKB");
+    if (cacheSizeKB == -1) cacheSizeKB = DEFAULT_CACHE_SIZE_KB;
+    indexFile = config.getString("indexFile");
+    if (indexFile == null) indexFile = DEFAULT_INDEX_FILE;
+
+    cache = new httpFileCache(cacheSizeKB * 1024L);
+    pendingByURL = new Hashtable();
+    pendingByFile = new Hashtable();
+
+    statsInterval = config.getInt("statsInterval");
+    if (statsInterval > 0) {
+      timer = new ssTimer();
+      lastStatsTime = System.currentTimeMillis();
+      timer.registerEvent(statsInterval, new statsEvent(), mysink);
+    }
+
+    if (port != 0) server = new httpServer(config.getManager(), mysink, port);
+    System.err.println("httpFileServer: Serving "+root+((port != 0)?" on port "+port:"")+", cache size "+cacheSizeKB+" KB");
+  }
+
+  public void destroy() throws Exception {
+    if (timer != null) timer.doneWithTimer();
+    if (server != null) server.destroy();
+  }
+
+  public void handleEvent(QueueElementIF item) {
+    if (DEBUG) System.err.println("httpFileServer: GOT QEL: "+item);
+
+    if (item instanceof httpRequest) {
+      handleRequest((httpRequest)item);
+
+    } else if (item instanceof AFileIOCompleted) {
+      AFileIOCompleted ioc = (AFileIOCompleted)item;
+      readCompleted(ioc.getFile(), ioc.sizeCompleted);
+
+    } else if (item instanceof AFileEOFReached) {
+      eofReached(((AFileEOFReached)item).getFile());
+
+    } else if (item instanceof AFileIOExceptionOccurred) {
+      AFileIOExceptionOccurred ioe = (AFileIOExceptionOccurred)item;
+      synchronized (this) {
+	pendingRead pr = (pendingRead)pendingByFile.get(ioe.getFile());
+	if (pr != null) readFailed(pr, ioe.ioe.getMessage());
+      }
+
+    } else if (item instanceof statsEvent) {
+      printStats();
+      timer.registerEvent(statsInterval, item, mysink);
+
+    } else {
+      if (DEBUG) System.err.println("httpFileServer: Got unknown event type: "+item);
+    }
+  }
+
+  public void handleEvents(QueueElementIF items[]) {
+    for (int i = 0; i < items.length; i++) {
+      handleEvent(items[i]);
+    }
+  }
+
+  private void handleRequest(httpRequest req) {
+    String url = req.getURL();
+    if (DEBUG) System.err.println("httpFileServer: Got request "+url);
+
+    if (!url.startsWith("/") || (url.indexOf("..") != -1) || (url.indexOf('\\') != -1)) {
+      send(new httpResponder(new httpBadRequestResponse(req, "Illegal URL: "+url), req));
+      return;
+    }
+    if (url.endsWith("/")) url = url + indexFile;
+
+    httpResponse resp = cache.get(url);
+    if (resp != null) {
+      send(new httpResponder(resp, req));
+      return;
+    }
+    handleMiss(req, url);
+  }
+
+  // Start reading a file which is not in the cache. The pending
+  // read state is only touched with the lock held, as the stage 
+  // may be running in several threads; the file is opened without
+  // it, so that misses for different files proceed in parallel.
+  private void handleMiss(httpRequest req, String url) {
+    pendingRead pr;
+    httpResponse resp;
+    synchronized (this) {
+      // Another thread may have finished reading the file meanwhile
+      resp = cache.peek(url);
+      if (resp == null) {
+	// Piggyback on a read already in progress
+	pr = (pendingRead)pendingByURL.get(url);
+	if (pr != null) {
+	  pr.waiters.addElement(req);
+	  return;
+	}
+      }
+    }
+    if (resp != null) {
+      send(new httpResponder(resp, req));
+      return;
+    }
+
+    AFile af;
+    try {
+      af = new AFile(root + url, mysink, false, true);
+    } catch (FileIsDirectoryException fide) {
+      send(new httpResponder(new httpRedirectResponse(req, url+"/"), req));
+      return;
+    } catch (IOException ioe) {
+      send(new httpResponder(new httpNotFoundResponse(req, ioe.getMessage()), req));
+      return;
+    }
+
+    long length = af.stat().length;
+    if (length > Integer.MAX_VALUE) {
+      af.close();
+      send(new httpResponder(new httpInternalServerErrorResponse(req, "File too large: "+url), req));
+      return;
+    }
+
+    synchronized (this) {
+      // Another thread may have started reading the file while it 
+      // was being opened
+      pendingRead other = (pendingRead)pendingByURL.get(url);
+      if (other != null) {
+	other.waiters.addElement(req);
+	af.close();
+	return;
+      }
+
+      pr = new pendingRead();
+      pr.url = url;
+      pr.af = af;
+      pr.length = (int)length;
+      pr.contentType = getContentType(url);
+      pr.resp = new httpOKResponse(pr.contentType, pr.length);
+      pr.waiters.addElement(req);
+      if (pr.length == 0) {
+	readDone(pr, pr.resp);
+	return;
+      }
+      pendingByURL.put(url, pr);
+      pendingByFile.put(af, pr);
+    }
+    try {
+      af.read(pr.resp.getPayload());
+    } catch (SinkException se) {
+      synchronized (this) {
+	readFailed(pr, se.getMessage());
+      }
+    }
+  }
+
+  private synchronized void readCompleted(AFile af, int sizeCompleted) {
+    pendingRead pr = (pendingRead)pendingByFile.get(af);
+    if (pr == null) return;
+    pr.offset += sizeCompleted;
+    if (pr.offset < pr.length) {
+      // Short read; ask for the rest
+      BufferElement payload = pr.resp.getPayload();
+      try {
+	pr.af.read(new BufferElement(payload.data, pr.offset, pr.length - pr.offset));
+      } catch (SinkException se) {
+	readFailed(pr, se.getMessage());
+      }
+    } else {
+      readDone(pr, pr.resp);
+    }
+  }
+
+  private synchronized void eofReached(AFile af) {
+    pendingRead pr = (pendingRead)pendingByFile.get(af);
+    if (pr == null) return;
+    // The file shrank since we looked at it; serve what we got
+    if (pr.offset == 0) {
+      readDone(pr, new httpOKResponse(pr.contentType, 0));
+    } else {
+      BufferElement payload = pr.resp.getPayload();
+      readDone(pr, new httpOKResponse(pr.contentType, 
+	    new BufferElement(payload.data, 0, pr.offset)));
+    }
+  }
+
+  // Finish a read, caching the response and sending it to all waiters
+  private void readDone(pendingRead pr, httpOKResponse resp) {
+    if (DEBUG) System.err.println("httpFileServer: Read "+pr.url+" ("+pr.offset+" bytes)");
+    pendingByURL.remove(pr.url);
+    pendingByFile.remove(pr.af);
+    pr.af.close();
+    cache.put(pr.url, resp);
+    for (int i = 0; i < pr.waiters.size(); i++) {
+      httpRequest req = (httpRequest)pr.waiters.elementAt(i);
+      send(new httpResponder(resp, req));
+    }
+  }
+
+  private void readFailed(pendingRead pr, String reason) {
+    if (DEBUG) System.err.println("httpFileServer: Read of "+pr.url+" failed: "+reason);
+    pendingByURL.remove(pr.url);
+    pendingByFile.remove(pr.af);
+    pr.af.close();
+    for (int i = 0; i < pr.waiters.size(); i++) {
+      httpRequest req = (httpRequest)pr.waiters.elementAt(i);
+      send(new httpResponder(new httpInternalServerErrorResponse(req, reason), req));
+    }
+  }
+
+  private void send(httpResponder resp) {
+    httpResponse r = resp.getResponse();
+    synchronized (statsLock) {
+      if (r.getPayload() != null) bytesServed += r.getPayload().size;
+      numResponses++;
+    }
+    resp.getConnection().enqueue_lossy(resp);
+  }
+
+  private static String getContentType(String url) {
+    int dot = url.lastIndexOf('.');
+    if ((dot == -1) || (dot < url.lastIndexOf('/'))) return DEFAULT_CONTENT_TYPE;
+    String type = (String)contentTypes.get(url.substring(dot+1).toLowerCase());
+    if (type == null) return DEFAULT_CONTENT_TYPE;
+    return type;
+  }
+
+  private void printStats() {
+    long now = System.currentTimeMillis();
+    long bytesServed, numResponses;
+    synchronized (statsLock) {
+      bytesServed = this.bytesServed;
+      numResponses = this.numResponses;
+    }
+    double secs = (now - lastStatsTime) / 1000.0;
+    double rate = (numResponses - lastResponses) / secs;
+    double mbps = ((bytesServed - lastBytesServed) * 8.0) / (secs * 1.0e6);
+    System.err.println("httpFileServer: "+MDWUtil.format(rate)+" responses/sec, "+MDWUtil.format(mbps)+" Mbit/sec, "+bytesServed+" bytes served, cache hit ratio "+MDWUtil.format(cache.hitRatio())+", "+cache);
+    lastStatsTime = now;
+    lastResponses = numResponses;
+    lastBytesServed = bytesServed;
+  }
+
+  /**
+   * Return the cache used by this stage.
+   */
+  public httpFileCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Return the total number of payload bytes sent by this stage.
+   */
+  public long getBytesServed() {
+    synchronized (statsLock) {
+      return bytesServed;
+    }
+  }
+
+}
@@ -22,43 +22,109 @@
  * 
  */
 
+
 package seda.sandStorm.lib.http;
 
 import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
 import seda.sandStorm.lib.aSocket.*;
-import seda.sandStorm.lib.util.*;
 import java.util.*;
 import java.io.*;
-import java.net.*;
 
 /**
- * This is a package-internal class which reads HTTP request packets.
- * An instance of this class is fed ATcpInPackets (via the 
- * <tt>parsePacket</tt> method). When a complete packet has been
- * read, an httpRequest is pushed to the corresponding SinkIF.
- * This is the bulk of the HTTP protocol implementation.
+ * This class reads HTTP request packets. An instance of this class is
+ * fed ATcpInPackets (via the <tt>parsePacket</tt> method). When a 
+ * complete request has been read, an httpRequest is pushed to the 
+ * corresponding SinkIF. This is the bulk of the HTTP protocol 
+ * implementation.
+ *
+ * <p>The reader is a state machine over the bytes of each packet, so
+ * a request split across several packets is scanned only once. If the
+ * request line and header arrive in a single packet, the httpRequest
+ * refers to the packet data directly (provided the aSocket layer does
+ * not reuse its read buffers, as given by aSocketConst.READ_BUFFER_COPY);
+ * otherwise the bytes are gathered into a buffer as they arrive. Request bodies framed by Content-Length
+ * or by the chunked transfer coding are read as well. Packets which 
+ * arrive out of order (according to their sequence numbers) are held
+ * until the missing packets arrive.
+ *
+ * <p>httpServer creates one reader per connection; the public 
+ * constructor allows requests to be parsed outside of an httpServer,
+ * for example in benchmarks.
  * 
  * @author Matt Welsh
  */
-class httpPacketReader implements httpConst {
+public class httpPacketReader implements httpConst {
 
   private static final boolean DEBUG = false;
 
+  private static final int CR = '\r';
+  private static final int LF = '\n';
+
+  // Request head states
   private static final int STATE_START = 0;
-  private static final int STATE_HEADER = 1;
-  private static final int STATE_DONE = 2;
+  private static final int STATE_METHOD = 1;
+  private static final int STATE_URL_WS = 2;
+  private static final int STATE_URL = 3;
+  private static final int STATE_VER_WS = 4;
+  private static final int STATE_VER = 5;
+  private static final int STATE_REQLINE_LF = 6;
+  private static final int STATE_HDR_START = 7;
+  private static final int STATE_HDR_NAME = 8;
+  private static final int STATE_HDR_VALUE_WS = 9;
+  private static final int STATE_HDR_VALUE = 10;
+  private static final int STATE_HDR_LF = 11;
+  private static final int STATE_HEAD_LF = 12;
+  private static final int STATE_HEAD_DONE = 13;
+  // Request body states
+  private static final int STATE_BODY = 14;
+  private static final int STATE_CHUNK_SIZE = 15;
+  private static final int STATE_CHUNK_EXT = 16;
+  private static final int STATE_CHUNK_SIZE_LF = 17;
+  private static final int STATE_CHUNK_DATA = 18;
+  private static final int STATE_CHUNK_DATA_CR = 19;
+  private static final int STATE_CHUNK_DATA_LF = 20;
+  private static final int STATE_TRAILER_START = 21;
+  private static final int STATE_TRAILER = 22;
+  private static final int STATE_TRAILER_LF = 23;
+  private static final int STATE_DONE = 24;
+
+  private static final int INITIAL_HEADERS = 8;
 
   private int state;
-  private aSocketInputStream ais;
-  private StreamTokenizer tok;
+  // Sent for requests which the user's sink does not accept
+  private static final httpResponse REJECT_RESPONSE = 
+    new httpServiceUnavailableResponse("Server overloaded");
 
-  private String request;
-  private String url;
-  private int httpver;
-  private Vector header;
   private httpConnection conn;
   private SinkIF compQ;
 
+  // Reordering of incoming packets
+  private long nextSeqNum = 1;
+  private Hashtable outoforder;
+
+  // Head of the current request: 'hidx' counts the bytes read so far,
+  // and all offsets are relative to the start of the head
+  private int hidx;
+  private int headStart;       // Start of the head in the current packet
+  private boolean gathering;   // Head is being gathered in 'gather'
+  private byte gather[];
+  private int gatherLen;
+  private int methodEnd, verStart, verEnd;
+  private int off[];
+  private int numHeaders;
+
+  // Fields of the completed head
+  private byte head[];
+  private int headBase;
+  private int request, httpver;
+
+  // Body of the current request
+  private byte bodyBuf[];
+  private int bodyLen;         // Bytes of body read so far
+  private int bodyRemaining;   // Bytes left in the body or current chunk
+  private BufferElement body;
+
   /**
    * Create an httpPacketReader with the given httpConnection
    * and completion queue.
@@ -66,197 +132,544 @@ class httpPacketReader implements httpConst {
   httpPacketReader(httpConnection conn, SinkIF compQ) {
     this.conn = conn;
     this.compQ = compQ;
-    this.ais = new aSocketInputStream();
-    reset();
+    this.state = STATE_START;
   }
 
   /**
-   * Parse the given packet; returns true if a complete HTTP
-   * request has been received and parsed.
+   * Create an httpPacketReader which is not associated with any
+   * connection, pushing httpRequests to the given sink.
    */
-  boolean parsePacket(ATcpInPacket pkt) throws IOException {
-    if (DEBUG) System.err.println("GPR: pushPacket called, size "+pkt.getBytes().length);
-    ais.addPacket(pkt);
+  public httpPacketReader(SinkIF compQ) {
+    this(null, compQ);
+  }
 
-    int origstate;
+  /**
+   * Parse the given packet; returns true if at least one complete HTTP
+   * request has been received and parsed. A packet may contain several
+   * pipelined requests, each of which is pushed to the user in order.
+   *
+   * @exception IOException If the request is malformed. The stream 
+   *   cannot be parsed further, and the connection should be closed.
+   */
+  public synchronized boolean parsePacket(ATcpInPacket pkt) throws IOException {
+    if (DEBUG) System.err.println("httpPacketReader: parsePacket called, size "+pkt.size());
+
+    long sn = pkt.getSequenceNumber();
+    if ((sn != 0) && (sn != nextSeqNum)) {
+      // Hold on to it until the preceding packets arrive
+      if (outoforder == null) outoforder = new Hashtable();
+      outoforder.put(new Long(sn), pkt);
+      return false;
+    }
 
-    do {
-      origstate = state;
+    int numreqs = parse(pkt.getBufferElement());
+    if (sn != 0) advanceSeqNum();
 
-      switch (state) {
-	case STATE_START:
-	  state = parseURL();
-	  break;
+    while ((outoforder != null) && !outoforder.isEmpty()) {
+      pkt = (ATcpInPacket)outoforder.remove(new Long(nextSeqNum));
+      if (pkt == null) break;
+      numreqs += parse(pkt.getBufferElement());
+      advanceSeqNum();
+    }
+    return (numreqs > 0);
+  }
 
-	case STATE_HEADER:
-	  state = accumulateHeader();
-	  break;
+  private void advanceSeqNum() {
+    nextSeqNum++;
+    // seqNum of 0 is special
+    if (nextSeqNum == 0) nextSeqNum = 1;
+  }
 
-	case STATE_DONE:
-	  processHeader();
-	  reset();
-	  return true;
+  /**
+   * Parse the contents of the given buffer, returning the number of 
+   * requests completed.
+   */
+  private int parse(BufferElement buf) throws IOException {
+    byte data[] = buf.data;
+    int start = buf.offset;
+    int end = buf.offset + buf.size;
+    int i = start;
+    int numreqs = 0;
+
+    try {
+      while (i < end) {
+
+	if (state == STATE_START) {
+	  // Skip empty lines preceding the request line; a pipelined 
+	  // request may begin with the tail of the previous request's CRLF
+	  if ((data[i] == CR) || (data[i] == LF)) {
+	    i++;
+	    continue;
+	  }
+	  startRequest(i);
+	}
 
-	default:
-	  throw new Error("Bad state in pushPacket");
+	if (state < STATE_HEAD_DONE) {
+	  int headFrom = (gathering)?(start):(headStart);
+	  i = scanHead(data, i, end);
+	  if (state != STATE_HEAD_DONE) {
+	    // Out of data in the middle of the head
+	    gather(data, headFrom, end);
+	    break;
+	  }
+	  if (gathering || !aSocketConst.READ_BUFFER_COPY) {
+	    // Copy the head unless the aSocket layer gives each packet
+	    // its own array, which the request can then refer to
+	    gather(data, headFrom, i);
+	    head = gather;
+	    headBase = 0;
+	    gather = null;
+	    gathering = false;
+	  } else {
+	    head = data;
+	    headBase = headStart;
+	  }
+	  processHead();
+	}
+
+	if (state == STATE_BODY) {
+	  i = readBody(data, i, end);
+	} else if ((state > STATE_BODY) && (state < STATE_DONE)) {
+	  i = readChunked(data, i, end);
+	}
+
+	if (state == STATE_DONE) {
+	  pushRequest();
+	  numreqs++;
+	  state = STATE_START;
+	}
       }
 
-    } while (state != origstate);
+    } catch (IOException ioe) {
+      // Throw away the current request; we can't find the start of the
+      // next one
+      state = STATE_START;
+      gathering = false;
+      gather = null;
+      bodyBuf = null;
+      throw ioe;
+    }
 
-    return false;
+    return numreqs;
   }
 
   /**
-   * Reset the internal state of the packet reader.
+   * Set up the state for a new request whose head starts at the given
+   * offset in the current packet.
    */
-  private void reset() {
-    state = STATE_START;
-    ais.clear();
-    tok = new StreamTokenizer(ais);
-    tok.resetSyntax();
-    tok.wordChars((char)0, (char)255);
-    tok.whitespaceChars('\u0000', '\u0020');
-    tok.eolIsSignificant(true);
-    request = null;
-    url = null;
-    header = null;
-    httpver = 0;
+  private void startRequest(int start) {
+    state = STATE_METHOD;
+    headStart = start;
+    hidx = 0;
+    gathering = false;
+    gatherLen = 0;
+    methodEnd = verStart = verEnd = -1;
+    off = new int[httpRequest.OFF_HEADERS + (INITIAL_HEADERS*4)];
+    numHeaders = 0;
+    head = null;
+    body = null;
+    bodyBuf = null;
+    bodyLen = 0;
   }
 
   /**
-   * Parse the first line of the request header.
+   * Append the given bytes of the head to the gather buffer.
    */
-  private int parseURL() throws IOException {
-    ais.mark(0);
-    String req = nextWord();
-    url = nextWord();
-    String ver = nextWord();
-    if ((req == null) || (url == null) || (ver == null)) {
-      ais.reset();
-      return STATE_START;
-    } else {
-      request = req;
-      if (ver.equals("HTTP/1.0")) {
-	httpver = httpRequest.HTTPVER_10;
-        String tmp = nextWord(); // Throw away EOL
-	return STATE_HEADER;
-      } else if (ver.equals("HTTP/1.1")) {
-	httpver = httpRequest.HTTPVER_11;
-        String tmp = nextWord(); // Throw away EOL
-	return STATE_HEADER;
-      } else {
-	if (!ver.equals(CRLF)) {
-	  throw new IOException("Unknown HTTP version in request: "+httpver);
-	}
-	httpver = httpRequest.HTTPVER_09;
-        return STATE_DONE;
-      }
+  private void gather(byte data[], int from, int to) {
+    int len = to - from;
+    if ((gather == null) || (gather.length < gatherLen + len)) {
+      byte newgather[] = new byte[Math.max(gatherLen + len, 256)*2];
+      if (gather != null) System.arraycopy(gather, 0, newgather, 0, gatherLen);
+      gather = newgather;
     }
+    System.arraycopy(data, from, gather, gatherLen, len);
+    gatherLen += len;
+    gathering = true;
   }
 
   /**
-   * Accumulate header lines.
+   * Scan the request line and header, starting at data[i]. Returns the
+   * offset of the first byte after the head, or 'end' if the head is 
+   * not complete.
    */
-  private int accumulateHeader() throws IOException {
+  private int scanHead(byte data[], int i, int end) throws IOException {
+    while ((i < end) && (state != STATE_HEAD_DONE)) {
+      int c = data[i] & 0xff;
+      int pos = hidx;
+      i++; hidx++;
+      if (hidx > MAX_HEADER_SIZE) {
+	throw new IOException("HTTP request header exceeds "+MAX_HEADER_SIZE+" bytes");
+      }
+
+      switch (state) {
 
-    String line;
+	case STATE_METHOD:
+	  if (c == ' ') {
+	    methodEnd = pos;
+	    state = STATE_URL_WS;
+	  } else if ((c == CR) || (c == LF)) {
+	    throw new IOException("Bad HTTP request line");
+	  }
+	  break;
 
-    do {
-      line = nextLine();
-      if (DEBUG) System.err.println("hpr: accumulateHeader() read line "+line);
+	case STATE_URL_WS:
+	  if (c == ' ') break;
+	  if ((c == CR) || (c == LF)) throw new IOException("Bad HTTP request line");
+	  off[httpRequest.OFF_URL_START] = pos;
+	  state = STATE_URL;
+	  break;
 
-      if (line == null) {
-	// End of buffer
-	return STATE_HEADER;
-      } else if (!line.equals("")) {
-	if (header == null) header = new Vector(1);
-	header.addElement(line);
-      }
+	case STATE_URL:
+	  if (c == ' ') {
+	    off[httpRequest.OFF_URL_END] = pos;
+	    state = STATE_VER_WS;
+	  } else if ((c == CR) || (c == LF)) {
+	    // No version, so this is an HTTP/0.9 request
+	    off[httpRequest.OFF_URL_END] = pos;
+	    verStart = verEnd = pos;
+	    endRequestLine(c);
+	  }
+	  break;
+
+	case STATE_VER_WS:
+	  if (c == ' ') break;
+	  if ((c == CR) || (c == LF)) {
+	    verStart = verEnd = pos;
+	    endRequestLine(c);
+	  } else {
+	    verStart = pos;
+	    state = STATE_VER;
+	  }
+	  break;
+
+	case STATE_VER:
+	  if ((c == CR) || (c == LF)) {
+	    if (verEnd == -1) verEnd = pos;
+	    endRequestLine(c);
+	  } else if ((c == ' ') || (c == '\t')) {
+	    if (verEnd == -1) verEnd = pos;
+	  } else if (verEnd != -1) {
+	    throw new IOException("Bad HTTP request line");
+	  }
+	  break;
+
+	case STATE_REQLINE_LF:
+	  if (c != LF) throw new IOException("Bad HTTP request line");
+	  endRequestLine(c);
+	  break;
+
+	case STATE_HDR_START:
+	  if (c == CR) {
+	    state = STATE_HEAD_LF;
+	  } else if (c == LF) {
+	    state = STATE_HEAD_DONE;
+	  } else if ((c == ' ') || (c == '\t')) {
+	    // Continuation of the previous header line
+	    if (numHeaders == 0) throw new IOException("Bad HTTP header");
+	    state = STATE_HDR_VALUE;
+	  } else {
+	    int h = httpRequest.OFF_HEADERS + (numHeaders*4);
+	    if (h + 4 > off.length) {
+	      int newoff[] = new int[off.length*2];
+	      System.arraycopy(off, 0, newoff, 0, off.length);
+	      off = newoff;
+	    }
+	    off[h] = pos;
+	    numHeaders++;
+	    state = STATE_HDR_NAME;
+	  }
+	  break;
+
+	case STATE_HDR_NAME:
+	  if (c == ':') {
+	    off[httpRequest.OFF_HEADERS + ((numHeaders-1)*4) + 1] = pos;
+	    state = STATE_HDR_VALUE_WS;
+	  } else if ((c == CR) || (c == LF)) {
+	    throw new IOException("Bad HTTP header");
+	  }
+	  break;
+
+	case STATE_HDR_VALUE_WS:
+	  if ((c == ' ') || (c == '\t')) break;
+	  int v = httpRequest.OFF_HEADERS + ((numHeaders-1)*4) + 2;
+	  if ((c == CR) || (c == LF)) {
+	    // Empty value
+	    off[v] = off[v+1] = pos;
+	    state = (c == CR)?(STATE_HDR_LF):(STATE_HDR_START);
+	  } else {
+	    off[v] = pos;
+	    off[v+1] = pos+1;
+	    state = STATE_HDR_VALUE;
+	  }
+	  break;
 
-    } while (!line.equals(""));
-    return STATE_DONE;
+	case STATE_HDR_VALUE:
+	  if (c == CR) {
+	    state = STATE_HDR_LF;
+	  } else if (c == LF) {
+	    state = STATE_HDR_START;
+	  } else if ((c != ' ') && (c != '\t')) {
+	    // Extend the value to include this byte; trailing whitespace
+	    // is left out
+	    off[httpRequest.OFF_HEADERS + ((numHeaders-1)*4) + 3] = pos+1;
+	  }
+	  break;
+
+	case STATE_HDR_LF:
+	  if (c != LF) throw new IOException("Bad HTTP header");
+	  state = STATE_HDR_START;
+	  break;
+
+	case STATE_HEAD_LF:
+	  if (c != LF) throw new IOException("Bad HTTP header");
+	  state = STATE_HEAD_DONE;
+	  break;
+
+	default:
+	  throw new Error("Bad state in scanHead");
+      }
+    }
+    return i;
   }
 
   /**
-   * Process the header, possibly pushing an httpRequest to the user.
+   * Move on from the request line, which ended with the given 
+   * character.
    */
-  private void processHeader() throws IOException {
-    httpRequest req = new httpRequest(conn,request,url,httpver,header);
-    if (DEBUG) System.err.println("httpPacketReader: Pushing req to user");
-    if (!compQ.enqueue_lossy(req)) {
-      System.err.println("httpPacketReader: WARNING: Could not enqueue_lossy to user: "+req);
+  private void endRequestLine(int c) {
+    if (c == CR) {
+      state = STATE_REQLINE_LF;
+    } else if (verStart == verEnd) {
+      // HTTP/0.9 requests have no header
+      state = STATE_HEAD_DONE;
+    } else {
+      state = STATE_HDR_START;
     }
   }
 
   /**
-   * Read the next whitespace-delimited word from the packet.
+   * Check the method and version of the completed head, and work out
+   * how the body (if any) is framed.
    */
-  private String nextWord() throws IOException {
-    while (true) {
-      int type = tok.nextToken();
-      switch (type) {
+  private void processHead() throws IOException {
+    if (matches(0, methodEnd, "GET")) {
+      request = httpRequest.REQUEST_GET;
+    } else if (matches(0, methodEnd, "POST")) {
+      request = httpRequest.REQUEST_POST;
+    } else {
+      throw new IOException("Bad HTTP request: "+
+	  new String(head, 0, headBase, methodEnd));
+    }
 
-	case StreamTokenizer.TT_EOL:
-	  return CRLF;
+    if (verStart == verEnd) {
+      httpver = httpRequest.HTTPVER_09;
+      state = STATE_DONE;
+      return;
+    } else if (matches(verStart, verEnd, "HTTP/1.1")) {
+      httpver = httpRequest.HTTPVER_11;
+    } else if (matches(verStart, verEnd, "HTTP/1.0")) {
+      httpver = httpRequest.HTTPVER_10;
+    } else {
+      throw new IOException("Unknown HTTP version in request: "+
+	  new String(head, 0, headBase+verStart, verEnd-verStart));
+    }
 
-	case StreamTokenizer.TT_EOF:
-	  return null;
+    int h = httpRequest.findHeader(head, headBase, off, numHeaders, "Transfer-Encoding");
+    if ((h != -1) && valueEndsWith(h, "chunked")) {
+      bodyRemaining = 0;
+      state = STATE_CHUNK_SIZE;
+      return;
+    }
 
-	case StreamTokenizer.TT_WORD:
-	  if (DEBUG) System.err.println("nextWord returning "+tok.sval);
-	  return tok.sval;
+    h = httpRequest.findHeader(head, headBase, off, numHeaders, "Content-Length");
+    if (h != -1) {
+      int vs = headBase + off[httpRequest.OFF_HEADERS + (h*4) + 2];
+      int ve = headBase + off[httpRequest.OFF_HEADERS + (h*4) + 3];
+      if (vs == ve) throw new IOException("Bad Content-Length in request");
+      long len = 0;
+      for (int i = vs; i < ve; i++) {
+	int c = head[i];
+	if ((c < '0') || (c > '9')) throw new IOException("Bad Content-Length in request");
+	len = (len * 10) + (c - '0');
+	if (len > MAX_BODY_SIZE) {
+	  throw new IOException("HTTP request body exceeds "+MAX_BODY_SIZE+" bytes");
+	}
+      }
+      if (len > 0) {
+	bodyRemaining = (int)len;
+	state = STATE_BODY;
+	return;
+      }
+    }
 
-	case StreamTokenizer.TT_NUMBER:
-	  if (DEBUG) System.err.println("nextWord returning number");
-	  return Double.toString(tok.nval);
+    state = STATE_DONE;
+  }
 
-	default:
-	  continue;
-      }
+  // Compare the given range of the head to the given String, ignoring
+  // case
+  private boolean matches(int start, int end, String s) {
+    if (end - start != s.length()) return false;
+    for (int i = 0; i < s.length(); i++) {
+      int c = head[headBase+start+i];
+      if (Character.toUpperCase((char)c) != Character.toUpperCase(s.charAt(i))) return false;
     }
+    return true;
+  }
+
+  // Check whether the value of the given header ends with the given
+  // (lower case) token
+  private boolean valueEndsWith(int h, String token) {
+    int vs = off[httpRequest.OFF_HEADERS + (h*4) + 2];
+    int ve = off[httpRequest.OFF_HEADERS + (h*4) + 3];
+    if (ve - vs < token.length()) return false;
+    return matches(ve - token.length(), ve, token);
   }
 
   /**
-   * Read the next line from the packet.
+   * Read a body of known length, starting at data[i]. Returns the 
+   * offset of the first byte after the body.
    */
-  private String nextLine() throws IOException {
-    String line = new String("");
-    boolean first = true;
+  private int readBody(byte data[], int i, int end) {
+    int avail = end - i;
+    if (aSocketConst.READ_BUFFER_COPY && 
+	(bodyBuf == null) && (avail >= bodyRemaining)) {
+      // The whole body is in this packet, so no need to copy it
+      body = new BufferElement(data, i, bodyRemaining);
+      state = STATE_DONE;
+      return i + bodyRemaining;
+    }
 
-    while (true) {
-      switch (tok.nextToken()) {
+    if (bodyBuf == null) bodyBuf = new byte[bodyRemaining];
+    int n = Math.min(avail, bodyRemaining);
+    System.arraycopy(data, i, bodyBuf, bodyLen, n);
+    bodyLen += n;
+    bodyRemaining -= n;
+    if (bodyRemaining == 0) {
+      body = new BufferElement(bodyBuf);
+      bodyBuf = null;
+      state = STATE_DONE;
+    }
+    return i + n;
+  }
 
-	case StreamTokenizer.TT_EOL:
-	  if (DEBUG) System.err.println("nextLine returning "+line);
-	  return line;
+  /**
+   * Read a chunked body, starting at data[i]. Returns the offset of 
+   * the first byte after the body, or 'end' if the body is not 
+   * complete. Trailer fields are skipped.
+   */
+  private int readChunked(byte data[], int i, int end) throws IOException {
+    while ((i < end) && (state != STATE_DONE)) {
+
+      if (state == STATE_CHUNK_DATA) {
+	int n = Math.min(end - i, bodyRemaining);
+	if ((bodyBuf == null) || (bodyBuf.length < bodyLen + bodyRemaining)) {
+	  byte newbuf[] = new byte[Math.max(bodyLen + bodyRemaining, bodyLen*2)];
+	  if (bodyBuf != null) System.arraycopy(bodyBuf, 0, newbuf, 0, bodyLen);
+	  bodyBuf = newbuf;
+	}
+	System.arraycopy(data, i, bodyBuf, bodyLen, n);
+	bodyLen += n;
+	bodyRemaining -= n;
+	i += n;
+	if (bodyRemaining == 0) state = STATE_CHUNK_DATA_CR;
+	continue;
+      }
+
+      int c = data[i] & 0xff;
+      i++;
 
-	case StreamTokenizer.TT_EOF:
-	  return null;
+      switch (state) {
 
-	case StreamTokenizer.TT_WORD:
-	  if (DEBUG) System.err.println("nextLine got word "+tok.sval);
-	  if (first) {
-	    line = tok.sval;
-	    first = false;
+	case STATE_CHUNK_SIZE:
+	  int digit = Character.digit((char)c, 16);
+	  if (digit != -1) {
+	    bodyRemaining = (bodyRemaining * 16) + digit;
+	    if (bodyLen + bodyRemaining > MAX_BODY_SIZE) {
+	      throw new IOException("HTTP request body exceeds "+MAX_BODY_SIZE+" bytes");
+	    }
+	  } else if ((c == ';') || (c == ' ') || (c == '\t')) {
+	    state = STATE_CHUNK_EXT;
+	  } else if (c == CR) {
+	    state = STATE_CHUNK_SIZE_LF;
+	  } else if (c == LF) {
+	    endChunkSize();
 	  } else {
-	    line += " "+tok.sval;
+	    throw new IOException("Bad chunk size in HTTP request");
 	  }
 	  break;
 
-	case StreamTokenizer.TT_NUMBER:
-	  if (DEBUG) System.err.println("nextLine got number "+tok.nval);
-	  if (first) {
-	    line = Double.toString(tok.nval);
-	    first = false;
-	  } else {
-	    line += " "+Double.toString(tok.nval);
-	  }
+	case STATE_CHUNK_EXT:
+	  // Ignore chunk extensions
+	  if (c == CR) state = STATE_CHUNK_SIZE_LF;
+	  else if (c == LF) endChunkSize();
+	  break;
+
+	case STATE_CHUNK_SIZE_LF:
+	  if (c != LF) throw new IOException("Bad chunk size in HTTP request");
+	  endChunkSize();
+	  break;
+
+	case STATE_CHUNK_DATA_CR:
+	  if (c == CR) state = STATE_CHUNK_DATA_LF;
+	  else if (c == LF) state = STATE_CHUNK_SIZE;
+	  else throw new IOException("Bad chunk in HTTP request");
+	  break;
+
+	case STATE_CHUNK_DATA_LF:
+	  if (c != LF) throw new IOException("Bad chunk in HTTP request");
+	  state = STATE_CHUNK_SIZE;
+	  break;
+
+	case STATE_TRAILER_START:
+	  if (c == CR) state = STATE_TRAILER_LF;
+	  else if (c == LF) endChunked();
+	  else state = STATE_TRAILER;
+	  break;
+
+	case STATE_TRAILER:
+	  if (c == LF) state = STATE_TRAILER_START;
+	  break;
+
+	case STATE_TRAILER_LF:
+	  if (c != LF) throw new IOException("Bad trailer in HTTP request");
+	  endChunked();
 	  break;
 
 	default:
-	  continue;
+	  throw new Error("Bad state in readChunked");
       }
     }
+    return i;
+  }
+
+  private void endChunkSize() {
+    // A zero-size chunk ends the body
+    state = (bodyRemaining == 0)?(STATE_TRAILER_START):(STATE_CHUNK_DATA);
+  }
+
+  private void endChunked() {
+    if (bodyLen > 0) body = new BufferElement(bodyBuf, 0, bodyLen);
+    bodyBuf = null;
+    state = STATE_DONE;
+  }
+
+  /**
+   * Push the completed request to the user.
+   */
+  private void pushRequest() {
+    httpRequest req = new httpRequest(conn, request, httpver, 
+	head, headBase, off, numHeaders, body);
+    if (conn != null) req.seqNum = conn.nextRequestSeq();
+    head = null;
+    off = null;
+    body = null;
+    if (DEBUG) System.err.println("httpPacketReader: Pushing req to user");
+    if (!compQ.enqueue_lossy(req)) {
+      if (DEBUG) System.err.println("httpPacketReader: Could not enqueue_lossy to user: "+req);
+      // Answer it here, or later responses on the connection would
+      // wait for it forever
+      if (conn != null) conn.enqueue_lossy(new httpResponder(REJECT_RESPONSE, req));
+    }
   }
 
 }
@@ -59,7 +59,7 @@ public class httpRedirectResponse extends httpResponse implements httpConst, Que
 
 
   protected String getEntityHeader() {
-    return "Location: "+newURL+CRLF+"Connection: close"+CRLF;
+    return "Location: "+newURL+CRLF;
   }
 
   public String toString() {
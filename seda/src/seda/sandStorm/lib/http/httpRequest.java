@@ -28,6 +28,7 @@ package seda.sandStorm.lib.http;
 import seda.sandStorm.api.*;
 import seda.sandStorm.lib.aSocket.*;
 import seda.sandStorm.core.*;
+import seda.util.*;
 
 import java.util.*;
 import java.io.*;
@@ -35,6 +36,12 @@ import java.net.*;
 
 /**
  * This class represents a single HTTP client request.
+ *
+ * <p>The request line and header are kept as the raw bytes read from 
+ * the connection, together with the offsets of each field. The URL,
+ * query and header values are only converted to Strings when they are
+ * asked for, so a request which is never inspected costs no more than
+ * the bytes it arrived in.
  * 
  * @author Matt Welsh
  */
@@ -58,78 +65,140 @@ public class httpRequest extends TimeStampedEvent
   /** Default value for a query key. */
   public static final String QUERY_KEY_SET = "true";
 
+  // Layout of the offset array: the URL, followed by four entries
+  // (name start/end, value start/end) for each header line. All
+  // offsets are relative to 'base'.
+  static final int OFF_URL_START = 0;
+  static final int OFF_URL_END = 1;
+  static final int OFF_HEADERS = 2;
+
   private httpConnection conn;
   private int request;
-  private String url;
   private int httpver;
   private int user_class = -2;
+  // Position of this request on its connection; used to order
+  // pipelined responses
+  int seqNum;
 
-  private Vector rawHeader;
-  private Hashtable header;
+  private byte head[];
+  private int base;
+  private int off[];
+  private int numHeaders;
+  private BufferElement body;
+
+  private String url;
   private Hashtable query;
 
   /**
    * Package-internal: Create an httpRequest from the given connection,
-   * request string, URL, HTTP version, and header.
+   * request code, HTTP version and raw request head. 'off' holds the
+   * offsets of the URL and of numHeaders header lines, relative to 
+   * head[base]. 'body' may be null if the request had no body.
    */
-  httpRequest(httpConnection conn, String requestStr, String url, 
-      int httpver, Vector header) throws IOException {
+  httpRequest(httpConnection conn, int request, int httpver, 
+      byte head[], int base, int off[], int numHeaders, BufferElement body) {
     this.conn = conn;
+    this.request = request;
     this.httpver = httpver;
-    this.rawHeader = header;
-    this.header = null;
-
-    // Check to see if there is a query string
-    int question = url.indexOf('?');
-    if (question != -1) {
-      query = new Hashtable();
-      this.url = url.substring(0, question);
-      StringTokenizer st = new StringTokenizer(url.substring(question+1), ";&");
-      while (st.hasMoreTokens()) {
-	String name_value_pair = decodeURL(st.nextToken());
-	int equals = name_value_pair.indexOf('=');
+    this.head = head;
+    this.base = base;
+    this.off = off;
+    this.numHeaders = numHeaders;
+    this.body = body;
+    // Used by response time controllers to measure request latency
+    this.timestamp = Clock.currentTimeMillis();
+  }
 
+  /**
+   * Package-internal: Return the index of the header with the given 
+   * name (compared case-insensitively), or -1 if there is none.
+   */
+  static int findHeader(byte head[], int base, int off[], int numHeaders, 
+      String key) {
+    int keylen = key.length();
+    for (int h = 0; h < numHeaders; h++) {
+      int ns = base + off[OFF_HEADERS + (h*4)];
+      int ne = base + off[OFF_HEADERS + (h*4) + 1];
+      if (ne - ns != keylen) continue;
+      int i = 0;
+      while (i < keylen) {
+	int c1 = head[ns+i] & 0xff, c2 = key.charAt(i);
+	if ((c1 != c2) && (toLower(c1) != toLower(c2))) break;
+	i++;
+      }
+      if (i == keylen) return h;
+    }
+    return -1;
+  }
+
+  private static int toLower(int c) {
+    return ((c >= 'A') && (c <= 'Z'))?(c + ('a' - 'A')):(c);
+  }
+
+  // Return the given range of the head as a String. The head is
+  // decoded as ISO-8859-1, which is what HTTP specifies for headers.
+  private String str(int start, int end) {
+    return new String(head, 0, base+start, end-start);
+  }
+
+  // Return the value of the given header line
+  private String headerValue(int h) {
+    String v = str(off[OFF_HEADERS + (h*4) + 2], off[OFF_HEADERS + (h*4) + 3]);
+    // Folded header lines keep their line breaks in the raw bytes
+    if (v.indexOf('\n') != -1) {
+      v = v.replace('\r', ' ').replace('\n', ' ').replace('\t', ' ');
+    }
+    return v;
+  }
+
+  // Split the URL from the query string, and parse the query
+  private void parseURL() {
+    int start = off[OFF_URL_START], end = off[OFF_URL_END];
+    int question = start;
+    while ((question < end) && (head[base+question] != '?')) question++;
+    url = str(start, question);
+    if (question == end) return;
+
+    query = new Hashtable();
+    int p = question+1;
+    while (p < end) {
+      int q = p, equals = -1;
+      while ((q < end) && (head[base+q] != '&') && (head[base+q] != ';')) {
+	if ((equals == -1) && (head[base+q] == '=')) equals = q;
+	q++;
+      }
+      if (q > p) {
 	if (equals == -1) {
-	  putVal(name_value_pair, QUERY_KEY_SET);
+	  putVal(decodeURL(p, q), QUERY_KEY_SET);
 	} else {
-	  putVal(name_value_pair.substring(0,equals), 
-	      name_value_pair.substring(equals+1));
+	  putVal(decodeURL(p, equals), decodeURL(equals+1, q));
 	}
       }
-    } else {
-      this.url = url;
-    }
-
-    if (requestStr.equalsIgnoreCase("get")) {
-      request = REQUEST_GET;
-    } else if (requestStr.equalsIgnoreCase("post")) {
-      request = REQUEST_POST;
-    } else {
-      throw new IOException("Bad HTTP request: "+request);
+      p = q+1;
     }
   }
 
-  // Decode special characters in URLs 
-  private String decodeURL(String encoded) {
-    StringBuffer out = new StringBuffer(encoded.length());
-    int i = 0;
-    int j = 0;
+  // Decode special characters in the given range of the URL
+  private String decodeURL(int start, int end) {
+    StringBuffer out = new StringBuffer(end - start);
+    int i = base+start;
+    end += base;
 
-    while (i < encoded.length()) {
-      char ch = encoded.charAt(i);
+    while (i < end) {
+      char ch = (char)(head[i] & 0xff);
       i++;
       if (ch == '+') 
 	ch = ' ';
-      else if (ch == '%') {
-	try {
-	  ch = (char)Integer.parseInt(encoded.substring(i,i+2), 16);
+      else if ((ch == '%') && (i+2 <= end)) {
+	int hi = Character.digit((char)head[i], 16);
+	int lo = Character.digit((char)head[i+1], 16);
+	// If it's not a valid escape, just leave it alone
+	if ((hi != -1) && (lo != -1)) {
+	  ch = (char)((hi << 4) | lo);
 	  i+=2;
-	} catch (StringIndexOutOfBoundsException se) {
-	  // If nothing's there, just ignore it
 	}
       }
       out.append(ch);
-      j++;
     }
     return out.toString();
   }
@@ -162,6 +231,7 @@ public class httpRequest extends TimeStampedEvent
    * Return the request URL.
    */
   public String getURL() {
+    if (url == null) parseURL();
     return url;
   }
 
@@ -183,20 +253,57 @@ public class httpRequest extends TimeStampedEvent
   /**
    * Return the header line corresponding to the given key.
    * For example, to get the 'User-Agent' field from the header,
-   * use <tt>getHeader("User-Agent")</tt>.
+   * use <tt>getHeader("User-Agent")</tt>. Header names are compared
+   * case-insensitively.
    */
   public String getHeader(String key) {
-    if (header == null) {
-      parseHeader();
+    int h = findHeader(head, base, off, numHeaders, key);
+    if (h == -1) return null;
+    return headerValue(h);
+  }
+
+  /**
+   * Return the body of the request, or null if the request did not
+   * have one. A chunked body is returned with the chunk framing 
+   * removed. The returned buffer may share its data array with other
+   * requests read from the same packet, and must not be modified.
+   */
+  public BufferElement getBody() {
+    return body;
+  }
+
+  /**
+   * Indicates whether the connection should be kept open after the
+   * response to this request is sent. HTTP/1.1 connections are
+   * persistent unless the client sends "Connection: close"; HTTP/1.0
+   * connections are persistent only if the client sends 
+   * "Connection: keep-alive".
+   */
+  public boolean isKeepAlive() {
+    String c = getHeader("Connection");
+    if (httpver == HTTPVER_11) {
+      return (c == null) || !hasToken(c, "close");
+    } else if (httpver == HTTPVER_10) {
+      return (c != null) && hasToken(c, "keep-alive");
+    } else {
+      return false;
+    }
+  }
+
+  // Check whether the comma-separated header value contains the token
+  private static boolean hasToken(String val, String token) {
+    StringTokenizer st = new StringTokenizer(val, ",");
+    while (st.hasMoreTokens()) {
+      if (st.nextToken().trim().equalsIgnoreCase(token)) return true;
     }
-    if (header == null) return null;
-    return (String)header.get(key);
+    return false;
   }
 
   /**
    * Return an enumeration of keys in the query string, if any.
    */
   public Enumeration getQueryKeys() {
+    if (url == null) parseURL();
     if (query == null) return null;
     return query.keys();
   }
@@ -207,6 +314,7 @@ public class httpRequest extends TimeStampedEvent
    * will be returned.
    */
   public String getQuery(String key) {
+    if (url == null) parseURL();
     if (query == null) return null;
     Object val = query.get(key);
     if (val == null) return null;
@@ -221,6 +329,7 @@ public class httpRequest extends TimeStampedEvent
    * Return the set of values associated with the given query key.
    */
   public String[] getQuerySet(String key) {
+    if (url == null) parseURL();
     if (query == null) return null;
     Object val = query.get(key);
     if (val == null) return null;
@@ -251,20 +360,6 @@ public class httpRequest extends TimeStampedEvent
     }
   }
 
-  // Convert rawHeader to header (key, value) pairs
-  private void parseHeader() {
-    if (rawHeader == null) return;
-    header = new Hashtable(1);
-    for (int i = 0; i < rawHeader.size(); i++) {
-      String h = (String)rawHeader.elementAt(i);
-      StringTokenizer s = new StringTokenizer(h);
-      String k = s.nextToken(":").trim();
-      String v = s.nextToken().trim();
-      if (DEBUG) System.err.println("httpRequest: key="+k+", val="+v);
-      header.put(k,v);
-    }
-  }
-
   public String toString() {
     String s = "httpRequest[";
     switch (request) {
@@ -272,22 +367,18 @@ public class httpRequest extends TimeStampedEvent
       case REQUEST_POST: s+="POST "; break;
       default: s+="??? "; break;
     }
-    s += url+" ";
+    s += getURL()+" ";
     switch (httpver) {
       case HTTPVER_09: s+="HTTP/0.9"; break;
       case HTTPVER_10: s+="HTTP/1.0"; break;
       case HTTPVER_11: s+="HTTP/1.1"; break;
     }
 
-    if (header == null) parseHeader(); 
-    if (header != null) {
-      Enumeration e = header.keys();
-      while (e.hasMoreElements()) {
-	String key = (String)e.nextElement();
-	String val = (String)header.get(key);
-	s += "\n\t"+key+" "+val;
-      }
+    for (int h = 0; h < numHeaders; h++) {
+      String key = str(off[OFF_HEADERS + (h*4)], off[OFF_HEADERS + (h*4) + 1]);
+      s += "\n\t"+key+" "+headerValue(h);
     }
+    if (body != null) s += "\n\t["+body.size+" bytes of body]";
     s += "]";
     return s;
   }
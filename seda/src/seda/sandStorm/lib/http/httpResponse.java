@@ -31,11 +31,18 @@ import seda.sandStorm.core.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.text.*;
 
 /**
  * This is an abstract class corresponding to an HTTP response.
  * Use one of the subclasses (such as httpOKResponse or httpNotFoundResponse)
  * to push responses back to the client.
+ *
+ * <p>The static part of the header (status line, default header and
+ * Content-Type) is encoded once per response code and MIME type and
+ * shared by all responses. Only the Date, Content-Length and connection
+ * headers are encoded per response, and the header and payload are 
+ * handed to the connection as separate buffers for a gathering write.
  * 
  * @author Matt Welsh
  * @see httpOKResponse
@@ -66,8 +73,6 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
   /** The default response header. */
   protected static String defaultHeader = "Server: Sandstorm (unknown version)"+CRLF;
 
-  /** The actual data of the response. */
-  protected BufferElement combinedData;
   /** The header for the response. */
   protected BufferElement header;
   /** The payload for the response. */
@@ -77,6 +82,29 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
   /** The content-length header. */
   protected int contentLength;
 
+  // Pre-encoded static header parts, one table (keyed by MIME type)
+  // per response code
+  private static final int NUM_CODES = 6;
+  private static Hashtable templates[] = new Hashtable[NUM_CODES];
+  private static final String NO_CONTENT_TYPE = "";
+  static {
+    for (int i = 0; i < NUM_CODES; i++) templates[i] = new Hashtable();
+  }
+
+  // The Date header is only reformatted once per second
+  private static final byte DATE_PREFIX[] = "Date: ".getBytes();
+  private static final byte CONTENT_LENGTH_PREFIX[] = "Content-Length: ".getBytes();
+  private static SimpleDateFormat dateFormat;
+  private static volatile long dateSecond = -1;
+  private static volatile byte dateBytes[];
+  static {
+    dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+  }
+
+  // The static header part of this response
+  private byte template[];
+
   /**
    * Create an httpResponse with the given response code with the given
    * payload. 
@@ -88,15 +116,7 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
    * @param payload The payload of the response.
    */
   protected httpResponse(int code, String contentType, BufferElement payload) {
-    this.code = code;
-    this.contentType = contentType;
-    this.contentLength = payload.size;
-
-    this.combinedData = null;
-    String hdrString = genHeader();
-    byte hdr[] = hdrString.getBytes();
-    this.header = new BufferElement(hdr);
-    this.payload = payload;
+    this(code, contentType, payload, payload.size);
   }
 
   /**
@@ -114,11 +134,8 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
     this.code = code;
     this.contentType = contentType;
     this.contentLength = contentLength;
-
-    this.combinedData = null;
-    String hdrString = genHeader();
-    byte hdr[] = hdrString.getBytes();
-    this.header = new BufferElement(hdr);
+    this.template = getTemplate(code, contentType);
+    this.header = null;
     this.payload = payload;
   }
 
@@ -136,18 +153,16 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
     this.code = code;
     this.contentType = contentType;
     this.contentLength = 0; // Don't know it yet
-
-    this.combinedData = null;
+    this.template = getTemplate(code, contentType);
     this.header = null;
     this.payload = null;
   }
 
   /**
    * Create an httpResponse with the the given response code, with an
-   * empty payload of the given size. This can be more efficient than
-   * providing a payload separately, as the entire contents of the 
-   * httpResponse can be sent as a single TCP packet. The payload can
-   * be filled in using the getPayload() method.
+   * empty payload of the given size. The payload can be filled in 
+   * using the getPayload() method, and is sent along with the header 
+   * in a single gathering write.
    *
    * @param code The response code; should be one of the constants
    *  from httpResponse.RESPONSE_*.
@@ -157,25 +172,17 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
    * @param compQ The completion queue for the payload.
    */
   protected httpResponse(int code, String contentType, int payloadSize, SinkIF compQ) {
-    this.code = code;
-    this.contentType = contentType;
-    this.contentLength = payloadSize;
-
-    String hdrString = genHeader();
-    byte hdr[] = hdrString.getBytes();
-    this.combinedData = new BufferElement(hdr.length + payloadSize);
-    combinedData.compQ = compQ;
-    this.header = new BufferElement(combinedData.data, 0, hdr.length);
-    System.arraycopy(hdr, 0, header.data, 0, hdr.length);
-    this.payload = new BufferElement(combinedData.data, hdr.length, payloadSize);
+    this(code, contentType, 
+	// A BufferElement cannot be empty, so send no payload at all
+	(payloadSize == 0)?null:new BufferElement(new byte[payloadSize], 0, payloadSize, compQ), 
+	payloadSize);
   }
 
   /**
    * Create an httpResponse with the the given response code, with an
-   * empty payload of the given size. This can be more efficient than
-   * providing a payload separately, as the entire contents of the 
-   * httpResponse can be sent as a single TCP packet. The payload can
-   * be filled in using the getPayload() method.
+   * empty payload of the given size. The payload can be filled in 
+   * using the getPayload() method, and is sent along with the header 
+   * in a single gathering write.
    *
    * @param code The response code; should be one of the constants
    *  from httpResponse.RESPONSE_*.
@@ -205,12 +212,16 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
   }
 
   /**
-   * Returns the header for this response.
+   * Returns the header for this response. Note that the header is 
+   * regenerated (with a fresh Date) each time the response is sent;
+   * this returns a copy made on the first call.
    */
   public BufferElement getHeader() {
     if (this.header == null) {
-      String hdrString = genHeader();
-      byte hdr[] = hdrString.getBytes();
+      byte dyn[] = genDynamicHeader(null);
+      byte hdr[] = new byte[template.length + dyn.length];
+      System.arraycopy(template, 0, hdr, 0, template.length);
+      System.arraycopy(dyn, 0, hdr, template.length, dyn.length);
       this.header = new BufferElement(hdr);
     }
     return this.header;
@@ -227,7 +238,11 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
    * Set the default header string sent in all responses.
    */
   public static void setDefaultHeader(String defhdr) {
-    defaultHeader = defhdr;
+    synchronized (templates) {
+      defaultHeader = defhdr;
+      // Drop the templates encoded with the old header
+      for (int i = 0; i < NUM_CODES; i++) templates[i].clear();
+    }
   }
 
   /**
@@ -237,40 +252,120 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
     return defaultHeader;
   }
 
-  /**
-   * Generate the header.
-   */
-  private String genHeader() {
-    String hdrString;
+  // Return the index of the template table for the given code
+  private static int codeIndex(int code) {
     switch (code) {
-      case RESPONSE_OK: 
-	hdrString = HTTP_VERSION+" 200 OK\n"; break;
-      case RESPONSE_REDIRECT:
-	hdrString = HTTP_VERSION+" 301 MOVED PERMANENTLY\n"; break;
-      case RESPONSE_BAD_REQUEST: 
-	hdrString = HTTP_VERSION+" 400 BAD REQUEST\n"; break;
-      case RESPONSE_NOT_FOUND:
-	hdrString = HTTP_VERSION+" 404 NOT FOUND\n"; break;
-      case RESPONSE_INTERNAL_SERVER_ERROR:
-      	hdrString = HTTP_VERSION+" 500 INTERNAL SERVER ERROR\n"; break;
-      case RESPONSE_SERVICE_UNAVAILABLE:
-      	hdrString = HTTP_VERSION+" 503 SERVICE UNAVAILABLE\n"; break;
+      case RESPONSE_OK: return 0;
+      case RESPONSE_REDIRECT: return 1;
+      case RESPONSE_BAD_REQUEST: return 2;
+      case RESPONSE_NOT_FOUND: return 3;
+      case RESPONSE_INTERNAL_SERVER_ERROR: return 4;
+      case RESPONSE_SERVICE_UNAVAILABLE: return 5;
       default: 
 	throw new Error("Bad code in httpResponse: "+code);
-    } 
-    if (defaultHeader != null) hdrString += defaultHeader;
-    if (contentType != null) {
-      hdrString += "Content-Type: "+contentType+CRLF;
     }
-    if (contentLength != 0) {
-      hdrString += "Content-Length: "+contentLength+CRLF;
+  }
+
+  /**
+   * Return the pre-encoded static part of the header (status line, 
+   * default header and Content-Type) for the given code and MIME type.
+   */
+  private static byte[] getTemplate(int code, String contentType) {
+    Hashtable table = templates[codeIndex(code)];
+    Object key = (contentType == null)?NO_CONTENT_TYPE:contentType;
+    byte tmpl[] = (byte[])table.get(key);
+    if (tmpl != null) return tmpl;
+
+    synchronized (templates) {
+      String hdrString;
+      switch (code) {
+	case RESPONSE_OK: 
+	  hdrString = HTTP_VERSION+" 200 OK"+CRLF; break;
+	case RESPONSE_REDIRECT:
+	  hdrString = HTTP_VERSION+" 301 MOVED PERMANENTLY"+CRLF; break;
+	case RESPONSE_BAD_REQUEST: 
+	  hdrString = HTTP_VERSION+" 400 BAD REQUEST"+CRLF; break;
+	case RESPONSE_NOT_FOUND:
+	  hdrString = HTTP_VERSION+" 404 NOT FOUND"+CRLF; break;
+	case RESPONSE_INTERNAL_SERVER_ERROR:
+	  hdrString = HTTP_VERSION+" 500 INTERNAL SERVER ERROR"+CRLF; break;
+	default:
+	  hdrString = HTTP_VERSION+" 503 SERVICE UNAVAILABLE"+CRLF; break;
+      } 
+      if (defaultHeader != null) hdrString += defaultHeader;
+      if (contentType != null) {
+	hdrString += "Content-Type: "+contentType+CRLF;
+      }
+      tmpl = hdrString.getBytes();
+      table.put(key, tmpl);
+      return tmpl;
+    }
+  }
+
+  // Return the current Date header value, formatted at most once 
+  // per second
+  private static byte[] getDate() {
+    long sec = System.currentTimeMillis() / 1000;
+    if (sec != dateSecond) {
+      synchronized (dateFormat) {
+	if (sec != dateSecond) {
+	  dateBytes = dateFormat.format(new Date(sec * 1000)).getBytes();
+	  dateSecond = sec;
+	}
+      }
     }
+    return dateBytes;
+  }
+
+  // Copy an ASCII string into the given array, returning the new offset
+  private static int putString(String s, byte arr[], int off) {
+    int len = s.length();
+    for (int i = 0; i < len; i++) arr[off++] = (byte)s.charAt(i);
+    return off;
+  }
+
+  /**
+   * Generate the per-response part of the header: the Date and 
+   * Content-Length headers, the given connection header line (which 
+   * should not be CRLF-terminated) if it is non-null, the entity header,
+   * and the terminating blank line.
+   */
+  private byte[] genDynamicHeader(String connHeader) {
+    byte date[] = getDate();
     String ehdr = getEntityHeader();
-    if (ehdr != null) {
-      hdrString += ehdr;
+
+    int lenDigits = 1;
+    for (int n = contentLength; n >= 10; n /= 10) lenDigits++;
+    int len = DATE_PREFIX.length + date.length + 2 +
+      CONTENT_LENGTH_PREFIX.length + lenDigits + 2 + 2;
+    if (connHeader != null) len += connHeader.length() + 2;
+    if (ehdr != null) len += ehdr.length();
+
+    byte hdr[] = new byte[len];
+    int off = 0;
+    System.arraycopy(DATE_PREFIX, 0, hdr, off, DATE_PREFIX.length);
+    off += DATE_PREFIX.length;
+    System.arraycopy(date, 0, hdr, off, date.length);
+    off += date.length;
+    hdr[off++] = '\r'; hdr[off++] = '\n';
+    // Always send the length, since persistent connections rely on it 
+    // to find the end of the response
+    System.arraycopy(CONTENT_LENGTH_PREFIX, 0, hdr, off, CONTENT_LENGTH_PREFIX.length);
+    off += CONTENT_LENGTH_PREFIX.length;
+    int n = contentLength;
+    for (int i = off + lenDigits - 1; i >= off; i--) {
+      hdr[i] = (byte)('0' + (n % 10));
+      n /= 10;
+    }
+    off += lenDigits;
+    hdr[off++] = '\r'; hdr[off++] = '\n';
+    if (connHeader != null) {
+      off = putString(connHeader, hdr, off);
+      hdr[off++] = '\r'; hdr[off++] = '\n';
     }
-    hdrString += CRLF;
-    return hdrString;
+    if (ehdr != null) off = putString(ehdr, hdr, off);
+    hdr[off++] = '\r'; hdr[off++] = '\n';
+    return hdr;
   }
   
   /**
@@ -280,42 +375,38 @@ public abstract class httpResponse implements httpConst, QueueElementIF {
    * @param sendHeader Indicate whether the header should be included.
    */
   public BufferElement[] getBuffers(boolean sendHeader) {
+    return getBuffers(sendHeader, null);
+  }
+
+  /**
+   * Package-internal: Get an array of BufferElements corresponding to 
+   * this response, with the given connection header line (such as 
+   * "Connection: close") added to the response header if it is 
+   * non-null. The shared static header part, the per-response header
+   * part and the payload are returned as separate buffers.
+   */
+  BufferElement[] getBuffers(boolean sendHeader, String connHeader) {
     if (DEBUG) System.err.println("httpResponse: getBuffers() called");
 
-    BufferElement bufarr[] = null;
-    if (combinedData != null) {
-      if (sendHeader) {
-	if (DEBUG) System.err.println("httpResponse: Returning combinedData (len="+combinedData.size+")");
-	bufarr = new BufferElement[1];
-	bufarr[0] = combinedData;
-      } else {
-	if (DEBUG) System.err.println("httpResponse: Returning combinedData payload only (len="+payload.size+")");
-	bufarr = new BufferElement[1];
-	bufarr[0] = payload;
-      }
-    } else if (sendHeader) {
-      if (payload != null) {
-	if (DEBUG) System.err.println("httpResponse: Returning header and payload (paylen="+payload.size+")");
-	bufarr = new BufferElement[2];
-	bufarr[0] = getHeader();
-	bufarr[1] = getPayload();
-      } else {
-	if (DEBUG) System.err.println("httpResponse: Returning header only (len="+header.size+")");
-	bufarr = new BufferElement[1];
-	bufarr[0] = getHeader();
-      }
-    } else {
-      // Don't send header
-      if (payload != null) {
-	if (DEBUG) System.err.println("httpResponse: Returning payload only (paylen="+payload.size+")");
-	bufarr = new BufferElement[1];
-	bufarr[0] = payload;
-      } else {
+    BufferElement bufarr[];
+    if (!sendHeader) {
+      if (payload == null) {
 	if (DEBUG) System.err.println("httpResponse: Nothing to return!");
-	bufarr = null;
+	return null;
       }
+      if (DEBUG) System.err.println("httpResponse: Returning payload only (paylen="+payload.size+")");
+      bufarr = new BufferElement[1];
+      bufarr[0] = payload;
+      return bufarr;
+    }
+
+    bufarr = new BufferElement[(payload == null)?2:3];
+    bufarr[0] = new BufferElement(template);
+    bufarr[1] = new BufferElement(genDynamicHeader(connHeader));
+    if (payload != null) {
+      if (DEBUG) System.err.println("httpResponse: Returning header and payload (paylen="+payload.size+")");
+      bufarr[2] = payload;
     }
-      
     return bufarr;
   }
 
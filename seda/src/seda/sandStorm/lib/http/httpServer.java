@@ -40,6 +40,11 @@ import java.net.*;
  * connection is closed, a SinkClosedEvent is pushed, with the 
  * sink pointer set to the httpConnection that closed. 
  *
+ * <p>Persistent connections which have no outstanding requests are
+ * closed after an idle timeout (DEFAULT_IDLE_TIMEOUT milliseconds 
+ * unless specified otherwise); the user receives a SinkClosedEvent
+ * in this case as well.
+ *
  * @author Matt Welsh (mdw@cs.berkeley.edu)
  * @see httpConnection
  * @see httpRequest
@@ -57,8 +62,14 @@ public class httpServer implements EventHandlerIF, httpConst {
   // ATcpConnection -> httpConnection
   private Hashtable connTable; 
 
+  protected int idleTimeout;
+  private ssTimer timer;
+
   private static int num_svrs = 0;
 
+  // Pushed by the timer to check for idle connections
+  private static class idleCheckEvent implements QueueElementIF { }
+
   /**
    * Create an HTTP server listening for incoming connections on 
    * the default port of 8080.
@@ -72,9 +83,19 @@ public class httpServer implements EventHandlerIF, httpConst {
    * the given listenPort. 
    */
   public httpServer(ManagerIF mgr, SinkIF clientSink, int listenPort) throws Exception {
+    this(mgr, clientSink, listenPort, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /** 
+   * Create an HTTP server listening for incoming connections on
+   * the given listenPort. Connections which are idle for idleTimeout
+   * milliseconds are closed; an idleTimeout of 0 or less disables this.
+   */
+  public httpServer(ManagerIF mgr, SinkIF clientSink, int listenPort, int idleTimeout) throws Exception {
     this.mgr = mgr;
     this.clientSink = clientSink;
     this.listenPort = listenPort;
+    this.idleTimeout = idleTimeout;
 
     this.connTable = new Hashtable();
 
@@ -93,12 +114,18 @@ public class httpServer implements EventHandlerIF, httpConst {
     mySink = config.getStage().getSink();
 
     servsock = new ATcpServerSocket(listenPort, mySink, WRITE_CLOG_THRESHOLD);
+
+    if (idleTimeout > 0) {
+      timer = new ssTimer();
+      timer.registerEvent(IDLE_CHECK_INTERVAL, new idleCheckEvent(), mySink);
+    }
   }
 
   /** 
    * The Sandstorm stage destroy method.
    */
   public void destroy() {
+    if (timer != null) timer.doneWithTimer();
   }
 
   /**
@@ -123,8 +150,13 @@ public class httpServer implements EventHandlerIF, httpConst {
 	hc.parsePacket(pkt);
       } catch (IOException ioe) {
 	System.err.println("httpServer: Got IOException during packet processing for connection "+hc+": "+ioe);
-	ioe.printStackTrace();
-	// XXX Should close connection
+	// We can't find the start of the next request, so give up on
+	// the connection
+	try {
+	  hc.close(clientSink);
+	} catch (SinkClosedException sce) {
+	  // Already closed
+	}
       }
 
     } else if (qel instanceof ATcpConnection) {
@@ -135,7 +167,7 @@ public class httpServer implements EventHandlerIF, httpConst {
       // Profile the connection if profiling enabled
       ProfilerIF profiler = mgr.getProfiler();
       SandstormConfig cfg = mgr.getConfig();
-      if ((profiler != null) && cfg.getBoolean("global.profile.sockets")) profiler.add(conn.toString(), conn);
+      if ((profiler != null) && cfg.getSnapshot().profileSockets) profiler.add(conn.toString(), conn);
       conn.startReader(mySink);
 
     } else if (qel instanceof aSocketErrorEvent) {
@@ -161,6 +193,27 @@ public class httpServer implements EventHandlerIF, httpConst {
 
     } else if (qel instanceof ATcpListenSuccessEvent) {
       clientSink.enqueue_lossy(qel);
+
+    } else if (qel instanceof idleCheckEvent) {
+      closeIdleConnections();
+      timer.registerEvent(IDLE_CHECK_INTERVAL, qel, mySink);
+    }
+  }
+
+  // Close all connections which have been idle for idleTimeout ms
+  private void closeIdleConnections() {
+    long now = System.currentTimeMillis();
+    Enumeration e = connTable.elements();
+    while (e.hasMoreElements()) {
+      httpConnection hc = (httpConnection)e.nextElement();
+      if (hc.isIdle(now, idleTimeout)) {
+	if (DEBUG) System.err.println("httpServer: Closing idle connection "+hc);
+	try {
+	  hc.close(clientSink);
+	} catch (SinkClosedException sce) {
+	  // Already closed
+	}
+      }
     }
   }
 
@@ -47,6 +47,16 @@ public class httpServiceUnavailableResponse extends httpResponse implements http
    * given request with the given reason.
    */
   public httpServiceUnavailableResponse(httpRequest request, String reason) {
+    this(reason);
+  }
+
+  /**
+   * Create an httpServiceUnavailableResponse with the given reason. 
+   * As it does not refer to a request, the response can be built once 
+   * and sent to any number of clients, which makes rejecting requests
+   * under overload cheap.
+   */
+  public httpServiceUnavailableResponse(String reason) {
     super(httpResponse.RESPONSE_SERVICE_UNAVAILABLE, "text/html");
 
     String str = "<html><head><title>503 Service Unavailable</title></head><body bgcolor=white><font face=\"helvetica\"><big><big><b>503 Service Unavailable</b></big></big><p>The requested service is unavailable. The reason given was:<p><blockquote><tt>"+reason+"</tt></blockquote></body></html>\n";
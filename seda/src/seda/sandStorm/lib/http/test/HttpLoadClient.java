@@ -0,0 +1,159 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.util.*;
+import java.io.*;
+import java.net.*;
+
+/**
+ * A simple load generator for TestServer (or any other HTTP server).
+ * Each client thread opens a persistent connection and issues requests
+ * back to back, reading each response (using its Content-Length) before 
+ * sending the next. Prints the throughput and mean response time once 
+ * per second and a summary at the end.
+ *
+ * <p>Usage: <tt>java HttpLoadClient host port numClients seconds [url]</tt>
+ */
+public class HttpLoadClient {
+
+  private static final boolean DEBUG = false;
+
+  private static String host;
+  private static int port;
+  private static String url = "/";
+  private static byte request[];
+
+  private static Object lock = new Object();
+  private static long numResponses = 0;
+  private static long totalRespTime = 0;
+  private static long numErrors = 0;
+  private static volatile boolean done = false;
+
+  private static class ClientThread extends Thread {
+    public void run() {
+      while (!done) {
+	try {
+	  Socket s = new Socket(host, port);
+	  s.setTcpNoDelay(true);
+	  InputStream is = new BufferedInputStream(s.getInputStream());
+	  OutputStream os = s.getOutputStream();
+	  boolean open = true;
+	  while (!done && open) {
+	    long t1 = System.currentTimeMillis();
+	    os.write(request);
+	    open = readResponse(is);
+	    long t2 = System.currentTimeMillis();
+	    synchronized (lock) {
+	      numResponses++;
+	      totalRespTime += (t2 - t1);
+	    }
+	  }
+	  s.close();
+	} catch (IOException e) {
+	  if (DEBUG) System.err.println("HttpLoadClient: "+e);
+	  synchronized (lock) { numErrors++; }
+	}
+      }
+    }
+  }
+
+  // Read one response; returns false if the server will close
+  private static boolean readResponse(InputStream is) throws IOException {
+    int contentLength = -1;
+    boolean keepAlive = true;
+    String line = readLine(is);
+    if (line == null) throw new EOFException("Connection closed by server");
+    if (DEBUG) System.err.println("HttpLoadClient: "+line);
+    while ((line = readLine(is)) != null && line.length() > 0) {
+      String lc = line.toLowerCase();
+      if (lc.startsWith("content-length:")) {
+	contentLength = Integer.parseInt(lc.substring(15).trim());
+      } else if (lc.startsWith("connection:") && lc.indexOf("close") != -1) {
+	keepAlive = false;
+      }
+    }
+    if (contentLength < 0) throw new IOException("No Content-Length in response");
+    byte body[] = new byte[Math.min(contentLength, 65536)];
+    while (contentLength > 0) {
+      int c = is.read(body, 0, Math.min(contentLength, body.length));
+      if (c < 0) throw new EOFException("Short response body");
+      contentLength -= c;
+    }
+    return keepAlive;
+  }
+
+  private static String readLine(InputStream is) throws IOException {
+    StringBuffer sb = new StringBuffer();
+    int c;
+    while ((c = is.read()) != '\n') {
+      if (c < 0) return null;
+      if (c != '\r') sb.append((char)c);
+    }
+    return sb.toString();
+  }
+
+  private static void usage() {
+    System.err.println("Usage: java HttpLoadClient host port numClients seconds [url]");
+    System.exit(-1);
+  }
+
+  public static void main(String args[]) throws Exception {
+    if (args.length < 4) usage();
+    host = args[0];
+    port = Integer.parseInt(args[1]);
+    int numClients = Integer.parseInt(args[2]);
+    int seconds = Integer.parseInt(args[3]);
+    if (args.length > 4) url = args[4];
+    request = ("GET "+url+" HTTP/1.1\r\nHost: "+host+"\r\n\r\n").getBytes();
+
+    System.err.println("HttpLoadClient: "+numClients+" clients for "+seconds+" seconds against http://"+host+":"+port+url);
+    for (int i = 0; i < numClients; i++) {
+      new ClientThread().start();
+    }
+
+    long start = System.currentTimeMillis();
+    long lastResponses = 0, lastRespTime = 0;
+    for (int i = 0; i < seconds; i++) {
+      Thread.currentThread().sleep(1000);
+      long n, rt;
+      synchronized (lock) {
+	n = numResponses;
+	rt = totalRespTime;
+      }
+      long dn = n - lastResponses;
+      double meanrt = (dn == 0)?0.0:((rt - lastRespTime) * 1.0) / dn;
+      System.err.println("HttpLoadClient: "+dn+" responses/sec, mean response time "+MDWUtil.format(meanrt)+" ms");
+      lastResponses = n;
+      lastRespTime = rt;
+    }
+    done = true;
+    long elapsed = System.currentTimeMillis() - start;
+
+    synchronized (lock) {
+      double rate = (numResponses * 1000.0) / elapsed;
+      double meanrt = (numResponses == 0)?0.0:(totalRespTime * 1.0) / numResponses;
+      System.err.println("HttpLoadClient: Total "+numResponses+" responses in "+elapsed+" ms, "+MDWUtil.format(rate)+" responses/sec, mean response time "+MDWUtil.format(meanrt)+" ms, "+numErrors+" errors");
+    }
+    System.exit(0);
+  }
+
+}
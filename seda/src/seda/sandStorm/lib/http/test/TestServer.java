@@ -55,7 +55,7 @@ public class TestServer implements EventHandlerIF {
     if (DEBUG) System.err.println("GOT QEL: "+item);
 
     if (item instanceof httpConnection) {
-      System.err.println("TestServer: Got connection "+item);
+      if (DEBUG) System.err.println("TestServer: Got connection "+item);
 
     } else if (item instanceof httpRequest) {
       handleRequest((httpRequest)item);
@@ -74,7 +74,7 @@ public class TestServer implements EventHandlerIF {
 
   private void handleRequest(httpRequest req) {
     String url = req.getURL();
-    System.err.println("TestServer: Got request "+url);
+    if (DEBUG) System.err.println("TestServer: Got request "+url);
 
     String response = "<html><body bgcolor=\"white\"><h3>Sandstorm Web Server Response</h3><p><b>Hello, this is the Sandstorm test web server.</b><br>You requested the following URL: <p><tt>"+url+"</tt><p>Your complete request was as follows: <p><pre>"+req.toString()+"</pre><p>Glad to be of service today.</body></html>";
     BufferElement resp = new BufferElement(response.getBytes());
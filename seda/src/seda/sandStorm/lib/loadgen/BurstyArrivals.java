@@ -0,0 +1,66 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import java.util.Random;
+
+/**
+ * An arrival process in which requests arrive in bursts of a fixed 
+ * size. The requests in a burst are issued back to back, and the 
+ * bursts themselves arrive as a Poisson process, so that the overall
+ * mean rate is as given.
+ */
+public class BurstyArrivals implements ArrivalProcessIF {
+
+  private double meanBurstInterval;
+  private int burstSize, left;
+  private Random rand;
+
+  /**
+   * Create a bursty arrival process with the given mean number of 
+   * requests per second, in bursts of burstSize requests.
+   */
+  public BurstyArrivals(double rate, int burstSize) {
+    if (rate <= 0.0) throw new IllegalArgumentException("BurstyArrivals: rate must be positive");
+    if (burstSize < 1) throw new IllegalArgumentException("BurstyArrivals: burst size must be positive");
+    this.meanBurstInterval = (1.0e6 * burstSize) / rate;
+    this.burstSize = burstSize;
+    this.left = 0;
+    this.rand = new Random();
+  }
+
+  public long nextInterval() {
+    if (left > 0) {
+      left--;
+      return 0;
+    }
+    left = burstSize - 1;
+    return (long)(-meanBurstInterval * Math.log(1.0 - rand.nextDouble()));
+  }
+
+  public String toString() {
+    return "bursty:"+((1.0e6 * burstSize) / meanBurstInterval)+":"+burstSize;
+  }
+
+}
@@ -0,0 +1,77 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import seda.sandStorm.core.BufferElement;
+import java.io.IOException;
+
+/**
+ * A LoadProtocolIF in which requests and responses are messages of a
+ * fixed size, beginning with a 4-byte little-endian sequence number.
+ * This is the format used by the simple-p2p benchmark server 
+ * (32-byte messages on port 5766).
+ */
+public class FixedSizeLoadProtocol implements LoadProtocolIF {
+
+  private int msgSize;
+
+  public FixedSizeLoadProtocol(int msgSize) {
+    if (msgSize < 4) throw new IllegalArgumentException("FixedSizeLoadProtocol: message size must be at least 4");
+    this.msgSize = msgSize;
+  }
+
+  public BufferElement getHandshake() {
+    return null;
+  }
+
+  public BufferElement getRequest(int seqNum) {
+    byte data[] = new byte[msgSize];
+    data[0] = (byte)(seqNum & 0xff);
+    data[1] = (byte)((seqNum >> 8) & 0xff);
+    data[2] = (byte)((seqNum >> 16) & 0xff);
+    data[3] = (byte)((seqNum >> 24) & 0xff);
+    return new BufferElement(data);
+  }
+
+  public ResponseReaderIF newResponseReader() {
+    return new ResponseReaderIF() {
+      private int partial = 0;
+
+      public int read(byte data[], int offset, int length) throws IOException {
+	int total = partial + length;
+	partial = total % msgSize;
+	return total / msgSize;
+      }
+
+      public boolean handshakeComplete() {
+	return true;
+      }
+    };
+  }
+
+  public String toString() {
+    return "fixed:"+msgSize;
+  }
+
+}
@@ -0,0 +1,114 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import seda.sandStorm.core.BufferElement;
+import seda.sandStorm.lib.Gnutella.GnutellaConst;
+import seda.sandStorm.lib.Gnutella.GnutellaGUID;
+import java.io.IOException;
+
+/**
+ * A LoadProtocolIF which sends Gnutella pings, each with a new GUID and
+ * a TTL of 1, and counts the pong which the server sends back for each 
+ * one. Any other packets (such as pings forwarded from the generator's
+ * other connections) are ignored.
+ */
+public class GnutellaLoadProtocol implements LoadProtocolIF, GnutellaConst {
+
+  private static final boolean DEBUG = false;
+
+  private BufferElement handshake;
+
+  public GnutellaLoadProtocol() {
+    this.handshake = new BufferElement(GNUTELLA_CONNECT.getBytes());
+  }
+
+  public BufferElement getHandshake() {
+    return handshake;
+  }
+
+  public BufferElement getRequest(int seqNum) {
+    byte data[] = new byte[PACKET_HEADER_SIZE];
+    new GnutellaGUID().dump(data, 0);
+    data[16] = GNUTELLA_FN_PING;
+    data[17] = 1;	// TTL
+    data[18] = 0;	// Hops
+    // Payload length (bytes 19-22) is 0
+    return new BufferElement(data);
+  }
+
+  public ResponseReaderIF newResponseReader() {
+    return new gnutellaResponseReader();
+  }
+
+  public String toString() {
+    return "gnutella";
+  }
+
+  private static class gnutellaResponseReader implements ResponseReaderIF {
+    // Number of bytes of GNUTELLA_OK still to be read
+    private int okLeft = GNUTELLA_OK.length();
+    private byte header[] = new byte[PACKET_HEADER_SIZE];
+    private int headerLen = 0;
+    private int payloadLeft = 0;
+
+    public int read(byte data[], int offset, int length) throws IOException {
+      int done = 0;
+      int end = offset + length;
+      int i = offset;
+      while (i < end) {
+	if (okLeft > 0) {
+	  if (data[i] != GNUTELLA_OK.charAt(GNUTELLA_OK.length() - okLeft)) {
+	    throw new IOException("GnutellaLoadProtocol: Bad handshake reply");
+	  }
+	  i++;
+	  okLeft--;
+	} else if (payloadLeft > 0) {
+	  int n = Math.min(payloadLeft, end - i);
+	  i += n;
+	  payloadLeft -= n;
+	} else {
+	  int n = Math.min(PACKET_HEADER_SIZE - headerLen, end - i);
+	  System.arraycopy(data, i, header, headerLen, n);
+	  i += n;
+	  headerLen += n;
+	  if (headerLen == PACKET_HEADER_SIZE) {
+	    headerLen = 0;
+	    payloadLeft = (header[19] & 0xff) | ((header[20] & 0xff) << 8) |
+	      ((header[21] & 0xff) << 16) | ((header[22] & 0xff) << 24);
+	    if (payloadLeft < 0) throw new IOException("GnutellaLoadProtocol: Bad payload length "+payloadLeft);
+	    if (DEBUG) System.err.println("GnutellaLoadProtocol: packet function "+header[16]+", payload "+payloadLeft);
+	    if (header[16] == GNUTELLA_FN_PONG) done++;
+	  }
+	}
+      }
+      return done;
+    }
+
+    public boolean handshakeComplete() {
+      return (okLeft == 0);
+    }
+  }
+
+}
@@ -0,0 +1,124 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import seda.sandStorm.core.BufferElement;
+import java.io.IOException;
+
+/**
+ * A LoadProtocolIF which issues HTTP/1.1 GET requests for a fixed URL
+ * over persistent connections. Responses must carry a Content-Length 
+ * header, as those of the Sandstorm http library do.
+ */
+public class HttpLoadProtocol implements LoadProtocolIF {
+
+  private static final boolean DEBUG = false;
+
+  private String url;
+  private BufferElement request;
+
+  /**
+   * Create an HTTP protocol requesting the given URL from the given 
+   * host (used for the Host header).
+   */
+  public HttpLoadProtocol(String host, String url) {
+    this.url = url;
+    String req = "GET "+url+" HTTP/1.1\r\nHost: "+host+"\r\n\r\n";
+    this.request = new BufferElement(req.getBytes());
+  }
+
+  public BufferElement getHandshake() {
+    return null;
+  }
+
+  public BufferElement getRequest(int seqNum) {
+    return request;
+  }
+
+  public ResponseReaderIF newResponseReader() {
+    return new httpResponseReader();
+  }
+
+  public String toString() {
+    return "http:"+url;
+  }
+
+  // Parses the status line and headers a line at a time, then skips
+  // Content-Length bytes of body
+  private static class httpResponseReader implements ResponseReaderIF {
+    private StringBuffer line = new StringBuffer();
+    private int contentLength = -1;
+    private int bodyLeft = -1;
+
+    public int read(byte data[], int offset, int length) throws IOException {
+      int done = 0;
+      int end = offset + length;
+      int i = offset;
+      while (i < end) {
+	if (bodyLeft >= 0) {
+	  int n = Math.min(bodyLeft, end - i);
+	  i += n;
+	  bodyLeft -= n;
+	  if (bodyLeft == 0) {
+	    done++;
+	    bodyLeft = -1;
+	  }
+	  continue;
+	}
+
+	char c = (char)(data[i++] & 0xff);
+	if (c == '\r') continue;
+	if (c != '\n') {
+	  line.append(c);
+	  continue;
+	}
+
+	if (line.length() == 0) {
+	  // End of headers
+	  if (contentLength < 0) throw new IOException("HttpLoadProtocol: No Content-Length in response");
+	  if (DEBUG) System.err.println("HttpLoadProtocol: response body "+contentLength+" bytes");
+	  if (contentLength == 0) done++;
+	  else bodyLeft = contentLength;
+	  contentLength = -1;
+	} else {
+	  String s = line.toString().toLowerCase();
+	  if (s.startsWith("content-length:")) {
+	    try {
+	      contentLength = Integer.parseInt(s.substring(15).trim());
+	    } catch (NumberFormatException nfe) {
+	      throw new IOException("HttpLoadProtocol: Bad header: "+line);
+	    }
+	  }
+	  line.setLength(0);
+	}
+      }
+      return done;
+    }
+
+    public boolean handshakeComplete() {
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,117 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import seda.util.QuantileSketch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A histogram of latencies, recorded in microseconds. The values are
+ * kept in a QuantileSketch, so percentiles are accurate to within 
+ * about 1.5% over the whole range, and recording takes no lock and 
+ * allocates nothing.
+ *
+ * @see seda.util.QuantileSketch
+ */
+public class LatencyHistogram {
+
+  private final QuantileSketch sketch = new QuantileSketch();
+  private final AtomicLong count = new AtomicLong(0);
+  private final AtomicLong total = new AtomicLong(0);
+  private final AtomicLong max = new AtomicLong(0);
+
+  public LatencyHistogram() {
+  }
+
+  private void updateMax(long v) {
+    long cur;
+    while (v > (cur = max.get())) {
+      if (max.compareAndSet(cur, v)) return;
+    }
+  }
+
+  /**
+   * Record a latency of the given number of microseconds. Negative 
+   * values are recorded as 0.
+   */
+  public void record(long usec) {
+    if (usec < 0) usec = 0;
+    sketch.add(usec);
+    count.incrementAndGet();
+    total.addAndGet(usec);
+    updateMax(usec);
+  }
+
+  /**
+   * Add all of the values recorded in the given histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+    sketch.merge(other.sketch);
+    count.addAndGet(other.count.get());
+    total.addAndGet(other.total.get());
+    updateMax(other.max.get());
+  }
+
+  /**
+   * Discard all recorded values.
+   */
+  public void reset() {
+    sketch.reset();
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+  /** Return the number of values recorded. */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Return the mean value in microseconds, or 0 if none are recorded. */
+  public double getMean() {
+    long n = count.get();
+    if (n == 0) return 0.0;
+    return (total.get() * 1.0) / n;
+  }
+
+  /** Return the largest value recorded, in microseconds. */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Return the value in microseconds below which the given fraction 
+   * (between 0 and 1) of the recorded values fall, or 0 if none are 
+   * recorded, as given by QuantileSketch.quantile(), but never more 
+   * than the largest value recorded.
+   */
+  public long getPercentile(double fraction) {
+    return Math.min(sketch.quantile(fraction), max.get());
+  }
+
+  public String toString() {
+    return "LatencyHistogram [count="+getCount()+", mean="+getMean()+", max="+getMax()+"]";
+  }
+
+}
@@ -0,0 +1,145 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import java.util.*;
+
+/**
+ * A command-line front end to LoadGenerator. The usage is:
+ * <pre>
+ *   java seda.sandStorm.lib.loadgen.LoadGen [options] &lt;protocol&gt; &lt;host&gt; &lt;port&gt;
+ *
+ *   -c conns      Number of connections (default 1)
+ *   -a arrivals   How requests are issued (default closed):
+ *                   closed[:interval]     Closed loop; interval in ms
+ *                   poisson:rate          Open loop, rate requests/sec
+ *                   bursty:rate:burst     Open loop, in bursts
+ *                   step:rate,rate,...:s  Open loop, rate changing every
+ *                                         s seconds
+ *   -w seconds    Warmup time (default 2)
+ *   -d seconds    Measurement time (default 10)
+ *   -n name       Name used in the RESULT lines (default loadgen)
+ *
+ *   protocol is one of http[:url], gnutella, fixed[:size] (the 
+ *   simple-p2p message format, default 32 bytes), or the name of a 
+ *   class implementing LoadProtocolIF with a no-argument constructor.
+ * </pre>
+ */
+public class LoadGen {
+
+  private static void usage() {
+    System.err.println("Usage: java seda.sandStorm.lib.loadgen.LoadGen [options] <protocol> <host> <port>\n");
+    System.err.println("  -c conns      Number of connections (default 1)");
+    System.err.println("  -a arrivals   closed[:interval_ms], poisson:rate, bursty:rate:burst, or");
+    System.err.println("                step:rate,rate,...:step_seconds (default closed)");
+    System.err.println("  -w seconds    Warmup time (default 2)");
+    System.err.println("  -d seconds    Measurement time (default 10)");
+    System.err.println("  -n name       Name used in the RESULT lines (default loadgen)\n");
+    System.err.println("  protocol: http[:url], gnutella, fixed[:size], or a LoadProtocolIF class name");
+    System.exit(-1);
+  }
+
+  private static LoadProtocolIF getProtocol(String spec, String host) throws Exception {
+    String name = spec, arg = null;
+    int c = spec.indexOf(':');
+    if (c != -1) {
+      name = spec.substring(0, c);
+      arg = spec.substring(c+1);
+    }
+    if (name.equals("http")) {
+      return new HttpLoadProtocol(host, (arg == null)?"/":arg);
+    } else if (name.equals("gnutella")) {
+      return new GnutellaLoadProtocol();
+    } else if (name.equals("fixed")) {
+      return new FixedSizeLoadProtocol((arg == null)?32:Integer.parseInt(arg));
+    } else {
+      return (LoadProtocolIF)Class.forName(spec).newInstance();
+    }
+  }
+
+  private static void setArrivals(LoadGenerator lg, String spec) {
+    StringTokenizer st = new StringTokenizer(spec, ":");
+    String type = st.nextToken();
+    if (type.equals("closed")) {
+      lg.setClosedLoop(st.hasMoreTokens() ? Long.parseLong(st.nextToken()) : 0);
+    } else if (type.equals("poisson")) {
+      lg.setOpenLoop(new PoissonArrivals(Double.valueOf(st.nextToken()).doubleValue()));
+    } else if (type.equals("bursty")) {
+      double rate = Double.valueOf(st.nextToken()).doubleValue();
+      lg.setOpenLoop(new BurstyArrivals(rate, Integer.parseInt(st.nextToken())));
+    } else if (type.equals("step")) {
+      StringTokenizer rt = new StringTokenizer(st.nextToken(), ",");
+      double rates[] = new double[rt.countTokens()];
+      for (int i = 0; i < rates.length; i++) {
+	rates[i] = Double.valueOf(rt.nextToken()).doubleValue();
+      }
+      double secs = Double.valueOf(st.nextToken()).doubleValue();
+      lg.setOpenLoop(new StepArrivals(rates, (long)(secs * 1000)));
+    } else {
+      throw new IllegalArgumentException("Unknown arrival process "+type);
+    }
+  }
+
+  public static void main(String args[]) {
+    int numConns = 1, warmup = 2, duration = 10;
+    String arrivals = "closed", name = "loadgen";
+
+    try {
+      int n = 0;
+      while ((n < args.length) && args[n].startsWith("-")) {
+	if (n+1 >= args.length) usage();
+	String opt = args[n], val = args[n+1];
+	if (opt.equals("-c")) numConns = Integer.parseInt(val);
+	else if (opt.equals("-a")) arrivals = val;
+	else if (opt.equals("-w")) warmup = Integer.parseInt(val);
+	else if (opt.equals("-d")) duration = Integer.parseInt(val);
+	else if (opt.equals("-n")) name = val;
+	else usage();
+	n += 2;
+      }
+      if (args.length - n != 3) usage();
+      String host = args[n+1];
+      int port = Integer.parseInt(args[n+2]);
+
+      LoadGenerator lg = new LoadGenerator(host, port, getProtocol(args[n], host), numConns);
+      setArrivals(lg, arrivals);
+      lg.setDuration(warmup, duration);
+      lg.run();
+      lg.printSummary(name);
+      System.exit(0);
+
+    } catch (NumberFormatException nfe) {
+      System.err.println("LoadGen: Bad number: "+nfe.getMessage());
+      usage();
+    } catch (NoSuchElementException nse) {
+      System.err.println("LoadGen: Missing argument in arrival process");
+      usage();
+    } catch (Exception e) {
+      System.err.println("LoadGen: "+e);
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,587 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.sandStorm.lib.aSocket.*;
+import seda.util.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * A LoadGenerator drives a server over a number of aSocket connections,
+ * recording the latency of every response and the number of responses
+ * completed in each second. What is sent, and how responses are 
+ * recognized, is determined by a LoadProtocolIF.
+ *
+ * <p>Requests are issued in one of two ways. In an <i>open loop</i>, 
+ * an ArrivalProcessIF gives the times at which requests are issued,
+ * whatever the state of the server; requests are spread round-robin
+ * over the connections and pipelined on each. In a <i>closed loop</i>,
+ * each connection has one request outstanding at a time, and issues 
+ * its next request either as soon as the response arrives, or (if an
+ * interval is given) at a fixed interval after the time its previous 
+ * request was due to be sent.
+ *
+ * <p>Each request has an intended send time: the time given by the 
+ * arrival process, or by the closed-loop interval. The main latency
+ * histogram measures from this time rather than from the time the 
+ * request was actually sent, so that when the server (or the generator)
+ * falls behind, the delay suffered by requests which would have been 
+ * sent in the meantime is counted rather than silently omitted. A 
+ * second histogram measures from the actual send time, for comparison.
+ * For a closed loop with no interval, the two are the same.
+ *
+ * <p>The run consists of a warmup period followed by the measurement 
+ * period. Latencies are recorded for the requests due during the 
+ * measurement period, and throughput counts the responses arriving 
+ * during it. Requests still outstanding a few seconds after the end of
+ * the run are counted as incomplete, and recorded with the latency 
+ * they had reached.
+ *
+ * @see LoadGen
+ */
+public class LoadGenerator {
+
+  private static final boolean DEBUG = false;
+
+  // Time allowed for the connections to open, in ms
+  private static final int CONNECT_TIMEOUT = 10000;
+  // Time allowed after the end of the run for outstanding responses, in ms
+  private static final int DRAIN_TIME = 5000;
+
+  private String host;
+  private int port;
+  private LoadProtocolIF protocol;
+  private int numConnections;
+  private ArrivalProcessIF arrivals;
+  private long interval;
+  private int warmupSecs = 2, durationSecs = 10;
+
+  private FiniteQueue compQ;
+  private Hashtable connTbl;
+  private connState conns[];
+  private int numOpen;
+  private ssTimer timer;
+  private int seqNum;
+  private volatile boolean sending;
+
+  // All times are in microseconds, from MDWUtil.currentTimeUsec()
+  private long startTime, measureStart, measureEnd;
+
+  private LatencyHistogram latencies, rawLatencies;
+  private int perSecond[];
+  private long completed, errors, incomplete;
+
+  /**
+   * Create a LoadGenerator which will open numConnections connections
+   * to the given host and port, and talk to it using the given 
+   * protocol. By default, it runs a closed loop with no interval for a
+   * 2-second warmup followed by 10 seconds of measurement.
+   */
+  public LoadGenerator(String host, int port, LoadProtocolIF protocol, int numConnections) {
+    this.host = host;
+    this.port = port;
+    this.protocol = protocol;
+    this.numConnections = numConnections;
+    this.latencies = new LatencyHistogram();
+    this.rawLatencies = new LatencyHistogram();
+  }
+
+  /**
+   * Issue requests in an open loop, at the times given by the arrival
+   * process.
+   */
+  public void setOpenLoop(ArrivalProcessIF arrivals) {
+    this.arrivals = arrivals;
+  }
+
+  /**
+   * Issue requests in a closed loop. If intervalMillis is greater than 
+   * 0, each connection's requests are due at that interval; otherwise
+   * each connection issues its next request as soon as the previous 
+   * response arrives.
+   */
+  public void setClosedLoop(long intervalMillis) {
+    this.arrivals = null;
+    this.interval = intervalMillis * 1000;
+  }
+
+  /**
+   * Set the length of the warmup and measurement periods.
+   */
+  public void setDuration(int warmupSeconds, int seconds) {
+    if ((warmupSeconds < 0) || (seconds <= 0)) throw new IllegalArgumentException("LoadGenerator: bad duration");
+    this.warmupSecs = warmupSeconds;
+    this.durationSecs = seconds;
+  }
+
+  /**
+   * Open the connections and run the load, returning when the run is
+   * over. Throws an IOException if no connection could be opened.
+   */
+  public void run() throws IOException {
+    latencies.reset();
+    rawLatencies.reset();
+    perSecond = new int[durationSecs];
+    completed = errors = incomplete = 0;
+    seqNum = 0;
+
+    connect();
+
+    startTime = MDWUtil.currentTimeUsec();
+    measureStart = startTime + warmupSecs * 1000000L;
+    measureEnd = measureStart + durationSecs * 1000000L;
+    sending = true;
+
+    if (arrivals != null) {
+      Thread sender = new Thread(new Runnable() {
+	public void run() {
+	  doOpenLoop();
+	}
+      }, "LoadGenerator sender");
+      sender.setDaemon(true);
+      sender.start();
+    } else {
+      timer = new ssTimer();
+      for (int i = 0; i < conns.length; i++) {
+	if (conns[i] != null) send(conns[i], startTime);
+      }
+    }
+
+    long drainEnd = measureEnd + DRAIN_TIME * 1000L;
+    while (true) {
+      long now = MDWUtil.currentTimeUsec();
+      if (now >= measureEnd) sending = false;
+      if ((now >= drainEnd) || (numOpen == 0)) break;
+      if (!sending && (outstanding() == 0)) break;
+
+      QueueElementIF events[] = compQ.blocking_dequeue_all(100);
+      if (events == null) continue;
+      for (int i = 0; i < events.length; i++) {
+	handleEvent(events[i]);
+      }
+    }
+    sending = false;
+    if (timer != null) timer.doneWithTimer();
+    finish();
+  }
+
+  // Open all of the connections, waiting until each has opened (and
+  // completed any handshake) or failed
+  private void connect() throws IOException {
+    compQ = new FiniteQueue();
+    connTbl = new Hashtable();
+    conns = new connState[numConnections];
+    numOpen = 0;
+    for (int i = 0; i < numConnections; i++) {
+      new ATcpClientSocket(host, port, compQ);
+    }
+
+    int pending = numConnections;
+    long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+    while (((pending > 0) || !handshakesDone()) && 
+	(System.currentTimeMillis() < deadline)) {
+      QueueElementIF events[] = compQ.blocking_dequeue_all(100);
+      if (events == null) continue;
+      for (int i = 0; i < events.length; i++) {
+	if (events[i] instanceof ATcpConnection) {
+	  ATcpConnection conn = (ATcpConnection)events[i];
+	  connState cs = new connState(conn, protocol.newResponseReader());
+	  conns[numConnections - pending] = cs;
+	  numOpen++;
+	  connTbl.put(conn, cs);
+	  conn.startReader(compQ);
+	  BufferElement hs = protocol.getHandshake();
+	  if (hs != null) conn.enqueue_lossy(hs);
+	  pending--;
+	} else if (events[i] instanceof aSocketErrorEvent) {
+	  System.err.println("LoadGenerator: Connection failed: "+events[i]);
+	  pending--;
+	} else {
+	  // Handshake replies
+	  handleEvent(events[i]);
+	}
+      }
+    }
+    for (int i = 0; i < conns.length; i++) {
+      if ((conns[i] != null) && !conns[i].closed && !conns[i].reader.handshakeComplete()) {
+	System.err.println("LoadGenerator: No handshake reply on "+conns[i].conn);
+	closeConnection(conns[i]);
+      }
+    }
+    if (numOpen == 0) throw new IOException("LoadGenerator: Could not connect to "+host+":"+port);
+    if (numOpen < numConnections) {
+      System.err.println("LoadGenerator: Warning: only "+numOpen+" of "+numConnections+" connections opened");
+    }
+  }
+
+  // Issue requests at the times given by the arrival process; runs in
+  // its own thread
+  private void doOpenLoop() {
+    long next = startTime;
+    int rr = 0;
+    try {
+      while (true) {
+	next += arrivals.nextInterval();
+	if (next >= measureEnd) break;
+	long wait = next - MDWUtil.currentTimeUsec();
+	if (wait >= 1000) Thread.sleep(wait / 1000);
+
+	connState cs = null;
+	for (int i = 0; i < conns.length; i++) {
+	  connState c = conns[(rr + i) % conns.length];
+	  if ((c != null) && !c.closed) {
+	    cs = c;
+	    rr = (rr + i + 1) % conns.length;
+	    break;
+	  }
+	}
+	if (cs == null) break;
+	send(cs, next);
+      }
+    } catch (InterruptedException ie) {
+      // Stop sending
+    }
+    sending = false;
+  }
+
+  // Send a request on the given connection which was due at the given time
+  private void send(connState cs, long intended) {
+    long now = MDWUtil.currentTimeUsec();
+    BufferElement req;
+    synchronized (cs) {
+      if (cs.closed) return;
+      req = protocol.getRequest(seqNum++);
+      // The open loop sleeps in whole milliseconds, so may send a 
+      // request slightly before it is due
+      cs.push(Math.min(intended, now), now);
+    }
+    if (!cs.conn.enqueue_lossy(req)) {
+      synchronized (cs) {
+	cs.dropLast();
+      }
+      synchronized (this) {
+	errors++;
+      }
+    }
+  }
+
+  private void handleEvent(QueueElementIF item) {
+    if (DEBUG) System.err.println("LoadGenerator: Got "+item);
+
+    if (item instanceof ATcpInPacket) {
+      ATcpInPacket pkt = (ATcpInPacket)item;
+      connState cs = (connState)connTbl.get(pkt.getConnection());
+      if ((cs == null) || cs.closed) return;
+      BufferElement buf = pkt.getBufferElement();
+      int n;
+      try {
+	n = cs.reader.read(buf.data, buf.offset, buf.size);
+      } catch (IOException ioe) {
+	System.err.println("LoadGenerator: "+ioe.getMessage()+", closing connection");
+	closeConnection(cs);
+	try {
+	  cs.conn.close(null);
+	} catch (SinkClosedException sce) {
+	  // Already closed
+	}
+	return;
+      }
+      long now = MDWUtil.currentTimeUsec();
+      for (int i = 0; i < n; i++) {
+	long intended, sentAt;
+	synchronized (cs) {
+	  if (cs.count == 0) {
+	    if (DEBUG) System.err.println("LoadGenerator: Response with no request on "+cs.conn);
+	    break;
+	  }
+	  intended = cs.intended[cs.head];
+	  sentAt = cs.sentAt[cs.head];
+	  cs.pop();
+	}
+	complete(intended, sentAt, now);
+	if (arrivals == null) nextClosedLoop(cs, intended, now);
+      }
+
+    } else if (item instanceof sendEvent) {
+      sendEvent ev = (sendEvent)item;
+      if (sending) send(ev.cs, ev.intended);
+
+    } else if (item instanceof SinkClosedEvent) {
+      connState cs = (connState)connTbl.get(((SinkClosedEvent)item).sink);
+      if ((cs != null) && !cs.closed) {
+	System.err.println("LoadGenerator: Connection closed by server");
+	closeConnection(cs);
+      }
+
+    } else if (item instanceof aSocketErrorEvent) {
+      System.err.println("LoadGenerator: Got error: "+item);
+    }
+  }
+
+  // Record a completed request. Throughput counts every response 
+  // arriving during the measurement period, while latencies are 
+  // recorded for the requests due during it.
+  private void complete(long intended, long sentAt, long now) {
+    if ((now >= measureStart) && (now < measureEnd)) {
+      perSecond[(int)((now - measureStart) / 1000000L)]++;
+    }
+    if ((intended < measureStart) || (intended >= measureEnd)) return;
+    latencies.record(now - intended);
+    rawLatencies.record(now - sentAt);
+    completed++;
+  }
+
+  // Issue the next closed-loop request on cs
+  private void nextClosedLoop(connState cs, long lastIntended, long now) {
+    if (!sending) return;
+    long next = (interval > 0) ? (lastIntended + interval) : now;
+    if (next >= measureEnd) return;
+    if (next <= now) {
+      send(cs, next);
+    } else {
+      timer.registerEvent((next - now + 999) / 1000, new sendEvent(cs, next), compQ);
+    }
+  }
+
+  // Mark a connection closed, counting its outstanding requests as errors
+  private void closeConnection(connState cs) {
+    synchronized (cs) {
+      cs.closed = true;
+      synchronized (this) {
+	errors += cs.count;
+      }
+      cs.count = 0;
+    }
+    numOpen--;
+  }
+
+  private boolean handshakesDone() {
+    for (int i = 0; i < conns.length; i++) {
+      if ((conns[i] != null) && !conns[i].closed && !conns[i].reader.handshakeComplete()) return false;
+    }
+    return true;
+  }
+
+  private int outstanding() {
+    int n = 0;
+    for (int i = 0; i < conns.length; i++) {
+      if (conns[i] != null) {
+	synchronized (conns[i]) {
+	  n += conns[i].count;
+	}
+      }
+    }
+    return n;
+  }
+
+  // Record the requests still outstanding and close the connections
+  private void finish() {
+    long now = MDWUtil.currentTimeUsec();
+    for (int i = 0; i < conns.length; i++) {
+      connState cs = conns[i];
+      if (cs == null) continue;
+      synchronized (cs) {
+	while (cs.count > 0) {
+	  long intended = cs.intended[cs.head];
+	  if ((intended >= measureStart) && (intended < measureEnd)) {
+	    latencies.record(now - intended);
+	    rawLatencies.record(now - cs.sentAt[cs.head]);
+	    incomplete++;
+	  }
+	  cs.pop();
+	}
+	if (!cs.closed) {
+	  cs.closed = true;
+	  try {
+	    cs.conn.close(null);
+	  } catch (SinkClosedException sce) {
+	    // Ignore
+	  }
+	}
+      }
+    }
+  }
+
+  /**
+   * Return the histogram of latencies measured from each request's 
+   * intended send time.
+   */
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  /**
+   * Return the histogram of latencies measured from the time each 
+   * request was actually sent.
+   */
+  public LatencyHistogram getRawLatencies() {
+    return rawLatencies;
+  }
+
+  /**
+   * Return the number of responses which arrived in each second of the
+   * measurement period.
+   */
+  public int[] getThroughput() {
+    return perSecond;
+  }
+
+  /**
+   * Return the mean number of responses per second over the 
+   * measurement period.
+   */
+  public double getMeanThroughput() {
+    long n = 0;
+    for (int i = 0; i < perSecond.length; i++) n += perSecond[i];
+    return (n * 1.0) / perSecond.length;
+  }
+
+  /** 
+   * Return the number of requests due in the measurement period which
+   * were completed, and so are included in the latency histograms.
+   */
+  public long getCompleted() {
+    return completed;
+  }
+
+  /** 
+   * Return the number of requests which could not be sent, or were 
+   * lost when their connection closed.
+   */
+  public synchronized long getErrors() {
+    return errors;
+  }
+
+  /** Return the number of requests with no response at the end of the run. */
+  public long getIncomplete() {
+    return incomplete;
+  }
+
+  /**
+   * Print a summary of the last run: a readable report to System.err,
+   * and the figures as "RESULT name.metric value" lines to System.out.
+   * Latencies are given in milliseconds.
+   */
+  public void printSummary(String name) {
+    PrintStream err = System.err;
+    err.println("LoadGenerator: "+protocol+" to "+host+":"+port+", "+numConnections+" connections, "+
+	((arrivals != null) ? ("open loop "+arrivals) : ("closed loop, interval "+(interval / 1000)+" ms")));
+    err.println("Second\tCompleted");
+    for (int i = 0; i < perSecond.length; i++) {
+      err.println((i+1)+"\t"+perSecond[i]);
+    }
+    double rate = getMeanThroughput();
+    err.println("Throughput "+MDWUtil.format(rate)+" responses/sec; of the requests due in "+durationSecs+" s, "+completed+" completed, "+getErrors()+" errors, "+incomplete+" incomplete");
+    err.println("Latency from intended send time (ms): "+formatLatencies(latencies));
+    err.println("Latency from actual send time (ms):   "+formatLatencies(rawLatencies));
+
+    PrintStream out = System.out;
+    out.println("RESULT "+name+".throughput "+rate);
+    out.println("RESULT "+name+".completed "+completed);
+    out.println("RESULT "+name+".errors "+getErrors());
+    out.println("RESULT "+name+".incomplete "+incomplete);
+    out.println("RESULT "+name+".mean_ms "+(latencies.getMean() / 1000.0));
+    out.println("RESULT "+name+".p50_ms "+ms(latencies.getPercentile(0.5)));
+    out.println("RESULT "+name+".p90_ms "+ms(latencies.getPercentile(0.9)));
+    out.println("RESULT "+name+".p99_ms "+ms(latencies.getPercentile(0.99)));
+    out.println("RESULT "+name+".p999_ms "+ms(latencies.getPercentile(0.999)));
+    out.println("RESULT "+name+".max_ms "+ms(latencies.getMax()));
+    out.println("RESULT "+name+".raw_mean_ms "+(rawLatencies.getMean() / 1000.0));
+    out.println("RESULT "+name+".raw_p99_ms "+ms(rawLatencies.getPercentile(0.99)));
+  }
+
+  private static double ms(long usec) {
+    return usec / 1000.0;
+  }
+
+  private static String formatLatencies(LatencyHistogram h) {
+    return "mean "+MDWUtil.format(h.getMean() / 1000.0)+
+      " p50 "+MDWUtil.format(ms(h.getPercentile(0.5)))+
+      " p90 "+MDWUtil.format(ms(h.getPercentile(0.9)))+
+      " p99 "+MDWUtil.format(ms(h.getPercentile(0.99)))+
+      " p99.9 "+MDWUtil.format(ms(h.getPercentile(0.999)))+
+      " max "+MDWUtil.format(ms(h.getMax()));
+  }
+
+  // The state of one connection: its response reader, and the intended
+  // and actual send times of its outstanding requests, in order
+  private static class connState {
+    ATcpConnection conn;
+    ResponseReaderIF reader;
+    boolean closed;
+    long intended[] = new long[16];
+    long sentAt[] = new long[16];
+    int head, count;
+
+    connState(ATcpConnection conn, ResponseReaderIF reader) {
+      this.conn = conn;
+      this.reader = reader;
+    }
+
+    void push(long i, long s) {
+      if (count == intended.length) grow();
+      int tail = (head + count) % intended.length;
+      intended[tail] = i;
+      sentAt[tail] = s;
+      count++;
+    }
+
+    void pop() {
+      head = (head + 1) % intended.length;
+      count--;
+    }
+
+    void dropLast() {
+      if (count > 0) count--;
+    }
+
+    private void grow() {
+      long ni[] = new long[intended.length * 2];
+      long ns[] = new long[intended.length * 2];
+      for (int i = 0; i < count; i++) {
+	ni[i] = intended[(head + i) % intended.length];
+	ns[i] = sentAt[(head + i) % intended.length];
+      }
+      intended = ni;
+      sentAt = ns;
+      head = 0;
+    }
+  }
+
+  // Posted by the timer when a closed-loop request is due
+  private static class sendEvent implements QueueElementIF {
+    connState cs;
+    long intended;
+
+    sendEvent(connState cs, long intended) {
+      this.cs = cs;
+      this.intended = intended;
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import seda.sandStorm.core.BufferElement;
+
+/**
+ * A LoadProtocolIF tells a LoadGenerator how to talk to a particular 
+ * kind of server: what to send when a connection opens, what each 
+ * request looks like, and how to recognize the end of each response.
+ * The server is expected to answer the requests on a connection in
+ * the order in which they were sent.
+ *
+ * @see LoadGenerator
+ */
+public interface LoadProtocolIF {
+
+  /**
+   * Return the data to send when a connection is first opened, or 
+   * null if there is none. Any reply must be consumed by the 
+   * connection's ResponseReaderIF without being counted as a response,
+   * and no requests are sent until it has been.
+   */
+  public BufferElement getHandshake();
+
+  /**
+   * Return the data for a request. seqNum counts the requests issued
+   * by the LoadGenerator, starting at 0. The returned buffer may be 
+   * shared between requests, and must not be modified once returned.
+   */
+  public BufferElement getRequest(int seqNum);
+
+  /**
+   * Create a reader for the responses arriving on a new connection.
+   */
+  public ResponseReaderIF newResponseReader();
+
+}
@@ -0,0 +1,56 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import java.util.Random;
+
+/**
+ * An arrival process in which requests arrive independently at the 
+ * given mean rate, so that the times between them are exponentially 
+ * distributed.
+ */
+public class PoissonArrivals implements ArrivalProcessIF {
+
+  private double meanInterval;
+  private Random rand;
+
+  /**
+   * Create a Poisson arrival process with the given mean number of
+   * requests per second.
+   */
+  public PoissonArrivals(double rate) {
+    if (rate <= 0.0) throw new IllegalArgumentException("PoissonArrivals: rate must be positive");
+    this.meanInterval = 1.0e6 / rate;
+    this.rand = new Random();
+  }
+
+  public long nextInterval() {
+    return (long)(-meanInterval * Math.log(1.0 - rand.nextDouble()));
+  }
+
+  public String toString() {
+    return "poisson:"+(1.0e6 / meanInterval);
+  }
+
+}
@@ -0,0 +1,51 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import java.io.IOException;
+
+/**
+ * A ResponseReaderIF parses the stream of data arriving on one 
+ * connection of a LoadGenerator, counting the complete responses in it.
+ * Responses may be split across calls to read() in any way.
+ *
+ * @see LoadProtocolIF
+ */
+public interface ResponseReaderIF {
+
+  /**
+   * Consume the given data, and return the number of responses which 
+   * it completes. Throws an IOException if the data is not a valid
+   * response stream, in which case the connection is closed.
+   */
+  public int read(byte data[], int offset, int length) throws IOException;
+
+  /**
+   * Return true once the reply to the protocol's handshake (if any) has
+   * been read. The LoadGenerator sends no requests on a connection 
+   * until this returns true.
+   */
+  public boolean handshakeComplete();
+
+}
@@ -0,0 +1,93 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.lib.loadgen;
+
+import java.util.Random;
+
+/**
+ * An arrival process whose rate changes in steps: requests arrive as a
+ * Poisson process at rates[0] requests per second for the first step,
+ * then at rates[1] for the next step, and so on. The last rate is kept
+ * once all the steps have passed. A rate of 0 means that no requests
+ * arrive during that step.
+ */
+public class StepArrivals implements ArrivalProcessIF {
+
+  private double rates[];
+  private long stepLength;
+  // Time from the start of the run of the last arrival, in usec
+  private long now;
+  private Random rand;
+
+  /**
+   * Create a step arrival process with the given rates, each lasting
+   * stepMillis milliseconds.
+   */
+  public StepArrivals(double rates[], long stepMillis) {
+    if ((rates == null) || (rates.length == 0)) throw new IllegalArgumentException("StepArrivals: must give at least one rate");
+    if (stepMillis <= 0) throw new IllegalArgumentException("StepArrivals: step length must be positive");
+    for (int i = 0; i < rates.length; i++) {
+      if (rates[i] < 0.0) throw new IllegalArgumentException("StepArrivals: rates must not be negative");
+    }
+    if (rates[rates.length-1] == 0.0) throw new IllegalArgumentException("StepArrivals: last rate must be positive");
+    this.rates = rates;
+    this.stepLength = stepMillis * 1000;
+    this.now = 0;
+    this.rand = new Random();
+  }
+
+  public long nextInterval() {
+    long t = now;
+    while (true) {
+      int step = (int)Math.min(t / stepLength, rates.length - 1);
+      if (rates[step] == 0.0) {
+	// Skip to the start of the next step
+	t = (step+1) * stepLength;
+	continue;
+      }
+      // As arrivals are memoryless, an arrival which would fall after 
+      // the end of this step can be redrawn at the next step's rate
+      long next = t + (long)(-(1.0e6 / rates[step]) * Math.log(1.0 - rand.nextDouble()));
+      if ((step < rates.length - 1) && (next >= (step+1) * stepLength)) {
+	t = (step+1) * stepLength;
+	continue;
+      }
+      long interval = next - now;
+      now = next;
+      return interval;
+    }
+  }
+
+  public String toString() {
+    StringBuffer sb = new StringBuffer("step:");
+    for (int i = 0; i < rates.length; i++) {
+      if (i > 0) sb.append(',');
+      sb.append(rates[i]);
+    }
+    sb.append(':');
+    sb.append(stepLength / 1.0e6);
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,266 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.sandStorm.main;
+
+import java.util.*;
+
+/**
+ * A ConfigSnapshot is an immutable view of a SandstormConfig at some
+ * point in time. Every option is held in a single table keyed by its
+ * full name, so looking one up does not walk the configuration tree,
+ * and the options used most often by the runtime are also parsed into
+ * the final fields below. 
+ *
+ * <p>A snapshot is never modified. When an option of the 
+ * SandstormConfig is changed, the SandstormConfig publishes a new 
+ * snapshot in place of the old one; components which need to follow 
+ * runtime changes can compare the snapshot returned by 
+ * SandstormConfig.getSnapshot() with the one they last used.
+ *
+ * @see SandstormConfig
+ */
+public final class ConfigSnapshot {
+
+  private final Hashtable vals;
+  private final Hashtable stages;
+  private final long version;
+
+  /** The value of global.defaultThreadManager. */
+  public final String defaultThreadManager;
+  /** The value of global.initThreads. */
+  public final int initThreads;
+
+  /** The global.threadPool options. */
+  public final int threadPoolInitialThreads, threadPoolMinThreads, 
+    threadPoolMaxThreads, threadPoolBlockTime;
+  public final boolean threadPoolLazyStart;
+  /** The global.threadPool.sizeController options. */
+  public final boolean threadPoolSizeControllerEnable;
+  public final int threadPoolSizeControllerDelay, 
+    threadPoolSizeControllerThreshold, threadPoolIdleTimeThreshold;
+
+  /** The value of global.batchController.enable. */
+  public final boolean batchControllerEnable;
+
+  /** The global.profile options. */
+  public final boolean profileEnable, profileSockets;
+
+  /** The global.aSocket options. */
+  public final boolean aSocketEnable, aSocketRateControllerEnable;
+  public final String aSocketProvider;
+  public final double aSocketRate;
+
+  /** The global.aDisk options. */
+  public final boolean aDiskEnable, aDiskSizeControllerEnable;
+  public final int aDiskInitialThreads, aDiskMinThreads, aDiskMaxThreads,
+    aDiskSizeControllerDelay, aDiskSizeControllerThreshold;
+
+  /**
+   * Create a snapshot from the given table of options and table of
+   * stageDescr's, both keyed by name. Neither table may be modified 
+   * afterwards.
+   */
+  ConfigSnapshot(Hashtable vals, Hashtable stages, long version) {
+    this.vals = vals;
+    this.stages = stages;
+    this.version = version;
+
+    defaultThreadManager = getString("global.defaultThreadManager");
+    initThreads = getInt("global.initThreads");
+
+    threadPoolInitialThreads = getInt("global.threadPool.initialThreads");
+    threadPoolMinThreads = getInt("global.threadPool.minThreads");
+    threadPoolMaxThreads = getInt("global.threadPool.maxThreads");
+    threadPoolBlockTime = getInt("global.threadPool.blockTime");
+    threadPoolLazyStart = getBoolean("global.threadPool.lazyStart");
+    threadPoolSizeControllerEnable = getBoolean("global.threadPool.sizeController.enable");
+    threadPoolSizeControllerDelay = getInt("global.threadPool.sizeController.delay");
+    threadPoolSizeControllerThreshold = getInt("global.threadPool.sizeController.threshold");
+    threadPoolIdleTimeThreshold = getInt("global.threadPool.sizeController.idleTimeThreshold");
+
+    batchControllerEnable = getBoolean("global.batchController.enable");
+
+    profileEnable = getBoolean("global.profile.enable");
+    profileSockets = getBoolean("global.profile.sockets");
+
+    aSocketEnable = getBoolean("global.aSocket.enable");
+    aSocketProvider = getString("global.aSocket.provider");
+    aSocketRateControllerEnable = getBoolean("global.aSocket.rateController.enable");
+    aSocketRate = getDouble("global.aSocket.rateController.rate");
+
+    aDiskEnable = getBoolean("global.aDisk.enable");
+    aDiskInitialThreads = getInt("global.aDisk.threadPool.initialThreads");
+    aDiskMinThreads = getInt("global.aDisk.threadPool.minThreads");
+    aDiskMaxThreads = getInt("global.aDisk.threadPool.maxThreads");
+    aDiskSizeControllerEnable = getBoolean("global.aDisk.threadPool.sizeController.enable");
+    aDiskSizeControllerDelay = getInt("global.aDisk.threadPool.sizeController.delay");
+    aDiskSizeControllerThreshold = getInt("global.aDisk.threadPool.sizeController.threshold");
+  }
+
+  /**
+   * Return a new snapshot which is the same as this one, except that
+   * the given option has the given value. If the option is a stage's
+   * queueThreshold, the stage's stageDescr is replaced as well.
+   */
+  ConfigSnapshot update(String key, String val) {
+    Hashtable newvals = (Hashtable)vals.clone();
+    newvals.put(key, val);
+    Hashtable newstages = stages;
+
+    String stageName = stageOption(key, "queueThreshold");
+    stageDescr descr = (stageName == null)?null:(stageDescr)stages.get(stageName);
+    if (descr != null) {
+      stageDescr newdescr = new stageDescr();
+      newdescr.stageName = descr.stageName;
+      newdescr.className = descr.className;
+      newdescr.initargs = descr.initargs;
+      try {
+	newdescr.queueThreshold = Integer.parseInt(val);
+      } catch (NumberFormatException nfe) {
+	newdescr.queueThreshold = -1;
+      }
+      newstages = (Hashtable)stages.clone();
+      newstages.put(stageName, newdescr);
+    }
+    return new ConfigSnapshot(newvals, newstages, version+1);
+  }
+
+  // If key is "stages.<name>.<option>", return the stage name
+  static String stageOption(String key, String option) {
+    if (!key.startsWith("stages.") || !key.endsWith("."+option)) return null;
+    int end = key.length() - option.length() - 1;
+    if (end <= 7) return null;
+    return key.substring(7, end);
+  }
+
+  /**
+   * Return the version of this snapshot. Each snapshot published by a
+   * SandstormConfig has a higher version than the one it replaces.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Return the option with the given key as a String, or null if 
+   * not set.
+   */
+  public String getString(String key) {
+    return (String)vals.get(key);
+  }
+
+  /**
+   * Return the option with the given key as a String, or defaultval
+   * if not set.
+   */
+  public String getString(String key, String defaultval) {
+    String val = (String)vals.get(key);
+    if (val == null) return defaultval;
+    else return val;
+  }
+
+  /**
+   * Return the option with the given key as a boolean, or false if 
+   * not set.
+   */
+  public boolean getBoolean(String key) {
+    return getBoolean(key, false);
+  }
+
+  /**
+   * Return the option with the given key as a boolean, or defaultval
+   * if not set.
+   */
+  public boolean getBoolean(String key, boolean defaultval) {
+    String val = (String)vals.get(key);
+    if (val == null) return defaultval;
+    if (val.equals("true") || val.equals("TRUE")) return true;
+    else return false;
+  }
+
+  /**
+   * Return the option with the given key as an int, or -1 if not set
+   * or not an int.
+   */
+  public int getInt(String key) {
+    return getInt(key, -1);
+  }
+
+  /**
+   * Return the option with the given key as an int, or defaultval if
+   * not set or not an int.
+   */
+  public int getInt(String key, int defaultval) {
+    String val = (String)vals.get(key);
+    if (val == null) return defaultval;
+    try {
+      return Integer.parseInt(val);
+    } catch (NumberFormatException nfe) {
+      return defaultval;
+    }
+  }
+
+  /**
+   * Return the option with the given key as a double, or -1 if not
+   * set or not a double.
+   */
+  public double getDouble(String key) {
+    return getDouble(key, -1);
+  }
+
+  /**
+   * Return the option with the given key as a double, or defaultval
+   * if not set or not a double.
+   */
+  public double getDouble(String key, double defaultval) {
+    String val = (String)vals.get(key);
+    if (val == null) return defaultval;
+    try {
+      return Double.parseDouble(val);
+    } catch (NumberFormatException nfe) {
+      return defaultval;
+    }
+  }
+
+  /**
+   * Return the stageDescr for the given stage, or null if there is 
+   * no such stage. The stageDescr must not be modified.
+   */
+  public stageDescr getStage(String stageName) {
+    return (stageDescr)stages.get(stageName);
+  }
+
+  /**
+   * Return an Enumeration of the stageDescr's of this snapshot. 
+   * They must not be modified.
+   */
+  public Enumeration getStages() {
+    return stages.elements();
+  }
+
+  public String toString() {
+    return "ConfigSnapshot (version "+version+", "+vals.size()+" options)";
+  }
+
+}
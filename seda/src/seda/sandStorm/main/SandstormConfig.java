@@ -35,9 +35,18 @@ import java.util.*;
  * file, using an XML-like format. Various operations can be performed
  * upon this class to modify the configuration of the Sandstorm runtime.
  *
+ * <p>Options are read through an immutable ConfigSnapshot, which is
+ * built when first needed and shared by every reader, so that looking
+ * up an option is a single hashtable lookup. Setting an option after
+ * that publishes a new snapshot with the option changed. Once the 
+ * runtime has started, the options listed in <tt>tunables</tt> may be 
+ * changed with update(); components which use them follow the changes
+ * by watching for new snapshots.
+ *
  * @author Matt Welsh
  * @see Sandstorm
  * @see Main
+ * @see ConfigSnapshot
  *
  */
 public class SandstormConfig implements Cloneable {
@@ -49,6 +58,8 @@ public class SandstormConfig implements Cloneable {
 
   private configSection root;
   private Hashtable stages;
+  private volatile ConfigSnapshot snapshot;
+  private long snapshotVersion = 0;
 
   /** Value for defaultThreadMgr to use the thread-per-CPU thread manager. */
   public static final String THREADMGR_TPPTM = "TPPTM";
@@ -65,15 +76,21 @@ public class SandstormConfig implements Cloneable {
   /** 
    * The set of default values for the Sandstorm configuration.
    * In order to modify the default configuration used by Sandstorm,
-   * edit SandstormConfig.java and recompile.
+   * edit SandstormConfig.java and recompile. Any of these defaults may 
+   * also be overridden by setting the system property 
+   * <tt>sandstorm.<i>key</i></tt>, for example 
+   * <tt>-Dsandstorm.global.aSocket.provider=NIO</tt>; this is useful 
+   * for programs which use the Sandstorm libraries in standalone mode.
    */
   public static final String[] defaults = {
     "global.defaultThreadManager", THREADMGR_TPSTM,
+    "global.initThreads", "1",
 
     "global.threadPool.initialThreads", "1",
     "global.threadPool.minThreads", "1",
     "global.threadPool.maxThreads", "20",
     "global.threadPool.blockTime", "1000",
+    "global.threadPool.lazyStart", CONFIG_TRUE,
     "global.threadPool.sizeController.enable", CONFIG_FALSE,
     "global.threadPool.sizeController.delay", "2000",
     "global.threadPool.sizeController.threshold", "1000", 
@@ -82,6 +99,20 @@ public class SandstormConfig implements Cloneable {
     "global.batchController.enable", CONFIG_FALSE,
     "global.batchController.minBatch", "1",
     "global.batchController.maxBatch", "-1",
+    "global.batchController.recalcWindow", "1000",
+    "global.batchController.smoothConst", "0.7",
+    "global.batchController.increaseFactor", "1.2",
+    "global.batchController.reduceFactor", "1.2",
+    "global.batchController.targetServiceTime", "0",
+
+    "global.rtController.enable", CONFIG_FALSE,
+    "global.rtController.delay", "100",
+    "global.rtController.measurementSize", "100",
+    "global.rtController.measurementTime", "1000",
+
+    "global.queue.type", "fifo",
+    "global.queue.policy", "strict",
+    "global.queue.numClasses", "3",
 
     "global.profile.enable", CONFIG_FALSE,
     "global.profile.delay", "1000",
@@ -89,6 +120,8 @@ public class SandstormConfig implements Cloneable {
     "global.profile.sockets", CONFIG_FALSE,
     "global.profile.graph", CONFIG_FALSE,
     "global.profile.graphfilename", "sandstorm-graph.txt",
+    "global.profile.graphformat", "dot",
+    "global.profile.graphdelay", "10000",
 
     /* Deprecated */
     "global.AggTPSTM.governor.enable", CONFIG_FALSE,
@@ -113,6 +146,17 @@ public class SandstormConfig implements Cloneable {
     "global.aDisk.threadPool.sizeController.threshold", "20",
   };
 
+  /**
+   * The options which may be changed at runtime with update(). A "*"
+   * matches any one stage name.
+   */
+  public static final String[] tunables = {
+    "stages.*.queueThreshold",
+    "stages.*.batchController.targetServiceTime",
+    "global.batchController.targetServiceTime",
+    "global.aSocket.rateController.rate",
+  };
+
   private Hashtable cmdLineArgs;
 
   /** Default initialization arguments passed to every stage. */
@@ -129,8 +173,14 @@ public class SandstormConfig implements Cloneable {
     for (int i = 0; i < defaults.length; i+=2) {
       String key = defaults[i];
       String val = defaults[i+1];
-      if (getString(key) == null) {
-	putString(key, val);
+      try {
+	String prop = System.getProperty("sandstorm."+key);
+	if (prop != null) val = prop;
+      } catch (SecurityException se) {
+	// Use the built-in default
+      }
+      if (getVal(root, key) == null) {
+	putVal(root, key, val);
       }
     }
   }
@@ -238,16 +288,14 @@ public class SandstormConfig implements Cloneable {
    * as a String. Returns default if not set.
    */
   public String getString(String key, String defaultval) {
-    String val = getVal(root, key);
-    if (val == null) return defaultval;
-    else return val;
+    return getSnapshot().getString(key, defaultval);
   }
 
   /**
    * Set the given configuration option specified as a String.
    */
   public void putString(String key, String val) {
-    putVal(root, key, val);
+    set(key, val);
   }
 
   /**
@@ -263,17 +311,14 @@ public class SandstormConfig implements Cloneable {
    * as a boolean. Returns default if not set.
    */
   public boolean getBoolean(String key, boolean defaultval) {
-    String val = getVal(root, key);
-    if (val == null) return defaultval;
-    if (val.equals("true") || val.equals("TRUE")) return true;
-    else return false;
+    return getSnapshot().getBoolean(key, defaultval);
   }
 
   /**
    * Set the given configuration option specified as a boolean.
    */
   public void putBoolean(String key, boolean val) {
-    putVal(root, key, (val)?(CONFIG_TRUE):(CONFIG_FALSE));
+    set(key, (val)?(CONFIG_TRUE):(CONFIG_FALSE));
   }
 
   /**
@@ -291,20 +336,14 @@ public class SandstormConfig implements Cloneable {
    * key cannot be expressed as an int.
    */
   public int getInt(String key, int defaultval) {
-    String val = getVal(root, key);
-    if (val == null) return defaultval;
-    try {
-      return Integer.parseInt(val);
-    } catch (NumberFormatException nfe) {
-      return defaultval;
-    }
+    return getSnapshot().getInt(key, defaultval);
   }
 
   /**
    * Set the given configuration option specified as an int.
    */
   public void putInt(String key, int val) {
-    putVal(root, key, new Integer(val).toString());
+    set(key, new Integer(val).toString());
   }
 
   /**
@@ -322,13 +361,7 @@ public class SandstormConfig implements Cloneable {
    * key cannot be expressed as a double.
    */
   public double getDouble(String key, double defaultval) {
-    String val = getVal(root, key);
-    if (val == null) return defaultval;
-    try {
-      return new Double(val).doubleValue();
-    } catch (NumberFormatException nfe) {
-      return defaultval;
-    }
+    return getSnapshot().getDouble(key, defaultval);
   }
 
   /**
@@ -337,7 +370,7 @@ public class SandstormConfig implements Cloneable {
    */
   public String[] getStringList(String key) {
     String ret[];
-    String val = (String)getVal(root, key);
+    String val = getSnapshot().getString(key);
     if (val == null) return null;
     StringTokenizer st = new StringTokenizer(val, SandstormConfig.LIST_ELEMENT_DELIMITER);
     Vector v = new Vector(1);
@@ -355,7 +388,7 @@ public class SandstormConfig implements Cloneable {
    * Set the given configuration option specified as an int.
    */
   public void putDouble(String key, double val) {
-    putVal(root, key, new Double(val).toString());
+    set(key, new Double(val).toString());
   }
 
   /**
@@ -367,7 +400,87 @@ public class SandstormConfig implements Cloneable {
       s += valarr[i];
       if (i != valarr.length-1) s += SandstormConfig.LIST_ELEMENT_DELIMITER;
     }
-    putVal(root, key, s);
+    set(key, s);
+  }
+
+  // Set the given option, publishing a new snapshot if one has been 
+  // taken
+  private synchronized void set(String key, String val) {
+    putVal(root, key, val);
+    ConfigSnapshot s = snapshot;
+    if (s != null) {
+      s = s.update(key, val);
+      snapshotVersion = s.getVersion();
+      snapshot = s;
+    }
+  }
+
+  /**
+   * Return the current snapshot of this configuration.
+   */
+  public ConfigSnapshot getSnapshot() {
+    ConfigSnapshot s = snapshot;
+    if (s != null) return s;
+    synchronized (this) {
+      if (snapshot == null) {
+	Hashtable vals = new Hashtable();
+	flatten(root, null, vals);
+	snapshot = new ConfigSnapshot(vals, (Hashtable)stages.clone(), 
+	    ++snapshotVersion);
+      }
+      return snapshot;
+    }
+  }
+
+  // Add the values in cs and its subsections to vals; recursive.
+  private void flatten(configSection cs, String prefix, Hashtable vals) {
+    Enumeration e = cs.getKeys();
+    while (e.hasMoreElements()) {
+      String key = (String)e.nextElement();
+      vals.put((prefix == null)?key:(prefix+DELIM_CHAR+key), cs.getVal(key));
+    }
+    e = cs.getSubsections();
+    while (e.hasMoreElements()) {
+      configSection subsec = (configSection)e.nextElement();
+      flatten(subsec, (prefix == null)?subsec.getName():(prefix+DELIM_CHAR+subsec.getName()), vals);
+    }
+  }
+
+  /**
+   * Change the given option while the runtime is running. The option
+   * must be one of those listed in <tt>tunables</tt>; the new value is
+   * seen by every component which uses the option once it next reads
+   * the configuration.
+   *
+   * @exception IllegalArgumentException If the option may not be 
+   *   changed at runtime.
+   */
+  public void update(String key, String val) {
+    if (!isTunable(key)) {
+      throw new IllegalArgumentException("SandstormConfig: "+key+" cannot be changed at runtime");
+    }
+    set(key, val);
+  }
+
+  /**
+   * Return true if the given option may be changed with update().
+   */
+  public static boolean isTunable(String key) {
+    for (int i = 0; i < tunables.length; i++) {
+      String t = tunables[i];
+      int c = t.indexOf('*');
+      if (c == -1) {
+	if (t.equals(key)) return true;
+      } else {
+	String head = t.substring(0, c), tail = t.substring(c+1);
+	if ((key.length() > head.length() + tail.length()) &&
+	    key.startsWith(head) && key.endsWith(tail) &&
+	    (key.substring(head.length(), key.length()-tail.length()).indexOf(DELIM_CHAR) == -1)) {
+	  return true;
+	}
+      }
+    }
+    return false;
   }
 
   // Return enumeration of keys matching prefix starting with cs.
@@ -431,9 +544,12 @@ public class SandstormConfig implements Cloneable {
   /**
    * Return a copy of this object.
    */
-  public SandstormConfig getCopy() {
+  public synchronized SandstormConfig getCopy() {
     try {
-      return (SandstormConfig)(this.clone());
+      SandstormConfig copy = (SandstormConfig)(this.clone());
+      copy.root = root.copy();
+      copy.stages = (Hashtable)stages.clone();
+      return copy;
     } catch (CloneNotSupportedException e) {
       throw new Error("Internal error: SandstormConfig must support clone!");
     }
@@ -457,14 +573,17 @@ public class SandstormConfig implements Cloneable {
     descr.stageName = stageName;
     descr.className = className;
     descr.initargs = stringArrayToHT(initargs);
-    stages.put(stageName, descr);
+    synchronized (this) {
+      stages.put(stageName, descr);
+      snapshot = null;
+    }
   }
 
   /**
    * Return an Enumeration of the stages specified by this SandstormConfig.
    */
   public Enumeration getStages() {
-    return stages.elements();
+    return getSnapshot().getStages();
   }
 
   /**
@@ -474,6 +593,7 @@ public class SandstormConfig implements Cloneable {
 
     Reader in = new directiveReader(new BufferedReader(new FileReader(fname)));
     root = new configSection(in);
+    snapshot = null;
 
     configSection global_initargs = null;
 
@@ -483,8 +603,14 @@ public class SandstormConfig implements Cloneable {
     for (int i = 0; i < defaults.length; i+=2) {
       String key = defaults[i];
       String val = defaults[i+1];
-      if (getString(key) == null) {
-	putString(key, val);
+      try {
+	String prop = System.getProperty("sandstorm."+key);
+	if (prop != null) val = prop;
+      } catch (SecurityException se) {
+	// Use the built-in default
+      }
+      if (getVal(root, key) == null) {
+	putVal(root, key, val);
       }
     }
 
@@ -495,7 +621,7 @@ public class SandstormConfig implements Cloneable {
       while (e.hasMoreElements()) {
 	String key = (String)e.nextElement();
 	if (key.indexOf('.') != -1) {
-	  putString(key, (String)cmdLineArgs.get(key));
+	  putVal(root, key, (String)cmdLineArgs.get(key));
 	} else {
 	  this.defaultInitArgs.put(key, (String)cmdLineArgs.get(key));
 	}
@@ -570,6 +696,7 @@ public class SandstormConfig implements Cloneable {
         stages.put(descr.stageName, descr);
       }
     }
+    snapshot = null;
   }
 
 
@@ -643,6 +770,16 @@ public class SandstormConfig implements Cloneable {
       return null;
     }
 
+    // Return a copy of this section and its subsections
+    configSection copy() {
+      configSection cs = new configSection(secname);
+      cs.vals = (Hashtable)vals.clone();
+      for (int i = 0; i < subsections.size(); i++) {
+	cs.subsections.addElement(((configSection)subsections.elementAt(i)).copy());
+      }
+      return cs;
+    }
+
     void addSubsection(configSection subsec) {
       subsections.addElement(subsec);
     }
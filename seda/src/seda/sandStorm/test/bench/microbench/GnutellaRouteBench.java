@@ -0,0 +1,121 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.lib.Gnutella.*;
+import seda.util.*;
+import java.util.*;
+
+/**
+ * A microbenchmark comparing GnutellaRoutingTable with the approach it
+ * replaced: a Hashtable keyed by GUID objects holding a 16-byte array,
+ * cleared wholesale by a periodic timer. Each simulated packet parses 
+ * a GUID out of a packet buffer and does a seen-before check; half of 
+ * the packets are duplicates of a recent packet, as with flooded pings 
+ * and queries arriving over several connections.
+ */
+public class GnutellaRouteBench {
+
+  private static final int MEASUREMENT_SIZE = 4000000;
+  // Number of packets between clears of the old table
+  private static final int CLEAR_INTERVAL = 200000;
+  // Expiry time of the routing table, which should hold about as many
+  // entries as the old table between clears
+  private static final int EXPIRY_TIME = 100;
+  private static final int NUM_RUNS = 3;
+
+  // The old GUID representation
+  private static class byteGUID {
+    byte data[];
+    int hash;
+    byteGUID(byte barr[], int offset) {
+      data = new byte[16];
+      System.arraycopy(barr, offset, data, 0, 16);
+      hash = (data[0] & 0xff) | ((data[1] & 0xff) << 8) | 
+	((data[2] & 0xff) << 16) | ((data[3] & 0xff) << 24);
+    }
+    public int hashCode() { 
+      return hash; 
+    }
+    public boolean equals(Object o) {
+      if (!(o instanceof byteGUID)) return false;
+      byteGUID guid = (byteGUID)o;
+      boolean same = true;
+      for (int i = 0; i < 16; i++) {
+	if (guid.data[i] != data[i]) same = false;
+      }
+      return same;
+    }
+  }
+
+  // Fill in the GUID of packet i: every other packet repeats the
+  // GUID of a packet a little while back
+  private static void makePacket(int i, byte pkt[]) {
+    int n = ((i & 1) == 0) ? (i >> 1) : ((i >> 1) - 100);
+    if (n < 0) n = 0;
+    long l = n * 0x9e3779b97f4a7c15L;
+    for (int b = 0; b < 16; b++) {
+      pkt[b] = (byte)l;
+      l = (l >>> 8) | (l << 56);
+      if (b == 7) l = l * 31 + n;
+    }
+  }
+
+  private static void printStats(String msg, long t1, long t2, int count, int unique) {
+    double time_us = ((t2-t1)*1.0e3) / (count * 1.0);
+    System.err.println(msg+": "+MDWUtil.format(time_us)+" usec/packet, "+unique+" unique");
+  }
+
+  public static void main(String args[]) {
+    byte pkt[] = new byte[23];
+    Object route = new Object();
+
+    for (int run = 0; run < NUM_RUNS; run++) {
+      Hashtable ht = new Hashtable();
+      int unique = 0;
+      long t1 = System.currentTimeMillis();
+      for (int i = 0; i < MEASUREMENT_SIZE; i++) {
+	makePacket(i, pkt);
+	byteGUID guid = new byteGUID(pkt, 0);
+	if (ht.get(guid) == null) {
+	  ht.put(guid, route);
+	  unique++;
+	}
+	if ((i % CLEAR_INTERVAL) == 0) ht.clear();
+      }
+      long t2 = System.currentTimeMillis();
+      printStats("Hashtable", t1, t2, MEASUREMENT_SIZE, unique);
+
+      GnutellaRoutingTable rt = new GnutellaRoutingTable(EXPIRY_TIME);
+      unique = 0;
+      t1 = System.currentTimeMillis();
+      for (int i = 0; i < MEASUREMENT_SIZE; i++) {
+	makePacket(i, pkt);
+	GnutellaGUID guid = new GnutellaGUID(pkt, 0);
+	if (rt.put(guid, route)) unique++;
+      }
+      t2 = System.currentTimeMillis();
+      printStats("GnutellaRoutingTable", t1, t2, MEASUREMENT_SIZE, unique);
+      System.err.println("  "+rt);
+    }
+  }
+
+}
@@ -0,0 +1,103 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+import seda.util.*;
+
+/**
+ * Benchmarks of the clocks read by the Sandstorm dispatch loops. The
+ * "batch" benchmarks time the clock reads which TPSThreadManager makes 
+ * for each batch of events it dispatches (the idle timer, the service 
+ * time of the batch, StageStats and the response time controller): 
+ * clock.batch_system reads System.currentTimeMillis() for each, as the
+ * loop used to, and clock.batch_clock uses the cached and precise 
+ * clocks from seda.util.Clock, as it does now. One operation is one
+ * batch.
+ */
+public class ClockBench implements MicroBenchIF {
+
+  static final int SYSTEM_MILLIS = 0;
+  static final int CACHED_MILLIS = 1;
+  static final int NANO_TIME = 2;
+  static final int BATCH_SYSTEM = 3;
+  static final int BATCH_CLOCK = 4;
+
+  private static final String NAMES[] = {
+    "clock.system_millis", "clock.cached_millis", "clock.nano_time",
+    "clock.batch_system", "clock.batch_clock"
+  };
+
+  private int mode;
+
+  ClockBench(int mode) {
+    this.mode = mode;
+  }
+
+  public String getName() {
+    return NAMES[mode];
+  }
+
+  public void setup(int numThreads) {
+    // Start the clock thread
+    Clock.currentTimeMillis();
+  }
+
+  public int run(int thread, int numOps) {
+    long n = 0;
+    switch (mode) {
+      case SYSTEM_MILLIS:
+	for (int i = 0; i < numOps; i++) n += System.currentTimeMillis();
+	break;
+      case CACHED_MILLIS:
+	for (int i = 0; i < numOps; i++) n += Clock.currentTimeMillis();
+	break;
+      case NANO_TIME:
+	for (int i = 0; i < numOps; i++) n += Clock.nanoTime();
+	break;
+      case BATCH_SYSTEM:
+	for (int i = 0; i < numOps; i++) {
+	  long t1 = System.currentTimeMillis();
+	  long tstart = System.currentTimeMillis();
+	  long tend = System.currentTimeMillis();
+	  long stats = System.currentTimeMillis();
+	  long rt = System.currentTimeMillis();
+	  n += t1 + (tend - tstart) + stats + rt;
+	}
+	break;
+      case BATCH_CLOCK:
+	for (int i = 0; i < numOps; i++) {
+	  long t1 = Clock.currentTimeMillis();
+	  long tstart = Clock.preciseMillis();
+	  long tend = Clock.preciseMillis();
+	  long stats = Clock.currentTimeMillis();
+	  long rt = Clock.currentTimeMillis();
+	  n += t1 + (tend - tstart) + stats + rt;
+	}
+	break;
+    }
+    return (int)n;
+  }
+
+  public void teardown() {
+  }
+
+}
@@ -0,0 +1,64 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.core.*;
+
+/**
+ * A benchmark of ssLinkedList, which is not thread-safe; each thread 
+ * uses its own list. Each operation adds an element to the tail of 
+ * the list and removes one from the head.
+ */
+public class LinkedListBench implements MicroBenchIF {
+
+  // Number of elements kept in each list
+  private static final int LIST_SIZE = 16;
+
+  private ssLinkedList lists[];
+  private Object obj = new Object();
+
+  public String getName() {
+    return "linkedlist.add_remove";
+  }
+
+  public void setup(int numThreads) {
+    lists = new ssLinkedList[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      lists[t] = new ssLinkedList();
+      for (int i = 0; i < LIST_SIZE; i++) lists[t].add_to_tail(obj);
+    }
+  }
+
+  public int run(int thread, int numOps) {
+    ssLinkedList list = lists[thread];
+    int n = 0;
+    for (int i = 0; i < numOps; i++) {
+      list.add_to_tail(obj);
+      if (list.remove_head() != null) n++;
+    }
+    return n;
+  }
+
+  public void teardown() {
+    lists = null;
+  }
+
+}
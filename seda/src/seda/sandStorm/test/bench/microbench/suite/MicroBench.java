@@ -0,0 +1,297 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+import seda.util.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * A harness for microbenchmarks of the Sandstorm primitives. Each 
+ * benchmark (a MicroBenchIF) is run for a number of untimed warmup 
+ * iterations, to let the JIT compile it, followed by a number of 
+ * timed iterations of fixed duration. Each benchmark is normally run
+ * in one or more freshly forked JVMs, so that code compiled for one 
+ * benchmark does not affect the next; the score reported is the 
+ * mean time per operation over all timed iterations of all forks, 
+ * with its standard deviation.
+ *
+ * <p>Usage: MicroBench [options] [name ...]
+ * <pre>
+ *   -l            List the benchmarks and exit
+ *   -f forks      Number of JVMs to fork per benchmark (default 1; 
+ *                 0 runs in this JVM)
+ *   -wi n         Number of warmup iterations (default 5)
+ *   -i n          Number of timed iterations (default 5)
+ *   -r millis     Duration of each iteration (default 1000)
+ *   -t threads    Number of threads calling the benchmark (default 1)
+ * </pre>
+ * Only benchmarks whose names start with one of the given names are
+ * run; with no names, all benchmarks are run.
+ */
+public class MicroBench {
+
+  // Number of operations per call to MicroBenchIF.run()
+  private static final int BATCH_SIZE = 64;
+
+  private static int forks = 1;
+  private static int warmupIters = 5;
+  private static int iters = 5;
+  private static int iterTime = 1000;
+  private static int numThreads = 1;
+
+  // Set to false to stop the worker threads
+  private static volatile boolean running;
+  // Accumulates return values from the benchmarks
+  private static volatile int blackhole;
+
+  /**
+   * Return all of the benchmarks in the suite.
+   */
+  static MicroBenchIF[] getBenchmarks() {
+    return new MicroBenchIF[] {
+      new QueueBench(QueueBench.ENQUEUE_DEQUEUE),
+      new QueueBench(QueueBench.ENQUEUE_MANY),
+      new QueueBench(QueueBench.PREPARE_COMMIT),
+      new LinkedListBench(),
+      new TimerBench(),
+      new PredicateBench(PredicateBench.RATE_LIMITING),
+      new PredicateBench(PredicateBench.QUEUE_THRESHOLD),
+      new PredicateBench(PredicateBench.MULTICLASS_RATE_LIMITING),
+      new SinkProxyBench(),
+      new StreamBench(),
+      new ParseBench(ParseBench.HTTP),
+      new ParseBench(ParseBench.HTTP_SPLIT),
+      new ParseBench(ParseBench.GNUTELLA),
+      new ClockBench(ClockBench.SYSTEM_MILLIS),
+      new ClockBench(ClockBench.CACHED_MILLIS),
+      new ClockBench(ClockBench.NANO_TIME),
+      new ClockBench(ClockBench.BATCH_SYSTEM),
+      new ClockBench(ClockBench.BATCH_CLOCK),
+    };
+  }
+
+  private static void usage() {
+    System.err.println("Usage: MicroBench [-l] [-f forks] [-wi n] [-i n] [-r millis] [-t threads] [name ...]");
+    System.exit(1);
+  }
+
+  public static void main(String args[]) throws Exception {
+    Vector names = new Vector();
+    boolean list = false;
+    try {
+      for (int i = 0; i < args.length; i++) {
+	if (args[i].equals("-l")) list = true;
+	else if (args[i].equals("-f")) forks = Integer.parseInt(args[++i]);
+	else if (args[i].equals("-wi")) warmupIters = Integer.parseInt(args[++i]);
+	else if (args[i].equals("-i")) iters = Integer.parseInt(args[++i]);
+	else if (args[i].equals("-r")) iterTime = Integer.parseInt(args[++i]);
+	else if (args[i].equals("-t")) numThreads = Integer.parseInt(args[++i]);
+	else if (args[i].startsWith("-")) usage();
+	else names.addElement(args[i]);
+      }
+    } catch (Exception e) {
+      usage();
+    }
+
+    MicroBenchIF all[] = getBenchmarks();
+    Vector selected = new Vector();
+    for (int i = 0; i < all.length; i++) {
+      boolean match = (names.size() == 0);
+      for (int j = 0; j < names.size(); j++) {
+	if (all[i].getName().startsWith((String)names.elementAt(j))) match = true;
+      }
+      if (match) selected.addElement(all[i]);
+    }
+
+    if (list) {
+      for (int i = 0; i < selected.size(); i++) {
+	System.out.println(((MicroBenchIF)selected.elementAt(i)).getName());
+      }
+      return;
+    }
+
+    Vector summary = new Vector();
+    for (int i = 0; i < selected.size(); i++) {
+      MicroBenchIF bench = (MicroBenchIF)selected.elementAt(i);
+      double scores[];
+      if (forks == 0) {
+	try {
+	  scores = runInProcess(bench);
+	} catch (Exception e) {
+	  System.out.println(bench.getName()+": failed: "+e);
+	  e.printStackTrace();
+	  System.exit(1);
+	  return;
+	}
+      } else {
+	scores = runForked(bench);
+      }
+      if (scores.length == 0) continue;
+      summary.addElement(bench.getName()+": "+formatScore(scores));
+    }
+
+    if (forks != 0) {
+      System.out.println();
+      System.out.println("Results ("+numThreads+" thread"+((numThreads == 1)?"":"s")+"):");
+      for (int i = 0; i < summary.size(); i++) {
+	System.out.println("  "+summary.elementAt(i));
+      }
+    }
+    // Some benchmarks leave threads running
+    System.exit(0);
+  }
+
+  // Return "mean +- stddev nsec/op"
+  private static String formatScore(double scores[]) {
+    double sum = 0.0, sumsq = 0.0;
+    for (int i = 0; i < scores.length; i++) {
+      sum += scores[i];
+      sumsq += scores[i] * scores[i];
+    }
+    double mean = sum / scores.length;
+    double var = (scores.length > 1) ? (sumsq - sum*mean) / (scores.length - 1) : 0.0;
+    double stddev = Math.sqrt(Math.max(var, 0.0));
+    return MDWUtil.format(mean)+" +- "+MDWUtil.format(stddev)+" nsec/op";
+  }
+
+  // Run the benchmark in this JVM, returning the score of each timed 
+  // iteration. Each score line is also printed, prefixed with "RESULT"
+  // so that a parent JVM can collect it.
+  private static double[] runInProcess(final MicroBenchIF bench) throws Exception {
+    bench.setup(numThreads);
+    double scores[] = new double[iters];
+    try {
+      for (int i = 0; i < warmupIters; i++) {
+	double score = runIteration(bench);
+	System.out.println("# "+bench.getName()+" warmup "+(i+1)+": "+MDWUtil.format(score)+" nsec/op");
+      }
+      for (int i = 0; i < iters; i++) {
+	scores[i] = runIteration(bench);
+	System.out.println("RESULT "+bench.getName()+" "+scores[i]);
+      }
+    } finally {
+      bench.teardown();
+    }
+    if (forks == 0) System.out.println(bench.getName()+": "+formatScore(scores));
+    return scores;
+  }
+
+  // Run one iteration, returning the mean time per operation as seen 
+  // by each thread, in nanoseconds
+  private static double runIteration(final MicroBenchIF bench) throws Exception {
+    final long ops[] = new long[numThreads];
+    final Exception errors[] = new Exception[1];
+    Thread threads[] = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      threads[t] = new Thread("MicroBench thread "+t) {
+	public void run() {
+	  int sink = 0;
+	  long n = 0;
+	  try {
+	    while (!running) Thread.yield();
+	    while (running) {
+	      sink += bench.run(thread, BATCH_SIZE);
+	      n += BATCH_SIZE;
+	    }
+	  } catch (Exception e) {
+	    errors[0] = e;
+	  }
+	  ops[thread] = n;
+	  blackhole += sink;
+	}
+      };
+      threads[t].start();
+    }
+
+    long t1 = System.nanoTime();
+    running = true;
+    Thread.sleep(iterTime);
+    running = false;
+    for (int t = 0; t < numThreads; t++) {
+      threads[t].join();
+    }
+    long t2 = System.nanoTime();
+    if (errors[0] != null) throw errors[0];
+
+    long total = 0;
+    for (int t = 0; t < numThreads; t++) total += ops[t];
+    if (total == 0) return 0.0;
+    return ((t2 - t1) * (double)numThreads) / total;
+  }
+
+  // Run the benchmark in each of the given number of forked JVMs,
+  // returning the scores of all of their timed iterations
+  private static double[] runForked(MicroBenchIF bench) throws Exception {
+    Vector scores = new Vector();
+    String javaCmd = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+    String cmd[] = new String[] {
+      javaCmd, "-cp", System.getProperty("java.class.path"), "MicroBench", 
+      "-f", "0", "-wi", ""+warmupIters, "-i", ""+iters, "-r", ""+iterTime, 
+      "-t", ""+numThreads, bench.getName()
+    };
+
+    for (int f = 0; f < forks; f++) {
+      System.out.println("# "+bench.getName()+", fork "+(f+1)+" of "+forks);
+      Process proc = Runtime.getRuntime().exec(cmd);
+      final InputStream err = proc.getErrorStream();
+      Thread errThread = new Thread() {
+	public void run() {
+	  try {
+	    byte buf[] = new byte[1024];
+	    int n;
+	    while ((n = err.read(buf)) > 0) System.err.write(buf, 0, n);
+	  } catch (IOException e) {
+	    // Ignore
+	  }
+	}
+      };
+      errThread.start();
+
+      BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+      String line;
+      while ((line = in.readLine()) != null) {
+	if (line.startsWith("RESULT ")) {
+	  StringTokenizer st = new StringTokenizer(line);
+	  st.nextToken(); st.nextToken();
+	  double score = Double.valueOf(st.nextToken()).doubleValue();
+	  scores.addElement(new Double(score));
+	  System.out.println("# "+bench.getName()+" iteration "+scores.size()+": "+MDWUtil.format(score)+" nsec/op");
+	} else if (!line.startsWith(bench.getName()+": ")) {
+	  System.out.println(line);
+	}
+      }
+      if (proc.waitFor() != 0) {
+	System.out.println("# "+bench.getName()+": forked JVM exited with status "+proc.exitValue());
+      }
+      errThread.join();
+    }
+
+    double arr[] = new double[scores.size()];
+    for (int i = 0; i < arr.length; i++) {
+      arr[i] = ((Double)scores.elementAt(i)).doubleValue();
+    }
+    return arr;
+  }
+
+}
@@ -0,0 +1,55 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+/**
+ * A benchmark which can be run by the MicroBench harness. The harness
+ * calls setup() once, then calls run() repeatedly from one or more 
+ * threads for a number of timed iterations, then calls teardown().
+ */
+public interface MicroBenchIF {
+
+  /**
+   * Return the name of the benchmark, used to select it on the 
+   * MicroBench command line.
+   */
+  public String getName();
+
+  /**
+   * Prepare to run the benchmark with the given number of threads.
+   */
+  public void setup(int numThreads) throws Exception;
+
+  /**
+   * Perform numOps operations of the benchmark from the given thread
+   * (numbered from 0). The return value is accumulated by the harness
+   * so that the work cannot be optimized away; it need not mean 
+   * anything.
+   */
+  public int run(int thread, int numOps) throws Exception;
+
+  /**
+   * Release any resources used by the benchmark.
+   */
+  public void teardown() throws Exception;
+
+}
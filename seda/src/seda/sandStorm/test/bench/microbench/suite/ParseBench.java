@@ -0,0 +1,188 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.sandStorm.lib.aSocket.*;
+import seda.sandStorm.lib.http.*;
+import seda.sandStorm.lib.Gnutella.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Benchmarks of the protocol parsers. For HTTP, each operation parses
+ * a typical browser request with httpPacketReader, delivered in one 
+ * packet or split across two. For Gnutella, each operation decodes one
+ * message from a stream of pings, pongs, queries and query hits cut 
+ * into 1460-byte segments, with GnutellaPacketReader. Each thread has
+ * its own reader.
+ */
+public class ParseBench implements MicroBenchIF {
+
+  static final int HTTP = 0;
+  static final int HTTP_SPLIT = 1;
+  static final int GNUTELLA = 2;
+
+  private static final String NAMES[] = {
+    "parse.http", "parse.http_split", "parse.gnutella"
+  };
+
+  private static final String REQUEST = 
+    "GET /images/logo.gif?width=100&height=50 HTTP/1.1\r\n"+
+    "Host: www.example.com\r\n"+
+    "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:60.0) Gecko/20100101 Firefox/60.0\r\n"+
+    "Accept: image/webp,*/*\r\n"+
+    "Accept-Language: en-US,en;q=0.5\r\n"+
+    "Accept-Encoding: gzip, deflate\r\n"+
+    "Referer: http://www.example.com/index.html\r\n"+
+    "Connection: keep-alive\r\n"+
+    "\r\n";
+
+  private static final int SEGMENT_SIZE = 1460;
+  private static final int GNUTELLA_MESSAGES = 1000;
+
+  private int mode;
+  private byte request[];
+  // The request split in the middle, for HTTP_SPLIT
+  private byte part1[], part2[];
+  private FiniteQueue queues[];
+  private httpPacketReader httpReaders[];
+  private byte segments[][];
+  private GnutellaPacketReader gnutellaReaders[];
+  private int nextSegment[];
+
+  ParseBench(int mode) {
+    this.mode = mode;
+  }
+
+  public String getName() {
+    return NAMES[mode];
+  }
+
+  public void setup(int numThreads) {
+    if (mode != GNUTELLA) {
+      request = REQUEST.getBytes();
+      int split = request.length / 2;
+      part1 = new byte[split];
+      part2 = new byte[request.length - split];
+      System.arraycopy(request, 0, part1, 0, part1.length);
+      System.arraycopy(request, split, part2, 0, part2.length);
+      queues = new FiniteQueue[numThreads];
+      httpReaders = new httpPacketReader[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+	queues[t] = new FiniteQueue();
+	httpReaders[t] = new httpPacketReader(queues[t]);
+      }
+    } else {
+      byte stream[] = makeGnutellaStream();
+      int num = (stream.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+      segments = new byte[num][];
+      for (int i = 0; i < num; i++) {
+	int len = Math.min(SEGMENT_SIZE, stream.length - i*SEGMENT_SIZE);
+	segments[i] = new byte[len];
+	System.arraycopy(stream, i*SEGMENT_SIZE, segments[i], 0, len);
+      }
+      gnutellaReaders = new GnutellaPacketReader[numThreads];
+      nextSegment = new int[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+	gnutellaReaders[t] = new GnutellaPacketReader();
+      }
+    }
+  }
+
+  // A stream of pings, pongs, queries and query hits in the ratio 
+  // 6:3:10:1
+  private byte[] makeGnutellaStream() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Random r = new Random(1);
+    for (int i = 0; i < GNUTELLA_MESSAGES; i++) {
+      int k = i % 20;
+      byte payload[];
+      int fn;
+      if (k < 6) {
+	fn = 0x00;
+	payload = new byte[0];
+      } else if (k < 9) {
+	fn = 0x01;
+	payload = new byte[14];
+	r.nextBytes(payload);
+      } else if (k < 19) {
+	fn = 0x80;
+	byte term[] = ("search term "+r.nextInt(10000)).getBytes();
+	payload = new byte[term.length+3];
+	System.arraycopy(term, 0, payload, 2, term.length);
+      } else {
+	fn = 0x81;
+	payload = new byte[100+r.nextInt(150)];
+	r.nextBytes(payload);
+      }
+      byte hdr[] = new byte[23];
+      r.nextBytes(hdr);
+      hdr[16] = (byte)fn; hdr[17] = 7; hdr[18] = 0;
+      hdr[19] = (byte)payload.length; hdr[20] = 0; hdr[21] = 0; hdr[22] = 0;
+      out.write(hdr, 0, hdr.length);
+      out.write(payload, 0, payload.length);
+    }
+    return out.toByteArray();
+  }
+
+  public int run(int thread, int numOps) throws Exception {
+    int n = 0;
+    if (mode != GNUTELLA) {
+      httpPacketReader reader = httpReaders[thread];
+      FiniteQueue queue = queues[thread];
+      for (int i = 0; i < numOps; i++) {
+	if (mode == HTTP) {
+	  reader.parsePacket(new ATcpInPacket(null, request, request.length, false));
+	} else {
+	  reader.parsePacket(new ATcpInPacket(null, part1, part1.length, false));
+	  reader.parsePacket(new ATcpInPacket(null, part2, part2.length, false));
+	}
+	if (queue.dequeue() != null) n++;
+      }
+    } else {
+      GnutellaPacketReader reader = gnutellaReaders[thread];
+      int seg = nextSegment[thread];
+      while (n < numOps) {
+	if (seg == segments.length) {
+	  seg = 0;
+	  reader = gnutellaReaders[thread] = new GnutellaPacketReader();
+	}
+	byte data[] = segments[seg++];
+	reader.pushPacket(new ATcpInPacket(null, data, data.length, false));
+	GnutellaPacket gp;
+	while ((gp = reader.getGnutellaPacket()) != null) {
+	  gp.release();
+	  n++;
+	}
+      }
+      nextSegment[thread] = seg;
+    }
+    return n;
+  }
+
+  public void teardown() {
+    httpReaders = null;
+    gnutellaReaders = null;
+  }
+
+}
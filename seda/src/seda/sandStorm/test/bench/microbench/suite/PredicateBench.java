@@ -0,0 +1,115 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.util.*;
+
+/**
+ * Benchmarks of the accept() method of the standard enqueue predicates,
+ * which is called for every enqueue onto a queue which has one. All 
+ * threads share the same predicate. The rate limiting benchmarks also
+ * check the accuracy of the limit: on teardown they print the rate at
+ * which events were accepted, which should be no more than the target
+ * rate plus one bucket's worth of events over the whole run.
+ */
+public class PredicateBench implements MicroBenchIF {
+
+  static final int RATE_LIMITING = 0;
+  static final int QUEUE_THRESHOLD = 1;
+  static final int MULTICLASS_RATE_LIMITING = 2;
+
+  private static final String NAMES[] = {
+    "predicate.rate_limiting", "predicate.queue_threshold", 
+    "predicate.multiclass_rate_limiting"
+  };
+
+  private static final double RATE = 1000.0;
+  private static final int DEPTH = 100;
+  private static final int NUM_CLASSES = 4;
+  // Spacing of the per-thread counters, to keep them on separate cache lines
+  private static final int PAD = 16;
+
+  private int mode;
+  private EnqueuePredicateIF pred;
+  private QueueElementIF event;
+  private QueueElementIF classEvents[];
+  private long accepted[];
+  private long tstart;
+
+  PredicateBench(int mode) {
+    this.mode = mode;
+  }
+
+  public String getName() {
+    return NAMES[mode];
+  }
+
+  public void setup(int numThreads) {
+    FiniteQueue queue = new FiniteQueue();
+    event = new QueueElementIF() { };
+    if (mode == RATE_LIMITING) {
+      pred = new RateLimitingPredicate(queue, RATE, DEPTH);
+    } else if (mode == MULTICLASS_RATE_LIMITING) {
+      pred = new MulticlassRateLimitingPredicate(queue, NUM_CLASSES, RATE, DEPTH);
+    } else {
+      pred = new QueueThresholdPredicate(queue, 1000);
+    }
+    // Each thread enqueues events of its own class
+    classEvents = new QueueElementIF[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int c = t % NUM_CLASSES;
+      classEvents[t] = new ClassQueueElementIF() {
+	public int getRequestClass() { return c; }
+	public void setRequestClass(int reqClass) { }
+      };
+    }
+    accepted = new long[numThreads * PAD];
+    tstart = System.nanoTime();
+  }
+
+  public int run(int thread, int numOps) {
+    QueueElementIF ev = (mode == MULTICLASS_RATE_LIMITING) ? classEvents[thread] : event;
+    int n = 0;
+    for (int i = 0; i < numOps; i++) {
+      if (pred.accept(ev)) n++;
+    }
+    accepted[thread * PAD] += n;
+    return n;
+  }
+
+  public void teardown() {
+    pred = null;
+    if (mode == QUEUE_THRESHOLD) return;
+
+    double secs = (System.nanoTime() - tstart) / 1.0e9;
+    int numThreads = accepted.length / PAD;
+    int numBuckets = (mode == RATE_LIMITING) ? 1 : Math.min(numThreads, NUM_CLASSES);
+    long total = 0;
+    for (int t = 0; t < numThreads; t++) total += accepted[t * PAD];
+    double limit = numBuckets * (RATE * secs + DEPTH);
+    System.out.println("# "+getName()+": accepted "+total+" events in "+
+	MDWUtil.format(secs)+" sec, "+MDWUtil.format(total / secs)+"/sec; "+
+	"limit "+MDWUtil.format(limit)+" events ("+MDWUtil.format(100.0 * total / limit)+"%)");
+  }
+
+}
@@ -0,0 +1,98 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+
+/**
+ * Benchmarks of FiniteQueue. Each operation enqueues one element and
+ * dequeues one element; with more than one thread, all threads share
+ * the same queue. The element is enqueued with enqueue_lossy(), with
+ * enqueue_many() in batches, or with enqueue_prepare() and 
+ * enqueue_commit() in batches.
+ */
+public class QueueBench implements MicroBenchIF {
+
+  static final int ENQUEUE_DEQUEUE = 0;
+  static final int ENQUEUE_MANY = 1;
+  static final int PREPARE_COMMIT = 2;
+
+  private static final int BATCH = 8;
+  private static final String NAMES[] = {
+    "queue.enqueue_dequeue", "queue.enqueue_many", "queue.prepare_commit"
+  };
+
+  private int mode;
+  private FiniteQueue queue;
+  private QueueElementIF event;
+  private QueueElementIF batch[];
+
+  QueueBench(int mode) {
+    this.mode = mode;
+  }
+
+  public String getName() {
+    return NAMES[mode];
+  }
+
+  public void setup(int numThreads) {
+    queue = new FiniteQueue();
+    event = new QueueElementIF() { };
+    batch = new QueueElementIF[BATCH];
+    for (int i = 0; i < BATCH; i++) batch[i] = event;
+  }
+
+  public int run(int thread, int numOps) throws Exception {
+    int n = 0;
+    switch (mode) {
+      case ENQUEUE_DEQUEUE:
+	for (int i = 0; i < numOps; i++) {
+	  queue.enqueue_lossy(event);
+	  if (queue.dequeue() != null) n++;
+	}
+	break;
+
+      case ENQUEUE_MANY:
+	for (int i = 0; i < numOps; i += BATCH) {
+	  queue.enqueue_many(batch);
+	  QueueElementIF ret[] = queue.dequeue(BATCH);
+	  if (ret != null) n += ret.length;
+	}
+	break;
+
+      case PREPARE_COMMIT:
+	for (int i = 0; i < numOps; i += BATCH) {
+	  Object key = queue.enqueue_prepare(batch);
+	  queue.enqueue_commit(key);
+	  QueueElementIF ret[] = queue.dequeue(BATCH);
+	  if (ret != null) n += ret.length;
+	}
+	break;
+    }
+    return n;
+  }
+
+  public void teardown() {
+    queue = null;
+  }
+
+}
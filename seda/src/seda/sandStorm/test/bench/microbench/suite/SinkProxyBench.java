@@ -0,0 +1,73 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+import seda.sandStorm.internal.*;
+import seda.sandStorm.main.*;
+
+/**
+ * A benchmark of SinkProxy, which wraps stage queues to count enqueues
+ * when profiling is enabled. Each operation enqueues an element through
+ * the proxy and dequeues it from the underlying queue; compare with 
+ * queue.enqueue_dequeue to see the cost of the proxy. A Sandstorm 
+ * instance with profiling enabled is started to provide the proxy's 
+ * stage graph.
+ */
+public class SinkProxyBench implements MicroBenchIF {
+
+  private FiniteQueue queue;
+  private SinkProxy proxy;
+  private QueueElementIF event;
+
+  public String getName() {
+    return "sinkproxy.enqueue_dequeue";
+  }
+
+  public void setup(int numThreads) throws Exception {
+    Sandstorm ss = Sandstorm.getSandstorm();
+    if (ss == null) {
+      SandstormConfig cfg = new SandstormConfig();
+      cfg.putBoolean("global.profile.enable", true);
+      cfg.putString("global.profile.filename", "/dev/null");
+      cfg.putBoolean("global.aSocket.enable", false);
+      ss = new Sandstorm(cfg);
+    }
+    queue = new FiniteQueue();
+    proxy = new SinkProxy(queue, ss.getManager(), null);
+    event = new QueueElementIF() { };
+  }
+
+  public int run(int thread, int numOps) {
+    int n = 0;
+    for (int i = 0; i < numOps; i++) {
+      proxy.enqueue_lossy(event);
+      if (queue.dequeue() != null) n++;
+    }
+    return n;
+  }
+
+  public void teardown() {
+    proxy = null;
+  }
+
+}
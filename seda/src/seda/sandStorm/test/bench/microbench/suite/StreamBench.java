@@ -0,0 +1,69 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.lib.util.*;
+
+/**
+ * A benchmark of MultiByteArrayInputStream. Each operation reads one
+ * byte with read(); arrays of data are added to the stream as it is 
+ * drained. Each thread uses its own stream.
+ */
+public class StreamBench implements MicroBenchIF {
+
+  private static final int ARRAY_SIZE = 1024;
+
+  private MultiByteArrayInputStream streams[];
+  private byte data[];
+
+  public String getName() {
+    return "stream.read";
+  }
+
+  public void setup(int numThreads) {
+    data = new byte[ARRAY_SIZE];
+    for (int i = 0; i < ARRAY_SIZE; i++) data[i] = (byte)i;
+    streams = new MultiByteArrayInputStream[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      streams[t] = new MultiByteArrayInputStream();
+    }
+  }
+
+  public int run(int thread, int numOps) throws Exception {
+    MultiByteArrayInputStream in = streams[thread];
+    int n = 0;
+    for (int i = 0; i < numOps; i++) {
+      int c = in.read();
+      if (c == -1) {
+	in.clear();
+	in.addArray(data);
+	c = in.read();
+      }
+      n += c;
+    }
+    return n;
+  }
+
+  public void teardown() {
+    streams = null;
+  }
+
+}
@@ -0,0 +1,69 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+
+/**
+ * A benchmark of ssTimer. Each operation registers an event an hour 
+ * in the future and then cancels it, as is done for request timeouts.
+ * The timer holds a number of other pending events throughout.
+ */
+public class TimerBench implements MicroBenchIF {
+
+  // Number of other events pending in the timer
+  private static final int NUM_PENDING = 100;
+  private static final long DELAY = 3600*1000;
+
+  private ssTimer timer;
+  private FiniteQueue sink;
+  private QueueElementIF event;
+
+  public String getName() {
+    return "timer.register_cancel";
+  }
+
+  public void setup(int numThreads) {
+    timer = new ssTimer();
+    sink = new FiniteQueue();
+    event = new QueueElementIF() { };
+    for (int i = 0; i < NUM_PENDING; i++) {
+      timer.registerEvent(DELAY + i*1000, event, sink);
+    }
+  }
+
+  public int run(int thread, int numOps) {
+    int n = 0;
+    for (int i = 0; i < numOps; i++) {
+      ssTimer.ssTimerEvent ev = timer.registerEvent(DELAY + (i & 0xff)*10, event, sink);
+      timer.cancelEvent(ev);
+      n += timer.size();
+    }
+    return n;
+  }
+
+  public void teardown() {
+    timer.cancelAll();
+    timer.doneWithTimer();
+  }
+
+}
@@ -247,6 +247,11 @@ public class SimpleP2PClient implements SimpleP2PConst {
       System.err.println("Overall rate:\t"+MDWUtil.format(rate)+" msgs/sec");
       respStats.dumpHistogram();
 
+      // Summary in the form read by bin/run-bench
+      System.out.println("RESULT simple-p2p.msgs_per_sec "+rate);
+      System.out.println("RESULT simple-p2p.rt_mean_ms "+respStats.mean());
+      System.out.println("RESULT simple-p2p.rt_max_ms "+respStats.maxVal);
+
       System.exit(0);
 
     } catch (Exception e) {
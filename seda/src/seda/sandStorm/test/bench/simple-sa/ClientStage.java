@@ -55,6 +55,7 @@ public class ClientStage implements EventHandlerIF, SimpleP2PConst {
   protected SinkIF recvSink = null;
   protected int total_rcv = 0;
   protected int total_completed = 0, total_rejected = 0;
+  protected int num_degraded = 0;
   protected Hashtable msgTbl = new Hashtable();
 
   protected int cur_seqNum = 0;
@@ -165,8 +166,9 @@ public class ClientStage implements EventHandlerIF, SimpleP2PConst {
   }
 
   protected void doneWithMsg(Message msg, MessageTimer mt, long cur_time) {
-    if (msg.status == Message.STATUS_OK) {
+    if (msg.status != Message.STATUS_REJECTED) {
       total_completed++;
+      if (msg.status == Message.STATUS_DEGRADED) num_degraded++;
       respStats.add(cur_time - mt.time);
       continuousRespStats.add(cur_time - mt.time);
     } else {
@@ -182,6 +184,7 @@ public class ClientStage implements EventHandlerIF, SimpleP2PConst {
   protected void resetStats() {
     respStats.reset();
     rejectedRespStats.reset();
+    num_degraded = 0;
   }
 
   public void handleEvents(QueueElementIF items[]) {
@@ -261,7 +264,8 @@ public class ClientStage implements EventHandlerIF, SimpleP2PConst {
       if (total_rcv == NUM_MSGS) {
 	System.err.println("\n------------------------------------------");
 	if (REPORT_SAMPLES != -1) {
-	  doReport(t_last, System.currentTimeMillis());
+	  // Unless the last messages were just reported
+	  if ((total_rcv % REPORT_SAMPLES) != 0) doReport(t_last, System.currentTimeMillis());
 	} else {
 	  t_end = System.currentTimeMillis();
 	  doReport(t_start, t_end);
@@ -282,8 +286,8 @@ public class ClientStage implements EventHandlerIF, SimpleP2PConst {
   }
 
   protected void doReport(long t1, long t2) {
-    int completed = respStats.num;
-    int rejected = rejectedRespStats.num;
+    int completed = respStats.num();
+    int rejected = rejectedRespStats.num();
     int total = completed+rejected;
 
     System.err.println("\n"+total+" messages in "+(t2-t1)+" msec");
@@ -292,11 +296,21 @@ public class ClientStage implements EventHandlerIF, SimpleP2PConst {
 
     double frac_rejected = (rejected * 1.0) / (total * 1.0);
     System.err.println(rejected+" rejected, fraction "+frac_rejected);
+    double frac_degraded = (num_degraded * 1.0) / (total * 1.0);
+    System.err.println(num_degraded+" degraded, fraction "+frac_degraded);
 
     System.err.println("RT: avg "+respStats.mean()+" max "+respStats.max()+" 90th "+respStats.percentile(0.9));
     System.err.println("CRT: avg "+continuousRespStats.mean()+" max "+continuousRespStats.max()+" 90th "+continuousRespStats.percentile(0.9));
     System.err.println("REJRT: avg "+rejectedRespStats.mean()+" max "+rejectedRespStats.max()+" 90th "+rejectedRespStats.percentile(0.9)+"\n");
 
+    // Summary in the form read by bin/run-bench
+    System.out.println("RESULT simple-sa.msgs_per_sec "+rate);
+    System.out.println("RESULT simple-sa.rejected_fraction "+frac_rejected);
+    System.out.println("RESULT simple-sa.degraded_fraction "+frac_degraded);
+    System.out.println("RESULT simple-sa.rt_mean_ms "+respStats.mean());
+    System.out.println("RESULT simple-sa.rt_90th_ms "+respStats.percentile(0.9));
+    System.out.println("RESULT simple-sa.rt_max_ms "+respStats.max());
+
   }
 
   class MessageSendEvent implements QueueElementIF {
@@ -121,9 +121,9 @@ public class ClientStageMulticlass extends ClientStage
     int timedout = 0;
     int rejected = 0;
     for (int c = 0; c < CLASS_PROBS.length; c++) {
-      completed += respStats[c].num;
-      timedout += timeoutStats[c].num;
-      rejected += rejectedRespStats[c].num;
+      completed += respStats[c].num();
+      timedout += timeoutStats[c].num();
+      rejected += rejectedRespStats[c].num();
     }
     int total = completed+rejected;
 
@@ -135,9 +135,9 @@ public class ClientStageMulticlass extends ClientStage
     System.err.println(rejected+" rejected, fraction "+total_frac_rejected);
 
     for (int c = 0; c < CLASS_PROBS.length; c++) {
-      int compl = respStats[c].num;
-      int tout = timeoutStats[c].num;
-      int rej = rejectedRespStats[c].num;
+      int compl = respStats[c].num();
+      int tout = timeoutStats[c].num();
+      int rej = rejectedRespStats[c].num();
       double frac_rejected = (rej * 1.0) / ((compl+rej) * 1.0);
       double frac_timedout = (tout * 1.0) / (compl * 1.0);
 
@@ -33,6 +33,7 @@ public class Message extends TimeStampedEvent implements QueueElementIF, SimpleP
   private static final boolean DEBUG = false;
 
   public static final int STATUS_OK = 0x00;
+  public static final int STATUS_DEGRADED = 0x01;
   public static final int STATUS_REJECTED = 0xff;
 
   public int seqNum;
@@ -58,8 +58,13 @@ public class ProcessStageExpCPU extends ProcessStage {
     if (DEBUG) System.err.println("processMessage: Processing "+msg);
 
     num_processed++;
+    consumeCPU(1.0);
+  }
 
-    double raw_cpu = -1.0 * Math.log(1 - rand.nextDouble()) / this.MU;
+  // Spin for an exponentially distributed time, with a mean of 
+  // scale/mu seconds
+  protected void consumeCPU(double scale) {
+    double raw_cpu = -1.0 * Math.log(1 - rand.nextDouble()) * scale / this.MU;
     long cpu_time = Math.max(0L, (long)(raw_cpu * 1.0e3));
     cpu_time *= 1.0e3; // Scale to usec
 
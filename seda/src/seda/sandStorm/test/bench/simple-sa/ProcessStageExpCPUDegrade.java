@@ -0,0 +1,54 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+import seda.sandStorm.api.*;
+import seda.sandStorm.core.*;
+
+/**
+ * A ProcessStageExpCPU with a cheap degraded mode, for use with the 
+ * 'degrade' response time controller: a degraded message costs 
+ * degrade_cost (default 0.1) times the CPU of a normal one.
+ */
+public class ProcessStageExpCPUDegrade extends ProcessStageExpCPU 
+  implements DegradableEventHandlerIF {
+
+  private double DEGRADE_COST;
+
+  public void init(ConfigDataIF config) throws Exception {
+    super.init(config);
+    DEGRADE_COST = config.getDouble("degrade_cost");
+    if (DEGRADE_COST == -1.0) DEGRADE_COST = 0.1;
+    System.err.println(config.getStage().getName()+": degrade_cost="+DEGRADE_COST);
+  }
+
+  public void handleDegradedEvents(QueueElementIF items[]) {
+    for (int i = 0; i < items.length; i++) {
+      if (items[i] instanceof Message) {
+	Message msg = (Message)items[i];
+	consumeCPU(DEGRADE_COST);
+	msg.status = Message.STATUS_DEGRADED;
+	msg.reply();
+      }
+    }
+  }
+
+}
@@ -38,6 +38,7 @@ public class TimerHandler implements EventHandlerIF {
   private int MEASUREMENT_SIZE, LATENCY_MEASUREMENT_SIZE;
   private myEvent burst[];
   private int numCompletions = 0;
+  // In nanoseconds, as a burst of events can take less than 1 ms
   private long t1, t2;
 
   public TimerHandler() {
@@ -92,10 +93,10 @@ public class TimerHandler implements EventHandlerIF {
     if (item instanceof NullElement) {
 
       // Send initial burst
-      t1 = System.currentTimeMillis();
+      t1 = System.nanoTime();
       for (int i = 0; i < BURST_SIZE; i++) {
 	if (burst[i].num == 0) {
-	  burst[i].startTime = System.currentTimeMillis();
+	  burst[i].startTime = System.nanoTime();
 	}
 	nextHandlerSink.enqueue_lossy(burst[i]);
       }
@@ -105,10 +106,10 @@ public class TimerHandler implements EventHandlerIF {
 
       numCompletions++;
       if (numCompletions == MEASUREMENT_SIZE) {
-	t2 = System.currentTimeMillis();
+	t2 = System.nanoTime();
 	printBW();
 	numCompletions = 0;
-	t1 = System.currentTimeMillis();
+	t1 = System.nanoTime();
       }
 
       if (ev.num == 0) {
@@ -131,8 +132,9 @@ public class TimerHandler implements EventHandlerIF {
 
   private void printBW() {
     long diff = t2-t1;
-    double numpersec = ((double)MEASUREMENT_SIZE * 1.0) / (diff * 1.0e-3);
+    double numpersec = ((double)MEASUREMENT_SIZE * 1.0) / (diff * 1.0e-9);
     System.err.println("Bandwidth: "+MDWUtil.format(numpersec)+" packets/sec");
+    System.out.println("RESULT stage-latency.packets_per_sec "+numpersec);
   }
 
   // Class to represent an event passing through the system
@@ -148,11 +150,12 @@ public class TimerHandler implements EventHandlerIF {
     }
 
     void printLat() {
-      long endTime = System.currentTimeMillis();
-      double avglat = ((endTime - startTime)*1.0) / (count * 1.0);
+      long endTime = System.nanoTime();
+      double avglat = ((endTime - startTime)*1.0e-6) / (count * 1.0);
       avglat /= (NUM_STAGES * 1.0);
       System.err.println("Latency: "+avglat+" ms per stage");
-      startTime = System.currentTimeMillis();
+      System.out.println("RESULT stage-latency.ms_per_stage "+avglat);
+      startTime = System.nanoTime();
     }
   }
 
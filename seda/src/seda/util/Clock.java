@@ -0,0 +1,130 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.util;
+
+/**
+ * A pure-Java clock service. currentTimeMillis() returns the time of 
+ * day from a cached value, which is updated by a single background 
+ * thread every TICK_MILLIS ms; reading it costs a volatile load rather 
+ * than a system call, so it is used for the timeouts, intervals and 
+ * timestamps in the Sandstorm dispatch loops and controllers, all of 
+ * which tolerate an error of a tick. nanoTime() and preciseMillis() 
+ * are monotonic and exact, and should be used to measure short 
+ * intervals such as the time taken to process a batch of events.
+ *
+ * <p>The tick can be changed with the system property
+ * <tt>seda.util.Clock.tick</tt> (in milliseconds).
+ */
+public class Clock {
+
+  private static final boolean DEBUG = false;
+
+  /** The default interval, in ms, between updates of the cached time. */
+  public static final long TICK_MILLIS = 1;
+
+  private static final long tick;
+  private static volatile long now;
+
+  // Offset from System.nanoTime() to the time of day, in microseconds
+  private static final long usecOffset;
+
+  static {
+    long t = TICK_MILLIS;
+    try {
+      String val = System.getProperty("seda.util.Clock.tick");
+      if (val != null) t = Math.max(1, Long.parseLong(val));
+    } catch (SecurityException se) {
+      // Use the default
+    } catch (NumberFormatException nfe) {
+      System.err.println("Clock: Bad value for seda.util.Clock.tick, using "+t+" ms");
+    }
+    tick = t;
+    now = System.currentTimeMillis();
+    usecOffset = (now * 1000) - (System.nanoTime() / 1000);
+
+    Thread ticker = new Thread(new Runnable() {
+      public void run() {
+	while (true) {
+	  try {
+	    Thread.sleep(tick);
+	  } catch (InterruptedException ie) {
+	    // Ignore
+	  }
+	  now = System.currentTimeMillis();
+	}
+      }
+    }, "seda.util.Clock");
+    ticker.setDaemon(true);
+    ticker.setPriority(Thread.MAX_PRIORITY);
+    ticker.start();
+    if (DEBUG) System.err.println("Clock: started with tick "+tick+" ms");
+  }
+
+  private Clock() {
+  }
+
+  /**
+   * Return the time of day in milliseconds, as System.currentTimeMillis()
+   * would have returned it at most one tick ago.
+   */
+  public static long currentTimeMillis() {
+    return now;
+  }
+
+  /**
+   * Return the interval, in milliseconds, between updates of the 
+   * value returned by currentTimeMillis().
+   */
+  public static long getTick() {
+    return tick;
+  }
+
+  /**
+   * Return the value of a monotonic clock in nanoseconds, with an 
+   * arbitrary origin. Equivalent to System.nanoTime().
+   */
+  public static long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Return the value of a monotonic clock in milliseconds, with an 
+   * arbitrary origin. The difference between two readings is the 
+   * elapsed time to within a millisecond, without the error of a tick 
+   * which currentTimeMillis() may have.
+   */
+  public static long preciseMillis() {
+    return System.nanoTime() / 1000000;
+  }
+
+  /**
+   * Return the time of day in microseconds. This is derived from 
+   * nanoTime(), so it is monotonic, but may drift from the system 
+   * time of day while the JVM runs.
+   */
+  public static long currentTimeUsec() {
+    return usecOffset + (System.nanoTime() / 1000);
+  }
+
+}
@@ -44,7 +44,8 @@ public class MDWUtil {
 	try {
 	  System.loadLibrary("MDWUtil");
 	  nativeLibraryLoaded = true;
-	} catch (Exception e) {
+	} catch (UnsatisfiedLinkError e) {
+	  // Only the native methods are unavailable
 	  System.err.println("Cannot load MDWUtil shared library");
 	}
       }
@@ -60,16 +61,34 @@ public class MDWUtil {
   }
 
   /**
-   * Returns the current time in microseconds.
+   * Returns the current time in microseconds. If the native library 
+   * cannot be loaded, Clock.currentTimeUsec() is used instead.
    */
-  public static native long currentTimeUsec();
+  public static long currentTimeUsec() {
+    if (nativeLibraryLoaded) return nativeCurrentTimeUsec();
+    return Clock.currentTimeUsec();
+  }
 
   /**
    * Cause the current thread to sleep for the given number of
    * microseconds. Returns immediately if the thread is interrupted, but
-   * does not throw an exception.
+   * does not throw an exception. If the native library cannot be 
+   * loaded, Thread.sleep() is used instead.
    */
-  public static native void usleep(long delay);
+  public static void usleep(long delay) {
+    if (nativeLibraryLoaded) {
+      nativeUsleep(delay);
+      return;
+    }
+    try {
+      Thread.sleep(delay / 1000, (int)(delay % 1000) * 1000);
+    } catch (InterruptedException ie) {
+      // Return early, as the native version does
+    }
+  }
+
+  private static native long nativeCurrentTimeUsec();
+  private static native void nativeUsleep(long delay);
 
   /**
    * Format decimals to 4 digits only
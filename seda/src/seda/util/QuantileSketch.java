@@ -0,0 +1,181 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+package seda.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of non-negative long values from which 
+ * quantiles can be estimated, used for response times and other
+ * statistics which are recorded on every event. Values below 
+ * 2^SUB_BITS are counted exactly; larger ones fall into log-linear 
+ * buckets, 2^SUB_BITS per power of two, so that a quantile is 
+ * reported within about 1.5% of the true value whatever the range of
+ * the values, in a constant 15 KB.
+ *
+ * <p>add() takes no lock: each bucket is counted atomically, so 
+ * threads only contend when they add to the same bucket at once. 
+ * A consistent view is obtained with snapshot(), which copies the 
+ * counts; a snapshot is not updated by later add()s, and snapshots 
+ * can be subtracted (to obtain the values added between two 
+ * snapshots) or merged.
+ */
+public class QuantileSketch {
+
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int NUM_BUCKETS = SUB_COUNT * (64 - SUB_BITS);
+
+  private final AtomicLongArray counts;
+
+  /** Create an empty sketch. */
+  public QuantileSketch() {
+    this.counts = new AtomicLongArray(NUM_BUCKETS);
+  }
+
+  // Return the bucket for the given value
+  private static int bucket(long value) {
+    if (value < SUB_COUNT) return (int)value;
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int)(value >>> (exp - SUB_BITS)) - SUB_COUNT;
+    return SUB_COUNT + ((exp - SUB_BITS) * SUB_COUNT) + sub;
+  }
+
+  // Return the value at the middle of the given bucket
+  private static long bucketValue(int bucket) {
+    if (bucket < SUB_COUNT) return bucket;
+    int shift = (bucket / SUB_COUNT) - 1;
+    return bucketLow(bucket) + (((1L << shift) - 1) / 2);
+  }
+
+  /** 
+   * Return the number of buckets in a sketch. Buckets are numbered 
+   * from 0 in order of increasing value.
+   */
+  public static int numBuckets() {
+    return NUM_BUCKETS;
+  }
+
+  /** Return the smallest value counted in the given bucket. */
+  public static long bucketLow(int bucket) {
+    if (bucket < SUB_COUNT) return bucket;
+    int shift = (bucket / SUB_COUNT) - 1;
+    return ((long)SUB_COUNT + (bucket % SUB_COUNT)) << shift;
+  }
+
+  /** Return the number of values in the given bucket. */
+  public long bucketCount(int bucket) {
+    return counts.get(bucket);
+  }
+
+  /** 
+   * Add a value to the sketch. Negative values are counted as zero.
+   */
+  public void add(long value) {
+    counts.getAndIncrement(bucket(Math.max(0, value)));
+  }
+
+  /** Add the given number of occurrences of a value to the sketch. */
+  public void add(long value, long count) {
+    counts.getAndAdd(bucket(Math.max(0, value)), count);
+  }
+
+  /** Return the number of values in the sketch. */
+  public long count() {
+    long n = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      n += counts.get(i);
+    }
+    return n;
+  }
+
+  /**
+   * Return an estimate of the value at the given quantile, between 
+   * 0.0 and 1.0: the value below which a fraction q of the values 
+   * fall, as given by sorting them and indexing the sorted array at
+   * (int)(q * count()). Returns 0 if the sketch is empty.
+   */
+  public long quantile(double q) {
+    long n = count();
+    if (n == 0) return 0;
+    long rank = Math.min(n, (long)(q * n) + 1);
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) return bucketValue(i);
+    }
+    // Only reached if values were added after count() was called
+    return maxValue();
+  }
+
+  /** Return an estimate of the largest value in the sketch. */
+  public long maxValue() {
+    for (int i = NUM_BUCKETS-1; i >= 0; i--) {
+      if (counts.get(i) != 0) return bucketValue(i);
+    }
+    return 0;
+  }
+
+  /**
+   * Return a copy of this sketch. Each concurrent add() is either in
+   * the copy or not; none is counted twice by successive snapshots.
+   */
+  public QuantileSketch snapshot() {
+    QuantileSketch s = new QuantileSketch();
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      s.counts.set(i, counts.get(i));
+    }
+    return s;
+  }
+
+  /**
+   * Subtract the counts of an earlier snapshot of this sketch from
+   * this one, leaving the values added between the two.
+   */
+  public void subtract(QuantileSketch earlier) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long c = earlier.counts.get(i);
+      if (c != 0) counts.getAndAdd(i, -c);
+    }
+  }
+
+  /** Add the counts of another sketch to this one. */
+  public void merge(QuantileSketch other) {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long c = other.counts.get(i);
+      if (c != 0) counts.getAndAdd(i, c);
+    }
+  }
+
+  /** Remove all values from the sketch. */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  public String toString() {
+    return "QuantileSketch [count="+count()+", 50th="+quantile(0.5)+", 90th="+quantile(0.9)+", max="+maxValue()+"]";
+  }
+
+}
@@ -24,37 +24,92 @@
 
 package seda.util;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
+/**
+ * StatsGatherer records a series of values, such as response times, 
+ * and reports their count, mean, minimum, maximum, percentiles and 
+ * histogram. Values are kept in a QuantileSketch, so memory use is 
+ * constant however many values are added, and add() takes no lock, 
+ * so it can be called from many threads on every event. Percentiles 
+ * are estimates, within about 1.5% of the true value.
+ *
+ * <p>Every StatsGatherer is registered by name when it is created, so
+ * it can be found with lookup() and dumped with dumpAll(). snapshot()
+ * returns an unregistered copy which is not updated by later add()s;
+ * snapshots can be combined with merge().
+ *
+ * @author Matt Welsh
+ * @see QuantileSketch
+ */
 public class StatsGatherer {
 
-  private Hashtable histogram;
+  // Values are recorded in the sketch in units of 1/SCALE, so that
+  // fractional values (such as inter-arrival times in ms) are kept
+  private static final double SCALE = 1000.0;
+
+  private QuantileSketch sketch;
   private int bucketSize;
   private String name;
   private String tag;
-  private double mean = -1;
 
   private int skipSamples;
-  private int skip = 0;
+  private AtomicInteger skip = new AtomicInteger(0);
+  private StripedCounter count = new StripedCounter();
+  private StripedCounter sum = new StripedCounter();
+  private AtomicLong maxBits = new AtomicLong(Double.doubleToLongBits(0));
+  private AtomicLong minBits = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+
+  /**
+   * The number, largest, smallest and sum of the values, as of the 
+   * last call to snapshot(), dumpHistogram(), merge() or reset(). 
+   * These are not updated by add(); changing them has no effect.
+   * @deprecated Use num(), max(), min() and mean().
+   */
   public int num = 0;
+  /** @deprecated Use max(). */
   public double maxVal = 0;
+  /** @deprecated Use min(). */
   public double minVal = Double.MAX_VALUE;
+  /** @deprecated Use mean() and num(). */
   public double cumulativeVal = 0;
 
   private static Hashtable sgTbl = new Hashtable();
 
+  /**
+   * Create a StatsGatherer with the given name, which is used to look
+   * it up, and tag, which labels its output. The histogram printed by
+   * dumpHistogram() has buckets of width bucketSize; if bucketSize is
+   * 0 no histogram or percentiles are kept. The first skipSamples 
+   * values are discarded. Negative values are counted as 0 in the
+   * histogram and percentiles.
+   */
   public StatsGatherer(String name, String tag, int bucketSize, int skipSamples) {
+    this(name, tag, bucketSize);
+    this.skipSamples = skipSamples;
+  }
+
+  public StatsGatherer(String name, String tag, int bucketSize) {
     this.name = name;
     this.tag = tag;
     this.bucketSize = bucketSize;
-    this.skipSamples = skipSamples;
     if (bucketSize != 0) {
-      histogram = new Hashtable(1);
+      sketch = new QuantileSketch();
     }
     sgTbl.put(name, this);
   }
 
-  public StatsGatherer(String name, String tag, int bucketSize) {
-    this(name, tag, bucketSize, 0);
+  // Used by snapshot(); the copy is not registered
+  private StatsGatherer(StatsGatherer sg) {
+    this.name = sg.name;
+    this.tag = sg.tag;
+    this.bucketSize = sg.bucketSize;
+    if (sg.sketch != null) sketch = sg.sketch.snapshot();
+    count.add(sg.count.sum());
+    sum.add(sg.sum.sum());
+    maxBits.set(sg.maxBits.get());
+    minBits.set(sg.minBits.get());
+    refresh();
   }
 
   public static StatsGatherer lookup(String name) {
@@ -73,103 +128,141 @@ public class StatsGatherer {
     }
   }
 
-  public synchronized void reset() {
-    this.num = 0;
-    this.maxVal = 0;
-    this.minVal = Double.MAX_VALUE;
-    this.cumulativeVal = 0;
-    if (bucketSize != 0) {
-      histogram = new Hashtable(1);
-    }
+  /**
+   * Remove all values. Values added concurrently with reset() may be
+   * partly counted, for example in num() but not in max().
+   */
+  public void reset() {
+    count.sumThenReset();
+    sum.sumThenReset();
+    maxBits.set(Double.doubleToLongBits(0));
+    minBits.set(Double.doubleToLongBits(Double.MAX_VALUE));
+    if (sketch != null) sketch.reset();
+    refresh();
   }
 
-  public synchronized void add(double val) {
-    if (skip < skipSamples) {
-      skip++;
+  // Copy the current values into the deprecated public fields
+  private void refresh() {
+    num = num();
+    maxVal = max();
+    minVal = min();
+    cumulativeVal = sum.sum() / SCALE;
+  }
+
+  public void add(double val) {
+    if (skip.get() < skipSamples && skip.getAndIncrement() < skipSamples) {
       return;
     }
 
-    num++;
+    long scaled = (long)(val * SCALE);
+    count.increment();
+    sum.add(scaled);
+    updateMax(val);
+    updateMin(val);
+    if (sketch != null) sketch.add(scaled);
+  }
 
-    if (val > maxVal) maxVal = val;
-    if (val < minVal) minVal = val;
-    cumulativeVal += val;
+  private void updateMax(double val) {
+    long cur;
+    while (val > Double.longBitsToDouble(cur = maxBits.get())) {
+      if (maxBits.compareAndSet(cur, Double.doubleToLongBits(val))) return;
+    }
+  }
 
-    if (bucketSize != 0) {
-      Integer ct = new Integer((int)val / bucketSize);
-      Integer bval = (Integer)histogram.remove(ct);
-
-      if (bval == null) {
-	histogram.put(ct, new Integer(1));
-      } else {
-	bval = new Integer(bval.intValue() + 1);
-	histogram.put(ct, bval);
-      }
+  private void updateMin(double val) {
+    long cur;
+    while (val < Double.longBitsToDouble(cur = minBits.get())) {
+      if (minBits.compareAndSet(cur, Double.doubleToLongBits(val))) return;
     }
   }
 
-  public synchronized void dumpHistogram() {
-    System.err.println("=== Histogram dump of StatsGatherer: "+name+" ===");
+  /**
+   * Return a copy of the values added so far, which is not registered
+   * and is not changed by later calls to add().
+   */
+  public StatsGatherer snapshot() {
+    refresh();
+    return new StatsGatherer(this);
+  }
 
-    TreeSet ts = new TreeSet(new Comparator() {
-	public int compare(Object o1, Object o2) {
-  	  Integer i1 = (Integer)o1;
-	  Integer i2 = (Integer)o2;
-	  if (i1.intValue() == i2.intValue()) return 0;
-	  else if (i1.intValue() < i2.intValue()) return -1;
-	  else return 1;
-	}
-	});
+  /** 
+   * Add the values recorded by another StatsGatherer, such as a 
+   * snapshot, to this one. 
+   */
+  public void merge(StatsGatherer other) {
+    count.add(other.count.sum());
+    sum.add(other.sum.sum());
+    if (other.count.sum() != 0) {
+      updateMax(other.max());
+      updateMin(other.min());
+    }
+    if (sketch != null && other.sketch != null) sketch.merge(other.sketch);
+    refresh();
+  }
 
-    ts.addAll(histogram.keySet());
+  public void dumpHistogram() {
+    StatsGatherer sg = snapshot();
+    System.err.println("=== Histogram dump of StatsGatherer: "+name+" ===");
 
-    Object arr[] = ts.toArray();
-    for (int i = 0; i < arr.length; i++) {
-      Integer bucket = (Integer)arr[i];
-      int time = bucket.intValue() * bucketSize;
-      int val = ((Integer)histogram.get(bucket)).intValue();
-      System.err.println(tag+" "+time+" ms "+MDWUtil.format(val)+" count "+MDWUtil.format((val*100.0)/(num*1.0))+" pct");
+    if (sg.sketch != null) {
+      // Sum the sketch's buckets into rows of width bucketSize
+      long total = sg.sketch.count();
+      long row = -1, rowCount = 0;
+      for (int i = 0; i < QuantileSketch.numBuckets(); i++) {
+	long c = sg.sketch.bucketCount(i);
+	if (c == 0) continue;
+	long r = (long)(QuantileSketch.bucketLow(i) / SCALE) / bucketSize;
+	if (r != row) {
+	  if (rowCount != 0) sg.dumpRow(row, rowCount, total);
+	  row = r;
+	  rowCount = 0;
+	}
+	rowCount += c;
+      }
+      if (rowCount != 0) sg.dumpRow(row, rowCount, total);
     }
+
     System.err.println("=== Summary of StatsGatherer: "+name+" ===");
-    System.err.println(tag+": num "+num+" avg "+mean()+" max "+max()+" 90th "+percentile(0.9));
+    System.err.println(tag+": num "+sg.num()+" avg "+sg.mean()+" max "+sg.max()+" 90th "+sg.percentile(0.9));
     System.err.println("=== End of summmary for StatsGatherer: "+name+" ===");
     System.err.println("\n");
   }
 
-  public synchronized int num() {
-    return num;
+  private void dumpRow(long row, long count, long total) {
+    long time = row * bucketSize;
+    System.err.println(tag+" "+time+" ms "+MDWUtil.format(count)+" count "+MDWUtil.format((count*100.0)/(total*1.0))+" pct");
   }
 
-  public synchronized double mean() {
-    if (num == 0) return 0.0;
-    return (cumulativeVal * 1.0)/num;
+  /**
+   * Return the number of values added so far. Unlike the deprecated 
+   * num field, this and the other accessors below read the live values.
+   */
+  public int num() {
+    return (int)count.sum();
   }
 
-  public synchronized double min() {
-    return minVal;
+  public double mean() {
+    long n = count.sum();
+    if (n == 0) return 0.0;
+    return (sum.sum() / SCALE) / n;
   }
 
-  public synchronized double max() {
-    return maxVal;
+  public double min() {
+    return Double.longBitsToDouble(minBits.get());
   }
 
-  public synchronized double percentile(double pct) {
-    if (num == 0) return 0.0;
-    double data[] = new double[num];
-    int n = 0;
-    Enumeration e = histogram.keys();
-    while (e.hasMoreElements()) {
-      Integer bucket = (Integer)e.nextElement();
-      int time = bucket.intValue() * bucketSize;
-      int val = ((Integer)histogram.get(bucket)).intValue();
-      for (int j = 0; j < val; j++) {
-	data[n++] = time;
-      }
-    }
-    Arrays.sort(data);
-    int index = (int)(data.length * pct);
-    return data[index];
+  public double max() {
+    return Double.longBitsToDouble(maxBits.get());
   }
 
-}
+  /**
+   * Return an estimate of the value below which the fraction pct of
+   * the values fall. Returns 0 if no values have been added or there
+   * is no histogram.
+   */
+  public double percentile(double pct) {
+    if (sketch == null) return 0.0;
+    return sketch.quantile(pct) / SCALE;
+  }
 
+}
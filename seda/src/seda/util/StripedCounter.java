@@ -0,0 +1,112 @@
+/* 
+ * Copyright (c) The Regents of the University of California. 
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software and its
+ * documentation for any purpose, without fee, and without written agreement is
+ * hereby granted, provided that the above copyright notice and the following
+ * two paragraphs appear in all copies of this software.
+ * 
+ * IN NO EVENT SHALL THE UNIVERSITY OF CALIFORNIA BE LIABLE TO ANY PARTY FOR
+ * DIRECT, INDIRECT, SPECIAL, INCIDENTAL, OR CONSEQUENTIAL DAMAGES ARISING OUT
+ * OF THE USE OF THIS SOFTWARE AND ITS DOCUMENTATION, EVEN IF THE UNIVERSITY OF
+ * CALIFORNIA HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * THE UNIVERSITY OF CALIFORNIA SPECIFICALLY DISCLAIMS ANY WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE.  THE SOFTWARE PROVIDED HEREUNDER IS
+ * ON AN "AS IS" BASIS, AND THE UNIVERSITY OF CALIFORNIA HAS NO OBLIGATION TO
+ * PROVIDE MAINTENANCE, SUPPORT, UPDATES, ENHANCEMENTS, OR MODIFICATIONS.
+ *
+ */
+
+
+package seda.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which can be incremented by many threads at once without
+ * locking and without the threads contending for one cache line. The
+ * count is spread over a number of cells, each updated atomically, and
+ * a thread always adds to the cell chosen by its thread ID; the cells
+ * are folded together when the counter is read. This makes updates
+ * cheap and reads relatively expensive, which suits statistics which
+ * are recorded on every event and read only by controllers and
+ * profilers.
+ */
+public class StripedCounter {
+
+  // Number of longs between adjacent cells, so that each cell is on
+  // its own 64-byte cache line
+  private static final int PAD = 8;
+  private static final int MAX_CELLS = 64;
+
+  private final AtomicLongArray cells;
+  private final int mask;
+
+  /** Create a counter with a value of zero. */
+  public StripedCounter() {
+    int ncpus = Runtime.getRuntime().availableProcessors();
+    int n = 1;
+    while (n < ncpus * 2 && n < MAX_CELLS) n <<= 1;
+    this.mask = n - 1;
+    this.cells = new AtomicLongArray(n * PAD);
+  }
+
+  // Return the index of the calling thread's cell
+  private int cell() {
+    long id = Thread.currentThread().getId();
+    int h = (int)(id ^ (id >>> 32));
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return (h & mask) * PAD;
+  }
+
+  /** Add the given value to the counter. */
+  public void add(long x) {
+    cells.getAndAdd(cell(), x);
+  }
+
+  /** Add one to the counter. */
+  public void increment() {
+    add(1);
+  }
+
+  /** 
+   * Return the value of the counter. This is not an atomic snapshot 
+   * if the counter is being updated concurrently, but every update 
+   * which completed before the call is included.
+   */
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < cells.length(); i += PAD) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+
+  /** 
+   * Return the value of the counter and set it to zero. Each 
+   * concurrent update is counted either in the value returned or 
+   * in the value after the reset, never lost.
+   */
+  public long sumThenReset() {
+    long sum = 0;
+    for (int i = 0; i < cells.length(); i += PAD) {
+      sum += cells.getAndSet(i, 0);
+    }
+    return sum;
+  }
+
+  /** Set the counter to zero. */
+  public void reset() {
+    sumThenReset();
+  }
+
+  public String toString() {
+    return Long.toString(sum());
+  }
+
+}
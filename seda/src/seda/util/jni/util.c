@@ -56,7 +56,7 @@
  * Method:    currentTimeUsec
  * Signature: ()J
  */
-JNIEXPORT jlong JNICALL Java_seda_util_MDWUtil_currentTimeUsec(JNIEnv *env, jclass theclass) {
+JNIEXPORT jlong JNICALL Java_seda_util_MDWUtil_nativeCurrentTimeUsec(JNIEnv *env, jclass theclass) {
 
   struct timeval tv;
   gettimeofday(&tv, NULL);
@@ -70,7 +70,7 @@ JNIEXPORT jlong JNICALL Java_seda_util_MDWUtil_currentTimeUsec(JNIEnv *env, jcla
  * Method:    usleep
  * Signature: (J)V
  */
-JNIEXPORT void JNICALL Java_seda_util_MDWUtil_usleep(JNIEnv *env, jclass theclass, jlong delay) {
+JNIEXPORT void JNICALL Java_seda_util_MDWUtil_nativeUsleep(JNIEnv *env, jclass theclass, jlong delay) {
 
   struct timespec spec, remspec;
   spec.tv_sec = delay / 1000000;